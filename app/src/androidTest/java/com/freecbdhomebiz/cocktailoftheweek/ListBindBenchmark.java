@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2018. Tina Taylor
+ * CREATIVE COMMONS Attribution-ShareAlike 3.0 Unported (CC BY-SA 3.0)
+ * https://creativecommons.org/licenses/by-sa/3.0/
+ */
+
+package com.freecbdhomebiz.cocktailoftheweek;
+
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+import android.view.View;
+import android.widget.FrameLayout;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Frame-timing benchmark of a list row: binds a fixed list of articles with long summaries to a
+ * list_item on the UI thread, then measures and lays it out the way a RecyclerView frame would.
+ * Compares binding the raw article text with binding the text prepared by
+ * {@link PreparedCocktail}. Results are written to logcat under the tag ListBindBenchmark.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ListBindBenchmark {
+
+    private static final String LOG_TAG = "ListBindBenchmark";
+
+    private static final int ARTICLES = 200;
+
+    /**
+     * A frame at 60 fps has 16 ms, a row bind that takes longer drops at least one frame
+     */
+    private static final long FRAME_NANOS = 16000000L;
+
+    @Test
+    public void bindRawVersusPrepared() {
+        final List<Cocktail> cocktails = fixture();
+        final List<PreparedCocktail> prepared = PreparedCocktail.prepare(cocktails);
+        final List<PreparedCocktail> raw = new ArrayList<>();
+        long today = DateRenderer.getInstance().today(System.currentTimeMillis());
+        for (Cocktail cocktail : cocktails) {
+            // What the adapter used to show: the ISO date and the whole summary
+            raw.add(new PreparedCocktail(cocktail, String.format(
+                    "2018-07-%02dT08:00:00Z", 1 + raw.size() % 28), today,
+                                         cocktail.getSummary()));
+        }
+
+        final long[][] timings = new long[2][];
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                Context context = InstrumentationRegistry.getTargetContext();
+                FrameLayout parent = new FrameLayout(context);
+                CocktailAdapter adapter = new CocktailAdapter(null);
+                CocktailAdapter.ViewHolder holder = adapter.onCreateViewHolder(parent, 0);
+                int width = context.getResources().getDisplayMetrics().widthPixels;
+
+                // Warm up, so class loading and the first inflation are not measured
+                bindAll(holder, raw, width);
+                bindAll(holder, prepared, width);
+
+                timings[0] = bindAll(holder, raw, width);
+                timings[1] = bindAll(holder, prepared, width);
+            }
+        });
+
+        report("raw", timings[0]);
+        report("prepared", timings[1]);
+        assertTrue("prepared rows should not be slower to bind than raw rows",
+                   percentile(timings[1], 50) <= percentile(timings[0], 50));
+    }
+
+    /**
+     * Bind every item to the row, measure and lay it out, and return the time each one took
+     */
+    private static long[] bindAll(CocktailAdapter.ViewHolder holder,
+                                  List<PreparedCocktail> items, int width) {
+        long[] nanos = new long[items.size()];
+        View row = holder.itemView;
+        int widthSpec = View.MeasureSpec.makeMeasureSpec(width, View.MeasureSpec.EXACTLY);
+        int heightSpec = View.MeasureSpec.makeMeasureSpec(0, View.MeasureSpec.UNSPECIFIED);
+        for (int i = 0; i < items.size(); i++) {
+            long start = System.nanoTime();
+            CocktailAdapter.bind(holder, items.get(i));
+            row.measure(widthSpec, heightSpec);
+            row.layout(0, 0, row.getMeasuredWidth(), row.getMeasuredHeight());
+            nanos[i] = System.nanoTime() - start;
+        }
+        return nanos;
+    }
+
+    private static void report(String name, long[] nanos) {
+        int slow = 0;
+        for (long n : nanos) {
+            if (n > FRAME_NANOS) {
+                slow++;
+            }
+        }
+        Log.i(LOG_TAG, String.format("%s: p50 %.3f ms, p90 %.3f ms, p99 %.3f ms, "
+                                             + "%d of %d binds over one frame", name,
+                                     percentile(nanos, 50) / 1e6, percentile(nanos, 90) / 1e6,
+                                     percentile(nanos, 99) / 1e6, slow, nanos.length));
+    }
+
+    private static long percentile(long[] nanos, int percentile) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        return sorted[Math.min(sorted.length - 1, sorted.length * percentile / 100)];
+    }
+
+    /**
+     * A fixed list of articles whose summaries are as long as a full bodyTextSummary
+     */
+    private static List<Cocktail> fixture() {
+        StringBuilder summary = new StringBuilder();
+        while (summary.length() < 4000) {
+            summary.append("Shake the gin, lime juice and sugar syrup hard with lots of ice, ")
+                    .append("then double strain into a chilled coupe and garnish. ");
+        }
+        List<Cocktail> cocktails = new ArrayList<>();
+        for (int i = 0; i < ARTICLES; i++) {
+            cocktails.add(new Cocktail("Life and style", "Cocktail of the week no. " + i,
+                                       "Henry Jeffreys",
+                                       CocktailJsonParser.parseDate(String.format(
+                                               "2018-07-%02dT08:00:00Z", 1 + i % 28)),
+                                       i + " " + summary, "https://www.theguardian.com/" + i));
+        }
+        return cocktails;
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2018. Tina Taylor
+ * CREATIVE COMMONS Attribution-ShareAlike 3.0 Unported (CC BY-SA 3.0)
+ * https://creativecommons.org/licenses/by-sa/3.0/
+ */
+
+package com.freecbdhomebiz.cocktailoftheweek;
+
+import android.app.Activity;
+import android.app.Instrumentation;
+import android.content.Context;
+import android.content.Intent;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.support.v7.widget.RecyclerView;
+import android.util.Log;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Startup benchmark of MainActivity: stores a {@link StartupSnapshot} of a first screen, then
+ * launches the activity several times and measures the time from the launch intent to the
+ * first rows of the list on screen. Results are written to logcat under the tag
+ * StartupBenchmark. For a cold start including the process, run
+ * {@code adb shell am start -W -S com.freecbdhomebiz.cocktailoftheweek/.MainActivity} and read
+ * the "Fully drawn" line that MainActivity reports once its first rows are shown.
+ */
+@RunWith(AndroidJUnit4.class)
+public class StartupBenchmark {
+
+    private static final String LOG_TAG = "StartupBenchmark";
+
+    private static final int LAUNCHES = 10;
+
+    /**
+     * The list should be usable within this time of the launch
+     */
+    private static final long TARGET_MILLIS = 300;
+
+    /**
+     * Give up waiting for the rows after this long
+     */
+    private static final long TIMEOUT_MILLIS = 5000;
+
+    @Test
+    public void launch_showsFirstRowsQuickly() {
+        final Instrumentation instrumentation = InstrumentationRegistry.getInstrumentation();
+        Context context = InstrumentationRegistry.getTargetContext();
+        new StartupSnapshot(context).write(MainActivity.feedRequest(context, 1).getKey(),
+                                           fixture());
+
+        long[] millis = new long[LAUNCHES];
+        for (int i = 0; i < LAUNCHES; i++) {
+            Intent intent = new Intent(context, MainActivity.class)
+                    .addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
+            long start = SystemClock.uptimeMillis();
+            final Activity activity = instrumentation.startActivitySync(intent);
+            while (!hasRows(instrumentation, activity)) {
+                assertTrue("no rows shown", SystemClock.uptimeMillis() - start < TIMEOUT_MILLIS);
+                SystemClock.sleep(5);
+            }
+            millis[i] = SystemClock.uptimeMillis() - start;
+            activity.finish();
+            instrumentation.waitForIdleSync();
+        }
+
+        Arrays.sort(millis);
+        long p50 = millis[LAUNCHES / 2];
+        Log.i(LOG_TAG, String.format("first rows: p50 %d ms, p90 %d ms, max %d ms", p50,
+                                     millis[LAUNCHES * 9 / 10], millis[LAUNCHES - 1]));
+        assertTrue("first rows took " + p50 + " ms", p50 < TARGET_MILLIS);
+    }
+
+    /**
+     * Returns true once the list of the activity shows at least one row
+     */
+    private static boolean hasRows(Instrumentation instrumentation, final Activity activity) {
+        final boolean[] rows = new boolean[1];
+        instrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                RecyclerView list = activity.findViewById(R.id.list);
+                rows[0] = list != null && list.getChildCount() > 0;
+            }
+        });
+        return rows[0];
+    }
+
+    /**
+     * The first screen of a feed, as the snapshot stores it
+     */
+    private static List<PreparedCocktail> fixture() {
+        List<Cocktail> cocktails = new ArrayList<>();
+        for (int i = 0; i < StartupSnapshot.MAX_ITEMS; i++) {
+            cocktails.add(new Cocktail("Life and style", "Cocktail of the week no. " + i,
+                                       "Henry Jeffreys",
+                                       CocktailJsonParser.parseDate(String.format(
+                                               "2018-07-%02dT08:00:00Z", 1 + i)),
+                                       "Shake the gin, lime juice and sugar syrup hard with "
+                                               + "lots of ice, then double strain.",
+                                       "https://www.theguardian.com/" + i));
+        }
+        return PreparedCocktail.prepare(cocktails);
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2018. Tina Taylor
+ * CREATIVE COMMONS Attribution-ShareAlike 3.0 Unported (CC BY-SA 3.0)
+ * https://creativecommons.org/licenses/by-sa/3.0/
+ */
+
+package com.freecbdhomebiz.cocktailoftheweek;
+
+import android.content.Context;
+import android.content.Intent;
+import android.net.Uri;
+import android.os.Bundle;
+import android.support.v7.app.AppCompatActivity;
+import android.text.method.LinkMovementMethod;
+import android.view.Menu;
+import android.view.MenuItem;
+import android.view.View;
+import android.widget.ProgressBar;
+import android.widget.TextView;
+
+/**
+ * Shows a Cocktail article in the app. The heading comes with the intent from the row that was
+ * tapped, and the body from {@link ArticleReader}, which usually prefetched it while the row
+ * was on screen. The menu still opens the article's web page in the browser.
+ */
+public class ArticleActivity extends AppCompatActivity {
+
+    private static final String EXTRA_URL = "url";
+    private static final String EXTRA_SECTION = "section";
+    private static final String EXTRA_TITLE = "title";
+    private static final String EXTRA_AUTHOR = "author";
+    private static final String EXTRA_DATE = "date";
+
+    private TextView mBodyView;
+    private ProgressBar mSpinningCircle;
+
+    /**
+     * The web page of the article
+     */
+    private String mUrl;
+
+    /**
+     * Waits for the body if it wasn't prefetched, null once it arrived
+     */
+    private ArticlePrefetcher.Callback<CharSequence> mCallback;
+
+    /**
+     * Returns the intent that shows the article
+     */
+    static Intent newIntent(Context context, PreparedCocktail cocktail) {
+        return new Intent(context, ArticleActivity.class)
+                .putExtra(EXTRA_URL, cocktail.getCocktail().getUrl())
+                .putExtra(EXTRA_SECTION, cocktail.getSectionName())
+                .putExtra(EXTRA_TITLE, cocktail.getCocktailName())
+                .putExtra(EXTRA_AUTHOR, cocktail.getAuthor())
+                .putExtra(EXTRA_DATE, cocktail.getDate());
+    }
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_article);
+
+        Intent intent = getIntent();
+        mUrl = intent.getStringExtra(EXTRA_URL);
+        ((TextView) findViewById(R.id.section_name)).setText(
+                intent.getStringExtra(EXTRA_SECTION));
+        ((TextView) findViewById(R.id.cocktail_name)).setText(intent.getStringExtra(EXTRA_TITLE));
+        ((TextView) findViewById(R.id.author)).setText(intent.getStringExtra(EXTRA_AUTHOR));
+        ((TextView) findViewById(R.id.date)).setText(intent.getStringExtra(EXTRA_DATE));
+        mBodyView = findViewById(R.id.article_body);
+        mBodyView.setMovementMethod(LinkMovementMethod.getInstance());
+        mSpinningCircle = findViewById(R.id.spinning_circle);
+
+        // A prefetched body is handed over straight away, before the first frame is drawn
+        mCallback = new ArticlePrefetcher.Callback<CharSequence>() {
+            @Override
+            public void onArticleLoaded(CharSequence article) {
+                if (mCallback != this) {
+                    // Delivered after the activity was destroyed
+                    return;
+                }
+                mCallback = null;
+                showBody(article);
+            }
+        };
+        ArticleReader.getInstance().load(mUrl, mCallback);
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (mCallback != null) {
+            ArticleReader.getInstance().cancel(mCallback);
+            mCallback = null;
+        }
+    }
+
+    /**
+     * Show the rendered body, or say it couldn't be loaded if it is null
+     */
+    private void showBody(CharSequence article) {
+        mSpinningCircle.setVisibility(View.GONE);
+        if (article == null) {
+            mBodyView.setText(R.string.article_not_loaded);
+        } else {
+            mBodyView.setText(article);
+        }
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.article, menu);
+        return true;
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        if (item.getItemId() == R.id.action_open_in_browser) {
+            // Send an intent to a web browser to open the web page of the article
+            startActivity(new Intent(Intent.ACTION_VIEW, Uri.parse(mUrl)));
+            return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
+}
@@ -0,0 +1,347 @@
+/*
+ * Copyright (c) 2018. Tina Taylor
+ * CREATIVE COMMONS Attribution-ShareAlike 3.0 Unported (CC BY-SA 3.0)
+ * https://creativecommons.org/licenses/by-sa/3.0/
+ */
+
+package com.freecbdhomebiz.cocktailoftheweek;
+
+import android.content.Context;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * On-disk store of the {@link Cocktail} articles last fetched for each request URL, so the list
+ * can be shown straight away on startup and the network is only used to revalidate it.
+ * Entries are keyed by the request URL without the api-key parameter. A feed of several
+ * sources also keeps an entry of each source, under {@link #sourceKey}, with the validators of
+ * that source.
+ */
+public class ArticleCache {
+
+    /**
+     * Tag for log messages
+     */
+    private static final String LOG_TAG = ArticleCache.class.getName();
+
+    /**
+     * How long a cached entry is considered fresh before it is revalidated. The series only
+     * publishes once a week, so a few hours keeps us well inside the API quota.
+     */
+    public static final long TTL_MILLIS = TimeUnit.HOURS.toMillis(6);
+
+    /**
+     * How long the articles of an entry may be brought up to date with only the ones published
+     * since, before they are fetched whole again. That picks up the articles that were edited
+     * or taken down after they were stored.
+     */
+    public static final long FULL_FETCH_INTERVAL_MILLIS = TimeUnit.DAYS.toMillis(7);
+
+    /**
+     * Version of the file format, bump it whenever the layout of an entry changes. The articles
+     * themselves are in the {@link CocktailListFormat}, which has a version of its own.
+     */
+    private static final int FORMAT_VERSION = 4;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final File mDirectory;
+
+    /**
+     * Constructs a new {@link ArticleCache} in the app's cache directory
+     *
+     * @param context of the app
+     */
+    public ArticleCache(Context context) {
+        this(new File(context.getCacheDir(), "articles"));
+    }
+
+    /**
+     * Constructs a new {@link ArticleCache} that keeps its files in the given directory
+     */
+    ArticleCache(File directory) {
+        mDirectory = directory;
+    }
+
+    /**
+     * Returns the cached entry for the request URL, or null if there is none or it can't be read.
+     * The file is memory mapped and its articles decoded straight from the mapping, without
+     * parsing any JSON.
+     */
+    public Entry get(String requestUrl) {
+        File file = fileFor(requestUrl);
+        if (!file.exists()) {
+            return null;
+        }
+        RandomAccessFile in = null;
+        try {
+            in = new RandomAccessFile(file, "r");
+            // The mapping stays valid after the file is closed, and after put() renames a new
+            // file over it
+            ByteBuffer buffer = in.getChannel().map(FileChannel.MapMode.READ_ONLY, 0,
+                                                    in.length());
+            if (buffer.remaining() < 4 || buffer.getInt() != FORMAT_VERSION) {
+                return null;
+            }
+            long fetchedAt = buffer.getLong();
+            long fullyFetchedAt = buffer.getLong();
+            long newestDate = buffer.getLong();
+            String etag = CocktailListFormat.getString(buffer);
+            String lastModified = CocktailListFormat.getString(buffer);
+            return new Entry(fetchedAt, fullyFetchedAt, newestDate, etag, lastModified,
+                             CocktailListFormat.read(buffer));
+        } catch (IOException | BufferUnderflowException e) {
+            EventLog.e(LOG_TAG, "Problem reading the cached articles", e);
+            return null;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    /**
+     * Store the articles and validators of a response for the request URL, fetched whole now
+     */
+    public void put(String requestUrl, CocktailResponse response) {
+        long now = System.currentTimeMillis();
+        if (response != null && response.getCocktails() != null) {
+            write(requestUrl, response, now, now, newestDate(response.getCocktails()));
+        }
+    }
+
+    /**
+     * Store the articles and validators of a response for the request URL, fetched now. They
+     * were last fetched whole at fullyFetchedAt, and brought up to date since with only the
+     * articles published in the meantime.
+     */
+    public void put(String requestUrl, CocktailResponse response, long fullyFetchedAt) {
+        if (response == null || response.getCocktails() == null) {
+            return;
+        }
+        write(requestUrl, response, System.currentTimeMillis(), fullyFetchedAt,
+              newestDate(response.getCocktails()));
+    }
+
+    /**
+     * Mark the cached entry of the request URL as fetched now, after the server answered
+     * "304 Not Modified". The validators of the answer replace the cached ones.
+     */
+    public void touch(String requestUrl, CocktailResponse notModified) {
+        Entry entry = get(requestUrl);
+        if (entry == null) {
+            return;
+        }
+        // The server confirmed the whole list, so it counts as fetched whole
+        long now = System.currentTimeMillis();
+        write(requestUrl, new CocktailResponse(entry.getCocktails(), notModified.getEtag(),
+                                               notModified.getLastModified()),
+              now, now, entry.getNewestDate());
+    }
+
+    /**
+     * Returns the latest publication date of the articles, or {@link Cocktail#NO_DATE} if none
+     * of them has one
+     */
+    private static long newestDate(List<Cocktail> cocktails) {
+        // NO_DATE is smaller than any date
+        long newest = Cocktail.NO_DATE;
+        for (Cocktail cocktail : cocktails) {
+            newest = Math.max(newest, cocktail.getDate());
+        }
+        return newest;
+    }
+
+    /**
+     * Write the entry of the request URL
+     */
+    private void write(String requestUrl, CocktailResponse response, long fetchedAt,
+                       long fullyFetchedAt, long newestDate) {
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            EventLog.e(LOG_TAG, "Problem creating the cache directory {}", mDirectory);
+            return;
+        }
+
+        // Write to a temporary file first and rename it, so a crash half way through never
+        // leaves a truncated entry behind.
+        File file = fileFor(requestUrl);
+        File tmp = new File(file.getPath() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(fetchedAt);
+            out.writeLong(fullyFetchedAt);
+            out.writeLong(newestDate);
+            CocktailListFormat.writeString(out, response.getEtag());
+            CocktailListFormat.writeString(out, response.getLastModified());
+            CocktailListFormat.write(out, response.getCocktails());
+            out.close();
+            out = null;
+            if (!tmp.renameTo(file)) {
+                EventLog.e(LOG_TAG, "Problem replacing the cached articles in {}", file);
+            }
+        } catch (IOException e) {
+            EventLog.e(LOG_TAG, "Problem writing the cached articles", e);
+        } finally {
+            closeQuietly(out);
+            if (tmp.exists() && !tmp.delete()) {
+                EventLog.e(LOG_TAG, "Problem deleting {}", tmp);
+            }
+        }
+    }
+
+    /**
+     * Returns the key the articles of one source of a merged feed are stored under. The first
+     * source is also the key of the merged feed, so the sources have keys of their own.
+     */
+    static String sourceKey(String requestUrl) {
+        return "source:" + requestUrl;
+    }
+
+    /**
+     * Returns the part of the request URL that identifies the articles, which is the whole URL
+     * without the api-key query parameter.
+     */
+    static String cacheKey(String requestUrl) {
+        int queryStart = requestUrl.indexOf('?');
+        if (queryStart < 0) {
+            return requestUrl;
+        }
+        StringBuilder key = new StringBuilder(requestUrl.substring(0, queryStart));
+        char separator = '?';
+        for (String parameter : requestUrl.substring(queryStart + 1).split("&")) {
+            if (parameter.isEmpty() || parameter.startsWith("api-key=")) {
+                continue;
+            }
+            key.append(separator).append(parameter);
+            separator = '&';
+        }
+        return key.toString();
+    }
+
+    /**
+     * Returns the file holding the entry of the request URL, named after a hash of its key
+     */
+    private File fileFor(String requestUrl) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] hash = digest.digest(cacheKey(requestUrl).getBytes(UTF_8));
+            StringBuilder name = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                name.append(Character.forDigit((b >> 4) & 0xf, 16))
+                        .append(Character.forDigit(b & 0xf, 16));
+            }
+            return new File(mDirectory, name.toString());
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-1
+            throw new AssertionError(e);
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            EventLog.e(LOG_TAG, "Problem closing the cache file", e);
+        }
+    }
+
+    /**
+     * A cached list of {@link Cocktail} articles with the time it was fetched, the date of its
+     * newest article and the validators the server sent with it
+     */
+    public static final class Entry {
+        private final long mFetchedAt;
+        private final long mFullyFetchedAt;
+        private final long mNewestDate;
+        private final String mEtag;
+        private final String mLastModified;
+        private final List<Cocktail> mCocktails;
+
+        Entry(long fetchedAt, long fullyFetchedAt, long newestDate, String etag,
+              String lastModified, List<Cocktail> cocktails) {
+            mFetchedAt = fetchedAt;
+            mFullyFetchedAt = fullyFetchedAt;
+            mNewestDate = newestDate;
+            mEtag = etag;
+            mLastModified = lastModified;
+            mCocktails = cocktails;
+        }
+
+        /**
+         * Returns the time in milliseconds when the articles were fetched
+         */
+        public long getFetchedAt() {
+            return mFetchedAt;
+        }
+
+        /**
+         * Returns the time in milliseconds when the articles were last fetched whole, rather
+         * than brought up to date with the ones published since
+         */
+        public long getFullyFetchedAt() {
+            return mFullyFetchedAt;
+        }
+
+        /**
+         * Returns the latest publication date of the articles in epoch milliseconds, or
+         * {@link Cocktail#NO_DATE} if none of them has one
+         */
+        public long getNewestDate() {
+            return mNewestDate;
+        }
+
+        /**
+         * Returns the ETag the server sent with the articles
+         */
+        public String getEtag() {
+            return mEtag;
+        }
+
+        /**
+         * Returns the Last-Modified date the server sent with the articles
+         */
+        public String getLastModified() {
+            return mLastModified;
+        }
+
+        /**
+         * Returns the cached list of Cocktail articles
+         */
+        public List<Cocktail> getCocktails() {
+            return mCocktails;
+        }
+
+        /**
+         * Returns true if the entry is older than {@link #TTL_MILLIS} at the given time
+         */
+        public boolean isExpired(long now) {
+            return now - mFetchedAt > TTL_MILLIS;
+        }
+
+        /**
+         * Returns true if the articles have to be fetched whole at the given time, rather than
+         * only the ones published since the newest of them
+         */
+        public boolean isFullFetchDue(long now) {
+            return mNewestDate == Cocktail.NO_DATE
+                    || now - mFullyFetchedAt > FULL_FETCH_INTERVAL_MILLIS;
+        }
+    }
+}
@@ -0,0 +1,244 @@
+/*
+ * Copyright (c) 2018. Tina Taylor
+ * CREATIVE COMMONS Attribution-ShareAlike 3.0 Unported (CC BY-SA 3.0)
+ * https://creativecommons.org/licenses/by-sa/3.0/
+ */
+
+package com.freecbdhomebiz.cocktailoftheweek;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Fetches and renders the bodies of the articles the user is likely to open next, so the
+ * article reader can show one straight from memory when its row is tapped. The list asks for
+ * the articles of the rows on screen with prefetch(), and the reader asks for the one that was
+ * tapped with load(), which joins a fetch that is already running rather than starting another.
+ * <p>
+ * Rendered articles are kept in a small cache of the most recently used ones. A prefetch that
+ * hasn't finished when its row scrolls out of view is canceled, unless the reader is waiting
+ * for it. What the HTML of a body is rendered into is up to the {@link Renderer}, the app
+ * renders Spanned text with ArticleReader. Kept free of Android classes so it can be unit
+ * tested.
+ *
+ * @param <T> is the type of a rendered article
+ */
+public class ArticlePrefetcher<T> {
+
+    /**
+     * Fetches the HTML of the body of an article
+     */
+    public interface Fetcher {
+
+        /**
+         * Returns the HTML of the body of the article at the URL, or null if it has none or it
+         * can't be fetched. Called on a background thread, and returns early once the
+         * cancellation is canceled.
+         */
+        String fetch(String url, CancellationToken cancellation);
+    }
+
+    /**
+     * Renders fetched articles ahead of time, so showing one takes no more than setting it
+     */
+    public interface Renderer<T> {
+
+        /**
+         * Returns the article rendered from the HTML of its body. Called on a background
+         * thread.
+         */
+        T render(String html);
+    }
+
+    /**
+     * Receives the article the reader asked for
+     */
+    public interface Callback<T> {
+
+        /**
+         * Called with the rendered article, or with null if it couldn't be loaded
+         */
+        void onArticleLoaded(T article);
+    }
+
+    private final Fetcher mFetcher;
+    private final Renderer<T> mRenderer;
+    private final LruMemoryCache<String, T> mCache;
+    private final ExecutorService mExecutor;
+    private final Executor mDelivery;
+
+    /**
+     * The fetches that haven't finished yet by URL, guarded by this
+     */
+    private final Map<String, Job> mJobs = new HashMap<>();
+
+    /**
+     * Constructs a new {@link ArticlePrefetcher}
+     *
+     * @param fetcher fetches the HTML of the bodies
+     * @param renderer renders the fetched bodies
+     * @param maxArticles is the most rendered articles kept in memory
+     * @param executor fetches and renders the articles
+     * @param delivery runs the callbacks of the reader, on the UI thread in the app
+     */
+    public ArticlePrefetcher(Fetcher fetcher, Renderer<T> renderer, int maxArticles,
+                             ExecutorService executor, Executor delivery) {
+        mFetcher = fetcher;
+        mRenderer = renderer;
+        mCache = new LruMemoryCache<String, T>(maxArticles) {
+            @Override
+            protected long sizeOf(String url, T article) {
+                return 1;
+            }
+        };
+        mExecutor = executor;
+        mDelivery = delivery;
+    }
+
+    /**
+     * Fetch and render in the background the articles at the URLs that are not in memory yet,
+     * the ones of the rows on screen. Prefetches of rows that are no longer on screen are
+     * canceled, unless the reader is waiting for them.
+     */
+    public synchronized void prefetch(List<String> urls) {
+        Set<String> visible = new HashSet<>(urls);
+        Iterator<Map.Entry<String, Job>> jobs = mJobs.entrySet().iterator();
+        while (jobs.hasNext()) {
+            Job job = jobs.next().getValue();
+            if (!visible.contains(job.mUrl) && job.mCallbacks.isEmpty()) {
+                job.cancel();
+                jobs.remove();
+            }
+        }
+        for (String url : urls) {
+            if (!mJobs.containsKey(url) && !mCache.contains(url)) {
+                start(url);
+            }
+        }
+    }
+
+    /**
+     * Returns the rendered article at the URL if it is in memory, or null
+     */
+    public T get(String url) {
+        return mCache.get(url);
+    }
+
+    /**
+     * Load the article at the URL for the reader. An article already in memory is handed to the
+     * callback straight away, on the calling thread, otherwise it is handed to the callback on
+     * the delivery executor once it is fetched, by the prefetch that is already running if
+     * there is one.
+     */
+    public void load(String url, Callback<T> callback) {
+        T article = mCache.get(url);
+        if (article != null) {
+            callback.onArticleLoaded(article);
+            return;
+        }
+        synchronized (this) {
+            // The article may have arrived since the cache was asked
+            article = mCache.get(url);
+            if (article == null) {
+                Job job = mJobs.get(url);
+                if (job == null) {
+                    job = start(url);
+                }
+                job.mCallbacks.add(callback);
+                return;
+            }
+        }
+        callback.onArticleLoaded(article);
+    }
+
+    /**
+     * Stop handing articles to the callback, because the reader went away. The fetch it waited
+     * for carries on, so the article is there if it is opened again.
+     */
+    public synchronized void cancel(Callback<T> callback) {
+        for (Job job : mJobs.values()) {
+            job.mCallbacks.remove(callback);
+        }
+    }
+
+    /**
+     * Returns the cache of the rendered articles
+     */
+    LruMemoryCache<String, T> getCache() {
+        return mCache;
+    }
+
+    /**
+     * Start fetching the article at the URL. Must be called with the lock held.
+     */
+    private Job start(String url) {
+        Job job = new Job(url);
+        mJobs.put(url, job);
+        job.mFuture = mExecutor.submit(job);
+        return job;
+    }
+
+    /**
+     * Fetches and renders one article on a background thread
+     */
+    private final class Job implements Runnable {
+        private final String mUrl;
+        private final CancellationToken mCancellation = new CancellationToken();
+
+        /**
+         * The callbacks waiting for the article, guarded by the prefetcher
+         */
+        private final List<Callback<T>> mCallbacks = new ArrayList<>();
+
+        private volatile Future<?> mFuture;
+
+        Job(String url) {
+            mUrl = url;
+        }
+
+        void cancel() {
+            mCancellation.cancel();
+            Future<?> future = mFuture;
+            if (future != null) {
+                future.cancel(false);
+            }
+        }
+
+        @Override
+        public void run() {
+            T article = null;
+            String html = mFetcher.fetch(mUrl, mCancellation);
+            if (html != null && !mCancellation.isCanceled()) {
+                article = mRenderer.render(html);
+                if (article != null) {
+                    mCache.put(mUrl, article);
+                }
+            }
+            final List<Callback<T>> callbacks;
+            synchronized (ArticlePrefetcher.this) {
+                if (mJobs.get(mUrl) == this) {
+                    mJobs.remove(mUrl);
+                }
+                callbacks = new ArrayList<>(mCallbacks);
+                mCallbacks.clear();
+            }
+            final T loaded = article;
+            for (final Callback<T> callback : callbacks) {
+                mDelivery.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onArticleLoaded(loaded);
+                    }
+                });
+            }
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2018. Tina Taylor
+ * CREATIVE COMMONS Attribution-ShareAlike 3.0 Unported (CC BY-SA 3.0)
+ * https://creativecommons.org/licenses/by-sa/3.0/
+ */
+
+package com.freecbdhomebiz.cocktailoftheweek;
+
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.text.Html;
+import android.text.Spanned;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The {@link ArticlePrefetcher} of ArticleActivity. Articles are looked up by the URL of their
+ * web page, fetched from the Content API with show-blocks=body, and rendered from HTML into
+ * Spanned text on the background thread, so opening one only has to set its text. They are
+ * the first to go under memory pressure, they are only there in case the user opens them.
+ */
+public final class ArticleReader {
+
+    /**
+     * Rendered articles kept in memory, a few screens of rows. An article is a few tens of
+     * kilobytes of text, so they take up a few megabytes at most.
+     */
+    private static final int MAX_ARTICLES = 24;
+
+    private static ArticlePrefetcher<CharSequence> sInstance;
+
+    /**
+     * No one should ever create a {@link ArticleReader} object, it only holds the prefetcher
+     */
+    private ArticleReader() {
+    }
+
+    /**
+     * Returns the one prefetcher of the app, shared by the list and the reader
+     */
+    public static synchronized ArticlePrefetcher<CharSequence> getInstance() {
+        if (sInstance == null) {
+            final Handler mainThread = new Handler(Looper.getMainLooper());
+            // A single thread, the articles are only fetched in case the user opens them
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                    1, 1, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                    new ThreadFactory() {
+                        @Override
+                        public Thread newThread(final Runnable runnable) {
+                            return new Thread(new Runnable() {
+                                @Override
+                                public void run() {
+                                    Process.setThreadPriority(
+                                            Process.THREAD_PRIORITY_BACKGROUND);
+                                    runnable.run();
+                                }
+                            }, "articles");
+                        }
+                    });
+            executor.allowCoreThreadTimeOut(true);
+            sInstance = new ArticlePrefetcher<>(
+                    new ArticlePrefetcher.Fetcher() {
+                        @Override
+                        public String fetch(String url, CancellationToken cancellation) {
+                            String requestUrl = MainActivity.articleRequestUrl(url);
+                            if (requestUrl == null) {
+                                return null;
+                            }
+                            return QueryUtils.fetchArticleBody(requestUrl, cancellation);
+                        }
+                    },
+                    new ArticlePrefetcher.Renderer<CharSequence>() {
+                        @Override
+                        public CharSequence render(String html) {
+                            return fromHtml(html);
+                        }
+                    },
+                    MAX_ARTICLES, executor,
+                    new Executor() {
+                        @Override
+                        public void execute(Runnable command) {
+                            mainThread.post(command);
+                        }
+                    });
+            CacheRegistry.getInstance().register("articles", CacheRegistry.RENDERED,
+                                                 sInstance.getCache());
+        }
+        return sInstance;
+    }
+
+    @SuppressWarnings("deprecation")
+    private static Spanned fromHtml(String html) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            return Html.fromHtml(html, Html.FROM_HTML_MODE_LEGACY);
+        }
+        return Html.fromHtml(html);
+    }
+}
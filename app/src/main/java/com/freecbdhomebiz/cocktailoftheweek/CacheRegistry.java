@@ -0,0 +1,234 @@
+/*
+ * Copyright (c) 2018. Tina Taylor
+ * CREATIVE COMMONS Attribution-ShareAlike 3.0 Unported (CC BY-SA 3.0)
+ * https://creativecommons.org/licenses/by-sa/3.0/
+ */
+
+package com.freecbdhomebiz.cocktailoftheweek;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Every cache the app keeps in memory, so that they all give memory back when the system asks
+ * for it through onTrimMemory() of the app, and so their sizes and hit rates can be shown on
+ * the Metrics screen.
+ * <p>
+ * The caches are trimmed in the order of their priority, the ones that are cheapest to do
+ * without first: the rendered texts, then the search index, which is read again from disk,
+ * then the decoded thumbnails, and the list itself last. Each level of memory pressure goes
+ * one half step further down that order, the cache at the step halves what it holds and the
+ * ones before it drop everything. The system kills the processes in the background that hold
+ * the most memory first, and on a device with 1 GB it gets to them early.
+ * <p>
+ * Kept free of Android classes so it can be unit tested, the levels are the ones of
+ * android.content.ComponentCallbacks2.
+ */
+public final class CacheRegistry {
+
+    /*
+     * Priorities, the lowest is trimmed first
+     */
+
+    /**
+     * Texts rendered ahead of time, such as the dates of the rows and the prefetched articles
+     */
+    public static final int RENDERED = 0;
+
+    /**
+     * The search index, which is kept on disk as well
+     */
+    public static final int INDEX = 1;
+
+    /**
+     * Decoded images
+     */
+    public static final int IMAGES = 2;
+
+    /**
+     * The list on screen
+     */
+    public static final int LIST = 3;
+
+    /*
+     * The levels of memory pressure of android.content.ComponentCallbacks2
+     */
+
+    static final int TRIM_MEMORY_RUNNING_MODERATE = 5;
+    static final int TRIM_MEMORY_RUNNING_LOW = 10;
+    static final int TRIM_MEMORY_RUNNING_CRITICAL = 15;
+    static final int TRIM_MEMORY_UI_HIDDEN = 20;
+    static final int TRIM_MEMORY_BACKGROUND = 40;
+    static final int TRIM_MEMORY_MODERATE = 60;
+    static final int TRIM_MEMORY_COMPLETE = 80;
+
+    private static final String LOG_TAG = CacheRegistry.class.getName();
+
+    private static final CacheRegistry sInstance = new CacheRegistry();
+
+    /**
+     * The registered caches by priority, in the order they registered within one priority,
+     * guarded by this
+     */
+    private final List<Entry> mEntries = new ArrayList<>();
+
+    /**
+     * The app registers its caches in getInstance(), tests make their own
+     */
+    CacheRegistry() {
+    }
+
+    /**
+     * Returns the registry of the app
+     */
+    public static CacheRegistry getInstance() {
+        return sInstance;
+    }
+
+    /**
+     * Add the cache, to be trimmed with the others of its priority
+     *
+     * @param name is shown in the report, with the unit of the sizes of the cache
+     * @param priority is one of {@link #RENDERED}, {@link #INDEX}, {@link #IMAGES} and
+     *                 {@link #LIST}
+     * @param cache is the cache, held until it is unregistered
+     */
+    public synchronized void register(String name, int priority, TrimmableCache cache) {
+        int index = 0;
+        while (index < mEntries.size() && mEntries.get(index).mPriority <= priority) {
+            index++;
+        }
+        mEntries.add(index, new Entry(name, priority, cache));
+    }
+
+    /**
+     * Remove the cache, it is going away
+     */
+    public synchronized void unregister(TrimmableCache cache) {
+        for (int i = 0; i < mEntries.size(); i++) {
+            if (mEntries.get(i).mCache == cache) {
+                mEntries.remove(i);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Give memory back for the level of memory pressure, from onTrimMemory() of the app.
+     * Returns what the caches dropped, each in its own unit, which is only of use to see
+     * whether anything was dropped at all.
+     */
+    public long onTrimMemory(int level) {
+        int steps = steps(level);
+        if (steps == 0) {
+            return 0;
+        }
+        // The caches are trimmed outside the lock, they take their own
+        long dropped = 0;
+        for (Entry entry : entries()) {
+            int step = steps - 2 * entry.mPriority;
+            if (step <= 0) {
+                break;
+            }
+            long size = entry.mCache.size();
+            long keep = step == 1 ? size / 2 : 0;
+            if (size > keep) {
+                entry.mCache.trimToSize(keep);
+                long after = entry.mCache.size();
+                entry.recordTrim(size - after);
+                dropped += size - after;
+            }
+        }
+        EventLog.getInstance().log(EventLog.INFO, LOG_TAG, null,
+                                   "Trimmed the caches for level {}, dropped {}", level,
+                                   dropped);
+        return dropped;
+    }
+
+    /**
+     * Give back everything the caches can, from onLowMemory() of the app
+     */
+    public long onLowMemory() {
+        return onTrimMemory(TRIM_MEMORY_COMPLETE);
+    }
+
+    /**
+     * Returns how many half steps down the priorities the level of memory pressure trims.
+     * While the app is in the foreground the list is never trimmed.
+     */
+    static int steps(int level) {
+        if (level >= TRIM_MEMORY_COMPLETE) {
+            return 2 * LIST + 2;
+        } else if (level >= TRIM_MEMORY_MODERATE) {
+            return 2 * LIST + 1;
+        } else if (level >= TRIM_MEMORY_BACKGROUND) {
+            return 2 * IMAGES + 2;
+        } else if (level >= TRIM_MEMORY_UI_HIDDEN) {
+            return 2 * INDEX + 2;
+        } else if (level >= TRIM_MEMORY_RUNNING_CRITICAL) {
+            return 2 * IMAGES + 1;
+        } else if (level >= TRIM_MEMORY_RUNNING_LOW) {
+            return 2 * INDEX + 1;
+        } else if (level >= TRIM_MEMORY_RUNNING_MODERATE) {
+            return 2 * RENDERED + 1;
+        }
+        return 0;
+    }
+
+    /**
+     * Returns the size, hit rate and what was trimmed of every cache, as text. The hit rate is
+     * "-" before the first lookup, and "n/a" for a cache that doesn't count its lookups.
+     */
+    public String dump() {
+        StringBuilder dump = new StringBuilder(String.format(
+                Locale.US, "%-20s %12s %8s %12s\n", "caches", "size", "hit rate", "trimmed"));
+        for (Entry entry : entries()) {
+            long hits = entry.mCache.hitCount();
+            long misses = entry.mCache.missCount();
+            String hitRate;
+            if (hits == TrimmableCache.NOT_COUNTED || misses == TrimmableCache.NOT_COUNTED) {
+                hitRate = "n/a";
+            } else if (hits + misses == 0) {
+                hitRate = "-";
+            } else {
+                hitRate = String.format(Locale.US, "%.1f%%", 100.0 * hits / (hits + misses));
+            }
+            dump.append(String.format(Locale.US, "  %-18s %,12d %8s %,12d\n", entry.mName,
+                                      entry.mCache.size(), hitRate, entry.getTrimmed()));
+        }
+        return dump.toString();
+    }
+
+    private synchronized List<Entry> entries() {
+        return new ArrayList<>(mEntries);
+    }
+
+    /**
+     * A registered cache
+     */
+    private static final class Entry {
+        final String mName;
+        final int mPriority;
+        final TrimmableCache mCache;
+
+        /**
+         * What memory pressure dropped from the cache so far, guarded by this
+         */
+        private long mTrimmed;
+
+        Entry(String name, int priority, TrimmableCache cache) {
+            mName = name;
+            mPriority = priority;
+            mCache = cache;
+        }
+
+        synchronized void recordTrim(long dropped) {
+            mTrimmed += dropped;
+        }
+
+        synchronized long getTrimmed() {
+            return mTrimmed;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2018. Tina Taylor
+ * CREATIVE COMMONS Attribution-ShareAlike 3.0 Unported (CC BY-SA 3.0)
+ * https://creativecommons.org/licenses/by-sa/3.0/
+ */
+
+package com.freecbdhomebiz.cocktailoftheweek;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+
+/**
+ * Lets another thread cancel a request of {@link QueryUtils} while it is running. Interrupting
+ * a thread does not stop a blocking socket read, so cancel() cancels the call the request is
+ * reading from, which closes its stream and makes the read fail straight away.
+ */
+public class CancellationToken {
+
+    private boolean mCanceled;
+
+    private Call mCall;
+
+    /**
+     * Tokens of the requests made on behalf of this one, canceled along with it
+     */
+    private List<CancellationToken> mChildren;
+
+    /**
+     * Cancel the request, stopping its call if it is already running
+     */
+    public void cancel() {
+        Call call;
+        List<CancellationToken> children;
+        synchronized (this) {
+            if (mCanceled) {
+                return;
+            }
+            mCanceled = true;
+            // Wake up a request waiting to be retried
+            notifyAll();
+            call = mCall;
+            mCall = null;
+            children = mChildren;
+            mChildren = null;
+        }
+        // Cancel outside the lock, closing the socket can take a moment
+        if (call != null) {
+            call.cancel();
+        }
+        if (children != null) {
+            for (CancellationToken child : children) {
+                child.cancel();
+            }
+        }
+    }
+
+    /**
+     * Returns a token for one of several requests made on behalf of this one. It is canceled
+     * when this one is, or straight away if this one already was.
+     */
+    public CancellationToken newChild() {
+        CancellationToken child = new CancellationToken();
+        synchronized (this) {
+            if (!mCanceled) {
+                if (mChildren == null) {
+                    mChildren = new ArrayList<>();
+                }
+                mChildren.add(child);
+                return child;
+            }
+        }
+        child.cancel();
+        return child;
+    }
+
+    /**
+     * Returns true once cancel() was called
+     */
+    public synchronized boolean isCanceled() {
+        return mCanceled;
+    }
+
+    /**
+     * Wait for the given time before the request is tried again, or until it is canceled.
+     * Returns false if it was canceled, or the thread was interrupted, while waiting.
+     */
+    public synchronized boolean sleep(long millis) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+        try {
+            while (!mCanceled) {
+                long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remaining <= 0) {
+                    return true;
+                }
+                wait(remaining);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return false;
+    }
+
+    /**
+     * Remember the call of the running request, so cancel() can stop it. Returns false if the
+     * request was already canceled and should not start.
+     */
+    synchronized boolean attach(Call call) {
+        if (mCanceled) {
+            return false;
+        }
+        mCall = call;
+        return true;
+    }
+
+    /**
+     * Forget the call once the request is done with it
+     */
+    synchronized void detach() {
+        mCall = null;
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2018. Tina Taylor
+ * CREATIVE COMMONS Attribution-ShareAlike 3.0 Unported (CC BY-SA 3.0)
+ * https://creativecommons.org/licenses/by-sa/3.0/
+ */
+
+package com.freecbdhomebiz.cocktailoftheweek;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stops sending requests to a server that keeps failing. After a few failures in a row the
+ * circuit opens: requests fail straight away, without waiting for a timeout, and the app shows
+ * the cached articles instead. Once the open time is over a single trial request is let
+ * through, which closes the circuit again if it succeeds and keeps it open if it fails.
+ * Kept free of Android classes so it can be unit tested.
+ */
+public class CircuitBreaker {
+
+    /**
+     * Failures in a row that open the circuit
+     */
+    public static final int DEFAULT_FAILURE_THRESHOLD = 3;
+
+    /**
+     * How long the circuit stays open before a trial request is let through
+     */
+    public static final long DEFAULT_OPEN_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    private final int mFailureThreshold;
+    private final long mOpenMillis;
+
+    /**
+     * Failures in a row, guarded by this
+     */
+    private int mFailures;
+
+    /**
+     * No request is let through before this time, guarded by this
+     */
+    private long mOpenUntil;
+
+    /**
+     * True while the trial request of a half-open circuit is running, guarded by this
+     */
+    private boolean mTrialRunning;
+
+    /**
+     * Constructs a new {@link CircuitBreaker} with the default threshold and open time
+     */
+    public CircuitBreaker() {
+        this(DEFAULT_FAILURE_THRESHOLD, DEFAULT_OPEN_MILLIS);
+    }
+
+    /**
+     * Constructs a new {@link CircuitBreaker}
+     *
+     * @param failureThreshold is the number of failures in a row that opens the circuit
+     * @param openMillis is how long the circuit stays open before a trial request
+     */
+    public CircuitBreaker(int failureThreshold, long openMillis) {
+        if (failureThreshold < 1 || openMillis < 0) {
+            throw new IllegalArgumentException("invalid circuit breaker limits");
+        }
+        mFailureThreshold = failureThreshold;
+        mOpenMillis = openMillis;
+    }
+
+    /**
+     * Returns true if a request may be sent now. Every request that was let through must be
+     * followed by onSuccess(), onFailure() or onCanceled().
+     */
+    public synchronized boolean allowRequest(long now) {
+        if (now < mOpenUntil) {
+            return false;
+        }
+        if (mFailures < mFailureThreshold) {
+            return true;
+        }
+        // Half open: let one trial request through, the others wait for its outcome
+        if (mTrialRunning) {
+            return false;
+        }
+        mTrialRunning = true;
+        return true;
+    }
+
+    /**
+     * The request succeeded, so the server works again
+     */
+    public synchronized void onSuccess() {
+        mFailures = 0;
+        mOpenUntil = 0;
+        mTrialRunning = false;
+    }
+
+    /**
+     * The request failed in a way that says the server is in trouble
+     *
+     * @param now is the current time in milliseconds
+     * @param retryAfterMillis is the wait the server asked for with Retry-After, or -1. The
+     *                         circuit stays open at least that long once it opens.
+     */
+    public synchronized void onFailure(long now, long retryAfterMillis) {
+        mFailures++;
+        mTrialRunning = false;
+        if (mFailures >= mFailureThreshold) {
+            mOpenUntil = now + Math.max(mOpenMillis, retryAfterMillis);
+        }
+    }
+
+    /**
+     * The request was canceled before it had an outcome, so it tells nothing about the server
+     */
+    public synchronized void onCanceled() {
+        mTrialRunning = false;
+    }
+
+    /**
+     * Let no request through before the given time, because the server asked for it with a
+     * Retry-After that was too long to wait for
+     */
+    public synchronized void deferUntil(long time) {
+        mOpenUntil = Math.max(mOpenUntil, time);
+    }
+
+    /**
+     * Returns true if requests fail straight away at the given time
+     */
+    public synchronized boolean isOpen(long now) {
+        return now < mOpenUntil || (mFailures >= mFailureThreshold && mTrialRunning);
+    }
+}
@@ -6,32 +6,85 @@
 
 package com.freecbdhomebiz.cocktailoftheweek;
 
-public class Cocktail {
-    private String mSectionName;
-    private String mCocktailName;
-    private String mAuthor;
-    private String mDate;
-    private String mSummary;
-    private String mUrl;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * An immutable Cocktail article, kept as small as possible because the whole archive can be in
+ * memory at once. Section names and authors repeat across almost every article, so they are
+ * interned and shared. The date is held as epoch milliseconds, and the summary, which is only
+ * needed for the rows on screen, is held as UTF-8 bytes (half the size of a String for the
+ * mostly ASCII text) and decoded when asked for.
+ */
+public final class Cocktail {
+
+    /**
+     * Date of an article whose webPublicationDate was missing or could not be parsed
+     */
+    public static final long NO_DATE = Long.MIN_VALUE;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final String mSectionName;
+    private final String mCocktailName;
+    private final String mAuthor;
+    private final long mDate;
+    private final byte[] mSummary;
+    private final String mUrl;
+    private final String mThumbnail;
 
     /**
      * Constructs a new Cocktail object
      * @param sectionName is the section of the newspaper where the article resides
      * @param cocktailName is the name of the article
      * @param author is the author of the article
-     * @param date is the published date of the article
+     * @param date is the published date of the article in epoch milliseconds, or NO_DATE
      * @param summary is the summarized body of the article
      * @param url is the website link to the Cocktail article
      */
-    public Cocktail(String sectionName, String cocktailName, String author, String date, String
+    public Cocktail(String sectionName, String cocktailName, String author, long date, String
             summary, String
                             url) {
-        mSectionName = sectionName;
+        this(sectionName, cocktailName, author, date, summary, url, null);
+    }
+
+    /**
+     * Constructs a new Cocktail object with a thumbnail
+     * @param thumbnail is the URL of the article's thumbnail image, or null if it has none
+     */
+    public Cocktail(String sectionName, String cocktailName, String author, long date,
+                    String summary, String url, String thumbnail) {
+        this(sectionName, cocktailName, author, date,
+             summary == null ? null : summary.getBytes(UTF_8), url, thumbnail);
+    }
+
+    private Cocktail(String sectionName, String cocktailName, String author, long date,
+                     byte[] summaryUtf8, String url, String thumbnail) {
+        mSectionName = canonical(sectionName);
         mCocktailName = cocktailName;
-        mAuthor = author;
+        mAuthor = canonical(author);
         mDate = date;
-        mSummary = summary;
+        mSummary = summaryUtf8;
         mUrl = url;
+        mThumbnail = thumbnail;
+    }
+
+    /**
+     * Constructs a Cocktail from a summary that is already UTF-8 encoded, so reading it back
+     * from disk doesn't decode and encode it again. The array must not be changed afterwards.
+     */
+    static Cocktail withSummaryUtf8(String sectionName, String cocktailName, String author,
+                                    long date, byte[] summaryUtf8, String url,
+                                    String thumbnail) {
+        return new Cocktail(sectionName, cocktailName, author, date, summaryUtf8, url,
+                            thumbnail);
+    }
+
+    /**
+     * Returns the shared instance of a String that repeats across articles
+     */
+    private static String canonical(String value) {
+        return value == null ? null : value.intern();
     }
 
     /**
@@ -56,16 +109,24 @@ public class Cocktail {
     }
 
     /**
-     * Returns the date of the article
+     * Returns the date of the article in epoch milliseconds, or {@link #NO_DATE}
      */
-    public String getDate() {
+    public long getDate() {
         return mDate;
     }
 
     /**
-     * Returns the summarized body of the article
+     * Returns the summarized body of the article. It is decoded on every call, so hold on to
+     * the result rather than calling this repeatedly.
      */
     public String getSummary() {
+        return mSummary == null ? null : new String(mSummary, UTF_8);
+    }
+
+    /**
+     * Returns the UTF-8 bytes of the summary. The array must not be changed.
+     */
+    byte[] getSummaryUtf8() {
         return mSummary;
     }
 
@@ -75,4 +136,45 @@ public class Cocktail {
     public String getUrl() {
         return mUrl;
     }
+
+    /**
+     * Returns the URL of the thumbnail image of the article, or null if it has none
+     */
+    public String getThumbnail() {
+        return mThumbnail;
+    }
+
+    /**
+     * Two Cocktail articles are equal when all of their fields are equal, so a freshly fetched
+     * list can be compared with the cached one to find out if anything changed.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Cocktail)) {
+            return false;
+        }
+        Cocktail other = (Cocktail) o;
+        return mDate == other.mDate
+                && equal(mUrl, other.mUrl)
+                && equal(mCocktailName, other.mCocktailName)
+                && equal(mSectionName, other.mSectionName)
+                && equal(mAuthor, other.mAuthor)
+                && equal(mThumbnail, other.mThumbnail)
+                && Arrays.equals(mSummary, other.mSummary);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = mUrl == null ? 0 : mUrl.hashCode();
+        result = 31 * result + (mCocktailName == null ? 0 : mCocktailName.hashCode());
+        result = 31 * result + (int) (mDate ^ (mDate >>> 32));
+        return result;
+    }
+
+    private static boolean equal(Object a, Object b) {
+        return a == null ? b == null : a.equals(b);
+    }
 }
@@ -7,72 +7,198 @@
 package com.freecbdhomebiz.cocktailoftheweek;
 
 
-import android.content.Context;
+import android.graphics.Bitmap;
 import android.support.annotation.NonNull;
-import android.support.annotation.Nullable;
+import android.support.v7.recyclerview.extensions.ListAdapter;
+import android.support.v7.util.DiffUtil;
+import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.ArrayAdapter;
+import android.widget.ImageView;
 import android.widget.TextView;
 
-import java.util.List;
+/**
+ * RecyclerView adapter for the list of Cocktail articles. New lists are handed over with
+ * submitList(), ListAdapter diffs them against the current list on a background thread so only
+ * the rows that actually changed are rebound. The text of the rows was already prepared by
+ * CocktailPipeline, binding just sets it. Thumbnails are loaded by {@link ThumbnailLoader} in
+ * the background, and a row that is recycled cancels the load of its old thumbnail.
+ */
+public class CocktailAdapter extends ListAdapter<PreparedCocktail, CocktailAdapter.ViewHolder> {
+
+    /**
+     * Articles are the same item when they have the same URL, and have the same contents when
+     * all of their fields are equal.
+     */
+    private static final DiffUtil.ItemCallback<PreparedCocktail> DIFF_CALLBACK =
+            new DiffUtil.ItemCallback<PreparedCocktail>() {
+                @Override
+                public boolean areItemsTheSame(@NonNull PreparedCocktail oldItem,
+                                               @NonNull PreparedCocktail newItem) {
+                    return oldItem.getCocktail().getUrl().equals(newItem.getCocktail().getUrl());
+                }
 
-public class CocktailAdapter extends ArrayAdapter {
+                @Override
+                public boolean areContentsTheSame(@NonNull PreparedCocktail oldItem,
+                                                  @NonNull PreparedCocktail newItem) {
+                    return oldItem.equals(newItem);
+                }
+            };
 
-    public CocktailAdapter(Context context, List<Cocktail> cocktailArticleList) {
-        super(context, 0, cocktailArticleList);
+    /**
+     * Callback for a tap on a Cocktail article in the list
+     */
+    public interface OnCocktailClickListener {
+        void onCocktailClick(PreparedCocktail cocktail);
+    }
+
+    private final OnCocktailClickListener mClickListener;
+
+    public CocktailAdapter(OnCocktailClickListener clickListener) {
+        super(DIFF_CALLBACK);
+        mClickListener = clickListener;
+        setHasStableIds(true);
     }
 
     /**
-     * Returns Cocktail article data from a given position in the list passed from CocktailLoader
-     * so that each item can be displayed
+     * Returns a stable ID for the article at the position, derived from its URL so a row keeps
+     * its ID when articles are added around it
      */
+    @Override
+    public long getItemId(int position) {
+        return stableId(getItem(position).getCocktail().getUrl());
+    }
+
+    /**
+     * Returns the article shown at the position of the list
+     */
+    PreparedCocktail getArticle(int position) {
+        return getItem(position);
+    }
+
     @NonNull
     @Override
-    public View getView(int position, @Nullable View convertView, @NonNull ViewGroup parent) {
-        // Check if there is an existing list item view (called convertView) that we can reuse,
-        // otherwise, if convertView is null, then inflate a new list item layout.
-        View listItemView = convertView;
-        if (listItemView == null) {
-            listItemView = LayoutInflater.from(getContext()).inflate(
-                    R.layout.list_item, parent, false);
-        }
+    public ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View listItemView = LayoutInflater.from(parent.getContext()).inflate(
+                R.layout.list_item, parent, false);
+        return new ViewHolder(listItemView);
+    }
+
+    /**
+     * The row scrolled off screen and will be bound to another article, so its thumbnail is no
+     * longer needed
+     */
+    @Override
+    public void onViewRecycled(@NonNull ViewHolder holder) {
+        holder.cancelThumbnail();
+        holder.thumbnailView.setImageDrawable(null);
+    }
 
+    /**
+     * Displays the Cocktail article data from a given position in the list passed from
+     * CocktailViewModel
+     */
+    @Override
+    public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
+        long start = System.nanoTime();
         // Find the Cocktail article in the given position in the list of articles
-        Cocktail currentCocktail = (Cocktail) getItem(position);
-
-        // Get the name of the section of the newspaper
-        String sectionName = currentCocktail.getSectionName();
-        //Find the TextView with id of section_name
-        TextView sectionView = listItemView.findViewById(R.id.section_name);
-        sectionView.setText(sectionName);
-
-        // Get the name of the Cocktail article
-        String cocktailName = currentCocktail.getCocktailName();
-        //Find the TextView with id of cocktail_name
-        TextView cocktailView = listItemView.findViewById(R.id.cocktail_name);
-        cocktailView.setText(cocktailName);
-
-        // Get the author of the Cocktail article
-        String author = currentCocktail.getAuthor();
-        // Find the TextView with view ID author
-        TextView authorView = listItemView.findViewById(R.id.author);
-        authorView.setText(author);
-
-        // Get the date of the Cocktail article
-        String date = currentCocktail.getDate();
-        // Find the TextView with id of date
-        TextView dateView = listItemView.findViewById(R.id.date);
-        dateView.setText(date);
-
-        // Get the summary of the body of the Cocktail article
-        String summary = currentCocktail.getSummary();
-        // Find the TextView with view ID author
-        TextView summaryView = listItemView.findViewById(R.id.summary);
-        summaryView.setText(summary);
-
-        // Return the list_item view that is now showing the extracted JSON data
-        return listItemView;
+        PreparedCocktail currentCocktail = getItem(position);
+        bind(holder, currentCocktail);
+        bindThumbnail(holder, currentCocktail.getCocktail().getThumbnail());
+        Metrics.getInstance().recordNanos(Metrics.BIND, System.nanoTime() - start);
+    }
+
+    /**
+     * Start loading the thumbnail of the row, decoded to the size of its image view. The row
+     * shows the placeholder until it arrives, or for good if the article has none.
+     */
+    private static void bindThumbnail(final ViewHolder holder, String url) {
+        holder.cancelThumbnail();
+        holder.thumbnailView.setImageDrawable(null);
+        if (url == null) {
+            return;
+        }
+        int size = holder.thumbnailView.getLayoutParams().width;
+        holder.thumbnailRequest = ThumbnailLoader.getInstance(holder.itemView.getContext()).load(
+                url, size, size, new ImageLoader.Target<Bitmap>() {
+                    @Override
+                    public void onImageLoaded(Bitmap image) {
+                        if (image != null) {
+                            holder.thumbnailView.setImageBitmap(image);
+                        }
+                    }
+                });
+    }
+
+    /**
+     * Set the prepared text of the article on the views of the row
+     */
+    static void bind(ViewHolder holder, PreparedCocktail currentCocktail) {
+        holder.sectionView.setText(currentCocktail.getSectionName());
+        holder.cocktailView.setText(currentCocktail.getCocktailName());
+        holder.authorView.setText(currentCocktail.getAuthor());
+        holder.dateView.setText(currentCocktail.getDate());
+        holder.summaryView.setText(currentCocktail.getSummary());
+    }
+
+    /**
+     * Returns a 64-bit FNV-1a hash of the URL, far less likely to collide than hashCode()
+     */
+    static long stableId(String url) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < url.length(); i++) {
+            hash ^= url.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Holds the views of a list_item so they are only looked up once, when the row is created
+     */
+    class ViewHolder extends RecyclerView.ViewHolder {
+        final TextView sectionView;
+        final TextView cocktailView;
+        final TextView authorView;
+        final TextView dateView;
+        final TextView summaryView;
+        final ImageView thumbnailView;
+
+        /**
+         * The load of the thumbnail of the article bound to the row, or null
+         */
+        ImageLoader.ImageRequest thumbnailRequest;
+
+        ViewHolder(View listItemView) {
+            super(listItemView);
+            thumbnailView = listItemView.findViewById(R.id.thumbnail);
+            sectionView = listItemView.findViewById(R.id.section_name);
+            cocktailView = listItemView.findViewById(R.id.cocktail_name);
+            authorView = listItemView.findViewById(R.id.author);
+            dateView = listItemView.findViewById(R.id.date);
+            summaryView = listItemView.findViewById(R.id.summary);
+
+            // Send a tap on the row to the listener with the article now bound to it
+            listItemView.setOnClickListener(new View.OnClickListener() {
+                @Override
+                public void onClick(View view) {
+                    int position = getAdapterPosition();
+                    if (position != RecyclerView.NO_POSITION) {
+                        mClickListener.onCocktailClick(getItem(position));
+                    }
+                }
+            });
+        }
+
+        /**
+         * Stop loading the thumbnail of the article the row was bound to
+         */
+        void cancelThumbnail() {
+            if (thumbnailRequest != null) {
+                thumbnailRequest.cancel();
+                thumbnailRequest = null;
+            }
+        }
     }
 }
@@ -0,0 +1,36 @@
+/*
+ * Copyright (c) 2018. Tina Taylor
+ * CREATIVE COMMONS Attribution-ShareAlike 3.0 Unported (CC BY-SA 3.0)
+ * https://creativecommons.org/licenses/by-sa/3.0/
+ */
+
+package com.freecbdhomebiz.cocktailoftheweek;
+
+import android.app.Application;
+
+/**
+ * The app, which hands the memory pressure the system reports on to the {@link CacheRegistry},
+ * so every cache in memory gives back what it can before the process gets killed.
+ */
+public class CocktailApplication extends Application {
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        // The other caches register as they are created
+        CacheRegistry.getInstance().register("date texts", CacheRegistry.RENDERED,
+                                             DateRenderer.getInstance());
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        CacheRegistry.getInstance().onTrimMemory(level);
+    }
+
+    @Override
+    public void onLowMemory() {
+        super.onLowMemory();
+        CacheRegistry.getInstance().onLowMemory();
+    }
+}
@@ -0,0 +1,446 @@
+/*
+ * Copyright (c) 2018. Tina Taylor
+ * CREATIVE COMMONS Attribution-ShareAlike 3.0 Unported (CC BY-SA 3.0)
+ * https://creativecommons.org/licenses/by-sa/3.0/
+ */
+
+package com.freecbdhomebiz.cocktailoftheweek;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streaming parser that pulls {@link Cocktail} articles straight out of a Guardian response
+ * {@link InputStream}, one token at a time. Only the seven fields the app displays are ever
+ * turned into Strings, the rest of each article (most of all the large body blocks) is skipped
+ * without being read into memory.
+ *
+ * This class only depends on Gson, not on the Android framework, so the benchmark module can
+ * compile and run it on a plain JVM.
+ */
+public final class CocktailJsonParser {
+
+    /**
+     * Create a private constructor because no one should ever create a
+     * {@link CocktailJsonParser} object. It only holds static methods.
+     */
+    private CocktailJsonParser() {
+    }
+
+    /**
+     * Read the Guardian JSON response from the given stream and return the list of
+     * {@link Cocktail} articles found in "response.results", which holds the requested page of
+     * the series. Called from QueryUtils.
+     *
+     * @throws IOException if the stream can't be read
+     * @throws MalformedResponseException if the JSON is not what we expect
+     */
+    public static List<Cocktail> parse(InputStream inputStream) throws IOException {
+        // Create an empty ArrayList that we can start adding Cocktails articles to
+        List<Cocktail> cocktailList = new ArrayList<>();
+        if (inputStream == null) {
+            return cocktailList;
+        }
+
+        JsonReader reader = new JsonReader(new InputStreamReader(inputStream,
+                                                                 Charset.forName("UTF-8")));
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if ("response".equals(reader.nextName())) {
+                    readResponse(reader, cocktailList);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } catch (IllegalStateException | MalformedJsonException e) {
+            // JsonReader reports an unexpected token (for example an array where we expected
+            // an object) with an IllegalStateException, hand it back as a parsing problem.
+            throw new MalformedResponseException(e);
+        } finally {
+            reader.close();
+        }
+        return cocktailList;
+    }
+
+    /**
+     * Read the Guardian JSON response of a single article, requested with show-blocks=body,
+     * from the given stream and return the HTML of its body: the "bodyHtml" of every block of
+     * "response.content.blocks.body", one after the other. Returns null if the article has no
+     * body. Called from QueryUtils for the article reader.
+     *
+     * @throws IOException if the stream can't be read
+     * @throws MalformedResponseException if the JSON is not what we expect
+     */
+    public static String parseBody(InputStream inputStream) throws IOException {
+        if (inputStream == null) {
+            return null;
+        }
+        JsonReader reader = new JsonReader(new InputStreamReader(inputStream,
+                                                                 Charset.forName("UTF-8")));
+        StringBuilder body = new StringBuilder();
+        try {
+            // Walk down response.content.blocks.body, skipping everything beside it
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if ("response".equals(reader.nextName())) {
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        if ("content".equals(reader.nextName())) {
+                            readContentBody(reader, body);
+                        } else {
+                            reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } catch (IllegalStateException | MalformedJsonException e) {
+            throw new MalformedResponseException(e);
+        } finally {
+            reader.close();
+        }
+        return body.length() == 0 ? null : body.toString();
+    }
+
+    /**
+     * Read the "content" object of a single article and append the "bodyHtml" of each of its
+     * body blocks to the builder
+     */
+    private static void readContentBody(JsonReader reader, StringBuilder body)
+            throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (!"blocks".equals(reader.nextName())) {
+                reader.skipValue();
+                continue;
+            }
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (!"body".equals(reader.nextName())) {
+                    reader.skipValue();
+                    continue;
+                }
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        if ("bodyHtml".equals(reader.nextName())) {
+                            String html = nextString(reader);
+                            if (html != null) {
+                                body.append(html);
+                            }
+                        } else {
+                            reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+                }
+                reader.endArray();
+            }
+            reader.endObject();
+        }
+        reader.endObject();
+    }
+
+    /**
+     * Read the "response" object and add every article of its "results" array to the list.
+     * The "leadContent" array only repeats the newest articles of the series, so it is skipped.
+     */
+    private static void readResponse(JsonReader reader, List<Cocktail> cocktailList)
+            throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if ("results".equals(reader.nextName())) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    Cocktail cocktail = readCocktail(reader);
+                    // The list identifies its rows by URL, an article without one is of no use
+                    if (cocktail.getUrl() != null) {
+                        cocktailList.add(cocktail);
+                    }
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    /**
+     * Read a single article object and create a {@link Cocktail} from the fields we need
+     */
+    private static Cocktail readCocktail(JsonReader reader) throws IOException {
+        String sectionName = null;
+        String cocktailName = null;
+        String date = null;
+        String url = null;
+        String author = null;
+        String thumbnail = null;
+        String summary = null;
+        String trailText = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "sectionName":
+                    sectionName = nextString(reader);
+                    break;
+                case "webTitle":
+                    cocktailName = nextString(reader);
+                    break;
+                case "webPublicationDate":
+                    date = nextString(reader);
+                    break;
+                case "webUrl":
+                    url = nextString(reader);
+                    break;
+                case "fields":
+                    // The "fields" object holds the byline, which is the author's name, the
+                    // URL of the thumbnail image and the trailText
+                    String[] fields = readFields(reader);
+                    author = fields[0];
+                    thumbnail = fields[1];
+                    trailText = fields[2];
+                    break;
+                case "blocks":
+                    // The "blocks" object holds the "body" array, which first element contains
+                    // the article summary
+                    summary = readSummary(reader);
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+
+        // The list asks for the short trailText instead of the body blocks, see GuardianRequest
+        if (summary == null) {
+            summary = plainText(trailText);
+        }
+        return new Cocktail(sectionName, cocktailName, author, parseDate(date), summary, url,
+                            thumbnail);
+    }
+
+    /**
+     * Read the "fields" object and return the byline, the thumbnail URL and the trailText, any
+     * of them may be null
+     */
+    private static String[] readFields(JsonReader reader) throws IOException {
+        String[] fields = new String[3];
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "byline":
+                    fields[0] = nextString(reader);
+                    break;
+                case "thumbnail":
+                    fields[1] = nextString(reader);
+                    break;
+                case "trailText":
+                    fields[2] = nextString(reader);
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+        return fields;
+    }
+
+    /**
+     * Read the "blocks" object and return the "bodyTextSummary" of the first body block.
+     * Every other block, and every other key of the first block, is skipped.
+     */
+    private static String readSummary(JsonReader reader) throws IOException {
+        String summary = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if ("body".equals(reader.nextName())) {
+                reader.beginArray();
+                boolean firstBlock = true;
+                while (reader.hasNext()) {
+                    if (firstBlock) {
+                        summary = readBodyTextSummary(reader);
+                        firstBlock = false;
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return summary;
+    }
+
+    /**
+     * Read one body block and return its "bodyTextSummary", skipping the bodyHtml and elements
+     */
+    private static String readBodyTextSummary(JsonReader reader) throws IOException {
+        String summary = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if ("bodyTextSummary".equals(reader.nextName())) {
+                summary = nextString(reader);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return summary;
+    }
+
+    /**
+     * Returns the text of a short piece of HTML such as the trailText, which may hold a few
+     * tags like &lt;strong&gt; and character references: the tags are dropped and the common
+     * references decoded. Returns null if the HTML is null.
+     */
+    static String plainText(String html) {
+        if (html == null) {
+            return null;
+        }
+        StringBuilder text = new StringBuilder(html.length());
+        int i = 0;
+        while (i < html.length()) {
+            char c = html.charAt(i);
+            if (c == '<') {
+                int end = html.indexOf('>', i);
+                if (end < 0) {
+                    break;
+                }
+                i = end + 1;
+            } else if (c == '&') {
+                int end = html.indexOf(';', i);
+                String entity = end < 0 ? null : entity(html.substring(i + 1, end));
+                if (entity == null) {
+                    text.append(c);
+                    i++;
+                } else {
+                    text.append(entity);
+                    i = end + 1;
+                }
+            } else {
+                text.append(c);
+                i++;
+            }
+        }
+        return text.toString().trim();
+    }
+
+    /**
+     * Returns the text of a character reference without its &amp; and ;, or null if it is not
+     * one we decode
+     */
+    private static String entity(String name) {
+        switch (name) {
+            case "amp":
+                return "&";
+            case "lt":
+                return "<";
+            case "gt":
+                return ">";
+            case "quot":
+                return "\"";
+            case "apos":
+            case "#39":
+                return "'";
+            case "nbsp":
+                return " ";
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Returns a webPublicationDate such as "2018-07-14T08:00:00Z" in epoch milliseconds, or
+     * {@link Cocktail#NO_DATE} if it is missing or not in that format. Parsed by hand because
+     * SimpleDateFormat is slow, allocates heavily and isn't thread safe.
+     */
+    public static long parseDate(String isoDate) {
+        if (isoDate == null || isoDate.length() != 20 || isoDate.charAt(4) != '-'
+                || isoDate.charAt(7) != '-' || isoDate.charAt(10) != 'T'
+                || isoDate.charAt(13) != ':' || isoDate.charAt(16) != ':'
+                || isoDate.charAt(19) != 'Z') {
+            return Cocktail.NO_DATE;
+        }
+        int year = digits(isoDate, 0, 4);
+        int month = digits(isoDate, 5, 7);
+        int day = digits(isoDate, 8, 10);
+        int hour = digits(isoDate, 11, 13);
+        int minute = digits(isoDate, 14, 16);
+        int second = digits(isoDate, 17, 19);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > 31 || hour < 0 || hour > 23
+                || minute < 0 || minute > 59 || second < 0 || second > 60) {
+            return Cocktail.NO_DATE;
+        }
+
+        // Days since 1970-01-01 of the civil date, see
+        // http://howardhinnant.github.io/date_algorithms.html#days_from_civil
+        int y = month <= 2 ? year - 1 : year;
+        int era = y / 400;
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        long days = era * 146097L + dayOfEra - 719468;
+
+        return ((days * 24 + hour) * 60 + minute) * 60000L + second * 1000L;
+    }
+
+    /**
+     * Returns the decimal number in the characters from start to end, or -1 if one of them is
+     * not a digit
+     */
+    private static int digits(String value, int start, int end) {
+        int number = 0;
+        for (int i = start; i < end; i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            number = number * 10 + (c - '0');
+        }
+        return number;
+    }
+
+    /**
+     * Return the next String value, or null if the value is a JSON null
+     */
+    private static String nextString(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        return reader.nextString();
+    }
+
+    /**
+     * The response arrived whole but is not the JSON we expect. Unlike a failure of the
+     * connection, asking again returns the same response.
+     */
+    public static final class MalformedResponseException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        MalformedResponseException(Throwable cause) {
+            super("Unexpected Guardian JSON structure", cause);
+        }
+    }
+}
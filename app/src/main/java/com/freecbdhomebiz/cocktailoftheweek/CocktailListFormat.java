@@ -0,0 +1,259 @@
+/*
+ * Copyright (c) 2018. Tina Taylor
+ * CREATIVE COMMONS Attribution-ShareAlike 3.0 Unported (CC BY-SA 3.0)
+ * https://creativecommons.org/licenses/by-sa/3.0/
+ */
+
+package com.freecbdhomebiz.cocktailoftheweek;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary format of a list of {@link Cocktail} articles, written by ArticleCache so a stored
+ * list is never parsed from JSON again. It is read straight from a memory mapped file in one
+ * pass, each article from its offset, without the tokenizing, escaping and skipping of the
+ * article bodies that parsing the JSON costs.
+ * <p>
+ * All numbers are big-endian, all text is UTF-8 prefixed with its length in bytes, or -1 for
+ * null. Section names and authors repeat across almost every article, so they are stored once
+ * in a string table and referred to by their index in it.
+ * <pre>
+ * int    MAGIC
+ * int    FORMAT_VERSION
+ * int    number of strings in the table, then each string
+ * int    number of articles, then the offset of each article from the first one
+ * each article:
+ *   int    index of the section name in the string table, or -1
+ *   int    index of the author in the string table, or -1
+ *   long   date in epoch milliseconds, or Cocktail.NO_DATE
+ *   bytes  name, summary, url and thumbnail url
+ * </pre>
+ * Kept free of Android classes so it can be unit tested and benchmarked on the JVM.
+ */
+public final class CocktailListFormat {
+
+    /**
+     * "CKTL", so a file of another kind is never mistaken for a list
+     */
+    static final int MAGIC = 0x434b544c;
+
+    /**
+     * Version of the format, bump it whenever the layout changes. Older files are not read.
+     */
+    static final int FORMAT_VERSION = 2;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Fixed size of an article before its text: two string table indexes and the date
+     */
+    private static final int RECORD_HEADER_BYTES = 4 + 4 + 8;
+
+    /**
+     * No one should ever create a {@link CocktailListFormat} object, it only holds the methods
+     */
+    private CocktailListFormat() {
+    }
+
+    /**
+     * Write the articles to the stream in this format
+     */
+    public static void write(DataOutputStream out, List<Cocktail> cocktails) throws IOException {
+        // Encode every article first, so the offsets are known before they are written
+        Map<String, Integer> indexes = new HashMap<>();
+        List<String> table = new ArrayList<>();
+        List<byte[]> records = new ArrayList<>(cocktails.size());
+        for (Cocktail cocktail : cocktails) {
+            byte[] name = bytes(cocktail.getCocktailName());
+            byte[] summary = cocktail.getSummaryUtf8();
+            byte[] url = bytes(cocktail.getUrl());
+            byte[] thumbnail = bytes(cocktail.getThumbnail());
+            ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_BYTES + textBytes(name)
+                                                            + textBytes(summary)
+                                                            + textBytes(url)
+                                                            + textBytes(thumbnail));
+            record.putInt(index(cocktail.getSectionName(), indexes, table));
+            record.putInt(index(cocktail.getAuthor(), indexes, table));
+            record.putLong(cocktail.getDate());
+            putBytes(record, name);
+            putBytes(record, summary);
+            putBytes(record, url);
+            putBytes(record, thumbnail);
+            records.add(record.array());
+        }
+
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(table.size());
+        for (String value : table) {
+            writeBytes(out, bytes(value));
+        }
+        out.writeInt(records.size());
+        int offset = 0;
+        for (byte[] record : records) {
+            out.writeInt(offset);
+            offset += record.length;
+        }
+        for (byte[] record : records) {
+            out.write(record);
+        }
+    }
+
+    /**
+     * Returns the articles stored in the buffer, from its position on. They are all decoded
+     * at once: the pipeline prepares every article of a page for display as soon as it is
+     * read, so there would be nothing to gain from decoding them later.
+     *
+     * @throws IOException if the buffer doesn't hold a list of this version, or is corrupt
+     */
+    public static List<Cocktail> read(ByteBuffer buffer) throws IOException {
+        ByteBuffer in = buffer.slice();
+        try {
+            if (in.getInt() != MAGIC) {
+                throw new IOException("not a list of articles");
+            }
+            int version = in.getInt();
+            if (version != FORMAT_VERSION) {
+                throw new IOException("unsupported format version " + version);
+            }
+
+            int tableSize = count(in, 4);
+            String[] table = new String[tableSize];
+            for (int i = 0; i < tableSize; i++) {
+                table[i] = getString(in);
+            }
+
+            int size = count(in, 4 + RECORD_HEADER_BYTES);
+            int offsetsStart = in.position();
+            int recordsStart = offsetsStart + size * 4;
+            if (recordsStart > in.limit()) {
+                throw new IOException("truncated list of articles");
+            }
+
+            List<Cocktail> cocktails = new ArrayList<>(size);
+            in.position(recordsStart);
+            for (int i = 0; i < size; i++) {
+                if (in.getInt(offsetsStart + i * 4) != in.position() - recordsStart) {
+                    throw new IOException("bad offset of article " + i);
+                }
+                String section = string(table, in.getInt());
+                String author = string(table, in.getInt());
+                long date = in.getLong();
+                String name = getString(in);
+                byte[] summary = getBytes(in);
+                String url = getString(in);
+                String thumbnail = getString(in);
+                cocktails.add(Cocktail.withSummaryUtf8(section, name, author, date, summary, url,
+                                                       thumbnail));
+            }
+            return cocktails;
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("truncated list of articles", e);
+        }
+    }
+
+    /**
+     * Read a String written with its length in front, or -1 for null
+     */
+    static String getString(ByteBuffer in) throws IOException {
+        byte[] bytes = getBytes(in);
+        return bytes == null ? null : new String(bytes, UTF_8);
+    }
+
+    /**
+     * Write a String as its UTF-8 length followed by its bytes, or -1 for null
+     */
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        writeBytes(out, bytes(value));
+    }
+
+    private static byte[] getBytes(ByteBuffer in) throws IOException {
+        int length = in.getInt();
+        if (length < 0) {
+            if (length != -1) {
+                throw new IOException("bad length " + length);
+            }
+            return null;
+        }
+        if (length > in.remaining()) {
+            throw new IOException("truncated text");
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return bytes;
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        if (bytes == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static void putBytes(ByteBuffer record, byte[] bytes) {
+        if (bytes == null) {
+            record.putInt(-1);
+            return;
+        }
+        record.putInt(bytes.length);
+        record.put(bytes);
+    }
+
+    /**
+     * Returns the size of the text with its length in front
+     */
+    private static int textBytes(byte[] bytes) {
+        return 4 + (bytes == null ? 0 : bytes.length);
+    }
+
+    private static byte[] bytes(String value) {
+        return value == null ? null : value.getBytes(UTF_8);
+    }
+
+    /**
+     * Returns the index of the value in the string table, adding it if it isn't there yet
+     */
+    private static int index(String value, Map<String, Integer> indexes, List<String> table) {
+        if (value == null) {
+            return -1;
+        }
+        Integer index = indexes.get(value);
+        if (index == null) {
+            index = table.size();
+            indexes.put(value, index);
+            table.add(value);
+        }
+        return index;
+    }
+
+    /**
+     * Read a count, which can't be larger than the entries of the given size left in the buffer
+     */
+    private static int count(ByteBuffer in, int minEntryBytes) throws IOException {
+        int count = in.getInt();
+        if (count < 0 || count > in.remaining() / minEntryBytes) {
+            throw new IOException("bad count " + count);
+        }
+        return count;
+    }
+
+    /**
+     * Returns the string at the index of the table, or null for -1
+     */
+    private static String string(String[] table, int index) throws IOException {
+        if (index < -1 || index >= table.length) {
+            throw new IOException("bad string index " + index);
+        }
+        return index < 0 ? null : table[index];
+    }
+}
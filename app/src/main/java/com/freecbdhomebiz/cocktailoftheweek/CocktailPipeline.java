@@ -0,0 +1,298 @@
+/*
+ * Copyright (c) 2018. Tina Taylor
+ * CREATIVE COMMONS Attribution-ShareAlike 3.0 Unported (CC BY-SA 3.0)
+ * https://creativecommons.org/licenses/by-sa/3.0/
+ */
+
+package com.freecbdhomebiz.cocktailoftheweek;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads the articles of a {@link FeedRequest} on a small, bounded pool of background threads, with
+ * stale-while-revalidate: the articles cached on disk are delivered first, then the Guardian is
+ * queried for what changed since, see {@link FeedSync}, and a new list is only delivered if the
+ * articles actually changed. Each load runs through the same stages: read the cache, fetch and
+ * parse the response as it streams in, and map the articles to {@link PreparedCocktail}s ready
+ * to display.
+ * <p>
+ * Loads of a feed that is already loading join the running one instead of fetching it again,
+ * and a load is canceled for real when nobody is waiting for it anymore: its connection is
+ * closed, so the blocked read stops straight away. It runs on the JVM in unit tests, see
+ * {@link CocktailViewModel} for how the app uses it.
+ */
+public class CocktailPipeline {
+
+    /**
+     * Number of loads that can run at the same time, the first page and the next one
+     */
+    private static final int THREADS = 2;
+
+    /**
+     * Receives the results of a load. Called on a pipeline thread, or on the thread that
+     * called load() when it joins a running load that already has a result.
+     */
+    public interface Listener {
+        /**
+         * A list of articles ready to display, or null if none could be loaded. A load
+         * delivers at most two lists, the cached ones and then the fetched ones.
+         */
+        void onResult(List<PreparedCocktail> items);
+
+        /**
+         * The load is done, nothing more will be delivered. Not called for canceled loads.
+         */
+        void onComplete();
+    }
+
+    private final ExecutorService mExecutor;
+
+    private final ArticleCache mCache;
+
+    /**
+     * Fetches what changed since the articles were cached, and caches the new ones
+     */
+    private final FeedSync mSync;
+
+    private final SearchIndexer mIndexer;
+
+    /**
+     * The running loads by the key of their feed request, guarded by this
+     */
+    private final Map<String, Job> mInFlight = new HashMap<>();
+
+    /**
+     * Constructs a new {@link CocktailPipeline}
+     *
+     * @param cache holds the articles last fetched for each feed request
+     * @param indexer makes the fetched articles searchable, or null
+     */
+    public CocktailPipeline(ArticleCache cache, SearchIndexer indexer) {
+        this(newExecutor(), cache, new MultiSourceFetcher(), indexer);
+    }
+
+    /**
+     * Constructs a new {@link CocktailPipeline} that runs its loads on the given executor and
+     * fetches the sources of the feed with the given fetcher
+     */
+    CocktailPipeline(ExecutorService executor, ArticleCache cache, MultiSourceFetcher fetcher,
+                     SearchIndexer indexer) {
+        mExecutor = executor;
+        mCache = cache;
+        mSync = new FeedSync(fetcher, cache);
+        mIndexer = indexer;
+    }
+
+    /**
+     * Returns a pool of THREADS threads, which are stopped when the app is idle
+     */
+    private static ExecutorService newExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                THREADS, THREADS, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Load the articles of the feed request, or join the load of the same request that is
+     * already running
+     *
+     * @return the handle to cancel the load with once the results are not needed anymore
+     */
+    public Load load(FeedRequest request, Listener listener) {
+        String key = request.getKey();
+        Job job;
+        boolean joined;
+        List<PreparedCocktail> latest;
+        boolean hasResult;
+        synchronized (this) {
+            job = mInFlight.get(key);
+            joined = job != null;
+            if (!joined) {
+                job = new Job(request);
+                mInFlight.put(key, job);
+            }
+            job.mListeners.add(listener);
+            latest = job.mLatest;
+            hasResult = job.mHasResult;
+        }
+        if (!joined) {
+            job.mFuture = mExecutor.submit(job);
+        } else if (hasResult) {
+            // Catch up with what the running load already delivered
+            listener.onResult(latest);
+        }
+        return new Load(job, listener);
+    }
+
+    /**
+     * Returns the number of feed requests loading right now
+     */
+    synchronized int inFlightCount() {
+        return mInFlight.size();
+    }
+
+    /**
+     * Stop listening to the job, and cancel it if nobody else listens to it
+     */
+    private void cancel(Job job, Listener listener) {
+        synchronized (this) {
+            if (!job.mListeners.remove(listener) || !job.mListeners.isEmpty()) {
+                return;
+            }
+            if (mInFlight.get(job.mKey) == job) {
+                mInFlight.remove(job.mKey);
+            }
+        }
+        job.mCancellation.cancel();
+        Future<?> future = job.mFuture;
+        if (future != null) {
+            future.cancel(true);
+        }
+    }
+
+    /**
+     * Handle of a running load
+     */
+    public class Load {
+
+        private final Job mJob;
+        private final Listener mListener;
+
+        private Load(Job job, Listener listener) {
+            mJob = job;
+            mListener = listener;
+        }
+
+        /**
+         * Stop delivering results to the listener. The load itself is canceled, closing its
+         * connection, if no other listener is waiting for it.
+         */
+        public void cancel() {
+            CocktailPipeline.this.cancel(mJob, mListener);
+        }
+    }
+
+    /**
+     * One load of a feed request, shared by all its listeners
+     */
+    private class Job implements Runnable {
+
+        private final FeedRequest mRequest;
+
+        /**
+         * The key the articles are cached under
+         */
+        private final String mKey;
+
+        private final CancellationToken mCancellation = new CancellationToken();
+
+        /**
+         * Guarded by CocktailPipeline.this
+         */
+        private final List<Listener> mListeners = new ArrayList<>();
+        private List<PreparedCocktail> mLatest;
+        private boolean mHasResult;
+
+        private volatile Future<?> mFuture;
+
+        Job(FeedRequest request) {
+            mRequest = request;
+            mKey = request.getKey();
+        }
+
+        /**
+         * This is on a pipeline thread.
+         */
+        @Override
+        public void run() {
+            // Stage 1: hand over the cached articles straight away
+            ArticleCache.Entry cached = mCache.get(mKey);
+            if (cached != null) {
+                deliver(map(cached.getCocktails()));
+                index(cached.getCocktails());
+                if (!cached.isExpired(System.currentTimeMillis())) {
+                    complete();
+                    return;
+                }
+            }
+            if (mCancellation.isCanceled()) {
+                return;
+            }
+
+            // Stage 2: fetch the sources at the same time and parse them as they stream in.
+            // When the first page is cached, only the articles published since are fetched.
+            CocktailResponse response = mSync.sync(mRequest, cached, mCancellation);
+            if (mCancellation.isCanceled()) {
+                return;
+            }
+
+            if (response == null) {
+                // Keep showing the cached articles if the Guardian can't be reached
+                if (cached == null) {
+                    deliver(null);
+                }
+            } else if (!response.isNotModified()) {
+                // Nothing to deliver when nothing changed since the last fetch
+                index(response.getCocktails());
+                if (cached == null || !response.getCocktails().equals(cached.getCocktails())) {
+                    // Stage 3: prepare the articles for display
+                    deliver(map(response.getCocktails()));
+                }
+            }
+            complete();
+        }
+
+        /**
+         * Make the new or changed articles searchable
+         */
+        private void index(List<Cocktail> cocktails) {
+            if (mIndexer != null) {
+                mIndexer.index(cocktails);
+            }
+        }
+
+        private List<PreparedCocktail> map(List<Cocktail> cocktails) {
+            return PreparedCocktail.prepare(cocktails);
+        }
+
+        private void deliver(List<PreparedCocktail> items) {
+            List<Listener> listeners;
+            synchronized (CocktailPipeline.this) {
+                if (mCancellation.isCanceled()) {
+                    return;
+                }
+                mLatest = items;
+                mHasResult = true;
+                listeners = new ArrayList<>(mListeners);
+            }
+            for (Listener listener : listeners) {
+                listener.onResult(items);
+            }
+        }
+
+        private void complete() {
+            List<Listener> listeners;
+            synchronized (CocktailPipeline.this) {
+                if (mInFlight.get(mKey) == this) {
+                    mInFlight.remove(mKey);
+                }
+                if (mCancellation.isCanceled()) {
+                    return;
+                }
+                listeners = new ArrayList<>(mListeners);
+            }
+            for (Listener listener : listeners) {
+                listener.onComplete();
+            }
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2018. Tina Taylor
+ * CREATIVE COMMONS Attribution-ShareAlike 3.0 Unported (CC BY-SA 3.0)
+ * https://creativecommons.org/licenses/by-sa/3.0/
+ */
+
+package com.freecbdhomebiz.cocktailoftheweek;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The list of {@link Cocktail} articles from one Guardian response, together with the cache
+ * validators the server sent with it. A "304 Not Modified" response has no articles, it only
+ * confirms that the cached ones are still valid.
+ * <p>
+ * The merged response of a feed of several sources has no validators of its own, it holds the
+ * response of each source instead, with the validators that source sent. It is partial when a
+ * source failed, and then doesn't hold the whole feed.
+ */
+public class CocktailResponse {
+    private List<Cocktail> mCocktails;
+    private String mEtag;
+    private String mLastModified;
+    private boolean mNotModified;
+    private List<CocktailResponse> mSources;
+
+    /**
+     * Constructs a new CocktailResponse object
+     * @param cocktails is the list of articles parsed from the response
+     * @param etag is the value of the ETag header, or null if there was none
+     * @param lastModified is the value of the Last-Modified header, or null if there was none
+     */
+    public CocktailResponse(List<Cocktail> cocktails, String etag, String lastModified) {
+        this(cocktails, etag, lastModified, false);
+    }
+
+    /**
+     * Constructs a new CocktailResponse object
+     * @param cocktails is the list of articles parsed from the response
+     * @param etag is the value of the ETag header, or null if there was none
+     * @param lastModified is the value of the Last-Modified header, or null if there was none
+     * @param notModified is true if the server answered "304 Not Modified"
+     */
+    public CocktailResponse(List<Cocktail> cocktails, String etag, String lastModified,
+                            boolean notModified) {
+        this(cocktails, etag, lastModified, notModified,
+             Collections.<CocktailResponse>emptyList());
+    }
+
+    /**
+     * Constructs a new CocktailResponse object
+     * @param cocktails is the list of articles parsed from the response
+     * @param etag is the value of the ETag header, or null if there was none
+     * @param lastModified is the value of the Last-Modified header, or null if there was none
+     * @param notModified is true if the server answered "304 Not Modified"
+     * @param sources are the responses of the sources the articles were merged from, in the
+     *                order of the feed request, with null for a source that failed
+     */
+    public CocktailResponse(List<Cocktail> cocktails, String etag, String lastModified,
+                            boolean notModified, List<CocktailResponse> sources) {
+        mCocktails = cocktails;
+        mEtag = etag;
+        mLastModified = lastModified;
+        mNotModified = notModified;
+        mSources = sources;
+    }
+
+    /**
+     * Returns the list of Cocktail articles
+     */
+    public List<Cocktail> getCocktails() {
+        return mCocktails;
+    }
+
+    /**
+     * Returns the ETag header of the response
+     */
+    public String getEtag() {
+        return mEtag;
+    }
+
+    /**
+     * Returns the Last-Modified header of the response
+     */
+    public String getLastModified() {
+        return mLastModified;
+    }
+
+    /**
+     * Returns true if the server confirmed that the cached articles are still valid
+     */
+    public boolean isNotModified() {
+        return mNotModified;
+    }
+
+    /**
+     * Returns the responses of the sources the articles were merged from, with their articles
+     * and validators, or an empty list if they come from a single response
+     */
+    public List<CocktailResponse> getSources() {
+        return mSources;
+    }
+
+    /**
+     * Returns true if a source of the merged feed failed or timed out, so the articles are not
+     * the whole feed and must not be stored as if they were
+     */
+    public boolean isPartial() {
+        return mSources.contains(null);
+    }
+}
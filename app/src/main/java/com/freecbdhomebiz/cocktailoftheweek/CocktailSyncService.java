@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 2018. Tina Taylor
+ * CREATIVE COMMONS Attribution-ShareAlike 3.0 Unported (CC BY-SA 3.0)
+ * https://creativecommons.org/licenses/by-sa/3.0/
+ */
+
+package com.freecbdhomebiz.cocktailoftheweek;
+
+import android.annotation.TargetApi;
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Build;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodic background sync of the first page of articles into the {@link ArticleCache}, so
+ * opening the app shows them straight away instead of waiting on the network. How often and
+ * under which conditions it runs is decided by {@link SyncPolicy}. JobScheduler needs API 21,
+ * on older phones the articles are only fetched while the app is open.
+ */
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+public class CocktailSyncService extends JobService {
+
+    /**
+     * Tag for log messages
+     */
+    private static final String LOG_TAG = CocktailSyncService.class.getName();
+
+    /**
+     * Constant value for the ID of the sync job
+     */
+    private static final int SYNC_JOB_ID = 1;
+
+    /**
+     * Preferences file and key of the number of failed syncs in a row
+     */
+    private static final String SYNC_PREFS = "sync";
+    private static final String KEY_FAILURES = "failures";
+
+    /**
+     * Runs the syncs, one at a time, and stops its thread in between
+     */
+    private static final ExecutorService sExecutor = newExecutor();
+
+    /**
+     * Cancels the sync running right now, or null. Only used on the main thread.
+     */
+    private CancellationToken mCancellation;
+
+    /**
+     * Schedule the periodic sync, unless it is already scheduled. Called from MainActivity.
+     */
+    public static void schedule(Context context) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+            return;
+        }
+        JobScheduler jobScheduler = (JobScheduler)
+                context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        if (jobScheduler == null) {
+            return;
+        }
+        for (JobInfo job : jobScheduler.getAllPendingJobs()) {
+            if (job.getId() == SYNC_JOB_ID) {
+                return;
+            }
+        }
+
+        JobInfo.Builder builder = new JobInfo.Builder(
+                SYNC_JOB_ID, new ComponentName(context, CocktailSyncService.class));
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            // Lets the system run it with the work of other apps near the end of the interval
+            builder.setPeriodic(SyncPolicy.SYNC_INTERVAL_MILLIS, SyncPolicy.SYNC_FLEX_MILLIS);
+        } else {
+            builder.setPeriodic(SyncPolicy.SYNC_INTERVAL_MILLIS);
+        }
+        JobInfo job = builder
+                .setRequiredNetworkType(SyncPolicy.REQUIRES_UNMETERED_NETWORK
+                                                ? JobInfo.NETWORK_TYPE_UNMETERED
+                                                : JobInfo.NETWORK_TYPE_ANY)
+                .setRequiresCharging(SyncPolicy.REQUIRES_CHARGING)
+                .setBackoffCriteria(SyncPolicy.RETRY_BACKOFF_MILLIS,
+                                    JobInfo.BACKOFF_POLICY_EXPONENTIAL)
+                // Keep the sync scheduled after the phone restarts
+                .setPersisted(true)
+                .build();
+        jobScheduler.schedule(job);
+    }
+
+    /**
+     * Returns a single thread, which is stopped between the syncs
+     */
+    private static ExecutorService newExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                1, 1, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * This is on the main thread, so the sync itself runs on a background thread
+     */
+    @Override
+    public boolean onStartJob(final JobParameters params) {
+        final CancellationToken cancellation = new CancellationToken();
+        mCancellation = cancellation;
+        sExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                boolean success = sync(cancellation);
+                if (cancellation.isCanceled()) {
+                    // The JobScheduler stopped the job and reschedules it itself
+                    return;
+                }
+                int failures = recordResult(success);
+                if (!success) {
+                    EventLog.e(LOG_TAG, "Sync failed {} time(s) in a row", failures);
+                }
+                // Let the JobScheduler retry with backoff a few times, then wait for next week
+                jobFinished(params, SyncPolicy.shouldRetry(failures));
+            }
+        });
+        // The job keeps running until the sync calls jobFinished()
+        return true;
+    }
+
+    /**
+     * Called when the phone is unplugged or leaves the unmetered network during the sync
+     */
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        // Stops the requests that are still running straight away
+        if (mCancellation != null) {
+            mCancellation.cancel();
+            mCancellation = null;
+        }
+        // Try again the next time the conditions are met
+        return true;
+    }
+
+    /**
+     * Fetch the first page of articles, with their bylines and summaries in the same
+     * request, and store it where CocktailPipeline looks first. Returns false if it failed, or
+     * if a source failed and the articles could not be stored.
+     *
+     * @param cancellation is canceled when the JobScheduler stops the job
+     */
+    private boolean sync(CancellationToken cancellation) {
+        FeedRequest request = MainActivity.feedRequest(this, 1);
+        String key = request.getKey();
+        ArticleCache cache = new ArticleCache(this);
+        ArticleCache.Entry cached = cache.get(key);
+
+        // The app may have refreshed the articles itself since the last sync
+        if (cached != null
+                && !SyncPolicy.isSyncDue(cached.getFetchedAt(), System.currentTimeMillis())) {
+            return true;
+        }
+
+        // Fetch the sources of the feed at the same time, only the articles published since
+        // the stored ones when that is enough to bring them up to date
+        CocktailResponse response = new FeedSync(new MultiSourceFetcher(), cache)
+                .sync(request, cached, cancellation);
+        if (response == null) {
+            return false;
+        }
+        if (!response.isNotModified()) {
+            SearchIndexer.getInstance(this).index(response.getCocktails());
+        }
+        return !response.isPartial();
+    }
+
+    /**
+     * Returns the number of failed syncs in a row after this one succeeded or failed
+     */
+    private int recordResult(boolean success) {
+        SharedPreferences prefs = getSharedPreferences(SYNC_PREFS, MODE_PRIVATE);
+        int failures = success ? 0 : prefs.getInt(KEY_FAILURES, 0) + 1;
+        prefs.edit().putInt(KEY_FAILURES, failures).apply();
+        return failures;
+    }
+}
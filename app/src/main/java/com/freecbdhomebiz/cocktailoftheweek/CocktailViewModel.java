@@ -0,0 +1,491 @@
+/*
+ * Copyright (c) 2018. Tina Taylor
+ * CREATIVE COMMONS Attribution-ShareAlike 3.0 Unported (CC BY-SA 3.0)
+ * https://creativecommons.org/licenses/by-sa/3.0/
+ */
+
+package com.freecbdhomebiz.cocktailoftheweek;
+
+import android.app.Application;
+import android.arch.lifecycle.AndroidViewModel;
+import android.arch.lifecycle.LiveData;
+import android.arch.lifecycle.MutableLiveData;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+import android.preference.PreferenceManager;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Holds the list of Cocktail articles shown by MainActivity, page by page, and survives the
+ * activity being recreated. The pages are loaded through the app's {@link CocktailPipeline},
+ * and the list is handed to the activity through LiveData, which only delivers it while the
+ * activity is started.
+ * <p>
+ * Changes of the order in the settings go through a {@link ReloadCoordinator}, so flipping it
+ * back and forth costs one reload at most. Once every page was loaded the list is simply
+ * sorted again in the new order, without a request.
+ * <p>
+ * The list is the last thing the {@link CacheRegistry} trims. When the app is in the
+ * background and memory runs out, the pages below the first one are dropped and loaded again
+ * as the user scrolls down.
+ */
+public class CocktailViewModel extends AndroidViewModel {
+
+    private static CocktailPipeline sPipeline;
+
+    private final CocktailPipeline mPipeline;
+
+    /**
+     * The rows of the first screen as they were last shown, so the next start shows them at once
+     */
+    private final StartupSnapshot mSnapshot;
+
+    /**
+     * The rows last written to the snapshot, only touched on the pipeline threads
+     */
+    private volatile List<PreparedCocktail> mSnapshotItems;
+
+    private final MutableLiveData<List<PreparedCocktail>> mCocktails = new MutableLiveData<>();
+
+    /**
+     * The articles of each page loaded so far, guarded by this
+     */
+    private final List<List<PreparedCocktail>> mPages = new ArrayList<>();
+
+    /**
+     * The running load of each page requested so far, guarded by this
+     */
+    private final List<CocktailPipeline.Load> mLoads = new ArrayList<>();
+
+    /**
+     * Key of the first page's feed request, which changes with the order chosen in the settings
+     */
+    private String mFirstPageKey;
+
+    /**
+     * Time in milliseconds when the first page was last loaded completely
+     */
+    private long mLoadedAt;
+
+    /**
+     * True while the first page is loading
+     */
+    private boolean mLoading;
+
+    /**
+     * True once the list holds every article of the feed, sorted again after a change of the
+     * order, so there are no more pages to load
+     */
+    private boolean mEndReached;
+
+    /**
+     * True once loads that were still running were canceled because the order is about to
+     * change, so the list has to be loaded again even if the order ends up the same
+     */
+    private boolean mLoadsCanceled;
+
+    /**
+     * Debounces the changes of the order, only used on the main thread
+     */
+    private final ReloadCoordinator mReloads;
+
+    /**
+     * Held here, SharedPreferences only keeps a weak reference to its listeners
+     */
+    private final SharedPreferences.OnSharedPreferenceChangeListener mPreferenceListener;
+
+    /**
+     * The pages as a cache of rows, registered with the CacheRegistry while the model lives.
+     * The rows are never looked up, so there are no hits or misses to count.
+     */
+    private final TrimmableCache mRows = new TrimmableCache() {
+        @Override
+        public long size() {
+            return rowCount();
+        }
+
+        @Override
+        public long hitCount() {
+            return NOT_COUNTED;
+        }
+
+        @Override
+        public long missCount() {
+            return NOT_COUNTED;
+        }
+
+        @Override
+        public void trimToSize(long maxSize) {
+            trimPages(maxSize);
+        }
+    };
+
+    /**
+     * Incremented when the list is started again, so late results of older loads are ignored
+     */
+    private int mGeneration;
+
+    public CocktailViewModel(Application application) {
+        super(application);
+        mPipeline = pipeline(application);
+
+        // Show the first screen of the last start straight away, it is replaced as soon as the
+        // ArticleCache or the network answer
+        mSnapshot = new StartupSnapshot(application);
+        List<PreparedCocktail> snapshot =
+                mSnapshot.read(MainActivity.feedRequest(application, 1).getKey());
+        if (snapshot != null) {
+            mSnapshotItems = snapshot;
+            mCocktails.setValue(snapshot);
+        }
+
+        // Apply a new order while the settings are still open, so the list is ready when the
+        // user comes back to it
+        final Handler mainThread = new Handler(Looper.getMainLooper());
+        mReloads = new ReloadCoordinator(new ReloadCoordinator.Scheduler() {
+            @Override
+            public void postDelayed(Runnable task, long delayMillis) {
+                mainThread.postDelayed(task, delayMillis);
+            }
+
+            @Override
+            public void removeCallbacks(Runnable task) {
+                mainThread.removeCallbacks(task);
+            }
+        }, new ReloadCoordinator.Reloader() {
+            @Override
+            public void reload(String value) {
+                applyOrder();
+            }
+
+            @Override
+            public void cancel() {
+                cancelForNewOrder();
+            }
+        }, MainActivity.orderBy(application));
+        final String orderKey = application.getString(R.string.settings_order_by_key);
+        mPreferenceListener = new SharedPreferences.OnSharedPreferenceChangeListener() {
+            @Override
+            public void onSharedPreferenceChanged(SharedPreferences preferences, String key) {
+                if (orderKey.equals(key)) {
+                    mReloads.onChanged(MainActivity.orderBy(getApplication()));
+                }
+            }
+        };
+        PreferenceManager.getDefaultSharedPreferences(application)
+                .registerOnSharedPreferenceChangeListener(mPreferenceListener);
+        CacheRegistry.getInstance().register("list rows", CacheRegistry.LIST, mRows);
+    }
+
+    /**
+     * Returns the one pipeline of the app, so loads of all the screens are deduplicated
+     */
+    private static synchronized CocktailPipeline pipeline(Application application) {
+        if (sPipeline == null) {
+            sPipeline = new CocktailPipeline(new ArticleCache(application),
+                                             SearchIndexer.getInstance(application));
+        }
+        return sPipeline;
+    }
+
+    /**
+     * Returns the articles of all the pages loaded so far, with the first page at the top.
+     * The list is empty, not null, when nothing could be loaded.
+     */
+    public LiveData<List<PreparedCocktail>> getCocktails() {
+        return mCocktails;
+    }
+
+    /**
+     * Load the first page, unless it is already loaded and fresh. If the order was changed in
+     * the settings the list starts again from the top. Called whenever MainActivity starts.
+     */
+    public synchronized void start() {
+        // A change of the order that is still waiting for the debounce is applied now
+        mReloads.flush();
+
+        String firstPageKey = MainActivity.feedRequest(getApplication(), 1).getKey();
+        if (!firstPageKey.equals(mFirstPageKey) || mLoadsCanceled) {
+            restart(firstPageKey);
+            loadPage(1);
+        } else if (!mLoading && (mPages.isEmpty() || mPages.get(0).isEmpty()
+                || System.currentTimeMillis() - mLoadedAt > ArticleCache.TTL_MILLIS)) {
+            // Try again if nothing could be loaded, or revalidate the first page while it
+            // stays on screen. A list sorted again locally is loaded again from the top.
+            if (mEndReached) {
+                restart(firstPageKey);
+            } else {
+                mLoads.get(0).cancel();
+            }
+            loadPage(1);
+        }
+    }
+
+    /**
+     * Show the list in the order now chosen in the settings. When every page of the feed was
+     * loaded, the loaded articles are all there is and only need sorting the other way round,
+     * otherwise the first page of the new order is loaded. Called by the ReloadCoordinator on
+     * the main thread.
+     */
+    private synchronized void applyOrder() {
+        FeedRequest request = MainActivity.feedRequest(getApplication(), 1);
+        if (mFirstPageKey == null
+                || (request.getKey().equals(mFirstPageKey) && !mLoadsCanceled)) {
+            // Not started yet, or already showing that order
+            return;
+        }
+        boolean complete = !mLoading && !mLoadsCanceled && mPages.size() == mLoads.size()
+                && !mPages.isEmpty() && !mPages.get(0).isEmpty() && !hasMorePages();
+        List<PreparedCocktail> rows = concatenate(mPages);
+        long loadedAt = mLoadedAt;
+
+        restart(request.getKey());
+        if (complete) {
+            List<PreparedCocktail> sorted =
+                    ReloadCoordinator.sort(rows, request.isNewestFirst());
+            mPages.add(sorted);
+            mLoads.add(null);
+            mEndReached = true;
+            // The articles are as old as they were, so they are revalidated on the same schedule
+            mLoadedAt = loadedAt;
+            mCocktails.setValue(sorted);
+            Metrics.getInstance().increment(Metrics.LOCAL_REORDERS);
+        } else {
+            loadPage(1);
+        }
+    }
+
+    /**
+     * The order is changing, so whatever is still loading for the current one is no use.
+     * Called by the ReloadCoordinator on the main thread.
+     */
+    private synchronized void cancelForNewOrder() {
+        // Loads that completed can stay, their pages may only need sorting
+        if (mLoading || mPages.size() != mLoads.size()) {
+            cancelLoads();
+            mLoadsCanceled = true;
+        }
+    }
+
+    /**
+     * Forget the pages of the list and start it again for the given first page key. What is
+     * shown stays until the new pages arrive.
+     */
+    private void restart(String firstPageKey) {
+        cancelLoads();
+        mGeneration++;
+        mLoading = false;
+        mEndReached = false;
+        mLoadsCanceled = false;
+        mPages.clear();
+        mLoads.clear();
+        mFirstPageKey = firstPageKey;
+    }
+
+    /**
+     * Start loading the next page of articles, unless one is already loading or the end of the
+     * series was reached
+     */
+    public synchronized void loadNextPage() {
+        if (mPages.size() != mLoads.size() || !hasMorePages()) {
+            return;
+        }
+        loadPage(mLoads.size() + 1);
+    }
+
+    /**
+     * Returns false once a page came back short (or failed), so there is nothing more to fetch
+     */
+    private boolean hasMorePages() {
+        if (mPages.isEmpty() || mEndReached) {
+            return false;
+        }
+        return mPages.get(mPages.size() - 1).size() >= MainActivity.PAGE_SIZE;
+    }
+
+    /**
+     * Load the page, or load it again, and put its articles in place when they arrive
+     */
+    private void loadPage(final int page) {
+        final int generation = mGeneration;
+        if (page == 1) {
+            mLoading = true;
+        }
+        final FeedRequest request = MainActivity.feedRequest(getApplication(), page);
+        CocktailPipeline.Load load = mPipeline.load(
+                request, new CocktailPipeline.Listener() {
+                    @Override
+                    public void onResult(List<PreparedCocktail> items) {
+                        onPageResult(generation, page, items);
+                        if (page == 1) {
+                            saveSnapshot(request.getKey(), items);
+                        }
+                    }
+
+                    @Override
+                    public void onComplete() {
+                        onPageComplete(generation, page);
+                    }
+                });
+        if (page <= mLoads.size()) {
+            mLoads.set(page - 1, load);
+        } else {
+            mLoads.add(load);
+        }
+    }
+
+    /**
+     * Replace the articles of the page and publish the new list. Called on a pipeline thread.
+     */
+    private synchronized void onPageResult(int generation, int page,
+                                           List<PreparedCocktail> items) {
+        if (generation != mGeneration) {
+            return;
+        }
+        List<PreparedCocktail> pageItems = items != null ? items
+                                                         : new ArrayList<PreparedCocktail>();
+        if (page <= mPages.size()) {
+            mPages.set(page - 1, pageItems);
+        } else if (page == mPages.size() + 1) {
+            mPages.add(pageItems);
+        } else {
+            return;
+        }
+        mCocktails.postValue(concatenate(mPages));
+    }
+
+    /**
+     * Store the first screen of the first page for the next start, unless it is already stored.
+     * Called on a pipeline thread.
+     */
+    private void saveSnapshot(String key, List<PreparedCocktail> items) {
+        if (items == null || items.isEmpty()) {
+            return;
+        }
+        List<PreparedCocktail> firstScreen =
+                new ArrayList<>(items.subList(0, Math.min(items.size(),
+                                                          StartupSnapshot.MAX_ITEMS)));
+        if (sameRows(firstScreen, mSnapshotItems)) {
+            return;
+        }
+        mSnapshotItems = firstScreen;
+        mSnapshot.write(key, firstScreen);
+    }
+
+    /**
+     * Returns true if the two lists show the same rows. The articles of a snapshot only keep
+     * the shortened summary, so they are compared by what the rows show.
+     */
+    private static boolean sameRows(List<PreparedCocktail> a, List<PreparedCocktail> b) {
+        if (b == null || a.size() != b.size()) {
+            return false;
+        }
+        for (int i = 0; i < a.size(); i++) {
+            PreparedCocktail x = a.get(i);
+            PreparedCocktail y = b.get(i);
+            if (!equal(x.getCocktail().getUrl(), y.getCocktail().getUrl())
+                    || !equal(x.getCocktail().getCocktailName(), y.getCocktail().getCocktailName())
+                    || !equal(x.getCocktail().getAuthor(), y.getCocktail().getAuthor())
+                    || !equal(x.getDate(), y.getDate())
+                    || !equal(x.getSummary(), y.getSummary())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean equal(Object a, Object b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    private synchronized void onPageComplete(int generation, int page) {
+        if (generation == mGeneration && page == 1) {
+            mLoading = false;
+            mLoadedAt = System.currentTimeMillis();
+        }
+    }
+
+    private synchronized long rowCount() {
+        long rows = 0;
+        for (List<PreparedCocktail> page : mPages) {
+            rows += page.size();
+        }
+        return rows;
+    }
+
+    /**
+     * Drop the last pages until the list holds at most maxRows, for the CacheRegistry. The
+     * first page always stays, and nothing is dropped while pages are loading.
+     */
+    private synchronized void trimPages(long maxRows) {
+        if (mLoading || mPages.isEmpty() || mPages.size() != mLoads.size()) {
+            return;
+        }
+        int keep = 1;
+        long rows = mPages.get(0).size();
+        while (keep < mPages.size() && rows + mPages.get(keep).size() <= maxRows) {
+            rows += mPages.get(keep).size();
+            keep++;
+        }
+        if (keep == mPages.size()) {
+            return;
+        }
+        // The loads of the dropped pages are complete, loadNextPage() starts them again
+        while (mPages.size() > keep) {
+            mPages.remove(mPages.size() - 1);
+            mLoads.remove(mLoads.size() - 1);
+        }
+        mCocktails.postValue(concatenate(mPages));
+    }
+
+    /**
+     * Returns the articles of all the pages in one list. When an article is published while
+     * the user is scrolling, the pages shift and a page repeats an article of the one before,
+     * which is only kept once.
+     * <p>
+     * Each page is in the order of the feed, the sources of a merged page are sorted together
+     * by MultiSourceFetcher. The pages are not sorted again across each other: a source with
+     * fewer articles than the others can have an article on its next page that is newer than
+     * the end of the one before, but sorting it in would move the rows the user already
+     * scrolled past. A new page is only ever appended.
+     */
+    private static List<PreparedCocktail> concatenate(List<List<PreparedCocktail>> pages) {
+        List<PreparedCocktail> list = new ArrayList<>();
+        Set<String> urls = new HashSet<>();
+        for (List<PreparedCocktail> page : pages) {
+            for (PreparedCocktail cocktail : page) {
+                if (urls.add(cocktail.getCocktail().getUrl())) {
+                    list.add(cocktail);
+                }
+            }
+        }
+        return list;
+    }
+
+    private void cancelLoads() {
+        for (CocktailPipeline.Load load : mLoads) {
+            // A list sorted again locally has no load
+            if (load != null) {
+                load.cancel();
+            }
+        }
+    }
+
+    /**
+     * The activity is finishing for good, so nobody needs the running loads anymore
+     */
+    @Override
+    protected synchronized void onCleared() {
+        PreferenceManager.getDefaultSharedPreferences(getApplication())
+                .unregisterOnSharedPreferenceChangeListener(mPreferenceListener);
+        CacheRegistry.getInstance().unregister(mRows);
+        mReloads.cancel();
+        cancelLoads();
+        mGeneration++;
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) 2018. Tina Taylor
+ * CREATIVE COMMONS Attribution-ShareAlike 3.0 Unported (CC BY-SA 3.0)
+ * https://creativecommons.org/licenses/by-sa/3.0/
+ */
+
+package com.freecbdhomebiz.cocktailoftheweek;
+
+import android.content.Context;
+import android.content.res.Resources;
+
+/**
+ * The labels of the {@link DateRenderer}, from the string resources of the app so they follow
+ * the user's language. The renderer drops what it memoized when the locale changes, and the
+ * resources of the application then answer in the new language.
+ */
+final class DateLabels implements DateRenderer.Labels {
+
+    private static boolean sInstalled;
+
+    private final Resources mResources;
+
+    private DateLabels(Resources resources) {
+        mResources = resources;
+    }
+
+    /**
+     * Give the renderer of the app its labels, once per process
+     */
+    static synchronized void install(Context context) {
+        if (!sInstalled) {
+            DateRenderer.getInstance().setLabels(
+                    new DateLabels(context.getApplicationContext().getResources()));
+            sInstalled = true;
+        }
+    }
+
+    @Override
+    public String daysAgo(int days) {
+        switch (days) {
+            case 0:
+                return mResources.getString(R.string.date_today);
+            case 1:
+                return mResources.getString(R.string.date_yesterday);
+            default:
+                return mResources.getQuantityString(R.plurals.date_days_ago, days, days);
+        }
+    }
+}
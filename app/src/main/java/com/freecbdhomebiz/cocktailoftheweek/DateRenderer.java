@@ -0,0 +1,310 @@
+/*
+ * Copyright (c) 2018. Tina Taylor
+ * CREATIVE COMMONS Attribution-ShareAlike 3.0 Unported (CC BY-SA 3.0)
+ * https://creativecommons.org/licenses/by-sa/3.0/
+ */
+
+package com.freecbdhomebiz.cocktailoftheweek;
+
+import java.text.DateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+
+/**
+ * Turns the publication date of an article, parsed once into epoch milliseconds by
+ * CocktailJsonParser, into the text of its list row: "Today", "Yesterday" or "3 days ago" for
+ * the articles of the last week, and the date in the user's locale for older ones.
+ * <p>
+ * The text only depends on the day of the article and the day it is today, so it is memoized
+ * by the day of the article and the memo is dropped when the day of "now" moves on, or the
+ * locale or the time zone change. A list of a few weekly series only has a few dozen
+ * different days, so after the first page every call is a lookup that allocates nothing. On a
+ * miss the date is formatted with a DateFormat kept per thread and per locale, as DateFormat is
+ * expensive to create and not thread safe.
+ * <p>
+ * Kept free of Android classes so it can be unit tested and benchmarked, the relative labels
+ * come from the app's resources through {@link Labels}. The memo is a {@link TrimmableCache}
+ * of texts, dropped as a whole under memory pressure.
+ */
+public final class DateRenderer implements TrimmableCache {
+
+    /**
+     * The day of a date that is unknown, never the day of "now"
+     */
+    public static final long NO_DAY = Long.MIN_VALUE;
+
+    /**
+     * Articles published this many days ago or less get a relative label
+     */
+    static final int RELATIVE_DAYS = 6;
+
+    private static final long MILLIS_PER_DAY = 24 * 60 * 60 * 1000L;
+    private static final long MILLIS_PER_HOUR = 60 * 60 * 1000L;
+
+    /**
+     * The memo holds the dates of a few pages, and starts over when it is full
+     */
+    private static final int MEMO_CAPACITY = 64;
+
+    /**
+     * The labels of the days of the last week, in the language of the user
+     */
+    public interface Labels {
+        /**
+         * Returns the label of the day the given number of days ago, 0 being today, or null
+         * to show the date instead
+         */
+        String daysAgo(int days);
+    }
+
+    private static final DateRenderer sInstance = new DateRenderer();
+
+    /**
+     * The DateFormat of each locale, for each thread that formats dates
+     */
+    private static final ThreadLocal<Map<Locale, DateFormat>> sFormats =
+            new ThreadLocal<Map<Locale, DateFormat>>() {
+                @Override
+                protected Map<Locale, DateFormat> initialValue() {
+                    return new HashMap<>();
+                }
+            };
+
+    private volatile Labels mLabels;
+
+    // Everything below is guarded by this. The memo maps the day of an article to its text,
+    // with open addressing so that a lookup doesn't box the day into a Long.
+    private final long[] mMemoDays = new long[MEMO_CAPACITY];
+    private final String[] mMemoTexts = new String[MEMO_CAPACITY];
+    private int mMemoSize;
+    private long mToday = NO_DAY;
+    private Locale mLocale;
+    private Labels mMemoLabels;
+    private TimeZone mZone;
+    private long mZoneHour = NO_DAY;
+    private int mHits;
+    private int mMisses;
+
+    /**
+     * Returns the DateRenderer of the app, shared by every thread that prepares rows
+     */
+    public static DateRenderer getInstance() {
+        return sInstance;
+    }
+
+    /**
+     * Constructs a new {@link DateRenderer} without labels, which shows every date in full
+     * until {@link #setLabels} is called
+     */
+    DateRenderer() {
+    }
+
+    /**
+     * Set the labels of the days of the last week, or null to show every date in full
+     */
+    public void setLabels(Labels labels) {
+        mLabels = labels;
+    }
+
+    /**
+     * Returns the text of the publication date as of now, or null if it is unknown
+     *
+     * @param date is the publication date in epoch milliseconds, or {@link Cocktail#NO_DATE}
+     * @param now is the current time in epoch milliseconds
+     */
+    public String render(long date, long now) {
+        if (date == Cocktail.NO_DATE) {
+            return null;
+        }
+        Labels labels = mLabels;
+        long today;
+        long day;
+        Locale locale;
+        TimeZone zone;
+        synchronized (this) {
+            today = today0(now);
+            if (labels != mMemoLabels) {
+                mMemoLabels = labels;
+                clear();
+            }
+            day = floorDiv(date + mZone.getOffset(date), MILLIS_PER_DAY);
+            int slot = find(day);
+            if (slot >= 0) {
+                mHits++;
+                return mMemoTexts[slot];
+            }
+            mMisses++;
+            locale = mLocale;
+            zone = mZone;
+        }
+
+        // Worked out outside of the lock, so threads preparing rows don't wait on each other
+        String text = null;
+        long daysAgo = today - day;
+        if (labels != null && daysAgo >= 0 && daysAgo <= RELATIVE_DAYS) {
+            text = labels.daysAgo((int) daysAgo);
+        }
+        if (text == null) {
+            DateFormat format = format(locale);
+            format.setTimeZone(zone);
+            text = format.format(new Date(date));
+        }
+
+        synchronized (this) {
+            // Only remembered if nothing moved on in the meantime
+            if (today == mToday && labels == mMemoLabels && locale == mLocale && zone == mZone
+                    && find(day) < 0) {
+                remember(day, text);
+            }
+        }
+        return text;
+    }
+
+    /**
+     * Returns the day of "now" in the time zone of the user, which the text of a date rendered
+     * now is good for. Prepared rows compare it with the day they were rendered on.
+     */
+    public long today(long now) {
+        synchronized (this) {
+            return today0(now);
+        }
+    }
+
+    /**
+     * Returns the number of renders answered from the memo so far
+     */
+    synchronized int getHits() {
+        return mHits;
+    }
+
+    /**
+     * Returns the number of renders that had to work out the text so far
+     */
+    synchronized int getMisses() {
+        return mMisses;
+    }
+
+    /**
+     * Returns the number of texts in the memo
+     */
+    @Override
+    public synchronized long size() {
+        return mMemoSize;
+    }
+
+    @Override
+    public synchronized long hitCount() {
+        return mHits;
+    }
+
+    @Override
+    public synchronized long missCount() {
+        return mMisses;
+    }
+
+    /**
+     * Drop the memo if it holds more than maxSize texts, it can't drop part of them
+     */
+    @Override
+    public synchronized void trimToSize(long maxSize) {
+        if (mMemoSize > maxSize) {
+            clear();
+        }
+    }
+
+    /**
+     * Returns the day of now, and drops the memo if it no longer holds for now. Holds the lock.
+     */
+    private long today0(long now) {
+        // TimeZone.getDefault() returns a copy, so the zone is only looked up once an hour
+        long hour = floorDiv(now, MILLIS_PER_HOUR);
+        if (hour != mZoneHour) {
+            mZoneHour = hour;
+            TimeZone zone = TimeZone.getDefault();
+            if (mZone == null || !mZone.getID().equals(zone.getID())) {
+                mZone = zone;
+                clear();
+            }
+        }
+        Locale locale = Locale.getDefault();
+        if (!locale.equals(mLocale)) {
+            mLocale = locale;
+            clear();
+        }
+        long today = floorDiv(now + mZone.getOffset(now), MILLIS_PER_DAY);
+        if (today != mToday) {
+            // "Yesterday" is now "2 days ago"
+            mToday = today;
+            clear();
+        }
+        return today;
+    }
+
+    /**
+     * Returns the slot of the day in the memo, or -1 if it is not there. Holds the lock.
+     */
+    private int find(long day) {
+        int slot = slot(day);
+        for (int i = 0; i < MEMO_CAPACITY; i++) {
+            if (mMemoTexts[slot] == null) {
+                return -1;
+            }
+            if (mMemoDays[slot] == day) {
+                return slot;
+            }
+            slot = (slot + 1) % MEMO_CAPACITY;
+        }
+        return -1;
+    }
+
+    /**
+     * Add the text of the day to the memo, starting over once it is three quarters full so the
+     * probes stay short. Holds the lock.
+     */
+    private void remember(long day, String text) {
+        if (mMemoSize >= MEMO_CAPACITY * 3 / 4) {
+            clear();
+        }
+        int slot = slot(day);
+        while (mMemoTexts[slot] != null) {
+            slot = (slot + 1) % MEMO_CAPACITY;
+        }
+        mMemoDays[slot] = day;
+        mMemoTexts[slot] = text;
+        mMemoSize++;
+    }
+
+    private void clear() {
+        Arrays.fill(mMemoTexts, null);
+        mMemoSize = 0;
+    }
+
+    private static int slot(long day) {
+        return (int) ((day ^ (day >>> 32)) & 0x7fffffff) % MEMO_CAPACITY;
+    }
+
+    /**
+     * Returns the medium date format of the locale for the calling thread
+     */
+    private static DateFormat format(Locale locale) {
+        Map<Locale, DateFormat> formats = sFormats.get();
+        DateFormat format = formats.get(locale);
+        if (format == null) {
+            format = DateFormat.getDateInstance(DateFormat.MEDIUM, locale);
+            formats.put(locale, format);
+        }
+        return format;
+    }
+
+    /**
+     * Division that rounds down for negative times too, Math.floorDiv() needs API 24
+     */
+    private static long floorDiv(long x, long y) {
+        long quotient = x / y;
+        return (x % y != 0 && (x < 0) != (y < 0)) ? quotient - 1 : quotient;
+    }
+}
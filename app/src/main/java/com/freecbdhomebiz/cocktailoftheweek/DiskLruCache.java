@@ -0,0 +1,256 @@
+/*
+ * Copyright (c) 2018. Tina Taylor
+ * CREATIVE COMMONS Attribution-ShareAlike 3.0 Unported (CC BY-SA 3.0)
+ * https://creativecommons.org/licenses/by-sa/3.0/
+ */
+
+package com.freecbdhomebiz.cocktailoftheweek;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A cache of byte arrays in a directory, one file per key, that holds at most maxBytes and
+ * deletes the least recently used files to make room for new ones. The order of use is kept
+ * in the modification times of the files, so it survives the app being restarted. Reads and
+ * writes happen outside the lock, so several threads can use the cache at once. Kept free of
+ * Android classes so it can be unit tested.
+ */
+public class DiskLruCache {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Files written but not yet renamed end with this
+     */
+    private static final String TMP_SUFFIX = ".tmp";
+
+    private final File mDirectory;
+    private final long mMaxBytes;
+
+    /**
+     * The size of each file in order of use, the least recently used first, guarded by this.
+     * Null until the directory was listed.
+     */
+    private LinkedHashMap<String, Long> mFiles;
+
+    /**
+     * Sum of the sizes of the files, guarded by this
+     */
+    private long mSize;
+
+    /**
+     * Constructs a new {@link DiskLruCache}
+     *
+     * @param directory holds the files of the cache and nothing else
+     * @param maxBytes is the most the files may take up together
+     */
+    public DiskLruCache(File directory, long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("maxBytes <= 0");
+        }
+        mDirectory = directory;
+        mMaxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the bytes stored for the key, or null if there are none or they can't be read
+     */
+    public byte[] get(String key) {
+        String name = fileName(key);
+        synchronized (this) {
+            // Look the file up, which also makes it the most recently used one
+            if (files().get(name) == null) {
+                return null;
+            }
+        }
+        File file = new File(mDirectory, name);
+        try {
+            byte[] bytes = readFully(file);
+            // Remember the use for the next time the directory is listed
+            file.setLastModified(System.currentTimeMillis());
+            return bytes;
+        } catch (IOException e) {
+            // Deleted to make room in the meantime, or unreadable
+            synchronized (this) {
+                forget(name);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Store the bytes for the key, replacing what was stored for it, and delete the least
+     * recently used files if the cache is over its size. Bytes that take up more than the
+     * whole cache are not stored.
+     */
+    public void put(String key, byte[] bytes) {
+        if (bytes.length > mMaxBytes) {
+            return;
+        }
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            return;
+        }
+        String name = fileName(key);
+        synchronized (this) {
+            // List the directory first, listing it deletes the temporary files it finds
+            files();
+        }
+        // Write to a temporary file and rename it, so a reader never sees half a file. Every
+        // writer has its own temporary file.
+        File tmp = new File(mDirectory, name + "." + Thread.currentThread().getId() + TMP_SUFFIX);
+        try {
+            FileOutputStream out = new FileOutputStream(tmp);
+            try {
+                out.write(bytes);
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            tmp.delete();
+            return;
+        }
+        synchronized (this) {
+            forget(name);
+            if (!tmp.renameTo(new File(mDirectory, name))) {
+                tmp.delete();
+                return;
+            }
+            files().put(name, (long) bytes.length);
+            mSize += bytes.length;
+            trimToSize(mMaxBytes);
+        }
+    }
+
+    /**
+     * Delete what was stored for the key
+     */
+    public synchronized void remove(String key) {
+        String name = fileName(key);
+        if (forget(name)) {
+            new File(mDirectory, name).delete();
+        }
+    }
+
+    /**
+     * Delete the least recently used files until the rest take up at most maxBytes
+     */
+    public synchronized void trimToSize(long maxBytes) {
+        Iterator<Map.Entry<String, Long>> files = files().entrySet().iterator();
+        while (mSize > maxBytes && files.hasNext()) {
+            Map.Entry<String, Long> eldest = files.next();
+            new File(mDirectory, eldest.getKey()).delete();
+            mSize -= eldest.getValue();
+            files.remove();
+        }
+    }
+
+    /**
+     * Returns the bytes the files of the cache take up together
+     */
+    public synchronized long size() {
+        files();
+        return mSize;
+    }
+
+    /**
+     * Returns the most the files may take up together
+     */
+    public long maxSize() {
+        return mMaxBytes;
+    }
+
+    /**
+     * Returns the files of the cache, listing the directory the first time. Must be called
+     * with the lock held.
+     */
+    private Map<String, Long> files() {
+        if (mFiles != null) {
+            return mFiles;
+        }
+        mFiles = new LinkedHashMap<>(16, 0.75f, true);
+        mSize = 0;
+        File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return mFiles;
+        }
+        // Oldest first, so the order of use is the one of the last run
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                long difference = a.lastModified() - b.lastModified();
+                return difference < 0 ? -1 : difference > 0 ? 1 : 0;
+            }
+        });
+        for (File file : files) {
+            if (file.getName().endsWith(TMP_SUFFIX)) {
+                // Left behind by a write that never finished
+                file.delete();
+                continue;
+            }
+            mFiles.put(file.getName(), file.length());
+            mSize += file.length();
+        }
+        trimToSize(mMaxBytes);
+        return mFiles;
+    }
+
+    /**
+     * Drop the file from the index, returns true if it was in it. Must be called with the lock
+     * held.
+     */
+    private boolean forget(String name) {
+        Long size = files().remove(name);
+        if (size == null) {
+            return false;
+        }
+        mSize -= size;
+        return true;
+    }
+
+    private static byte[] readFully(File file) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            byte[] bytes = new byte[(int) file.length()];
+            int read = 0;
+            while (read < bytes.length) {
+                int count = in.read(bytes, read, bytes.length - read);
+                if (count < 0) {
+                    throw new IOException("file shrank while it was read");
+                }
+                read += count;
+            }
+            return bytes;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Returns the name of the file of the key, a hash of it so any key makes a valid file name
+     */
+    static String fileName(String key) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-1").digest(key.getBytes(UTF_8));
+            StringBuilder name = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                name.append(Character.forDigit((b >> 4) & 0xf, 16))
+                        .append(Character.forDigit(b & 0xf, 16));
+            }
+            return name.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-1
+            throw new AssertionError(e);
+        }
+    }
+}
@@ -0,0 +1,384 @@
+/*
+ * Copyright (c) 2018. Tina Taylor
+ * CREATIVE COMMONS Attribution-ShareAlike 3.0 Unported (CC BY-SA 3.0)
+ * https://creativecommons.org/licenses/by-sa/3.0/
+ */
+
+package com.freecbdhomebiz.cocktailoftheweek;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The log of the app. Every event is a level, a tag, a message format with "{}" for its
+ * arguments, and an optional Throwable; the message is only put together for the events that
+ * are actually written, so a call that is filtered out costs a few comparisons and allocates
+ * nothing (pass numbers as long, they are only boxed once the event is admitted).
+ * <p>
+ * Events below the minimum level are dropped straight away. Of the events of one message
+ * format, at most {@link #BURST} are written per {@link #WINDOW_MILLIS}: when the network is
+ * down every refresh fails the same way, and logging each failure only floods logcat. The
+ * next event of the format that gets through says how many were suppressed.
+ * <p>
+ * The last {@link #CAPACITY} events are also kept in a ring buffer, with their format and
+ * arguments apart, and can be exported as JSON lines for a bug report from the Metrics screen.
+ * The class only depends on Gson, logcat is reached through a {@link Sink}, so the tests can
+ * run their own instances.
+ */
+public final class EventLog {
+
+    /*
+     * Levels, the same numbers as the priorities of android.util.Log
+     */
+
+    public static final int DEBUG = 3;
+    public static final int INFO = 4;
+    public static final int WARN = 5;
+    public static final int ERROR = 6;
+
+    private static final String[] LEVEL_NAMES = {"V", "V", "V", "D", "I", "W", "E", "A"};
+
+    /**
+     * Number of events of one message format written per window
+     */
+    static final int BURST = 5;
+
+    static final long WINDOW_MILLIS = 60 * 1000L;
+
+    /**
+     * Number of recent events kept for bug reports
+     */
+    static final int CAPACITY = 128;
+
+    /**
+     * Writes the events that got through, such as to logcat
+     */
+    public interface Sink {
+        void write(int level, String tag, String message, Throwable error);
+    }
+
+    private static final EventLog sInstance = new EventLog(new LogcatSink(), INFO, CAPACITY);
+
+    private final Sink mSink;
+
+    private volatile int mMinLevel;
+
+    // Everything below is guarded by this
+
+    /**
+     * The rate of each message format, by format
+     */
+    private final Map<String, Rate> mRates = new HashMap<>();
+
+    /**
+     * The ring buffer, its slots are allocated once and reused
+     */
+    private final Event[] mEvents;
+    private int mNext;
+    private int mSize;
+
+    /**
+     * Constructs a new {@link EventLog}
+     *
+     * @param sink writes the events that get through, or null to only keep them in the buffer
+     * @param minLevel is the lowest level that is logged
+     * @param capacity is the number of recent events kept
+     */
+    EventLog(Sink sink, int minLevel, int capacity) {
+        mSink = sink;
+        mMinLevel = minLevel;
+        mEvents = new Event[capacity];
+        for (int i = 0; i < capacity; i++) {
+            mEvents[i] = new Event();
+        }
+    }
+
+    /**
+     * Returns the log of the app
+     */
+    public static EventLog getInstance() {
+        return sInstance;
+    }
+
+    /*
+     * Shortcuts to the log of the app
+     */
+
+    public static void d(String tag, String format, Object arg) {
+        sInstance.log(DEBUG, tag, null, format, arg, null);
+    }
+
+    public static void i(String tag, String message) {
+        sInstance.log(INFO, tag, null, message, null, null);
+    }
+
+    public static void w(String tag, String message) {
+        sInstance.log(WARN, tag, null, message, null, null);
+    }
+
+    public static void w(String tag, String format, long arg) {
+        sInstance.log(WARN, tag, format, arg);
+    }
+
+    public static void e(String tag, String message) {
+        sInstance.log(ERROR, tag, null, message, null, null);
+    }
+
+    public static void e(String tag, String message, Throwable error) {
+        sInstance.log(ERROR, tag, error, message, null, null);
+    }
+
+    public static void e(String tag, String format, Object arg) {
+        sInstance.log(ERROR, tag, null, format, arg, null);
+    }
+
+    public static void e(String tag, String format, long arg) {
+        sInstance.log(ERROR, tag, format, arg);
+    }
+
+    public static void e(String tag, String format, Object arg, Throwable error) {
+        sInstance.log(ERROR, tag, error, format, arg, null);
+    }
+
+    /**
+     * Set the lowest level that is logged
+     */
+    public void setMinLevel(int minLevel) {
+        mMinLevel = minLevel;
+    }
+
+    /**
+     * Returns true if events of the level are logged
+     */
+    public boolean isLoggable(int level) {
+        return level >= mMinLevel;
+    }
+
+    /**
+     * Log an event at the current time
+     */
+    public void log(int level, String tag, Throwable error, String format, Object arg0,
+                    Object arg1) {
+        if (isLoggable(level)) {
+            log(System.currentTimeMillis(), level, tag, error, format, arg0, arg1);
+        }
+    }
+
+    /**
+     * Log an event with a number at the current time, which is only boxed once the event got
+     * through
+     */
+    public void log(int level, String tag, String format, long arg) {
+        if (!isLoggable(level)) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        int suppressed = admit(now, format);
+        if (suppressed >= 0) {
+            write(now, level, tag, null, format, arg, null, suppressed);
+        }
+    }
+
+    /**
+     * Log an event that happened at the given time. Returns false if it was filtered out by
+     * its level or its rate.
+     */
+    boolean log(long now, int level, String tag, Throwable error, String format, Object arg0,
+                Object arg1) {
+        if (!isLoggable(level)) {
+            return false;
+        }
+        int suppressed = admit(now, format);
+        if (suppressed < 0) {
+            return false;
+        }
+        write(now, level, tag, error, format, arg0, arg1, suppressed);
+        return true;
+    }
+
+    /**
+     * Returns the number of events of the format suppressed before this one if this one may be
+     * logged, or -1 if it is suppressed
+     */
+    private synchronized int admit(long now, String format) {
+        Rate rate = mRates.get(format);
+        if (rate == null) {
+            rate = new Rate();
+            mRates.put(format, rate);
+        }
+        return rate.admit(now);
+    }
+
+    /**
+     * Keep the event in the ring buffer and write it to the sink
+     */
+    private void write(long now, int level, String tag, Throwable error, String format,
+                       Object arg0, Object arg1, int suppressed) {
+        synchronized (this) {
+            mEvents[mNext].set(now, level, tag, format, arg0, arg1, error, suppressed);
+            mNext = (mNext + 1) % mEvents.length;
+            mSize = Math.min(mSize + 1, mEvents.length);
+        }
+        if (mSink != null) {
+            String message = format(format, arg0, arg1);
+            if (suppressed > 0) {
+                message += " (" + suppressed + " more suppressed)";
+            }
+            mSink.write(level, tag, message, error);
+        }
+    }
+
+    /**
+     * Write the recent events as JSON lines, oldest first, one object per event with its time
+     * in epoch milliseconds, level, tag, message, format, arguments, the number of events of
+     * the format suppressed before it and the error if there was one
+     */
+    public void export(Writer out) throws IOException {
+        Event[] events;
+        synchronized (this) {
+            events = new Event[mSize];
+            for (int i = 0; i < mSize; i++) {
+                Event event = mEvents[(mNext - mSize + i + mEvents.length) % mEvents.length];
+                events[i] = new Event();
+                events[i].set(event.mTime, event.mLevel, event.mTag, event.mFormat, event.mArg0,
+                              event.mArg1, event.mError, event.mSuppressed);
+            }
+        }
+        for (Event event : events) {
+            StringWriter line = new StringWriter();
+            JsonWriter json = new JsonWriter(line);
+            json.beginObject();
+            json.name("time").value(event.mTime);
+            json.name("level").value(LEVEL_NAMES[event.mLevel]);
+            json.name("tag").value(event.mTag);
+            json.name("message").value(format(event.mFormat, event.mArg0, event.mArg1));
+            json.name("format").value(event.mFormat);
+            json.name("args").beginArray();
+            if (event.mArg0 != null) {
+                json.value(String.valueOf(event.mArg0));
+            }
+            if (event.mArg1 != null) {
+                json.value(String.valueOf(event.mArg1));
+            }
+            json.endArray();
+            if (event.mSuppressed > 0) {
+                json.name("suppressed").value(event.mSuppressed);
+            }
+            if (event.mError != null) {
+                json.name("error").value(event.mError.toString());
+            }
+            json.endObject();
+            json.close();
+            out.write(line.toString());
+            out.write('\n');
+        }
+    }
+
+    /**
+     * Returns the recent events as JSON lines, see {@link #export(Writer)}
+     */
+    public String export() {
+        StringWriter out = new StringWriter();
+        try {
+            export(out);
+        } catch (IOException e) {
+            // A StringWriter doesn't throw
+            throw new AssertionError(e);
+        }
+        return out.toString();
+    }
+
+    /**
+     * Forget the recent events and the rates, for the tests
+     */
+    synchronized void clear() {
+        mRates.clear();
+        for (Event event : mEvents) {
+            event.set(0, 0, null, null, null, null, null, 0);
+        }
+        mNext = 0;
+        mSize = 0;
+    }
+
+    /**
+     * Returns the format with each "{}" replaced by the next argument
+     */
+    static String format(String format, Object arg0, Object arg1) {
+        if (format == null || (arg0 == null && arg1 == null)) {
+            return format;
+        }
+        StringBuilder message = new StringBuilder(format.length() + 32);
+        int start = 0;
+        int argument = 0;
+        while (true) {
+            int placeholder = format.indexOf("{}", start);
+            if (placeholder < 0 || argument > 1) {
+                break;
+            }
+            message.append(format, start, placeholder)
+                    .append(argument == 0 ? arg0 : arg1);
+            argument++;
+            start = placeholder + 2;
+        }
+        return message.append(format, start, format.length()).toString();
+    }
+
+    /**
+     * How often the events of one format were logged in the current window
+     */
+    private static final class Rate {
+        private long mWindowStart = Long.MIN_VALUE;
+        private int mCount;
+        private int mSuppressed;
+
+        /**
+         * Returns the number of events suppressed before this one if it may be logged, which
+         * resets it, or -1 if it is suppressed
+         */
+        int admit(long now) {
+            if (mWindowStart == Long.MIN_VALUE || now - mWindowStart >= WINDOW_MILLIS) {
+                mWindowStart = now;
+                mCount = 0;
+            }
+            if (mCount >= BURST) {
+                mSuppressed++;
+                return -1;
+            }
+            mCount++;
+            int suppressed = mSuppressed;
+            mSuppressed = 0;
+            return suppressed;
+        }
+    }
+
+    /**
+     * A slot of the ring buffer
+     */
+    private static final class Event {
+        long mTime;
+        int mLevel;
+        String mTag;
+        String mFormat;
+        Object mArg0;
+        Object mArg1;
+        Throwable mError;
+        int mSuppressed;
+
+        void set(long time, int level, String tag, String format, Object arg0, Object arg1,
+                 Throwable error, int suppressed) {
+            mTime = time;
+            mLevel = level;
+            mTag = tag;
+            mFormat = format;
+            mArg0 = arg0;
+            mArg1 = arg1;
+            mError = error;
+            mSuppressed = suppressed;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2018. Tina Taylor
+ * CREATIVE COMMONS Attribution-ShareAlike 3.0 Unported (CC BY-SA 3.0)
+ * https://creativecommons.org/licenses/by-sa/3.0/
+ */
+
+package com.freecbdhomebiz.cocktailoftheweek;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * One page of the feed of Cocktail articles: the request URLs of the same page of every series
+ * and tag the feed is made of, and the order the merged articles are shown in.
+ */
+public class FeedRequest {
+
+    private static final long MILLIS_PER_DAY = 24 * 60 * 60 * 1000L;
+
+    private final List<String> mSourceUrls;
+    private final boolean mNewestFirst;
+    private final int mPage;
+    private final int mPageSize;
+
+    /**
+     * Constructs a new FeedRequest object
+     * @param sourceUrls are the request URLs of the sources, the main series first
+     * @param newestFirst is true to show the newest articles at the top
+     * @param page is the number of the page requested from every source, starting at 1
+     * @param pageSize is the number of articles requested from every source
+     */
+    public FeedRequest(List<String> sourceUrls, boolean newestFirst, int page, int pageSize) {
+        mSourceUrls = Collections.unmodifiableList(new ArrayList<>(sourceUrls));
+        mNewestFirst = newestFirst;
+        mPage = page;
+        mPageSize = pageSize;
+    }
+
+    /**
+     * Returns the key the merged articles are cached and deduplicated under, which is the
+     * request URL of the main series
+     */
+    public String getKey() {
+        return mSourceUrls.get(0);
+    }
+
+    /**
+     * Returns the request URLs of the sources
+     */
+    public List<String> getSourceUrls() {
+        return mSourceUrls;
+    }
+
+    /**
+     * Returns true if the newest articles are shown at the top
+     */
+    public boolean isNewestFirst() {
+        return mNewestFirst;
+    }
+
+    /**
+     * Returns the number of the page requested from every source, starting at 1
+     */
+    public int getPage() {
+        return mPage;
+    }
+
+    /**
+     * Returns the number of articles requested from every source
+     */
+    public int getPageSize() {
+        return mPageSize;
+    }
+
+    /**
+     * Returns true if new articles show up on this page, so a stored copy of it can be brought
+     * up to date by only asking for the articles published since. That is the first page of
+     * the newest first order, new articles end up on the last page of the oldest first one.
+     */
+    public boolean canFetchSince() {
+        return mPage == 1 && mNewestFirst;
+    }
+
+    /**
+     * Returns the request for the articles of the same sources published on the day of the
+     * given time or later, with the Content API's from-date parameter. The day starts a day
+     * early, so a difference between the time zone of the API and UTC can't drop an article;
+     * the articles that come back twice are merged by FeedSync.
+     *
+     * @param date is a publication date in epoch milliseconds
+     */
+    public FeedRequest since(long date) {
+        String fromDate = "from-date=" + isoDay(date - MILLIS_PER_DAY);
+        List<String> urls = new ArrayList<>(mSourceUrls.size());
+        for (String url : mSourceUrls) {
+            urls.add(url + (url.indexOf('?') < 0 ? '?' : '&') + fromDate);
+        }
+        return new FeedRequest(urls, mNewestFirst, mPage, mPageSize);
+    }
+
+    /**
+     * Returns the day of the time in epoch milliseconds in UTC, such as "2018-07-14". The
+     * reverse of the date part of CocktailJsonParser.parseDate(), see
+     * http://howardhinnant.github.io/date_algorithms.html#civil_from_days
+     */
+    static String isoDay(long millis) {
+        // Publication dates are never before 1970, so plain division rounds down
+        long days = Math.max(millis, 0) / MILLIS_PER_DAY + 719468;
+        long era = days / 146097;
+        long dayOfEra = days - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096)
+                / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long monthIndex = (5 * dayOfYear + 2) / 153;
+        long day = dayOfYear - (153 * monthIndex + 2) / 5 + 1;
+        long month = monthIndex < 10 ? monthIndex + 3 : monthIndex - 9;
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+        return String.format(Locale.US, "%04d-%02d-%02d", year, month, day);
+    }
+}
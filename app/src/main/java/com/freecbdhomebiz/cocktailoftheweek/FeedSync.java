@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2018. Tina Taylor
+ * CREATIVE COMMONS Attribution-ShareAlike 3.0 Unported (CC BY-SA 3.0)
+ * https://creativecommons.org/licenses/by-sa/3.0/
+ */
+
+package com.freecbdhomebiz.cocktailoftheweek;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Brings the articles stored in the {@link ArticleCache} for a {@link FeedRequest} up to date.
+ * The series publish about once a week, so most of the time the stored first page already
+ * holds all but one or two of the articles. Instead of fetching the whole page again, with the
+ * body blocks of every article, only the articles published since the newest stored one are
+ * asked for and merged into the stored list, which costs a few kilobytes instead of the whole
+ * payload.
+ * <p>
+ * The page is fetched whole when there is nothing stored yet, when new articles don't show up
+ * on it (any page but the first of the newest first order), when more articles were published
+ * than fit a page, and every {@link ArticleCache#FULL_FETCH_INTERVAL_MILLIS} so that edited or
+ * removed articles are noticed. Used by CocktailPipeline while the app is open and by
+ * CocktailSyncService in the background.
+ * <p>
+ * A feed that is partial because a source failed is returned to be shown but not stored. The
+ * stored articles stay as they were until every source answers, so the next delta doesn't
+ * skip what the failed source published in the meantime.
+ */
+public class FeedSync {
+
+    private final MultiSourceFetcher mFetcher;
+    private final ArticleCache mCache;
+
+    /**
+     * Constructs a new {@link FeedSync}
+     *
+     * @param fetcher fetches the sources of the requests
+     * @param cache holds the articles last fetched for each request, and receives the new ones
+     */
+    public FeedSync(MultiSourceFetcher fetcher, ArticleCache cache) {
+        mFetcher = fetcher;
+        mCache = cache;
+    }
+
+    /**
+     * Fetch what changed in the articles of the request since they were stored, store the new
+     * list and return it. Blocks until the sources answered, so call it on a background thread.
+     *
+     * @param cached is the entry stored for the request, or null if there is none
+     * @param cancellation cancels the requests, or null
+     * @return the new list of articles, a "not modified" response if none of them changed, or
+     * null if the Guardian couldn't be reached or the sync was canceled. A partial list, see
+     * {@link CocktailResponse#isPartial()}, was not stored.
+     */
+    public CocktailResponse sync(FeedRequest request, ArticleCache.Entry cached,
+                                 CancellationToken cancellation) {
+        String key = request.getKey();
+        if (cached != null && request.canFetchSince()
+                && !cached.isFullFetchDue(System.currentTimeMillis())) {
+            CocktailResponse since = mFetcher.fetch(request.since(cached.getNewestDate()), null,
+                                                    null, cancellation);
+            if (isCanceled(cancellation) || since == null || since.getCocktails() == null) {
+                return null;
+            }
+            // A full page of new articles may not be all of them, so the whole page has to be
+            // fetched to be sure nothing is left out between the new and the stored ones. The
+            // newest date of a partial delta would skip what the failed source published.
+            if (since.getCocktails().size() < request.getPageSize() && !since.isPartial()) {
+                return merge(key, request, cached, since.getCocktails());
+            }
+        }
+
+        CocktailResponse response = mFetcher.fetch(request, stored(request, cached),
+                                                   cancellation);
+        if (isCanceled(cancellation) || response == null) {
+            return null;
+        }
+        storeSources(request, response);
+        if (response.isNotModified()) {
+            mCache.touch(key, response);
+            return response;
+        }
+        if (response.getCocktails() == null) {
+            return null;
+        }
+        if (!response.isPartial()) {
+            mCache.put(key, response);
+        }
+        return response;
+    }
+
+    /**
+     * Returns what is stored for each source of the request, for the fetcher to revalidate.
+     * The validators are only worth sending when we have the articles they describe: a single
+     * source has them in the entry of the request, the sources of a merged feed each in an
+     * entry of their own.
+     */
+    private List<CocktailResponse> stored(FeedRequest request, ArticleCache.Entry cached) {
+        List<String> urls = request.getSourceUrls();
+        if (urls.size() == 1) {
+            return cached == null ? null : Collections.singletonList(
+                    new CocktailResponse(null, cached.getEtag(), cached.getLastModified()));
+        }
+        List<CocktailResponse> stored = new ArrayList<>(urls.size());
+        for (String url : urls) {
+            ArticleCache.Entry entry = mCache.get(ArticleCache.sourceKey(url));
+            stored.add(entry == null ? null : new CocktailResponse(
+                    entry.getCocktails(), entry.getEtag(), entry.getLastModified()));
+        }
+        return stored;
+    }
+
+    /**
+     * Store the response of each source of a merged feed, so its validators can be sent the
+     * next time
+     */
+    private void storeSources(FeedRequest request, CocktailResponse response) {
+        List<CocktailResponse> sources = response.getSources();
+        for (int i = 0; i < sources.size(); i++) {
+            if (sources.get(i) != null) {
+                mCache.put(ArticleCache.sourceKey(request.getSourceUrls().get(i)),
+                           sources.get(i));
+            }
+        }
+    }
+
+    /**
+     * Merge the articles published since the stored ones into them and store the result, as
+     * fetched now but not fetched whole
+     */
+    private CocktailResponse merge(String key, FeedRequest request, ArticleCache.Entry cached,
+                                   List<Cocktail> since) {
+        List<Cocktail> merged = merge(cached.getCocktails(), since, request.isNewestFirst(),
+                                      request.getSourceUrls().size() * request.getPageSize());
+        CocktailResponse response = new CocktailResponse(merged, cached.getEtag(),
+                                                         cached.getLastModified());
+        mCache.put(key, response, cached.getFullyFetchedAt());
+        Metrics.getInstance().increment(Metrics.DELTA_SYNCS);
+        if (merged.equals(cached.getCocktails())) {
+            return new CocktailResponse(null, cached.getEtag(), cached.getLastModified(), true);
+        }
+        return response;
+    }
+
+    /**
+     * Returns the stored articles with the ones published since merged in, in the order of the
+     * feed and each article only once. An article that is in both lists was edited since it
+     * was stored, so the new one is kept. The list is cut to maxSize, the most a whole page of
+     * the feed holds: the articles that drop off the end of the first page are at the top of
+     * the second.
+     */
+    static List<Cocktail> merge(List<Cocktail> stored, List<Cocktail> since, boolean newestFirst,
+                                int maxSize) {
+        List<Cocktail> merged = MultiSourceFetcher.merge(Arrays.asList(since, stored),
+                                                         newestFirst);
+        if (merged.size() > maxSize) {
+            merged = new ArrayList<>(merged.subList(0, maxSize));
+        }
+        return merged;
+    }
+
+    private static boolean isCanceled(CancellationToken cancellation) {
+        return cancellation != null && cancellation.isCanceled();
+    }
+}
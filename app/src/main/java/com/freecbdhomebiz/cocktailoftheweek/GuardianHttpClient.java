@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2018. Tina Taylor
+ * CREATIVE COMMONS Attribution-ShareAlike 3.0 Unported (CC BY-SA 3.0)
+ * https://creativecommons.org/licenses/by-sa/3.0/
+ */
+
+package com.freecbdhomebiz.cocktailoftheweek;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.ConnectionPool;
+import okhttp3.OkHttpClient;
+
+/**
+ * The one HTTP client all the requests of the app go through, so they share its pool of open
+ * connections. A page, the next page and the other sources of the feed reuse a kept-alive
+ * connection to the Guardian instead of paying for a new TCP and TLS handshake each time. When
+ * a new connection is needed, the TLS session of the last one is resumed, and where the
+ * platform supports ALPN (Android 5.0 and up) requests are multiplexed over one HTTP/2
+ * connection. Where the time of each request goes is recorded in the {@link Metrics}.
+ */
+public final class GuardianHttpClient {
+
+    /**
+     * Default time to wait for the connection to open
+     */
+    public static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 15000;
+
+    /**
+     * Default time to wait for each read of the response
+     */
+    public static final int DEFAULT_READ_TIMEOUT_MILLIS = 10000;
+
+    /**
+     * Most idle connections kept open, and how long they are kept
+     */
+    private static final int MAX_IDLE_CONNECTIONS = 5;
+    private static final long KEEP_ALIVE_MINUTES = 5;
+
+    private static OkHttpClient sClient;
+
+    /**
+     * The clients with other timeouts than the shared one, by their timeouts, guarded by the
+     * class. There are only ever a couple of them, the fetcher of the feed asks for one.
+     */
+    private static final Map<Long, OkHttpClient> sClientsByTimeouts = new HashMap<>();
+
+    /**
+     * No one should ever create a {@link GuardianHttpClient} object, it only holds the client
+     */
+    private GuardianHttpClient() {
+    }
+
+    /**
+     * Returns the shared client, with the default timeouts
+     */
+    public static synchronized OkHttpClient get() {
+        if (sClient == null) {
+            sClient = new OkHttpClient.Builder()
+                    .connectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_MINUTES,
+                                                       TimeUnit.MINUTES))
+                    .connectTimeout(DEFAULT_CONNECT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)
+                    .readTimeout(DEFAULT_READ_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)
+                    .eventListenerFactory(MetricsEventListener.FACTORY)
+                    .build();
+        }
+        return sClient;
+    }
+
+    /**
+     * Returns a client with the given timeouts that shares the connections of the shared one.
+     * It is built the first time the timeouts are asked for and kept for the next requests.
+     */
+    public static synchronized OkHttpClient get(int connectTimeoutMillis,
+                                                int readTimeoutMillis) {
+        if (connectTimeoutMillis < 0 || readTimeoutMillis < 0) {
+            throw new IllegalArgumentException("timeouts can't be negative");
+        }
+        OkHttpClient client = get();
+        if (client.connectTimeoutMillis() == connectTimeoutMillis
+                && client.readTimeoutMillis() == readTimeoutMillis) {
+            return client;
+        }
+        Long key = ((long) connectTimeoutMillis << 32) | readTimeoutMillis;
+        OkHttpClient derived = sClientsByTimeouts.get(key);
+        if (derived == null) {
+            derived = client.newBuilder()
+                    .connectTimeout(connectTimeoutMillis, TimeUnit.MILLISECONDS)
+                    .readTimeout(readTimeoutMillis, TimeUnit.MILLISECONDS)
+                    .build();
+            sClientsByTimeouts.put(key, derived);
+        }
+        return derived;
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2018. Tina Taylor
+ * CREATIVE COMMONS Attribution-ShareAlike 3.0 Unported (CC BY-SA 3.0)
+ * https://creativecommons.org/licenses/by-sa/3.0/
+ */
+
+package com.freecbdhomebiz.cocktailoftheweek;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URLEncoder;
+
+/**
+ * Builds the request URLs of the Guardian Content API. Every screen asks only for the fields
+ * and blocks it shows, with a {@link Profile}: the body blocks hold the whole HTML of an
+ * article, which is most of the size of a response, so the list leaves them out and takes the
+ * short trailText as the summary of each row instead. Only the article reader asks for the
+ * body.
+ *
+ * Kept free of Android classes so it can be unit tested.
+ */
+public final class GuardianRequest {
+
+    /**
+     * URL for querying the Guardian website server for JSON response
+     */
+    static final String GUARDIAN_REQUEST_URL = "https://content.guardianapis.com/";
+
+    /**
+     * The show-fields and show-blocks selectors of a request
+     */
+    public static final class Profile {
+
+        private final String mShowFields;
+        private final String mShowBlocks;
+
+        /**
+         * Constructs a new Profile
+         * @param showFields is the comma separated list of fields, or null for none
+         * @param showBlocks is the comma separated list of blocks, or null for none
+         */
+        Profile(String showFields, String showBlocks) {
+            mShowFields = showFields;
+            mShowBlocks = showBlocks;
+        }
+
+        /**
+         * Returns the fields asked for, or null if none are
+         */
+        public String getShowFields() {
+            return mShowFields;
+        }
+
+        /**
+         * Returns the blocks asked for, or null if none are
+         */
+        public String getShowBlocks() {
+            return mShowBlocks;
+        }
+    }
+
+    /**
+     * A row of the list: the byline, the thumbnail and the trailText as the summary, without
+     * any blocks
+     */
+    public static final Profile LIST = new Profile("byline,thumbnail,trailText", null);
+
+    /**
+     * The article reader: the HTML of all the body blocks, the heading comes with the row
+     */
+    public static final Profile ARTICLE = new Profile(null, "body");
+
+    /**
+     * Create a private constructor because no one should ever create a
+     * {@link GuardianRequest} object. It only holds static methods.
+     */
+    private GuardianRequest() {
+    }
+
+    /**
+     * Returns the URL of a page of one series or tag, in the given order, with the
+     * {@link #LIST} profile
+     *
+     * @param source is the ID of the series or tag, such as "food/cocktails"
+     * @param order is the order-by value, "newest" or "oldest"
+     * @param page is the number of the page, starting at 1
+     * @param pageSize is the number of articles on a page
+     * @param apiKey is the key of the Content API
+     */
+    public static String listUrl(String source, String order, int page, int pageSize,
+                                 String apiKey) {
+        StringBuilder url = new StringBuilder(GUARDIAN_REQUEST_URL).append(source);
+        appendParameter(url, "order-by", order);
+        appendProfile(url, LIST);
+        appendParameter(url, "page", String.valueOf(page));
+        appendParameter(url, "page-size", String.valueOf(pageSize));
+        appendParameter(url, "api-key", apiKey);
+        return url.toString();
+    }
+
+    /**
+     * Returns the URL of the article with the given web page, with the {@link #ARTICLE}
+     * profile, or null if it is not a Guardian article. The ID of an article in the API is the
+     * path of its web page.
+     */
+    public static String articleUrl(String webUrl, String apiKey) {
+        if (webUrl == null) {
+            return null;
+        }
+        URI webUri;
+        try {
+            webUri = new URI(webUrl);
+        } catch (URISyntaxException e) {
+            return null;
+        }
+        String path = webUri.getRawPath();
+        if (webUri.getHost() == null || !webUri.getHost().endsWith("theguardian.com")
+                || path == null || path.length() < 2) {
+            return null;
+        }
+        StringBuilder url = new StringBuilder(GUARDIAN_REQUEST_URL).append(path.substring(1));
+        appendProfile(url, ARTICLE);
+        appendParameter(url, "api-key", apiKey);
+        return url.toString();
+    }
+
+    /**
+     * Append the selectors of the profile that ask for something
+     */
+    private static void appendProfile(StringBuilder url, Profile profile) {
+        if (profile.getShowFields() != null) {
+            appendParameter(url, "show-fields", profile.getShowFields());
+        }
+        if (profile.getShowBlocks() != null) {
+            appendParameter(url, "show-blocks", profile.getShowBlocks());
+        }
+    }
+
+    /**
+     * Append the query parameter with its value encoded, starting the query if there is none
+     */
+    private static void appendParameter(StringBuilder url, String name, String value) {
+        url.append(url.indexOf("?") < 0 ? '?' : '&').append(name).append('=');
+        try {
+            url.append(URLEncoder.encode(value, "UTF-8"));
+        } catch (UnsupportedEncodingException e) {
+            // Every Java platform supports UTF-8
+            throw new AssertionError(e);
+        }
+    }
+}
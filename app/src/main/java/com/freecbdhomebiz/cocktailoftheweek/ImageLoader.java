@@ -0,0 +1,255 @@
+/*
+ * Copyright (c) 2018. Tina Taylor
+ * CREATIVE COMMONS Attribution-ShareAlike 3.0 Unported (CC BY-SA 3.0)
+ * https://creativecommons.org/licenses/by-sa/3.0/
+ */
+
+package com.freecbdhomebiz.cocktailoftheweek;
+
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import okhttp3.Call;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * Loads images by URL in the background, for rows of a list that come and go while the user
+ * scrolls. An image is looked for in three places, from the fastest to the slowest: decoded
+ * in memory, downloaded in the disk cache, and on the network through the shared
+ * {@link GuardianHttpClient}. It is decoded no larger than the view it is for, and the decoded
+ * image is kept in memory at that size. A row that is recycled cancels its request, which
+ * stops its download and decoding and makes sure its image is never delivered to the row's
+ * next article.
+ * <p>
+ * What an image is decoded into is up to the {@link Decoder}, the app decodes Bitmaps with
+ * ThumbnailLoader. Kept free of Android classes so it can be unit tested.
+ *
+ * @param <T> is the type of a decoded image
+ */
+public class ImageLoader<T> {
+
+    /**
+     * Downloads larger than this are not images the app can use, and are dropped
+     */
+    static final int MAX_DOWNLOAD_BYTES = 2 * 1024 * 1024;
+
+    /**
+     * Decodes downloaded images
+     */
+    public interface Decoder<T> {
+
+        /**
+         * Returns the image decoded no larger than needed to fill width by height pixels, or
+         * null if the bytes are not an image. Called on a background thread.
+         */
+        T decode(byte[] bytes, int width, int height);
+
+        /**
+         * Returns the bytes of memory the decoded image takes up
+         */
+        long sizeOf(T image);
+    }
+
+    /**
+     * Receives the image of a request that was not canceled
+     */
+    public interface Target<T> {
+
+        /**
+         * Called on the delivery executor with the image, or with null if it couldn't be
+         * loaded
+         */
+        void onImageLoaded(T image);
+    }
+
+    private final Decoder<T> mDecoder;
+    private final LruMemoryCache<String, T> mMemoryCache;
+    private final DiskLruCache mDiskCache;
+    private final ExecutorService mExecutor;
+    private final Executor mDelivery;
+
+    /**
+     * Constructs a new {@link ImageLoader}
+     *
+     * @param decoder decodes the downloaded images
+     * @param memoryBytes is the most memory the decoded images kept in memory may take up
+     * @param diskCache keeps the downloaded images
+     * @param executor downloads and decodes the images
+     * @param delivery runs the callbacks of the targets, on the UI thread in the app
+     */
+    public ImageLoader(final Decoder<T> decoder, long memoryBytes, DiskLruCache diskCache,
+                       ExecutorService executor, Executor delivery) {
+        mDecoder = decoder;
+        mMemoryCache = new LruMemoryCache<String, T>(memoryBytes) {
+            @Override
+            protected long sizeOf(String key, T image) {
+                return decoder.sizeOf(image);
+            }
+        };
+        mDiskCache = diskCache;
+        mExecutor = executor;
+        mDelivery = delivery;
+    }
+
+    /**
+     * Load the image at the URL for a view of width by height pixels. An image already decoded
+     * at that size is handed to the target straight away, on the calling thread, otherwise it
+     * is loaded in the background and handed to the target on the delivery executor, unless
+     * the returned request was canceled in the meantime.
+     */
+    public ImageRequest load(String url, int width, int height, Target<T> target) {
+        String key = memoryKey(url, width, height);
+        T image = mMemoryCache.get(key);
+        ImageRequest request = new ImageRequest();
+        if (image != null) {
+            target.onImageLoaded(image);
+            return request;
+        }
+        Job job = new Job(request, url, key, width, height, target);
+        request.mFuture = mExecutor.submit(job);
+        return request;
+    }
+
+    /**
+     * Returns the cache of the decoded images
+     */
+    LruMemoryCache<String, T> getMemoryCache() {
+        return mMemoryCache;
+    }
+
+    /**
+     * Returns the key of an image decoded for a view of the given size
+     */
+    static String memoryKey(String url, int width, int height) {
+        return width + "x" + height + " " + url;
+    }
+
+    /**
+     * Download the image, or return null if it can't be downloaded or the request was canceled
+     */
+    private static byte[] download(String url, CancellationToken cancellation) {
+        Call call = GuardianHttpClient.get().newCall(new Request.Builder().url(url).build());
+        if (!cancellation.attach(call)) {
+            return null;
+        }
+        Response response = null;
+        try {
+            response = call.execute();
+            ResponseBody body = response.body();
+            if (response.code() != 200 || body == null
+                    || body.contentLength() > MAX_DOWNLOAD_BYTES) {
+                return null;
+            }
+            byte[] bytes = body.bytes();
+            return bytes.length > MAX_DOWNLOAD_BYTES ? null : bytes;
+        } catch (IOException | IllegalArgumentException e) {
+            // The network failed, the URL was not valid, or the request was canceled
+            return null;
+        } finally {
+            cancellation.detach();
+            if (response != null) {
+                response.close();
+            }
+        }
+    }
+
+    /**
+     * A running image load, which a recycled row cancels
+     */
+    public static final class ImageRequest {
+
+        private final CancellationToken mCancellation = new CancellationToken();
+
+        private volatile Future<?> mFuture;
+
+        /**
+         * Stop loading the image, and never hand it to the target. Call on the delivery thread,
+         * so a delivery that is already queued sees it.
+         */
+        public void cancel() {
+            mCancellation.cancel();
+            Future<?> future = mFuture;
+            if (future != null) {
+                future.cancel(false);
+            }
+        }
+
+        /**
+         * Returns true once cancel() was called
+         */
+        public boolean isCanceled() {
+            return mCancellation.isCanceled();
+        }
+    }
+
+    /**
+     * Loads the image of one request on a background thread
+     */
+    private final class Job implements Runnable {
+        private final ImageRequest mRequest;
+        private final String mUrl;
+        private final String mKey;
+        private final int mWidth;
+        private final int mHeight;
+        private final Target<T> mTarget;
+
+        Job(ImageRequest request, String url, String key, int width, int height,
+            Target<T> target) {
+            mRequest = request;
+            mUrl = url;
+            mKey = key;
+            mWidth = width;
+            mHeight = height;
+            mTarget = target;
+        }
+
+        @Override
+        public void run() {
+            final T image = loadImage();
+            if (mRequest.isCanceled()) {
+                return;
+            }
+            mDelivery.execute(new Runnable() {
+                @Override
+                public void run() {
+                    // The row may have been recycled while the image was on its way
+                    if (!mRequest.isCanceled()) {
+                        mTarget.onImageLoaded(image);
+                    }
+                }
+            });
+        }
+
+        private T loadImage() {
+            // Another row may have loaded the same image in the meantime
+            T image = mMemoryCache.get(mKey);
+            if (image != null) {
+                return image;
+            }
+            byte[] bytes = mDiskCache.get(mUrl);
+            if (bytes == null) {
+                if (mRequest.isCanceled()) {
+                    return null;
+                }
+                bytes = download(mUrl, mRequest.mCancellation);
+                if (bytes == null) {
+                    return null;
+                }
+                mDiskCache.put(mUrl, bytes);
+            }
+            if (mRequest.isCanceled()) {
+                // Keep the download for the next time the row is shown, but don't decode it
+                return null;
+            }
+            image = mDecoder.decode(bytes, mWidth, mHeight);
+            if (image != null) {
+                mMemoryCache.put(mKey, image);
+            }
+            return image;
+        }
+    }
+}
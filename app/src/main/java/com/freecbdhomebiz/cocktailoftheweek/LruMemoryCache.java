@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2018. Tina Taylor
+ * CREATIVE COMMONS Attribution-ShareAlike 3.0 Unported (CC BY-SA 3.0)
+ * https://creativecommons.org/licenses/by-sa/3.0/
+ */
+
+package com.freecbdhomebiz.cocktailoftheweek;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A cache in memory that holds at most maxSize worth of values, and drops the least recently
+ * used ones to make room for new ones. What a value is worth is up to sizeOf(), the number of
+ * bytes of a decoded image for instance. It works like android.util.LruCache, but is kept free
+ * of Android classes so it can be unit tested. It is safe to use from several threads, and
+ * gives memory back through the {@link CacheRegistry} it is registered with.
+ */
+public abstract class LruMemoryCache<K, V> implements TrimmableCache {
+
+    /**
+     * The values in order of use, the least recently used first, guarded by this
+     */
+    private final LinkedHashMap<K, V> mMap = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final long mMaxSize;
+
+    /**
+     * Sum of the sizes of the values, and statistics of the cache, guarded by this
+     */
+    private long mSize;
+    private long mHitCount;
+    private long mMissCount;
+    private long mEvictionCount;
+
+    /**
+     * Constructs a new {@link LruMemoryCache}
+     *
+     * @param maxSize is the most the values may be worth together
+     */
+    public LruMemoryCache(long maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize <= 0");
+        }
+        mMaxSize = maxSize;
+    }
+
+    /**
+     * Returns what the value is worth, in the same unit as maxSize. It must not change while
+     * the value is in the cache.
+     */
+    protected abstract long sizeOf(K key, V value);
+
+    /**
+     * Returns the value of the key, which becomes the most recently used one, or null if it is
+     * not in the cache
+     */
+    public synchronized V get(K key) {
+        V value = mMap.get(key);
+        if (value == null) {
+            mMissCount++;
+        } else {
+            mHitCount++;
+        }
+        return value;
+    }
+
+    /**
+     * Returns true if the key has a value in the cache, without making it the most recently
+     * used one or counting a hit or a miss
+     */
+    public synchronized boolean contains(K key) {
+        return mMap.containsKey(key);
+    }
+
+    /**
+     * Store the value for the key, replacing the value it had, and drop the least recently used
+     * values if the cache is over its size. A value worth more than the whole cache is not
+     * stored.
+     */
+    public synchronized void put(K key, V value) {
+        if (key == null || value == null) {
+            throw new NullPointerException("key and value can't be null");
+        }
+        long size = sizeOf(key, value);
+        V previous = mMap.remove(key);
+        if (previous != null) {
+            mSize -= sizeOf(key, previous);
+        }
+        if (size > mMaxSize) {
+            return;
+        }
+        mMap.put(key, value);
+        mSize += size;
+        trimToSize(mMaxSize);
+    }
+
+    /**
+     * Drop the value of the key, if it is in the cache
+     */
+    public synchronized void remove(K key) {
+        V previous = mMap.remove(key);
+        if (previous != null) {
+            mSize -= sizeOf(key, previous);
+        }
+    }
+
+    /**
+     * Drop the least recently used values until the rest is worth at most maxSize
+     */
+    @Override
+    public synchronized void trimToSize(long maxSize) {
+        Iterator<Map.Entry<K, V>> entries = mMap.entrySet().iterator();
+        while (mSize > maxSize && entries.hasNext()) {
+            Map.Entry<K, V> eldest = entries.next();
+            mSize -= sizeOf(eldest.getKey(), eldest.getValue());
+            entries.remove();
+            mEvictionCount++;
+        }
+    }
+
+    /**
+     * Drop every value
+     */
+    public synchronized void evictAll() {
+        trimToSize(0);
+    }
+
+    /**
+     * Returns what the values in the cache are worth together
+     */
+    @Override
+    public synchronized long size() {
+        return mSize;
+    }
+
+    /**
+     * Returns the most the values may be worth together
+     */
+    public long maxSize() {
+        return mMaxSize;
+    }
+
+    /**
+     * Returns the number of values in the cache
+     */
+    public synchronized int count() {
+        return mMap.size();
+    }
+
+    /**
+     * Returns how often get() found a value
+     */
+    @Override
+    public synchronized long hitCount() {
+        return mHitCount;
+    }
+
+    /**
+     * Returns how often get() found nothing
+     */
+    @Override
+    public synchronized long missCount() {
+        return mMissCount;
+    }
+
+    /**
+     * Returns how many values were dropped to make room
+     */
+    public synchronized long evictionCount() {
+        return mEvictionCount;
+    }
+}
@@ -6,22 +6,27 @@
 
 package com.freecbdhomebiz.cocktailoftheweek;
 
-import android.app.LoaderManager;
+import android.arch.lifecycle.Observer;
+import android.arch.lifecycle.ViewModelProviders;
 import android.content.Context;
 import android.content.Intent;
-import android.content.Loader;
 import android.content.SharedPreferences;
+import android.graphics.Rect;
 import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
-import android.net.Uri;
+import android.os.Build;
 import android.os.Bundle;
+import android.os.Looper;
+import android.os.MessageQueue;
 import android.preference.PreferenceManager;
 import android.support.v7.app.AppCompatActivity;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.support.v7.widget.SearchView;
+import android.text.TextUtils;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
-import android.widget.AdapterView;
-import android.widget.ListView;
 import android.widget.ProgressBar;
 import android.widget.TextView;
 
@@ -30,10 +35,9 @@ import java.util.List;
 
 import static com.freecbdhomebiz.cocktailoftheweek.BuildConfig.MY_GUARDIAN_API;
 
-public class MainActivity extends AppCompatActivity implements LoaderManager
-        .LoaderCallbacks<List<Cocktail>> {
+public class MainActivity extends AppCompatActivity {
 
-    private ListView mlistView;
+    private RecyclerView mlistView;
     private TextView mEmptyView;
     private ProgressBar mSpinningCircle;
 
@@ -44,74 +48,176 @@ public class MainActivity extends AppCompatActivity implements LoaderManager
     }
 
     /**
-     * URL for querying the Guardian website server for JSON response
+     * The Guardian series and tags the feed is made of, fetched at the same time and merged.
+     * The main series comes first, its request URL is the key the feed is cached under.
      */
-    private static final String GUARDIAN_REQUEST_URL =
-            "https://content.guardianapis.com/lifeandstyle/series/the-good-mixer";
+    private static final String[] FEED_SOURCES = {
+            "lifeandstyle/series/the-good-mixer",
+            "food/series/cocktail-of-the-week",
+            "food/cocktails"
+    };
 
     /**
-     * Constant value for the Cocktail loader ID. Only 1 loader.
+     * Number of articles requested per page
      */
-    private static final int COCKTAIL_LOADER_ID = 1;
+    static final int PAGE_SIZE = 20;
+
+    /**
+     * The next page is requested once the user scrolls within this many items of the end
+     */
+    private static final int PREFETCH_DISTANCE = 5;
+
     /**
      * Adapter for the list of Cocktail articles
      */
     private CocktailAdapter mAdapter;
 
+    /**
+     * Holds the articles of all the pages loaded so far
+     */
+    private CocktailViewModel mViewModel;
+
+    /**
+     * All the articles in the list, the first page followed by the pages appended to it
+     */
+    private List<PreparedCocktail> mCocktails = new ArrayList<>();
+
+    /**
+     * The text in the search box, or null while the whole series is shown
+     */
+    private String mQuery;
+
+    /**
+     * Runs prefetchVisibleArticles(), posted when the rows of the list change
+     */
+    private final Runnable mPrefetchVisibleArticles = new Runnable() {
+        @Override
+        public void run() {
+            prefetchVisibleArticles();
+        }
+    };
+
+    /**
+     * Time in nanoseconds when the activity was created, or 0 once the first rows are shown
+     */
+    private long mCreatedAt;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        mCreatedAt = System.nanoTime();
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
         assignViews();
-        mlistView.setEmptyView(mEmptyView);
 
-        // Create a new adapter that takes an empty list of Cocktails as input
-        mAdapter = new CocktailAdapter(this, new ArrayList<Cocktail>());
+        // Dates of the last week show as "Yesterday" or "3 days ago" in the user's language
+        DateLabels.install(this);
+
+        // Create a new adapter with a click listener, which opens the article in the reader.
+        // The articles on screen were prefetched, so it usually shows up straight away.
+        mAdapter = new CocktailAdapter(new CocktailAdapter.OnCocktailClickListener() {
+            @Override
+            public void onCocktailClick(PreparedCocktail currentCocktail) {
+                startActivity(ArticleActivity.newIntent(MainActivity.this, currentCocktail));
+            }
+        });
+
+        // The empty view is only visible when the list has no items. New rows are prefetched
+        // once they are laid out.
+        mAdapter.registerAdapterDataObserver(new RecyclerView.AdapterDataObserver() {
+            @Override
+            public void onChanged() {
+                updateEmptyView();
+                schedulePrefetch();
+            }
+
+            @Override
+            public void onItemRangeInserted(int positionStart, int itemCount) {
+                updateEmptyView();
+                schedulePrefetch();
+            }
+
+            @Override
+            public void onItemRangeRemoved(int positionStart, int itemCount) {
+                updateEmptyView();
+            }
+        });
 
-        // Set the adapter on the {@link ListView}
+        // Set the layout manager and adapter on the {@link RecyclerView}, with a gap between rows
+        final LinearLayoutManager layoutManager = new LinearLayoutManager(this);
+        mlistView.setLayoutManager(layoutManager);
         mlistView.setAdapter(mAdapter);
+        final int dividerHeight = getResources().getDimensionPixelSize(
+                R.dimen.list_divider_height);
+        mlistView.addItemDecoration(new RecyclerView.ItemDecoration() {
+            @Override
+            public void getItemOffsets(Rect outRect, View view, RecyclerView parent,
+                                       RecyclerView.State state) {
+                outRect.bottom = dividerHeight;
+            }
+        });
 
-        // Set an item click listener on the ListView, which sends an intent to a web browser
-        // to open a web page with the article about the Cocktail.
-        mlistView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
+        // Fetch the next page of the series before the user reaches the end of the list
+        mlistView.addOnScrollListener(new RecyclerView.OnScrollListener() {
             @Override
-            public void onItemClick(AdapterView<?> adapterView, View view, int position, long l) {
-                // Find the current Cocktail article that was clicked on
-                Cocktail currentCocktail = (Cocktail) mAdapter.getItem(position);
+            public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
+                // Only once the list comes to rest, not for every row flung past
+                if (newState == RecyclerView.SCROLL_STATE_IDLE) {
+                    prefetchVisibleArticles();
+                }
+            }
 
-                // Convert the String URL into a URI object (to pass into the Intent constructor)
-                Uri cocktailUri = Uri.parse(currentCocktail.getUrl());
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                int totalItemCount = layoutManager.getItemCount();
+                if (mQuery == null && totalItemCount > 0
+                        && layoutManager.findLastVisibleItemPosition()
+                        >= totalItemCount - 1 - PREFETCH_DISTANCE) {
+                    mViewModel.loadNextPage();
+                }
+            }
+        });
 
-                // Create a new intent to view the Cocktail URI
-                Intent websiteIntent = new Intent(Intent.ACTION_VIEW, cocktailUri);
+        // Keep the stored articles up to date in the background, so they are already there
+        // the next time the app is opened. Scheduling talks to the JobScheduler, so it waits
+        // until the first frame is drawn and the UI thread has nothing else to do.
+        Looper.myQueue().addIdleHandler(new MessageQueue.IdleHandler() {
+            @Override
+            public boolean queueIdle() {
+                CocktailSyncService.schedule(MainActivity.this);
+                return false;
+            }
+        });
 
-                // Send the intent to launch a new activity
-                startActivity(websiteIntent);
+        // Get the ViewModel that keeps the articles while the activity is recreated, and show
+        // its list whenever it changes. It shows the stored articles even without a network
+        // connection.
+        mViewModel = ViewModelProviders.of(this).get(CocktailViewModel.class);
+        mViewModel.getCocktails().observe(this, new Observer<List<PreparedCocktail>>() {
+            @Override
+            public void onChanged(List<PreparedCocktail> cocktails) {
+                showCocktails(cocktails);
             }
         });
+    }
 
+    @Override
+    protected void onStart() {
+        super.onStart();
+        // Load the first page, or revalidate it if it is stale or the order was changed
+        mViewModel.start();
+    }
+
+    /**
+     * Returns true if there is a network connection
+     */
+    private boolean isConnected() {
         // Get a reference to the ConnectivityManager to check state of network connectivity
         ConnectivityManager connMgr = (ConnectivityManager)
                 getSystemService(Context.CONNECTIVITY_SERVICE);
 
         // Get details on the currently active default data network
         NetworkInfo networkInfo = connMgr.getActiveNetworkInfo();
-        // If there is a network connection, fetch data
-        if (networkInfo != null && networkInfo.isConnected()) {
-            // Get a reference to the LoaderManager, in order to interact with loaders.
-            LoaderManager loaderManager = getLoaderManager();
-
-            // Initialize the loader. Pass in the loader ID, and null for the bundle, and this
-            // activity
-            loaderManager.initLoader(COCKTAIL_LOADER_ID, null, MainActivity.this);
-        } else {
-            // Otherwise, display error
-            // First, hide ProgressBaar loading indicator so error message will be visible
-            mSpinningCircle.setVisibility(View.GONE);
-
-            // Update empty state with no connection error message
-            mEmptyView.setText(R.string.no_internet_connection);
-        }
+        return networkInfo != null && networkInfo.isConnected();
     }
 
     /**
@@ -120,9 +226,69 @@ public class MainActivity extends AppCompatActivity implements LoaderManager
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         getMenuInflater().inflate(R.menu.main, menu);
+
+        // Search the articles on the phone while the user types
+        MenuItem searchItem = menu.findItem(R.id.action_search);
+        final SearchView searchView = (SearchView) searchItem.getActionView();
+        searchView.setQueryHint(getString(R.string.search_hint));
+        searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+            @Override
+            public boolean onQueryTextSubmit(String query) {
+                search(query);
+                searchView.clearFocus();
+                return true;
+            }
+
+            @Override
+            public boolean onQueryTextChange(String newText) {
+                search(newText);
+                return true;
+            }
+        });
+
+        // Show the whole series again when the search box is closed
+        searchItem.setOnActionExpandListener(new MenuItem.OnActionExpandListener() {
+            @Override
+            public boolean onMenuItemActionExpand(MenuItem item) {
+                return true;
+            }
+
+            @Override
+            public boolean onMenuItemActionCollapse(MenuItem item) {
+                showSeries();
+                return true;
+            }
+        });
+
+        // The metrics screen is only for developers
+        menu.findItem(R.id.action_metrics).setVisible(BuildConfig.DEBUG);
         return true;
     }
 
+    /**
+     * Show the articles matching the query, found in the search index in the background
+     */
+    private void search(String query) {
+        if (TextUtils.isEmpty(query.trim())) {
+            // Nothing typed (yet), show the series
+            if (mQuery != null) {
+                showSeries();
+            }
+            return;
+        }
+        mQuery = query;
+        SearchIndexer.getInstance(this).search(query, new SearchIndexer.SearchCallback() {
+            @Override
+            public void onSearchResults(String query, List<PreparedCocktail> results) {
+                // The user may have typed more, or closed the search box, in the meantime
+                if (query.equals(mQuery)) {
+                    mEmptyView.setText(R.string.no_search_results);
+                    mAdapter.submitList(results);
+                }
+            }
+        });
+    }
+
     @Override
     public boolean onOptionsItemSelected(MenuItem item) {
         int id = item.getItemId();
@@ -130,64 +296,132 @@ public class MainActivity extends AppCompatActivity implements LoaderManager
             Intent settingsIntent = new Intent(MainActivity.this, SettingsActivity.class);
             startActivity(settingsIntent);
             return true;
+        } else if (id == R.id.action_metrics) {
+            startActivity(new Intent(MainActivity.this, MetricsActivity.class));
+            return true;
         }
         return super.onOptionsItemSelected(item);
     }
 
-    @Override
-    public Loader<List<Cocktail>> onCreateLoader(int i, Bundle bundle) {
-        // Create a new loader for the given URL
-
-        SharedPreferences sharedPrefs = PreferenceManager.getDefaultSharedPreferences(this);
+    /**
+     * Stop showing search results and show the articles of the series again
+     */
+    private void showSeries() {
+        mQuery = null;
+        mEmptyView.setText(isConnected() ? R.string.no_cocktails
+                                         : R.string.no_internet_connection);
+        mAdapter.submitList(mCocktails);
+    }
 
-        // get the Order By default values, either Newest or Oldest
-        String order = sharedPrefs.getString(
-                getString(R.string.settings_order_by_key),
-                getString(R.string.settings_order_by_default)
-        );
+    /**
+     * Show the empty view only when there are no articles in the list
+     */
+    private void updateEmptyView() {
+        mEmptyView.setVisibility(mAdapter.getItemCount() == 0 ? View.VISIBLE : View.GONE);
+    }
 
-        // parse makes the URL into URI
-        Uri baseUri = Uri.parse(GUARDIAN_REQUEST_URL);
+    /**
+     * Returns the request for a page of the feed, in the order chosen in the settings. Also used
+     * by CocktailSyncService, so the articles it syncs are stored under the key the list loads.
+     */
+    static FeedRequest feedRequest(Context context, int page) {
+        String order = orderBy(context);
+        List<String> urls = new ArrayList<>(FEED_SOURCES.length);
+        for (String source : FEED_SOURCES) {
+            urls.add(GuardianRequest.listUrl(source, order, page, PAGE_SIZE,
+                                             MY_GUARDIAN_API));
+        }
+        boolean newestFirst =
+                !order.equals(context.getString(R.string.settings_order_by_oldest_value));
+        return new FeedRequest(urls, newestFirst, page, PAGE_SIZE);
+    }
 
-        // buildUpon prepares the baseUri that we just parsed so we can add query parameters to it
-        Uri.Builder uriBuilder = baseUri.buildUpon();
+    /**
+     * Returns the order chosen in the settings, either newest or oldest
+     */
+    static String orderBy(Context context) {
+        SharedPreferences sharedPrefs = PreferenceManager.getDefaultSharedPreferences(context);
 
-        // Append query parameter and its value. For example, it will build 'show-blocks=body'
-        uriBuilder.appendQueryParameter("order-by", order);
-        uriBuilder.appendQueryParameter("byline", "");
-        uriBuilder.appendQueryParameter("show-fields", "byline");
-        uriBuilder.appendQueryParameter("show-blocks", "body");
-        uriBuilder.appendQueryParameter("api-key", MY_GUARDIAN_API);
+        // get the Order By default values, either Newest or Oldest
+        return sharedPrefs.getString(
+                context.getString(R.string.settings_order_by_key),
+                context.getString(R.string.settings_order_by_default)
+        );
+    }
 
-        // + "?order-by=newest&" +
-        // "byline&show-fields=byline&show-blocks=body&api-key=" + MY_GUARDIAN_API;
+    /**
+     * Returns the Content API URL of the article with the given web page, asking for the HTML
+     * of its body, or null if it is not a Guardian article
+     */
+    static String articleRequestUrl(String webUrl) {
+        return GuardianRequest.articleUrl(webUrl, MY_GUARDIAN_API);
+    }
 
-        // Return the completed uri to CocktailLoader
-        return new CocktailLoader(MainActivity.this, uriBuilder.toString());
+    /**
+     * Prefetch the articles on screen after the next layout, once for any number of changes
+     */
+    private void schedulePrefetch() {
+        mlistView.removeCallbacks(mPrefetchVisibleArticles);
+        mlistView.post(mPrefetchVisibleArticles);
     }
 
-    @Override
-    public void onLoadFinished(Loader<List<Cocktail>> loader, List<Cocktail> cocktails) {
+    /**
+     * Fetch the bodies of the articles on screen in the background, so the one the user taps
+     * opens without waiting for the network
+     */
+    private void prefetchVisibleArticles() {
+        LinearLayoutManager layoutManager = (LinearLayoutManager) mlistView.getLayoutManager();
+        int first = layoutManager.findFirstVisibleItemPosition();
+        int last = layoutManager.findLastVisibleItemPosition();
+        if (first == RecyclerView.NO_POSITION) {
+            return;
+        }
+        List<String> urls = new ArrayList<>(last - first + 1);
+        for (int position = first; position <= last && position < mAdapter.getItemCount();
+                position++) {
+            urls.add(mAdapter.getArticle(position).getCocktail().getUrl());
+        }
+        ArticleReader.getInstance().prefetch(urls);
+    }
 
+    /**
+     * Show the articles of the ViewModel, the first page followed by the pages appended to it
+     */
+    private void showCocktails(List<PreparedCocktail> cocktails) {
         // Hide Progress Bar loading indicator
         mSpinningCircle.setVisibility(View.GONE);
 
-        // Set empty state text to display "No cocktails found."
-        mEmptyView.setText(R.string.no_cocktails);
+        mCocktails = cocktails;
 
-        // Clear the adapter of previous cocktail article data
-        mAdapter.clear();
+        // Search results stay on screen until the search box is closed
+        if (mQuery == null) {
+            // Set empty state text to display "No cocktails found.", or that there is no
+            // connection if nothing was stored yet either. Only looked up when the list is
+            // empty, the connectivity service is slow to ask while the app starts.
+            if (mCocktails.isEmpty()) {
+                mEmptyView.setText(isConnected() ? R.string.no_cocktails
+                                                 : R.string.no_internet_connection);
+            }
+
+            // Hand a new list to the adapter, which works out in the background which rows
+            // changed
+            mAdapter.submitList(mCocktails);
+        }
 
-        // If there is a valid list of {@link Cocktail}s, then add them to the adapter's
-        // data set. This will trigger the ListView to update.
-        if (cocktails != null && !cocktails.isEmpty()) {
-            mAdapter.addAll(cocktails);
+        if (mCreatedAt != 0 && !mCocktails.isEmpty()) {
+            reportStartup();
         }
     }
 
-    @Override
-    public void onLoaderReset(Loader<List<Cocktail>> loader) {
-        // Loader reset, so we can clear out our existing data.
-        mAdapter.clear();
+    /**
+     * The first rows are on screen: record how long the start took, and tell the system the
+     * activity is usable, which it logs as "Fully drawn" and `adb shell am start -W` reports
+     */
+    private void reportStartup() {
+        Metrics.getInstance().recordNanos(Metrics.STARTUP, System.nanoTime() - mCreatedAt);
+        mCreatedAt = 0;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            reportFullyDrawn();
+        }
     }
 }
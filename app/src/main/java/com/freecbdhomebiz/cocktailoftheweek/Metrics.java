@@ -0,0 +1,306 @@
+/*
+ * Copyright (c) 2018. Tina Taylor
+ * CREATIVE COMMONS Attribution-ShareAlike 3.0 Unported (CC BY-SA 3.0)
+ * https://creativecommons.org/licenses/by-sa/3.0/
+ */
+
+package com.freecbdhomebiz.cocktailoftheweek;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counters and latency histograms of the fetch, parse and display pipeline, shown by
+ * MetricsActivity in debug builds and read by the tests through dump() and the getters.
+ * <p>
+ * Recording is cheap enough for the hot paths and allocates nothing, so measuring doesn't
+ * change what is measured: every counter and histogram bucket is a slot of an
+ * {@link AtomicLongArray}, picked by the int constants below. A histogram has 8 buckets for
+ * each power of two, so its percentiles are within 12.5% of the real value. Kept free of
+ * Android classes so it can be unit tested.
+ */
+public final class Metrics {
+
+    /*
+     * Counters
+     */
+
+    /**
+     * Requests sent through GuardianHttpClient
+     */
+    public static final int CALLS = 0;
+
+    /**
+     * Requests that failed without a response
+     */
+    public static final int CALL_FAILURES = 1;
+
+    /**
+     * New connections opened
+     */
+    public static final int CONNECTIONS_OPENED = 2;
+
+    /**
+     * Requests sent on a connection that was already open
+     */
+    public static final int CONNECTIONS_REUSED = 3;
+
+    /**
+     * Bytes of response bodies read from the network, before they are unzipped
+     */
+    public static final int BYTES_READ = 4;
+
+    /**
+     * Responses parsed into articles
+     */
+    public static final int RESPONSES_PARSED = 5;
+
+    /**
+     * Articles parsed from the responses
+     */
+    public static final int ARTICLES_PARSED = 6;
+
+    /**
+     * Refreshes that only fetched the articles published since the stored ones
+     */
+    public static final int DELTA_SYNCS = 7;
+
+    /**
+     * Changes of the order in the settings that were served by sorting the loaded list again,
+     * without a request
+     */
+    public static final int LOCAL_REORDERS = 8;
+
+    private static final String[] COUNTER_NAMES = {
+            "calls", "call failures", "connections opened", "connections reused", "bytes read",
+            "responses parsed", "articles parsed", "delta syncs", "local reorders"
+    };
+
+    /*
+     * Histograms, of durations in nanoseconds
+     */
+
+    /**
+     * Looking up the address of the server
+     */
+    public static final int DNS = 0;
+
+    /**
+     * Opening a connection, including the TLS handshake
+     */
+    public static final int CONNECT = 1;
+
+    /**
+     * The TLS handshake alone
+     */
+    public static final int TLS = 2;
+
+    /**
+     * From sending the request to the first byte of the response headers
+     */
+    public static final int TTFB = 3;
+
+    /**
+     * From the response headers to the end of the body, which is parsed as it arrives
+     */
+    public static final int DOWNLOAD = 4;
+
+    /**
+     * Parsing a response into articles, including waiting for its body
+     */
+    public static final int PARSE = 5;
+
+    /**
+     * Binding an article to a row of the list
+     */
+    public static final int BIND = 6;
+
+    /**
+     * From MainActivity being created to the first rows of the list on screen
+     */
+    public static final int STARTUP = 7;
+
+    private static final String[] HISTOGRAM_NAMES = {
+            "dns", "connect", "tls", "ttfb", "download", "parse", "bind", "startup"
+    };
+
+    /**
+     * Buckets per power of two, and in each histogram. Values below SUB_BUCKETS have a bucket
+     * each, the largest long falls in the last bucket.
+     */
+    private static final int SUB_BUCKETS = 8;
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int BUCKETS = (63 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private static final Metrics sInstance = new Metrics();
+
+    private final AtomicLongArray mCounters = new AtomicLongArray(COUNTER_NAMES.length);
+    private final AtomicLongArray mBuckets =
+            new AtomicLongArray(HISTOGRAM_NAMES.length * BUCKETS);
+    private final AtomicLongArray mSums = new AtomicLongArray(HISTOGRAM_NAMES.length);
+    private final AtomicLongArray mMaxima = new AtomicLongArray(HISTOGRAM_NAMES.length);
+
+    /**
+     * The app records everything in getInstance(), tests make their own
+     */
+    Metrics() {
+    }
+
+    /**
+     * Returns the metrics of the app
+     */
+    public static Metrics getInstance() {
+        return sInstance;
+    }
+
+    /**
+     * Add one to the counter
+     */
+    public void increment(int counter) {
+        mCounters.incrementAndGet(counter);
+    }
+
+    /**
+     * Add the amount to the counter
+     */
+    public void add(int counter, long amount) {
+        mCounters.addAndGet(counter, amount);
+    }
+
+    /**
+     * Record a duration in the histogram
+     */
+    public void recordNanos(int histogram, long nanos) {
+        if (nanos < 0) {
+            // The clock doesn't go backwards, but a caller may pass a start that was never set
+            return;
+        }
+        mBuckets.incrementAndGet(histogram * BUCKETS + bucket(nanos));
+        mSums.addAndGet(histogram, nanos);
+        long max;
+        do {
+            max = mMaxima.get(histogram);
+        } while (nanos > max && !mMaxima.compareAndSet(histogram, max, nanos));
+    }
+
+    /**
+     * Returns the value of the counter
+     */
+    public long getCount(int counter) {
+        return mCounters.get(counter);
+    }
+
+    /**
+     * Returns the number of durations recorded in the histogram
+     */
+    public long getSampleCount(int histogram) {
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            count += mBuckets.get(histogram * BUCKETS + i);
+        }
+        return count;
+    }
+
+    /**
+     * Returns the mean of the durations in the histogram, or 0 if there are none
+     */
+    public long getMeanNanos(int histogram) {
+        long count = getSampleCount(histogram);
+        return count == 0 ? 0 : mSums.get(histogram) / count;
+    }
+
+    /**
+     * Returns the longest duration in the histogram, or 0 if there are none
+     */
+    public long getMaxNanos(int histogram) {
+        return mMaxima.get(histogram);
+    }
+
+    /**
+     * Returns the duration that the given fraction of the recorded ones don't exceed, rounded
+     * up to the end of its bucket, or 0 if there are none
+     *
+     * @param fraction is between 0 and 1, 0.5 for the median
+     */
+    public long getPercentileNanos(int histogram, double fraction) {
+        long count = getSampleCount(histogram);
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(fraction * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += mBuckets.get(histogram * BUCKETS + i);
+            if (seen >= rank) {
+                return Math.min(bucketEnd(i), getMaxNanos(histogram));
+            }
+        }
+        return getMaxNanos(histogram);
+    }
+
+    /**
+     * Set every counter and histogram back to zero
+     */
+    public void reset() {
+        for (int i = 0; i < mCounters.length(); i++) {
+            mCounters.set(i, 0);
+        }
+        for (int i = 0; i < mBuckets.length(); i++) {
+            mBuckets.set(i, 0);
+        }
+        for (int i = 0; i < HISTOGRAM_NAMES.length; i++) {
+            mSums.set(i, 0);
+            mMaxima.set(i, 0);
+        }
+    }
+
+    /**
+     * Returns a readable report of all the counters and histograms, one per line
+     */
+    public String dump() {
+        StringBuilder dump = new StringBuilder("counters\n");
+        for (int i = 0; i < COUNTER_NAMES.length; i++) {
+            dump.append(String.format(Locale.US, "  %-20s %,d\n", COUNTER_NAMES[i],
+                                      getCount(i)));
+        }
+        dump.append(String.format(Locale.US, "%-14s %10s %8s %8s %8s %8s %8s\n",
+                                  "latency (ms)", "n", "mean", "p50", "p95", "p99", "max"));
+        for (int i = 0; i < HISTOGRAM_NAMES.length; i++) {
+            dump.append(String.format(Locale.US, "  %-12s %,10d %8.2f %8.2f %8.2f %8.2f %8.2f\n",
+                                      HISTOGRAM_NAMES[i], getSampleCount(i),
+                                      getMeanNanos(i) / 1e6,
+                                      getPercentileNanos(i, 0.50) / 1e6,
+                                      getPercentileNanos(i, 0.95) / 1e6,
+                                      getPercentileNanos(i, 0.99) / 1e6,
+                                      getMaxNanos(i) / 1e6));
+        }
+        return dump.toString();
+    }
+
+    /**
+     * Returns the bucket of the value: the value itself if it is small, otherwise its power of
+     * two and the next SUB_BUCKET_BITS bits below the highest one
+     */
+    static int bucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * Returns the largest value that falls in the bucket
+     */
+    static long bucketEnd(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        int subBucket = bucket % SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        long start = (long) (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+        return start + (width - 1);
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2018. Tina Taylor
+ * CREATIVE COMMONS Attribution-ShareAlike 3.0 Unported (CC BY-SA 3.0)
+ * https://creativecommons.org/licenses/by-sa/3.0/
+ */
+
+package com.freecbdhomebiz.cocktailoftheweek;
+
+import android.content.Intent;
+import android.os.Bundle;
+import android.support.v7.app.AppCompatActivity;
+import android.view.Menu;
+import android.view.MenuItem;
+import android.widget.TextView;
+
+/**
+ * Debug screen that shows the {@link Metrics} of the app: how many requests were made and
+ * connections reused, where the time of fetching, parsing and binding the articles went, and
+ * how much the caches in the {@link CacheRegistry} hold. The recent events of the
+ * {@link EventLog} can be shared from here for a bug report. Only reachable from the menu of
+ * debug builds.
+ */
+public class MetricsActivity extends AppCompatActivity {
+
+    private TextView mMetricsView;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_metrics);
+        mMetricsView = findViewById(R.id.metrics_text);
+    }
+
+    /**
+     * Show the latest numbers whenever the screen comes back
+     */
+    @Override
+    protected void onResume() {
+        super.onResume();
+        showMetrics();
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.metrics, menu);
+        return true;
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        if (item.getItemId() == R.id.action_reset_metrics) {
+            // Start measuring again, for example before scrolling through the list
+            Metrics.getInstance().reset();
+            showMetrics();
+            return true;
+        } else if (item.getItemId() == R.id.action_share_log) {
+            shareLog();
+            return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
+
+    /**
+     * Send the recent events of the log, with the numbers, to an app of the user's choice
+     */
+    private void shareLog() {
+        Intent send = new Intent(Intent.ACTION_SEND);
+        send.setType("text/plain");
+        send.putExtra(Intent.EXTRA_SUBJECT, getString(R.string.app_name) + " log");
+        send.putExtra(Intent.EXTRA_TEXT,
+                      dump() + "\n" + EventLog.getInstance().export());
+        startActivity(Intent.createChooser(send, getString(R.string.metrics_share_log)));
+    }
+
+    private void showMetrics() {
+        mMetricsView.setText(dump());
+    }
+
+    private static String dump() {
+        return Metrics.getInstance().dump() + "\n" + CacheRegistry.getInstance().dump();
+    }
+}
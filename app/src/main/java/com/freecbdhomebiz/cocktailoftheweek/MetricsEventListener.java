@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2018. Tina Taylor
+ * CREATIVE COMMONS Attribution-ShareAlike 3.0 Unported (CC BY-SA 3.0)
+ * https://creativecommons.org/licenses/by-sa/3.0/
+ */
+
+package com.freecbdhomebiz.cocktailoftheweek;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.List;
+
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.EventListener;
+import okhttp3.Handshake;
+import okhttp3.Protocol;
+import okhttp3.Response;
+
+/**
+ * Records where the time of each request of {@link GuardianHttpClient} goes in the
+ * {@link Metrics}: looking up the server, connecting, the TLS handshake, waiting for the first
+ * byte and downloading the body. OkHttp creates one listener per request, and calls it on the
+ * thread of the request.
+ */
+class MetricsEventListener extends EventListener {
+
+    /**
+     * Creates the listener of each request
+     */
+    static final Factory FACTORY = new Factory() {
+        @Override
+        public EventListener create(Call call) {
+            return new MetricsEventListener(Metrics.getInstance());
+        }
+    };
+
+    private final Metrics mMetrics;
+
+    /**
+     * Start times of the steps of the request, from System.nanoTime()
+     */
+    private long mDnsStart;
+    private long mConnectStart;
+    private long mSecureConnectStart;
+    private long mRequestStart;
+    private long mHeadersEnd;
+
+    /**
+     * True once the request opened a connection of its own
+     */
+    private boolean mConnected;
+
+    MetricsEventListener(Metrics metrics) {
+        mMetrics = metrics;
+    }
+
+    @Override
+    public void callStart(Call call) {
+        mMetrics.increment(Metrics.CALLS);
+    }
+
+    @Override
+    public void dnsStart(Call call, String domainName) {
+        mDnsStart = System.nanoTime();
+    }
+
+    @Override
+    public void dnsEnd(Call call, String domainName, List<InetAddress> inetAddressList) {
+        mMetrics.recordNanos(Metrics.DNS, System.nanoTime() - mDnsStart);
+    }
+
+    @Override
+    public void connectStart(Call call, InetSocketAddress inetSocketAddress, Proxy proxy) {
+        mConnected = true;
+        mConnectStart = System.nanoTime();
+        mMetrics.increment(Metrics.CONNECTIONS_OPENED);
+    }
+
+    @Override
+    public void secureConnectStart(Call call) {
+        mSecureConnectStart = System.nanoTime();
+    }
+
+    @Override
+    public void secureConnectEnd(Call call, Handshake handshake) {
+        mMetrics.recordNanos(Metrics.TLS, System.nanoTime() - mSecureConnectStart);
+    }
+
+    @Override
+    public void connectEnd(Call call, InetSocketAddress inetSocketAddress, Proxy proxy,
+                           Protocol protocol) {
+        mMetrics.recordNanos(Metrics.CONNECT, System.nanoTime() - mConnectStart);
+    }
+
+    @Override
+    public void connectionAcquired(Call call, Connection connection) {
+        if (!mConnected) {
+            mMetrics.increment(Metrics.CONNECTIONS_REUSED);
+        }
+    }
+
+    @Override
+    public void requestHeadersStart(Call call) {
+        mRequestStart = System.nanoTime();
+    }
+
+    @Override
+    public void responseHeadersStart(Call call) {
+        mMetrics.recordNanos(Metrics.TTFB, System.nanoTime() - mRequestStart);
+    }
+
+    @Override
+    public void responseHeadersEnd(Call call, Response response) {
+        mHeadersEnd = System.nanoTime();
+    }
+
+    @Override
+    public void responseBodyEnd(Call call, long byteCount) {
+        mMetrics.recordNanos(Metrics.DOWNLOAD, System.nanoTime() - mHeadersEnd);
+        mMetrics.add(Metrics.BYTES_READ, byteCount);
+    }
+
+    @Override
+    public void callFailed(Call call, IOException ioe) {
+        mMetrics.increment(Metrics.CALL_FAILURES);
+    }
+}
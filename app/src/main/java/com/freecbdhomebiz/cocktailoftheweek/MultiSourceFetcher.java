@@ -0,0 +1,279 @@
+/*
+ * Copyright (c) 2018. Tina Taylor
+ * CREATIVE COMMONS Attribution-ShareAlike 3.0 Unported (CC BY-SA 3.0)
+ * https://creativecommons.org/licenses/by-sa/3.0/
+ */
+
+package com.freecbdhomebiz.cocktailoftheweek;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fetches the same page of several Guardian series and tags at the same time and merges them
+ * into one list of Cocktail articles, so the feed takes about as long as its slowest source
+ * instead of all of them one after the other. At most a few requests run at once, and a source
+ * that doesn't answer within the timeout is left out rather than holding up the others. The
+ * response is then partial, with the articles stored for that source if there are any. Each
+ * source is revalidated with the validators stored for it, so a source that didn't change
+ * costs a "304 Not Modified" instead of its whole page.
+ */
+public class MultiSourceFetcher {
+
+    /**
+     * Tag for log messages
+     */
+    private static final String LOG_TAG = MultiSourceFetcher.class.getName();
+
+    /**
+     * Default number of requests running at the same time
+     */
+    public static final int DEFAULT_PARALLELISM = 3;
+
+    /**
+     * Default time a source has to answer completely
+     */
+    public static final int DEFAULT_TIMEOUT_MILLIS = 10000;
+
+    private final ExecutorService mExecutor;
+
+    /**
+     * Cancels the requests that run out of time
+     */
+    private final ScheduledThreadPoolExecutor mTimer;
+
+    private final int mTimeoutMillis;
+
+    /**
+     * Constructs a new {@link MultiSourceFetcher} with the default parallelism and timeout
+     */
+    public MultiSourceFetcher() {
+        this(DEFAULT_PARALLELISM, DEFAULT_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Constructs a new {@link MultiSourceFetcher}
+     *
+     * @param parallelism is the most requests that run at the same time
+     * @param timeoutMillis is the time each request has to complete, from connecting to the
+     *                      end of the response
+     */
+    public MultiSourceFetcher(int parallelism, int timeoutMillis) {
+        if (parallelism < 1 || timeoutMillis < 1) {
+            throw new IllegalArgumentException("parallelism and timeout must be positive");
+        }
+        // The threads are stopped when the app is idle
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                parallelism, parallelism, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>());
+        executor.allowCoreThreadTimeOut(true);
+        mExecutor = executor;
+        mTimer = new ScheduledThreadPoolExecutor(1);
+        mTimer.setKeepAliveTime(30, TimeUnit.SECONDS);
+        mTimer.allowCoreThreadTimeOut(true);
+        mTimer.setRemoveOnCancelPolicy(true);
+        mTimeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Fetch the page of every source of the request and merge them, see
+     * {@link #fetch(FeedRequest, List, CancellationToken)}. The validators are only sent for a
+     * request with one source, they belong to a single response.
+     */
+    public CocktailResponse fetch(FeedRequest request, String etag, String lastModified,
+                                  CancellationToken cancellation) {
+        List<CocktailResponse> stored = null;
+        if (request.getSourceUrls().size() == 1 && (etag != null || lastModified != null)) {
+            stored = Collections.singletonList(new CocktailResponse(null, etag, lastModified));
+        }
+        return fetch(request, stored, cancellation);
+    }
+
+    /**
+     * Fetch the page of every source of the request and merge them. Blocks until the last
+     * source answered or timed out, so call it on a background thread.
+     * <p>
+     * Every source is a conditional GET with the validators stored for it. A source that
+     * answers "304 Not Modified" is merged with the articles stored for it, and the merged
+     * response is only "not modified" if every source is. A request with one source returns
+     * the response of that source as it is.
+     *
+     * @param stored is what is stored for each source, in the order of the request: the
+     *               articles with the validators they came with, or null for a source with
+     *               nothing stored. Null if nothing is stored at all.
+     * @param cancellation cancels all the requests at once, or null
+     * @return the merged articles, with the response of each source and null for a source that
+     * failed, or null if no source could be fetched or it was canceled
+     */
+    public CocktailResponse fetch(FeedRequest request, List<CocktailResponse> stored,
+                                  CancellationToken cancellation) {
+        if (cancellation == null) {
+            cancellation = new CancellationToken();
+        }
+        List<String> urls = request.getSourceUrls();
+        if (urls.size() == 1) {
+            CocktailResponse validators = stored(stored, 0);
+            return fetchSource(urls.get(0), validators != null ? validators.getEtag() : null,
+                               validators != null ? validators.getLastModified() : null,
+                               cancellation.newChild());
+        }
+
+        // Start every request before waiting for any of them
+        List<Future<CocktailResponse>> futures = new ArrayList<>(urls.size());
+        for (int i = 0; i < urls.size(); i++) {
+            final String url = urls.get(i);
+            final CocktailResponse validators = stored(stored, i);
+            final CancellationToken token = cancellation.newChild();
+            futures.add(mExecutor.submit(new Callable<CocktailResponse>() {
+                @Override
+                public CocktailResponse call() {
+                    return fetchSource(url, validators != null ? validators.getEtag() : null,
+                                       validators != null ? validators.getLastModified()
+                                                          : null, token);
+                }
+            }));
+        }
+
+        List<CocktailResponse> sources = new ArrayList<>(urls.size());
+        List<List<Cocktail>> lists = new ArrayList<>(urls.size());
+        boolean notModified = true;
+        for (int i = 0; i < futures.size(); i++) {
+            CocktailResponse source = null;
+            try {
+                CocktailResponse response = futures.get(i).get();
+                if (response != null && response.isNotModified()) {
+                    // Still the articles stored for the source, with the latest validators
+                    CocktailResponse was = stored(stored, i);
+                    if (was != null && was.getCocktails() != null) {
+                        source = new CocktailResponse(
+                                was.getCocktails(),
+                                response.getEtag() != null ? response.getEtag() : was.getEtag(),
+                                response.getLastModified() != null ? response.getLastModified()
+                                                                   : was.getLastModified());
+                    }
+                } else if (response != null && response.getCocktails() != null) {
+                    source = response;
+                    notModified = false;
+                }
+            } catch (ExecutionException e) {
+                EventLog.e(LOG_TAG, "Problem fetching a source of the feed", e.getCause());
+            } catch (InterruptedException e) {
+                // Nobody is waiting for the feed anymore
+                cancellation.cancel();
+                Thread.currentThread().interrupt();
+                return null;
+            }
+            sources.add(source);
+            if (source != null) {
+                lists.add(source.getCocktails());
+            } else {
+                // The feed is partial, rather than without the articles of the source
+                CocktailResponse was = stored(stored, i);
+                if (was != null && was.getCocktails() != null) {
+                    lists.add(was.getCocktails());
+                }
+                notModified = false;
+            }
+        }
+        // Articles that are all from storage are no answer from the Guardian
+        if (cancellation.isCanceled() || Collections.frequency(sources, null) == sources.size()) {
+            return null;
+        }
+        if (notModified) {
+            return new CocktailResponse(null, null, null, true, sources);
+        }
+        return new CocktailResponse(merge(lists, request.isNewestFirst()), null, null, false,
+                                    sources);
+    }
+
+    /**
+     * Returns what is stored for the source at the index, or null
+     */
+    private static CocktailResponse stored(List<CocktailResponse> stored, int index) {
+        return stored != null && index < stored.size() ? stored.get(index) : null;
+    }
+
+    /**
+     * Fetch one source, canceling the request if it takes longer than the timeout. The
+     * connection's own timeouts only limit each read, so a slow trickle of bytes could
+     * otherwise keep it going for much longer. This is on a fetcher thread, or on the caller's
+     * thread for a single source.
+     */
+    private CocktailResponse fetchSource(String url, String etag, String lastModified,
+                                         final CancellationToken token) {
+        // Skip the sources still queued when the feed was canceled
+        if (token.isCanceled()) {
+            return null;
+        }
+        ScheduledFuture<?> deadline = mTimer.schedule(new Runnable() {
+            @Override
+            public void run() {
+                EventLog.e(LOG_TAG, "A source of the feed timed out after {} ms", mTimeoutMillis);
+                token.cancel();
+            }
+        }, mTimeoutMillis, TimeUnit.MILLISECONDS);
+        try {
+            return QueryUtils.fetchCocktailResponse(url, etag, lastModified, token,
+                                                    mTimeoutMillis, mTimeoutMillis);
+        } finally {
+            deadline.cancel(false);
+        }
+    }
+
+    /**
+     * Returns the articles of all the lists in one list ordered by date, with each article
+     * only once even if it is in several series. Articles with the same date keep the order of
+     * the lists, and the ones without a date go at the end.
+     */
+    static List<Cocktail> merge(List<List<Cocktail>> lists, boolean newestFirst) {
+        Map<String, Cocktail> byUrl = new LinkedHashMap<>();
+        for (List<Cocktail> list : lists) {
+            for (Cocktail cocktail : list) {
+                if (!byUrl.containsKey(cocktail.getUrl())) {
+                    byUrl.put(cocktail.getUrl(), cocktail);
+                }
+            }
+        }
+        List<Cocktail> merged = new ArrayList<>(byUrl.values());
+        Collections.sort(merged, byDate(newestFirst));
+        return merged;
+    }
+
+    /**
+     * Returns the order of the feed: by publication date, newest or oldest first, with the
+     * articles without a date at the end
+     */
+    static Comparator<Cocktail> byDate(final boolean newestFirst) {
+        return new Comparator<Cocktail>() {
+            @Override
+            public int compare(Cocktail a, Cocktail b) {
+                long dateA = a.getDate();
+                long dateB = b.getDate();
+                if (dateA == dateB) {
+                    return 0;
+                }
+                if (dateA == Cocktail.NO_DATE) {
+                    return 1;
+                }
+                if (dateB == Cocktail.NO_DATE) {
+                    return -1;
+                }
+                int order = dateA < dateB ? -1 : 1;
+                return newestFirst ? -order : order;
+            }
+        };
+    }
+}
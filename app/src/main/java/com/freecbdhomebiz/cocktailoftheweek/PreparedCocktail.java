@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2018. Tina Taylor
+ * CREATIVE COMMONS Attribution-ShareAlike 3.0 Unported (CC BY-SA 3.0)
+ * https://creativecommons.org/licenses/by-sa/3.0/
+ */
+
+package com.freecbdhomebiz.cocktailoftheweek;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A {@link Cocktail} article with the text of its list row already prepared for display: the
+ * date rendered by the {@link DateRenderer} and the summary cut down to what the row can show.
+ * Preparing happens on a background thread of CocktailPipeline, so binding a row on the UI
+ * thread is only a few setText calls on short Strings.
+ */
+public class PreparedCocktail {
+
+    /**
+     * The summary TextView shows at most 5 lines, which is never more than this many characters
+     * on a phone. Anything longer would only be measured and then ellipsized away.
+     */
+    static final int SUMMARY_MAX_LENGTH = 280;
+
+    private final Cocktail mCocktail;
+    private final String mSummary;
+
+    /**
+     * The rendered publication date, and the day it was rendered on. A relative date such as
+     * "Yesterday" is rendered again once that day has passed. Rows are only bound on the UI
+     * thread, a render from another thread at worst renders the date once more.
+     */
+    private volatile String mDate;
+    private volatile long mDateDay;
+
+    /**
+     * Constructs a new PreparedCocktail object
+     * @param cocktail is the article the text was prepared from
+     * @param date is the rendered publication date
+     * @param dateDay is the day the date was rendered on, see {@link DateRenderer#today}
+     * @param summary is the shortened summary
+     */
+    PreparedCocktail(Cocktail cocktail, String date, long dateDay, String summary) {
+        mCocktail = cocktail;
+        mDate = date;
+        mDateDay = dateDay;
+        mSummary = summary;
+    }
+
+    /**
+     * Prepare the display text of every article in the list. Call from a background thread.
+     */
+    public static List<PreparedCocktail> prepare(List<Cocktail> cocktails) {
+        List<PreparedCocktail> prepared = new ArrayList<>(cocktails.size());
+        DateRenderer renderer = DateRenderer.getInstance();
+        long now = System.currentTimeMillis();
+        long today = renderer.today(now);
+        for (Cocktail cocktail : cocktails) {
+            prepared.add(new PreparedCocktail(cocktail, renderer.render(cocktail.getDate(), now),
+                                              today, shorten(cocktail.getSummary())));
+        }
+        return prepared;
+    }
+
+    /**
+     * Returns the summary cut at the last word that fits in {@link #SUMMARY_MAX_LENGTH}
+     * characters, followed by an ellipsis
+     */
+    static String shorten(String summary) {
+        if (summary == null || summary.length() <= SUMMARY_MAX_LENGTH) {
+            return summary;
+        }
+        int end = summary.lastIndexOf(' ', SUMMARY_MAX_LENGTH);
+        if (end <= 0) {
+            end = SUMMARY_MAX_LENGTH;
+        }
+        return summary.substring(0, end) + "\u2026";
+    }
+
+    /**
+     * Returns the article the text was prepared from
+     */
+    public Cocktail getCocktail() {
+        return mCocktail;
+    }
+
+    /**
+     * Returns the section of the Guardian newspaper
+     */
+    public String getSectionName() {
+        return mCocktail.getSectionName();
+    }
+
+    /**
+     * Returns the name of the Cocktail article
+     */
+    public String getCocktailName() {
+        return mCocktail.getCocktailName();
+    }
+
+    /**
+     * Returns the name of the author of the article
+     */
+    public String getAuthor() {
+        return mCocktail.getAuthor();
+    }
+
+    /**
+     * Returns the publication date as the row shows it today
+     */
+    public String getDate() {
+        DateRenderer renderer = DateRenderer.getInstance();
+        long now = System.currentTimeMillis();
+        long today = renderer.today(now);
+        if (mDateDay != today) {
+            mDate = renderer.render(mCocktail.getDate(), now);
+            mDateDay = today;
+        }
+        return mDate;
+    }
+
+    /**
+     * Returns the day the date was last rendered on
+     */
+    long getDateDay() {
+        return mDateDay;
+    }
+
+    /**
+     * Returns the summary shortened to what the list row can show
+     */
+    public String getSummary() {
+        return mSummary;
+    }
+
+    /**
+     * Two PreparedCocktails are equal when they were prepared from equal articles
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof PreparedCocktail)) {
+            return false;
+        }
+        return mCocktail.equals(((PreparedCocktail) o).mCocktail);
+    }
+
+    @Override
+    public int hashCode() {
+        return mCocktail.hashCode();
+    }
+}
@@ -6,30 +6,34 @@
 
 package com.freecbdhomebiz.cocktailoftheweek;
 
-
-import android.text.TextUtils;
-import android.util.Log;
-
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.nio.charset.Charset;
-import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+
+import okhttp3.Call;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
 
 /**
  * Helper methods for requesting and receiving Cocktail article data.
  */
 public final class QueryUtils {
 
+    /**
+     * Decides which failed requests are tried again, and when
+     */
+    private static final RetryPolicy sRetryPolicy = new RetryPolicy();
+
+    /**
+     * One circuit breaker per server, so a failing server doesn't block requests to another
+     */
+    private static final Map<String, CircuitBreaker> sCircuitBreakers = new HashMap<>();
+
     /**
      * Create a private constructor because no one should ever create a {@link QueryUtils} object.
      * This class is only meant to hold static variables and methods, which can be accessed
@@ -39,72 +43,297 @@ public final class QueryUtils {
     }
 
     /**
-     * Query the GUARDIAN and return a list of {@link Cocktail} objects. Called from CocktailLoader
+     * Query the GUARDIAN and return a list of {@link Cocktail} objects.
      */
     public static List<Cocktail> fetchCocktailData(String requestUrl) {
+        CocktailResponse response = fetchCocktailResponse(requestUrl);
+        if (response == null) {
+            return null;
+        }
+        // Return the list of {@link Cocktail} articles
+        return response.getCocktails();
+    }
+
+    /**
+     * Query the GUARDIAN and return the {@link CocktailResponse} holding the list of
+     * {@link Cocktail} objects and the cache validators of the response, or null if there was
+     * no usable response.
+     */
+    public static CocktailResponse fetchCocktailResponse(String requestUrl) {
+        return fetchCocktailResponse(requestUrl, null, null);
+    }
+
+    /**
+     * Query the GUARDIAN with a conditional GET, sending the validators of the cached articles.
+     * If they are still valid the server answers "304 Not Modified" without a body, and the
+     * returned {@link CocktailResponse#isNotModified()} is true.
+     *
+     * @param etag is the ETag of the cached articles, or null
+     * @param lastModified is the Last-Modified date of the cached articles, or null
+     */
+    public static CocktailResponse fetchCocktailResponse(String requestUrl, String etag,
+                                                         String lastModified) {
+        return fetchCocktailResponse(requestUrl, etag, lastModified, null);
+    }
+
+    /**
+     * Query the GUARDIAN with a conditional GET that can be canceled from another thread. A
+     * canceled request stops reading straight away and returns null.
+     *
+     * @param cancellation cancels the request, or null if it can't be canceled
+     */
+    public static CocktailResponse fetchCocktailResponse(String requestUrl, String etag,
+                                                         String lastModified,
+                                                         CancellationToken cancellation) {
+        OkHttpClient client = GuardianHttpClient.get();
+        return fetchCocktailResponse(requestUrl, etag, lastModified, cancellation,
+                                     client.connectTimeoutMillis(), client.readTimeoutMillis());
+    }
+
+    /**
+     * Query the GUARDIAN with a conditional GET that can be canceled, giving up when the
+     * connection doesn't open or a read doesn't return within the given timeouts. Called from
+     * MultiSourceFetcher
+     * <p>
+     * A request that fails in a way that may go away by itself is tried again, as decided by
+     * the {@link RetryPolicy}. When the Guardian keeps failing, its {@link CircuitBreaker} opens
+     * and requests return null straight away, so the cached articles are shown without waiting.
+     */
+    public static CocktailResponse fetchCocktailResponse(String requestUrl, String etag,
+                                                         String lastModified,
+                                                         CancellationToken cancellation,
+                                                         int connectTimeoutMillis,
+                                                         int readTimeoutMillis) {
 
         // Create a new URL object because makeHttpRequest() does not accept a String input
         URL url = createUrl(requestUrl);
+        if (url == null) {
+            return null;
+        }
+        if (cancellation == null) {
+            // Lets the waits between retries use the same code whether or not they can be
+            // canceled
+            cancellation = new CancellationToken();
+        }
+        CircuitBreaker breaker = circuitBreaker(url);
+
+        for (int attempt = 1; ; attempt++) {
+            if (!breaker.allowRequest(System.currentTimeMillis())) {
+                EventLog.e("QueryUtils",
+                           "The Guardian keeps failing, not asking it again for now.");
+                return null;
+            }
+
+            // Perform HTTP request to the URL and stream the relevant fields of the JSON
+            // response straight into a list of {@link Cocktail} articles
+            boolean retryable;
+            boolean serverFailure;
+            long retryAfterMillis = -1;
+            try {
+                CocktailResponse response = makeHttpRequest(url, etag, lastModified,
+                                                            cancellation, connectTimeoutMillis,
+                                                            readTimeoutMillis);
+                if (cancellation.isCanceled()) {
+                    breaker.onCanceled();
+                    return null;
+                }
+                breaker.onSuccess();
+                return response;
+            } catch (HttpStatusException e) {
+                EventLog.e("QueryUtils", "Error response code: {}", e.getResponseCode());
+                retryable = RetryPolicy.isRetryable(e.getResponseCode());
+                serverFailure = retryable;
+                retryAfterMillis = RetryPolicy.parseRetryAfter(e.getRetryAfter(),
+                                                               System.currentTimeMillis());
+            } catch (IOException e) {
+                // A canceled request fails its read on purpose, that is not a problem
+                if (cancellation.isCanceled()) {
+                    breaker.onCanceled();
+                    return null;
+                }
+                EventLog.e("QueryUtils", "Problem making the HTTP request.", e);
+                retryable = RetryPolicy.isRetryable(e);
+                serverFailure = RetryPolicy.isServerFailure(e);
+            }
+
+            // Only the failures that say the Guardian is in trouble count towards opening the
+            // circuit, a timeout too even though it isn't retried. Any other answer, like a 404
+            // or a response that can't be parsed, shows the server itself works.
+            long now = System.currentTimeMillis();
+            if (serverFailure) {
+                breaker.onFailure(now, retryAfterMillis);
+            } else {
+                breaker.onSuccess();
+            }
+            if (!retryable) {
+                return null;
+            }
+            long delayMillis = sRetryPolicy.delayMillis(attempt, retryAfterMillis);
+            if (delayMillis < 0) {
+                if (retryAfterMillis > 0) {
+                    // Too long to wait for now, but don't ask again before the server said so
+                    breaker.deferUntil(now + retryAfterMillis);
+                }
+                return null;
+            }
+            if (!cancellation.sleep(delayMillis)) {
+                return null;
+            }
+        }
+    }
 
-        // Perform HTTP request to the URL and receive a JSON response back
-        String jsonResponse = null;
+    /**
+     * Query the GUARDIAN for a single article with show-blocks=body and return the HTML of its
+     * body, or null if there is none or the request failed or was canceled. Called from
+     * ArticlePrefetcher for the article reader.
+     * <p>
+     * The bodies are fetched for the rows the user may tap, not because the user asked for
+     * them, so a failed request is not tried again. It still goes through the
+     * {@link CircuitBreaker} of the Guardian, so the reader doesn't pile requests onto a
+     * failing server, and its failures count towards opening the circuit like the list's do.
+     */
+    public static String fetchArticleBody(String requestUrl, CancellationToken cancellation) {
+        URL url = createUrl(requestUrl);
+        if (url == null) {
+            return null;
+        }
+        CircuitBreaker breaker = circuitBreaker(url);
+        if (!breaker.allowRequest(System.currentTimeMillis())) {
+            return null;
+        }
+
+        Call call = GuardianHttpClient.get().newCall(new Request.Builder().url(url).build());
+        if (!cancellation.attach(call)) {
+            breaker.onCanceled();
+            return null;
+        }
+        Response httpResponse = null;
         try {
-            jsonResponse = makeHttpRequest(url);
+            httpResponse = call.execute();
+            int responseCode = httpResponse.code();
+            if (responseCode == HttpURLConnection.HTTP_OK) {
+                String body = CocktailJsonParser.parseBody(httpResponse.body().byteStream());
+                breaker.onSuccess();
+                return body;
+            }
+            EventLog.e("QueryUtils", "Error response code: {}", responseCode);
+            if (RetryPolicy.isRetryable(responseCode)) {
+                breaker.onFailure(System.currentTimeMillis(), RetryPolicy.parseRetryAfter(
+                        httpResponse.header("Retry-After"), System.currentTimeMillis()));
+            } else {
+                breaker.onSuccess();
+            }
+            return null;
         } catch (IOException e) {
-            Log.e("QueryUtils", "Problem making the HTTP request.", e);
+            // A canceled request fails its read on purpose, that is not a problem
+            if (cancellation.isCanceled()) {
+                breaker.onCanceled();
+            } else {
+                EventLog.e("QueryUtils", "Problem fetching the article body.", e);
+                if (RetryPolicy.isServerFailure(e)) {
+                    breaker.onFailure(System.currentTimeMillis(), -1);
+                } else {
+                    breaker.onSuccess();
+                }
+            }
+            return null;
+        } finally {
+            cancellation.detach();
+            if (httpResponse != null) {
+                httpResponse.close();
+            }
         }
+    }
 
-        // Extract relevant fields from the JSON response and create a list of {@link Cocktail}
-        // articles
-        List<Cocktail> cocktails = extractFieldsFromJson(jsonResponse);
-
-        // Return the list of {@link Cocktail} articles
-        return cocktails;
+    /**
+     * Returns the circuit breaker of the server of the URL
+     */
+    private static CircuitBreaker circuitBreaker(URL url) {
+        String server = url.getProtocol() + "://" + url.getAuthority();
+        synchronized (sCircuitBreakers) {
+            CircuitBreaker breaker = sCircuitBreakers.get(server);
+            if (breaker == null) {
+                breaker = new CircuitBreaker();
+                sCircuitBreakers.put(server, breaker);
+            }
+            return breaker;
+        }
     }
 
     /**
-     * Make an HTTP request to the given URL and return a String as the response.
+     * Make an HTTP request to the given URL and return the list of {@link Cocktail} articles
+     * parsed from the response with its ETag and Last-Modified headers, or null if there was
+     * no usable response. Throws an {@link HttpStatusException} if the server answered with an
+     * error code. The request goes through the shared {@link GuardianHttpClient}, which
+     * reuses an open connection and asks for a gzip compressed response, and the given
+     * validators (if any) are sent so the server can answer "304 Not Modified".
      */
-    private static String makeHttpRequest(URL url) throws IOException {
-        String jsonResponse = "";
+    private static CocktailResponse makeHttpRequest(URL url, String etag, String lastModified,
+                                                    CancellationToken cancellation,
+                                                    int connectTimeoutMillis,
+                                                    int readTimeoutMillis)
+            throws IOException {
+        CocktailResponse response = null;
 
         // If the URL is null, then return early.
         if (url == null) {
-            return jsonResponse;
+            return response;
         }
 
-        HttpURLConnection urlConnection = null;
-        InputStream inputStream = null;
+        // The client unzips the response itself, as long as we don't set Accept-Encoding
+        Request.Builder request = new Request.Builder().url(url);
+        if (etag != null) {
+            request.header("If-None-Match", etag);
+        }
+        if (lastModified != null) {
+            request.header("If-Modified-Since", lastModified);
+        }
+        Call call = GuardianHttpClient.get(connectTimeoutMillis, readTimeoutMillis)
+                .newCall(request.build());
+        if (cancellation != null && !cancellation.attach(call)) {
+            return response;
+        }
+
+        Response httpResponse = null;
         try {
-            urlConnection = (HttpURLConnection) url.openConnection();
-            urlConnection.setReadTimeout(10000 /* milliseconds */);
-            urlConnection.setConnectTimeout(15000 /* milliseconds */);
-            urlConnection.setRequestMethod("GET");
-            urlConnection.connect();
+            httpResponse = call.execute();
+
+            int responseCode = httpResponse.code();
+            String responseEtag = httpResponse.header("ETag");
+            String responseLastModified = httpResponse.header("Last-Modified");
 
             // If the request was successful (response code 200),
-            // then read the input stream and parse the response.
-            if (urlConnection.getResponseCode() == 200) {
-                inputStream = urlConnection.getInputStream();
-                jsonResponse = readFromStream(inputStream);
+            // then parse the input stream as it arrives.
+            if (responseCode == HttpURLConnection.HTTP_OK) {
+                long parseStart = System.nanoTime();
+                List<Cocktail> cocktails =
+                        CocktailJsonParser.parse(httpResponse.body().byteStream());
+                Metrics metrics = Metrics.getInstance();
+                metrics.recordNanos(Metrics.PARSE, System.nanoTime() - parseStart);
+                metrics.increment(Metrics.RESPONSES_PARSED);
+                metrics.add(Metrics.ARTICLES_PARSED, cocktails.size());
+                response = new CocktailResponse(cocktails, responseEtag, responseLastModified);
+            } else if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                // The cached articles are still valid, keep their validators unless the server
+                // sent new ones
+                response = new CocktailResponse(
+                        null, responseEtag != null ? responseEtag : etag,
+                        responseLastModified != null ? responseLastModified : lastModified, true);
             } else {
-                Log.e("QueryUtils", "Error response code: " + urlConnection.getResponseCode());
+                throw new HttpStatusException(responseCode, httpResponse.header("Retry-After"));
             }
-        } catch (IOException e) {
-            Log.e("QueryUtils", "Problem retrieving the Guardian JSON results.", e);
         } finally {
-            if (urlConnection != null) {
-                urlConnection.disconnect();
+            if (cancellation != null) {
+                cancellation.detach();
             }
-            if (inputStream != null) {
-                // Closing the input stream could throw an IOException, which is why
-                // the makeHttpRequest(URL url) method signature specifies that an IOException
-                // could be thrown.
-                inputStream.close();
+            if (httpResponse != null) {
+                // Closing the response hands its connection back to the pool for the next
+                // request, instead of disconnecting it
+                httpResponse.close();
             }
         }
-        // Return the String of JSON data to start parsing in extractFieldsFromJson()
-        return jsonResponse;
+        // Return the parsed response to fetchCocktailResponse()
+        return response;
     }
 
     /**
@@ -115,106 +344,36 @@ public final class QueryUtils {
         try {
             url = new URL(stringUrl);
         } catch (MalformedURLException e) {
-            Log.e("QueryUtils", "Problem building the URL ", e);
+            EventLog.e("QueryUtils", "Problem building the URL ", e);
         }
         return url;
     }
 
     /**
-     * Convert the {@link InputStream} into a String which contains the
-     * whole JSON response from the server.
+     * The server answered with an error code instead of the articles
      */
-    private static String readFromStream(InputStream inputStream) throws IOException {
-        StringBuilder output = new StringBuilder();
-        if (inputStream != null) {
-            InputStreamReader inputStreamReader = new InputStreamReader(inputStream, Charset
-                    .forName("UTF-8"));
-            BufferedReader reader = new BufferedReader(inputStreamReader);
-            String line = reader.readLine();
-            while (line != null) {
-                output.append(line);
-                line = reader.readLine();
-            }
-        }
-        return output.toString();
-    }
-
-    /**
-     * Parse the the JSON response String and return a list extracted of {@link Cocktail}
-     * objects, Called from fetchCocktailData()
-     */
-    private static List<Cocktail> extractFieldsFromJson(String cocktailJson) {
-        // If the JSON string is empty or null, then return early.
-        if (TextUtils.isEmpty(cocktailJson)) {
-            return null;
-        }
-
-        // Create an empty ArrayList that we can start adding Cocktails article fields to
-        List<Cocktail> cocktailList = new ArrayList<>();
-
-        // Try to parse the JSON response string. If there's a problem with the way the JSON
-        // is formatted, a JSONException exception object will be thrown.
-        try {
-
-            // Create a JSONObject from the JSON response string
-            JSONObject baseJsonResponse = new JSONObject(cocktailJson);
-
-            JSONObject responseObject = baseJsonResponse.getJSONObject("response");
+    private static class HttpStatusException extends IOException {
 
-            // Extract the JSONArray associated with the key called "leadContent",
-            JSONArray leadContentArray = responseObject.getJSONArray("leadContent");
+        private static final long serialVersionUID = 1L;
 
-            // For each key in the leadContentArray, create an {@link Cocktail}
-            // object for the fields needed
-            for (int i = 0; i < leadContentArray.length(); i++) {
+        private final int mResponseCode;
+        private final String mRetryAfter;
 
-                // Get a single article at position i within the list of articles
-                JSONObject currentCocktail = leadContentArray.getJSONObject(i);
-
-                // Extract the value for the key called sectionName, which is the section of the
-                // newspaper
-                String sectionName = currentCocktail.getString("sectionName");
-
-                // Extract the value for the key called "webTitle", which is the name of the
-                // article.
-                String cocktailName = currentCocktail.getString("webTitle");
-
-                // Extract the value for the key called "webPublicationDate"
-                String date = currentCocktail.getString("webPublicationDate");
-
-                // Extract the value for the key called "webUrl"
-                String url = currentCocktail.getString("webUrl");
-
-
-                // The key "fields" object holds the byline, which is the author's name
-                JSONObject fields = currentCocktail.getJSONObject("fields");
-                String author = fields.getString("byline");
-
-                // The key "blocks" object holds the "body" array, which first element contains the
-                // article summary
-                JSONObject blocks = currentCocktail.getJSONObject("blocks");
-                JSONArray body = blocks.getJSONArray("body");
-                JSONObject bodyFields = body.getJSONObject(0);
-                String summary = bodyFields.getString("bodyTextSummary");
-
-                // Create a new {@link Cocktail} object with the cocktailName, author, date,
-                // summary, and url
-                Cocktail fieldsExtracted = new Cocktail(sectionName, cocktailName, author, date,
-                                                        summary,
-                                                        url);
-
-                // Add the new object to the list of Cocktail articles.
-                cocktailList.add(fieldsExtracted);
-            }
+        HttpStatusException(int responseCode, String retryAfter) {
+            super("Error response code: " + responseCode);
+            mResponseCode = responseCode;
+            mRetryAfter = retryAfter;
+        }
 
-        } catch (JSONException e) {
-            // If an error is thrown when executing any of the above statements in the "try" block,
-            // catch the exception here, so the app doesn't crash. Print a log message
-            // with the message from the exception.
-            Log.e("QueryUtils", "Problem parsing the JSON results", e);
+        int getResponseCode() {
+            return mResponseCode;
         }
 
-        // Return the list of Cocktail articles to the method call inside fetchCocktailData()
-        return cocktailList;
+        /**
+         * Returns the Retry-After header of the response, or null
+         */
+        String getRetryAfter() {
+            return mRetryAfter;
+        }
     }
 }
@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2018. Tina Taylor
+ * CREATIVE COMMONS Attribution-ShareAlike 3.0 Unported (CC BY-SA 3.0)
+ * https://creativecommons.org/licenses/by-sa/3.0/
+ */
+
+package com.freecbdhomebiz.cocktailoftheweek;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Turns changes of a setting the list depends on, such as the order, into as few reloads as
+ * possible. A change is only applied once the setting stayed the same for
+ * {@link #DEBOUNCE_MILLIS}, so flipping it a few times in a row costs one reload, and none if
+ * it ends up where it started. As soon as the setting moves away from the value the running
+ * reload is for, that reload is canceled, as its result would only be thrown away.
+ * <p>
+ * The coordinator only decides when to reload, the {@link Reloader} decides how. For the order
+ * of the list that is usually without a request, see {@link #sort}. Not thread safe: changes,
+ * flushes and the scheduled runs all happen on one thread, the main thread in the app.
+ * <p>
+ * Kept free of Android classes so it can be unit tested with a virtual clock, in the app the
+ * {@link Scheduler} is a Handler of the main thread.
+ */
+public class ReloadCoordinator {
+
+    /**
+     * How long the setting has to stay the same before it is applied
+     */
+    public static final long DEBOUNCE_MILLIS = 400;
+
+    /**
+     * Runs the debounced reload later, the two methods of android.os.Handler
+     */
+    public interface Scheduler {
+        void postDelayed(Runnable task, long delayMillis);
+
+        void removeCallbacks(Runnable task);
+    }
+
+    /**
+     * Applies a value of the setting to the list
+     */
+    public interface Reloader {
+        /**
+         * Show the list for the value, canceling what is still loading for an earlier one
+         */
+        void reload(String value);
+
+        /**
+         * Stop the reload of the last value applied, the setting moved away from it
+         */
+        void cancel();
+    }
+
+    private final Scheduler mScheduler;
+    private final Reloader mReloader;
+
+    /**
+     * The value last applied, and whether the list still holds or loads it
+     */
+    private String mApplied;
+    private boolean mAppliedLive = true;
+
+    /**
+     * The value waiting for the debounce, null if there is none
+     */
+    private String mPending;
+
+    private final Runnable mApply = new Runnable() {
+        @Override
+        public void run() {
+            apply();
+        }
+    };
+
+    /**
+     * Constructs a new {@link ReloadCoordinator}
+     *
+     * @param scheduler runs the debounced reloads
+     * @param reloader applies the values of the setting
+     * @param applied is the value the list is currently shown for
+     */
+    public ReloadCoordinator(Scheduler scheduler, Reloader reloader, String applied) {
+        mScheduler = scheduler;
+        mReloader = reloader;
+        mApplied = applied;
+    }
+
+    /**
+     * The setting changed to the value, apply it once it stays put
+     */
+    public void onChanged(String value) {
+        if (mAppliedLive && !value.equals(mApplied)) {
+            mReloader.cancel();
+            mAppliedLive = false;
+        }
+        mPending = value;
+        mScheduler.removeCallbacks(mApply);
+        mScheduler.postDelayed(mApply, DEBOUNCE_MILLIS);
+    }
+
+    /**
+     * Apply a change waiting for the debounce straight away, as the list is about to be shown
+     */
+    public void flush() {
+        if (mPending != null) {
+            mScheduler.removeCallbacks(mApply);
+            apply();
+        }
+    }
+
+    /**
+     * Drop a change waiting for the debounce, the list is gone
+     */
+    public void cancel() {
+        mScheduler.removeCallbacks(mApply);
+        mPending = null;
+    }
+
+    /**
+     * Returns true while a change waits for the debounce
+     */
+    public boolean isPending() {
+        return mPending != null;
+    }
+
+    private void apply() {
+        String value = mPending;
+        mPending = null;
+        if (value == null || (mAppliedLive && value.equals(mApplied))) {
+            // Back where it started, the list already shows it
+            return;
+        }
+        mApplied = value;
+        mAppliedLive = true;
+        mReloader.reload(value);
+    }
+
+    /**
+     * Returns the rows in the order of the feed, newest or oldest first. Once every page of
+     * the feed was loaded this is the whole feed in the other order, so changing the order
+     * needs no request.
+     */
+    public static List<PreparedCocktail> sort(List<PreparedCocktail> rows,
+                                              boolean newestFirst) {
+        final Comparator<Cocktail> byDate = MultiSourceFetcher.byDate(newestFirst);
+        List<PreparedCocktail> sorted = new ArrayList<>(rows);
+        Collections.sort(sorted, new Comparator<PreparedCocktail>() {
+            @Override
+            public int compare(PreparedCocktail a, PreparedCocktail b) {
+                return byDate.compare(a.getCocktail(), b.getCocktail());
+            }
+        });
+        return sorted;
+    }
+}
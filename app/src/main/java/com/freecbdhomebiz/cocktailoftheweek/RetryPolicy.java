@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2018. Tina Taylor
+ * CREATIVE COMMONS Attribution-ShareAlike 3.0 Unported (CC BY-SA 3.0)
+ * https://creativecommons.org/licenses/by-sa/3.0/
+ */
+
+package com.freecbdhomebiz.cocktailoftheweek;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+
+/**
+ * Decides whether a failed request to the Guardian is tried again, and how long to wait first.
+ * Only failures that may go away by themselves are retried: a dropped connection, or the
+ * server saying it is busy (429) or temporarily down (5xx). The wait doubles with every
+ * attempt and is picked at random up to that limit, so phones that failed together don't all
+ * come back at the same moment, unless the server said when to come back with Retry-After.
+ * Kept free of Android classes so it can be unit tested.
+ */
+public class RetryPolicy {
+
+    /**
+     * Most times a request is sent, including the first one
+     */
+    public static final int DEFAULT_MAX_ATTEMPTS = 3;
+
+    /**
+     * Longest wait before the first retry, doubled for every following one
+     */
+    public static final long DEFAULT_BASE_DELAY_MILLIS = 500;
+
+    /**
+     * Longest wait before any retry. A Retry-After longer than this is not waited for, the
+     * request fails and the cached articles are shown instead.
+     */
+    public static final long DEFAULT_MAX_DELAY_MILLIS = 8000;
+
+    private final int mMaxAttempts;
+    private final long mBaseDelayMillis;
+    private final long mMaxDelayMillis;
+    private final Random mRandom;
+
+    /**
+     * Constructs a new {@link RetryPolicy} with the default limits
+     */
+    public RetryPolicy() {
+        this(DEFAULT_MAX_ATTEMPTS, DEFAULT_BASE_DELAY_MILLIS, DEFAULT_MAX_DELAY_MILLIS,
+             new Random());
+    }
+
+    /**
+     * Constructs a new {@link RetryPolicy}
+     *
+     * @param maxAttempts is the most times a request is sent, including the first one
+     * @param baseDelayMillis is the longest wait before the first retry
+     * @param maxDelayMillis is the longest wait before any retry
+     * @param random picks the waits
+     */
+    public RetryPolicy(int maxAttempts, long baseDelayMillis, long maxDelayMillis,
+                       Random random) {
+        if (maxAttempts < 1 || baseDelayMillis < 0 || maxDelayMillis < baseDelayMillis) {
+            throw new IllegalArgumentException("invalid retry limits");
+        }
+        mMaxAttempts = maxAttempts;
+        mBaseDelayMillis = baseDelayMillis;
+        mMaxDelayMillis = maxDelayMillis;
+        mRandom = random;
+    }
+
+    /**
+     * Returns the time to wait before trying again after the given number of failed attempts,
+     * or -1 if the request should not be tried again
+     *
+     * @param failedAttempts is the number of attempts that failed so far, at least 1
+     * @param retryAfterMillis is the wait the server asked for with Retry-After, or -1
+     */
+    public long delayMillis(int failedAttempts, long retryAfterMillis) {
+        if (failedAttempts >= mMaxAttempts) {
+            return -1;
+        }
+        if (retryAfterMillis >= 0) {
+            return retryAfterMillis <= mMaxDelayMillis ? retryAfterMillis : -1;
+        }
+        long limit = mBaseDelayMillis;
+        for (int i = 1; i < failedAttempts && limit < mMaxDelayMillis; i++) {
+            limit *= 2;
+        }
+        limit = Math.min(limit, mMaxDelayMillis);
+        return (long) (mRandom.nextDouble() * limit);
+    }
+
+    /**
+     * Returns true if a response with this code may succeed when it is sent again
+     */
+    public static boolean isRetryable(int responseCode) {
+        switch (responseCode) {
+            case HttpURLConnection.HTTP_CLIENT_TIMEOUT:
+            case 429: // Too Many Requests
+            case HttpURLConnection.HTTP_INTERNAL_ERROR:
+            case HttpURLConnection.HTTP_BAD_GATEWAY:
+            case HttpURLConnection.HTTP_UNAVAILABLE:
+            case HttpURLConnection.HTTP_GATEWAY_TIMEOUT:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Returns true if a request that failed with this exception may succeed when it is sent
+     * again, which only a failure of the transport may. A timeout is not retried: the user
+     * already waited for it once, and the network is unlikely to be any better a moment later.
+     * A response that can't be parsed comes back the same the next time.
+     */
+    public static boolean isRetryable(IOException e) {
+        return !(e instanceof InterruptedIOException) && !isMalformedResponse(e);
+    }
+
+    /**
+     * Returns true if a request that failed with this exception counts towards opening the
+     * {@link CircuitBreaker} of the server. Every failure of the transport does, a timeout
+     * too: a server that hangs is in as much trouble as one that drops the connection. A
+     * response that can't be parsed came from a server that works.
+     */
+    public static boolean isServerFailure(IOException e) {
+        return !isMalformedResponse(e);
+    }
+
+    private static boolean isMalformedResponse(IOException e) {
+        return e instanceof CocktailJsonParser.MalformedResponseException;
+    }
+
+    /**
+     * Returns the wait asked for by a Retry-After header, which is either a number of seconds
+     * or an HTTP date, or -1 if there is no valid header
+     *
+     * @param now is the current time in milliseconds, to turn a date into a wait
+     */
+    public static long parseRetryAfter(String retryAfter, long now) {
+        if (retryAfter == null) {
+            return -1;
+        }
+        retryAfter = retryAfter.trim();
+        if (retryAfter.isEmpty()) {
+            return -1;
+        }
+        boolean digits = true;
+        for (int i = 0; i < retryAfter.length() && digits; i++) {
+            digits = retryAfter.charAt(i) >= '0' && retryAfter.charAt(i) <= '9';
+        }
+        if (digits) {
+            // More than 9 digits of seconds is longer than anyone would wait anyway
+            return retryAfter.length() > 9 ? Long.MAX_VALUE
+                                           : Long.parseLong(retryAfter) * 1000;
+        }
+        SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz",
+                                                       Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        try {
+            Date date = format.parse(retryAfter);
+            return Math.max(0, date.getTime() - now);
+        } catch (ParseException e) {
+            return -1;
+        }
+    }
+}
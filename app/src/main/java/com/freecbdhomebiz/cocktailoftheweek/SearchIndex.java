@@ -0,0 +1,432 @@
+/*
+ * Copyright (c) 2018. Tina Taylor
+ * CREATIVE COMMONS Attribution-ShareAlike 3.0 Unported (CC BY-SA 3.0)
+ * https://creativecommons.org/licenses/by-sa/3.0/
+ */
+
+package com.freecbdhomebiz.cocktailoftheweek;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Full-text inverted index of the {@link Cocktail} articles, so the archive can be searched for
+ * ingredients like "gin" or "mezcal" without a network call. Every word of the title, author
+ * and summary points to the sorted IDs of the articles it appears in. Articles are added as
+ * they arrive, and the index is written compactly to disk so it never has to be rebuilt.
+ * Kept free of Android classes so it can be unit tested, see {@link SearchIndexer} for the
+ * part that runs it in the app.
+ */
+public class SearchIndex {
+
+    /**
+     * Words shorter than this (like "a" or single digits) are not indexed
+     */
+    static final int MIN_TERM_LENGTH = 2;
+
+    /**
+     * Version of the file format, bump it whenever the layout changes
+     */
+    private static final int FORMAT_VERSION = 2;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Newest articles first in the search results
+     */
+    private static final Comparator<Cocktail> NEWEST_FIRST = new Comparator<Cocktail>() {
+        @Override
+        public int compare(Cocktail a, Cocktail b) {
+            return a.getDate() < b.getDate() ? 1 : a.getDate() > b.getDate() ? -1 : 0;
+        }
+    };
+
+    /**
+     * The indexed articles by their ID, null where an article was replaced by a newer version
+     */
+    private final List<Cocktail> mDocuments = new ArrayList<>();
+
+    /**
+     * ID of the current version of each article, by URL
+     */
+    private final Map<String, Integer> mIds = new HashMap<>();
+
+    /**
+     * The IDs of the articles each word appears in, sorted by word so a prefix is a range
+     */
+    private final TreeMap<String, Postings> mTerms = new TreeMap<>();
+
+    /**
+     * Add an article to the index, replacing the one with the same URL. Returns false if the
+     * same article was already indexed, so nothing changed.
+     */
+    public synchronized boolean add(Cocktail cocktail) {
+        if (cocktail.getUrl() == null) {
+            return false;
+        }
+        Integer oldId = mIds.get(cocktail.getUrl());
+        if (oldId != null) {
+            Cocktail old = mDocuments.get(oldId);
+            if (old.equals(cocktail)) {
+                return false;
+            }
+            for (String term : termsOf(old)) {
+                Postings postings = mTerms.get(term);
+                postings.remove(oldId);
+                if (postings.size() == 0) {
+                    mTerms.remove(term);
+                }
+            }
+            mDocuments.set(oldId, null);
+        }
+
+        // IDs only grow, so appending keeps every postings list sorted
+        int id = mDocuments.size();
+        mDocuments.add(cocktail);
+        mIds.put(cocktail.getUrl(), id);
+        for (String term : termsOf(cocktail)) {
+            Postings postings = mTerms.get(term);
+            if (postings == null) {
+                postings = new Postings();
+                mTerms.put(term, postings);
+            }
+            postings.add(id);
+        }
+        return true;
+    }
+
+    /**
+     * Add all the articles to the index, and return how many of them were new or changed
+     */
+    public synchronized int addAll(List<Cocktail> cocktails) {
+        int changed = 0;
+        for (Cocktail cocktail : cocktails) {
+            if (add(cocktail)) {
+                changed++;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Returns the number of articles in the index
+     */
+    public synchronized int size() {
+        return mIds.size();
+    }
+
+    /**
+     * Returns the number of distinct words in the index
+     */
+    public synchronized int termCount() {
+        return mTerms.size();
+    }
+
+    /**
+     * Returns the articles that contain every word of the query, newest first. The last word
+     * also matches longer words that start with it, so results show up while typing.
+     *
+     * @param limit is the most articles to return
+     */
+    public synchronized List<Cocktail> search(String query, int limit) {
+        List<String> terms = tokenize(query);
+        if (terms.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        // Start with the articles matching the prefix, then keep those containing every word
+        BitSet matches = new BitSet(mDocuments.size());
+        String prefix = terms.get(terms.size() - 1);
+        for (Postings postings : mTerms.subMap(prefix, prefix + Character.MAX_VALUE).values()) {
+            postings.addTo(matches);
+        }
+        for (int i = 0; i < terms.size() - 1 && !matches.isEmpty(); i++) {
+            Postings postings = mTerms.get(terms.get(i));
+            if (postings == null) {
+                return Collections.emptyList();
+            }
+            BitSet containing = new BitSet(mDocuments.size());
+            postings.addTo(containing);
+            matches.and(containing);
+        }
+
+        List<Cocktail> results = new ArrayList<>(matches.cardinality());
+        for (int id = matches.nextSetBit(0); id >= 0; id = matches.nextSetBit(id + 1)) {
+            results.add(mDocuments.get(id));
+        }
+        Collections.sort(results, NEWEST_FIRST);
+        return results.size() > limit ? new ArrayList<>(results.subList(0, limit)) : results;
+    }
+
+    /**
+     * Returns the distinct words of the title, author and summary of the article
+     */
+    private static Set<String> termsOf(Cocktail cocktail) {
+        Set<String> terms = new LinkedHashSet<>();
+        terms.addAll(tokenize(cocktail.getCocktailName()));
+        terms.addAll(tokenize(cocktail.getAuthor()));
+        terms.addAll(tokenize(cocktail.getSummary()));
+        return terms;
+    }
+
+    /**
+     * Split text into lower case words without accents, so accented words also match when
+     * they are typed without the accents
+     */
+    static List<String> tokenize(String text) {
+        List<String> terms = new ArrayList<>();
+        if (text == null) {
+            return terms;
+        }
+        String folded = Normalizer.normalize(text.toLowerCase(Locale.ROOT), Normalizer.Form.NFD);
+        StringBuilder term = new StringBuilder();
+        for (int i = 0; i <= folded.length(); i++) {
+            char c = i < folded.length() ? folded.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                term.append(c);
+            } else if (Character.getType(c) != Character.NON_SPACING_MARK) {
+                if (term.length() >= MIN_TERM_LENGTH) {
+                    terms.add(term.toString());
+                }
+                term.setLength(0);
+            }
+        }
+        return terms;
+    }
+
+    /**
+     * Write the index to the stream. Replaced articles are left out and the IDs renumbered,
+     * words share their prefix with the word before them and the IDs are stored as varint
+     * gaps, so a posting mostly takes a single byte.
+     */
+    public synchronized void writeTo(OutputStream stream) throws IOException {
+        DataOutputStream out = new DataOutputStream(stream);
+        out.writeInt(FORMAT_VERSION);
+
+        int[] newIds = new int[mDocuments.size()];
+        out.writeInt(mIds.size());
+        int next = 0;
+        for (int id = 0; id < mDocuments.size(); id++) {
+            Cocktail cocktail = mDocuments.get(id);
+            if (cocktail == null) {
+                continue;
+            }
+            newIds[id] = next++;
+            writeString(out, cocktail.getSectionName());
+            writeString(out, cocktail.getCocktailName());
+            writeString(out, cocktail.getAuthor());
+            out.writeLong(cocktail.getDate());
+            writeBytes(out, cocktail.getSummaryUtf8());
+            writeString(out, cocktail.getUrl());
+            writeString(out, cocktail.getThumbnail());
+        }
+
+        out.writeInt(mTerms.size());
+        String previous = "";
+        for (Map.Entry<String, Postings> entry : mTerms.entrySet()) {
+            String term = entry.getKey();
+            int shared = sharedPrefixLength(previous, term);
+            writeVarint(out, shared);
+            writeBytes(out, term.substring(shared).getBytes(UTF_8));
+            previous = term;
+
+            Postings postings = entry.getValue();
+            writeVarint(out, postings.size());
+            int last = -1;
+            for (int i = 0; i < postings.size(); i++) {
+                int id = newIds[postings.get(i)];
+                writeVarint(out, id - last);
+                last = id;
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * Read an index written by writeTo()
+     *
+     * @throws IOException if the stream is not a complete index of this version
+     */
+    public static SearchIndex readFrom(InputStream stream) throws IOException {
+        DataInputStream in = new DataInputStream(stream);
+        if (in.readInt() != FORMAT_VERSION) {
+            throw new IOException("Unknown search index version");
+        }
+        SearchIndex index = new SearchIndex();
+
+        int count = in.readInt();
+        for (int id = 0; id < count; id++) {
+            Cocktail cocktail = Cocktail.withSummaryUtf8(readString(in), readString(in),
+                                                         readString(in), in.readLong(),
+                                                         readBytes(in), readString(in),
+                                                         readString(in));
+            index.mDocuments.add(cocktail);
+            index.mIds.put(cocktail.getUrl(), id);
+        }
+
+        int termCount = in.readInt();
+        String previous = "";
+        for (int t = 0; t < termCount; t++) {
+            int shared = readVarint(in);
+            byte[] suffix = readBytes(in);
+            if (shared > previous.length() || suffix == null) {
+                throw new IOException("Corrupt search index term");
+            }
+            String term = previous.substring(0, shared) + new String(suffix, UTF_8);
+            previous = term;
+
+            int size = readVarint(in);
+            Postings postings = new Postings(size);
+            int id = -1;
+            for (int i = 0; i < size; i++) {
+                id += readVarint(in);
+                if (id >= count) {
+                    throw new IOException("Corrupt search index posting");
+                }
+                postings.add(id);
+            }
+            index.mTerms.put(term, postings);
+        }
+        return index;
+    }
+
+    private static int sharedPrefixLength(String a, String b) {
+        int length = Math.min(a.length(), b.length());
+        int i = 0;
+        while (i < length && a.charAt(i) == b.charAt(i)) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Write a non-negative int in 7-bit groups, low bits first, so small numbers take one byte
+     */
+    private static void writeVarint(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7f) != 0) {
+            out.writeByte((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    /**
+     * Read an int written by writeVarint()
+     */
+    private static int readVarint(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Corrupt varint");
+    }
+
+    /**
+     * Write a String that may be null as its UTF-8 length followed by its bytes
+     */
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        writeBytes(out, value == null ? null : value.getBytes(UTF_8));
+    }
+
+    /**
+     * Read a String written by writeString()
+     */
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = readBytes(in);
+        return bytes == null ? null : new String(bytes, UTF_8);
+    }
+
+    /**
+     * Write a byte array that may be null as its varint length plus one followed by its bytes
+     */
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        if (bytes == null) {
+            writeVarint(out, 0);
+            return;
+        }
+        writeVarint(out, bytes.length + 1);
+        out.write(bytes);
+    }
+
+    /**
+     * Read a byte array written by writeBytes()
+     */
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        int length = readVarint(in) - 1;
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    /**
+     * A growable sorted array of article IDs, much smaller than a List of Integers
+     */
+    private static class Postings {
+        private int[] mIds;
+        private int mSize;
+
+        Postings() {
+            this(4);
+        }
+
+        Postings(int capacity) {
+            mIds = new int[Math.max(1, capacity)];
+        }
+
+        int size() {
+            return mSize;
+        }
+
+        int get(int index) {
+            return mIds[index];
+        }
+
+        /**
+         * Append an ID, which must be larger than all the IDs already in the list
+         */
+        void add(int id) {
+            if (mSize == mIds.length) {
+                mIds = Arrays.copyOf(mIds, mSize * 2);
+            }
+            mIds[mSize++] = id;
+        }
+
+        void remove(int id) {
+            int index = Arrays.binarySearch(mIds, 0, mSize, id);
+            if (index >= 0) {
+                System.arraycopy(mIds, index + 1, mIds, index, mSize - index - 1);
+                mSize--;
+            }
+        }
+
+        void addTo(BitSet bits) {
+            for (int i = 0; i < mSize; i++) {
+                bits.set(mIds[i]);
+            }
+        }
+    }
+}
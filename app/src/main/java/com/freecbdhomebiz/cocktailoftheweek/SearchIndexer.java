@@ -0,0 +1,228 @@
+/*
+ * Copyright (c) 2018. Tina Taylor
+ * CREATIVE COMMONS Attribution-ShareAlike 3.0 Unported (CC BY-SA 3.0)
+ * https://creativecommons.org/licenses/by-sa/3.0/
+ */
+
+package com.freecbdhomebiz.cocktailoftheweek;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Keeps the app's {@link SearchIndex} up to date and answers searches. All the work happens on
+ * one background thread, so the UI thread never waits on the index: the index is read from disk
+ * the first time it is needed, articles are added as CocktailPipeline and CocktailSyncService
+ * receive them, and the index is written back whenever something changed. Under memory
+ * pressure the index in memory is dropped, it is on disk already and read again for the next
+ * search.
+ */
+public class SearchIndexer implements TrimmableCache {
+
+    /**
+     * Tag for log messages
+     */
+    private static final String LOG_TAG = SearchIndexer.class.getName();
+
+    /**
+     * Most articles shown for a search
+     */
+    private static final int SEARCH_LIMIT = 100;
+
+    /**
+     * Callback with the results of a search, on the UI thread
+     */
+    public interface SearchCallback {
+        void onSearchResults(String query, List<PreparedCocktail> results);
+    }
+
+    private static SearchIndexer sInstance;
+
+    private final File mFile;
+
+    /**
+     * A single thread, so updates and searches never run at the same time
+     */
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * The index, only touched on mExecutor. Null until it is first needed.
+     */
+    private SearchIndex mIndex;
+
+    /**
+     * Articles in the index in memory, and how often the index was found in memory or had to be
+     * read from disk. Only written on mExecutor.
+     */
+    private volatile int mIndexSize;
+    private volatile long mHits;
+    private volatile long mMisses;
+
+    private SearchIndexer(Context context) {
+        mFile = new File(context.getFilesDir(), "search.index");
+    }
+
+    /**
+     * Returns the one SearchIndexer of the app
+     */
+    public static synchronized SearchIndexer getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new SearchIndexer(context.getApplicationContext());
+            CacheRegistry.getInstance().register("search articles", CacheRegistry.INDEX,
+                                                 sInstance);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Add the articles to the index in the background
+     */
+    public void index(final List<Cocktail> cocktails) {
+        if (cocktails == null || cocktails.isEmpty()) {
+            return;
+        }
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (index().addAll(cocktails) > 0) {
+                    mIndexSize = mIndex.size();
+                    save();
+                }
+            }
+        });
+    }
+
+    /**
+     * Search the index in the background and send the results, ready to display, to the
+     * callback on the UI thread
+     */
+    public void search(final String query, final SearchCallback callback) {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final List<PreparedCocktail> results =
+                        PreparedCocktail.prepare(index().search(query, SEARCH_LIMIT));
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onSearchResults(query, results);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Returns the index, reading it from disk the first time. Call on mExecutor.
+     */
+    private SearchIndex index() {
+        if (mIndex != null) {
+            mHits++;
+            return mIndex;
+        }
+        mMisses++;
+        if (mFile.exists()) {
+            InputStream in = null;
+            try {
+                in = new BufferedInputStream(new FileInputStream(mFile));
+                mIndex = SearchIndex.readFrom(in);
+            } catch (IOException e) {
+                // Start again with an empty index, the articles are added back as they arrive
+                EventLog.e(LOG_TAG, "Problem reading the search index", e);
+            } finally {
+                closeQuietly(in);
+            }
+        }
+        if (mIndex == null) {
+            mIndex = new SearchIndex();
+        }
+        mIndexSize = mIndex.size();
+        return mIndex;
+    }
+
+    @Override
+    public long size() {
+        return mIndexSize;
+    }
+
+    @Override
+    public long hitCount() {
+        return mHits;
+    }
+
+    @Override
+    public long missCount() {
+        return mMisses;
+    }
+
+    /**
+     * Drop the index from memory if it holds more than maxSize articles. Every change was
+     * written to disk already, so the next search reads it back.
+     */
+    @Override
+    public void trimToSize(long maxSize) {
+        if (mIndexSize <= maxSize) {
+            return;
+        }
+        // Counted as gone now, it is as soon as the running search or update is done
+        mIndexSize = 0;
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                mIndex = null;
+                mIndexSize = 0;
+            }
+        });
+    }
+
+    /**
+     * Write the index to disk through a temporary file. Call on mExecutor.
+     */
+    private void save() {
+        File tmp = new File(mFile.getPath() + ".tmp");
+        OutputStream out = null;
+        try {
+            out = new BufferedOutputStream(new FileOutputStream(tmp));
+            mIndex.writeTo(out);
+            out.close();
+            out = null;
+            if (!tmp.renameTo(mFile)) {
+                EventLog.e(LOG_TAG, "Problem replacing the search index {}", mFile);
+            }
+        } catch (IOException e) {
+            EventLog.e(LOG_TAG, "Problem writing the search index", e);
+        } finally {
+            closeQuietly(out);
+            if (tmp.exists() && !tmp.delete()) {
+                EventLog.e(LOG_TAG, "Problem deleting {}", tmp);
+            }
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            EventLog.e(LOG_TAG, "Problem closing the search index", e);
+        }
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright (c) 2018. Tina Taylor
+ * CREATIVE COMMONS Attribution-ShareAlike 3.0 Unported (CC BY-SA 3.0)
+ * https://creativecommons.org/licenses/by-sa/3.0/
+ */
+
+package com.freecbdhomebiz.cocktailoftheweek;
+
+import android.content.Context;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A small file with the rows of the first screen of the list, exactly as they were last shown,
+ * so MainActivity can show them on its first frame instead of a spinner. It is only a few
+ * kilobytes, small enough to read on the UI thread while the app starts: the date is already
+ * formatted and the summary already shortened, so nothing has to be parsed or prepared. The
+ * full list replaces it once the ArticleCache and the Guardian answered.
+ */
+public class StartupSnapshot {
+
+    /**
+     * Tag for log messages
+     */
+    private static final String LOG_TAG = StartupSnapshot.class.getName();
+
+    /**
+     * Rows kept, about what fits on the screen of a phone
+     */
+    static final int MAX_ITEMS = 6;
+
+    /**
+     * Largest file that is read, anything bigger is not a snapshot
+     */
+    static final int MAX_BYTES = 16 * 1024;
+
+    /**
+     * Version of the file format, bump it whenever the layout changes
+     */
+    private static final int FORMAT_VERSION = 4;
+
+    private final File mFile;
+
+    /**
+     * Constructs a new {@link StartupSnapshot} in the app's files directory
+     *
+     * @param context of the app
+     */
+    public StartupSnapshot(Context context) {
+        this(new File(context.getFilesDir(), "startup.snapshot"));
+    }
+
+    /**
+     * Constructs a new {@link StartupSnapshot} kept in the given file
+     */
+    StartupSnapshot(File file) {
+        mFile = file;
+    }
+
+    /**
+     * Returns the rows last shown for the request key, or null if there are none, they were
+     * shown for another key or locale, or the file can't be read. Fast enough for the UI thread.
+     *
+     * @param key is the key of the first page's feed request, which depends on the order. Only
+     *            its {@link ArticleCache#cacheKey} is stored, the api-key stays off the disk.
+     */
+    public List<PreparedCocktail> read(String key) {
+        long length = mFile.length();
+        if (length == 0 || length > MAX_BYTES) {
+            return null;
+        }
+        // Read the whole file at once, one small read is faster than many buffered ones
+        byte[] bytes = new byte[(int) length];
+        FileInputStream file = null;
+        try {
+            file = new FileInputStream(mFile);
+            int read = 0;
+            while (read < bytes.length) {
+                int count = file.read(bytes, read, bytes.length - read);
+                if (count < 0) {
+                    throw new EOFException();
+                }
+                read += count;
+            }
+        } catch (IOException e) {
+            EventLog.e(LOG_TAG, "Problem reading the startup snapshot", e);
+            return null;
+        } finally {
+            closeQuietly(file);
+        }
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        try {
+            if (in.readInt() != FORMAT_VERSION
+                    || !ArticleCache.cacheKey(key).equals(in.readUTF())
+                    || !Locale.getDefault().toString().equals(in.readUTF())) {
+                // The order or the language changed, the rows would be the wrong ones
+                return null;
+            }
+            int count = in.readInt();
+            if (count < 0 || count > MAX_ITEMS) {
+                return null;
+            }
+            List<PreparedCocktail> items = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                String sectionName = readString(in);
+                String cocktailName = readString(in);
+                String author = readString(in);
+                long date = in.readLong();
+                String displayDate = readString(in);
+                long displayDateDay = in.readLong();
+                String summary = readString(in);
+                String url = readString(in);
+                String thumbnail = readString(in);
+                // The summary is only kept as short as the row shows it. A date rendered on
+                // an earlier day is rendered again when the row is bound.
+                items.add(new PreparedCocktail(
+                        new Cocktail(sectionName, cocktailName, author, date, summary, url,
+                                     thumbnail),
+                        displayDate, displayDateDay, summary));
+            }
+            return items;
+        } catch (IOException e) {
+            EventLog.e(LOG_TAG, "Problem reading the startup snapshot", e);
+            return null;
+        }
+    }
+
+    /**
+     * Store the first rows of the list shown for the request key. Call from a background
+     * thread.
+     */
+    public synchronized void write(String key, List<PreparedCocktail> items) {
+        if (items == null || items.isEmpty()) {
+            return;
+        }
+        // Write to a temporary file first and rename it, so a crash half way through never
+        // leaves a truncated snapshot behind
+        File tmp = new File(mFile.getPath() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+            out.writeInt(FORMAT_VERSION);
+            out.writeUTF(ArticleCache.cacheKey(key));
+            out.writeUTF(Locale.getDefault().toString());
+            int count = Math.min(items.size(), MAX_ITEMS);
+            out.writeInt(count);
+            for (int i = 0; i < count; i++) {
+                PreparedCocktail item = items.get(i);
+                Cocktail cocktail = item.getCocktail();
+                writeString(out, cocktail.getSectionName());
+                writeString(out, cocktail.getCocktailName());
+                writeString(out, cocktail.getAuthor());
+                out.writeLong(cocktail.getDate());
+                writeString(out, item.getDate());
+                out.writeLong(item.getDateDay());
+                writeString(out, item.getSummary());
+                writeString(out, cocktail.getUrl());
+                writeString(out, cocktail.getThumbnail());
+            }
+            out.close();
+            out = null;
+            if (!tmp.renameTo(mFile)) {
+                EventLog.e(LOG_TAG, "Problem replacing the startup snapshot {}", mFile);
+            }
+        } catch (IOException e) {
+            EventLog.e(LOG_TAG, "Problem writing the startup snapshot", e);
+        } finally {
+            closeQuietly(out);
+            if (tmp.exists() && !tmp.delete()) {
+                EventLog.e(LOG_TAG, "Problem deleting {}", tmp);
+            }
+        }
+    }
+
+    /**
+     * Write a String that may be null
+     */
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            EventLog.e(LOG_TAG, "Problem closing the startup snapshot", e);
+        }
+    }
+}
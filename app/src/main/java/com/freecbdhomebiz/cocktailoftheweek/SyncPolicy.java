@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2018. Tina Taylor
+ * CREATIVE COMMONS Attribution-ShareAlike 3.0 Unported (CC BY-SA 3.0)
+ * https://creativecommons.org/licenses/by-sa/3.0/
+ */
+
+package com.freecbdhomebiz.cocktailoftheweek;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides when the background sync of {@link CocktailSyncService} runs. A new Cocktail of the
+ * Week is published once a week, so the articles are synced about weekly, only on an unmetered
+ * network while the phone is charging. Kept free of Android classes so it can be unit tested.
+ */
+public final class SyncPolicy {
+
+    /**
+     * How often the sync runs, to match the weekly cadence of the series
+     */
+    public static final long SYNC_INTERVAL_MILLIS = TimeUnit.DAYS.toMillis(7);
+
+    /**
+     * The sync may run this long before the end of each interval, so the system can batch it
+     * with the work of other apps while the phone is charging anyway
+     */
+    public static final long SYNC_FLEX_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    /**
+     * The sync only runs on an unmetered network (usually Wi-Fi), so it never uses mobile data
+     */
+    public static final boolean REQUIRES_UNMETERED_NETWORK = true;
+
+    /**
+     * The sync only runs while the phone is plugged in, so it never drains the battery
+     */
+    public static final boolean REQUIRES_CHARGING = true;
+
+    /**
+     * A failed sync is retried at most this many times before waiting for the next interval
+     */
+    public static final int MAX_RETRIES = 3;
+
+    /**
+     * Time the first retry waits, the system doubles it for every following one
+     */
+    public static final long RETRY_BACKOFF_MILLIS = TimeUnit.MINUTES.toMillis(30);
+
+    /**
+     * Create a private constructor because no one should ever create a {@link SyncPolicy}
+     * object. It only holds static constants and methods.
+     */
+    private SyncPolicy() {
+    }
+
+    /**
+     * Returns true if the articles have to be fetched again. They don't when the app itself
+     * refreshed them within the flex window, for example because the user opened it yesterday.
+     *
+     * @param lastSyncAt is the time the stored articles were fetched, or 0 if there are none
+     * @param now is the current time in milliseconds
+     */
+    public static boolean isSyncDue(long lastSyncAt, long now) {
+        if (lastSyncAt <= 0 || lastSyncAt > now) {
+            // Nothing stored yet, or the clock was changed, so the age can't be trusted
+            return true;
+        }
+        return now - lastSyncAt >= SYNC_INTERVAL_MILLIS - SYNC_FLEX_MILLIS;
+    }
+
+    /**
+     * Returns true if a sync that failed the given number of times in a row should be retried
+     * soon rather than waiting for the next interval
+     *
+     * @param failures is the number of failed syncs in a row, including this one
+     */
+    public static boolean shouldRetry(int failures) {
+        return failures > 0 && failures <= MAX_RETRIES;
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2018. Tina Taylor
+ * CREATIVE COMMONS Attribution-ShareAlike 3.0 Unported (CC BY-SA 3.0)
+ * https://creativecommons.org/licenses/by-sa/3.0/
+ */
+
+package com.freecbdhomebiz.cocktailoftheweek;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+
+import java.io.File;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The {@link ImageLoader} of the thumbnails in the list of articles. Thumbnails are decoded
+ * straight to the size of the row's image view, in RGB_565 as they have no transparency, so a
+ * screen of them takes a few hundred kilobytes rather than megabytes. The decoded ones are
+ * kept in an eighth of the app's heap, the downloaded ones in the cache directory. The decoded
+ * ones are given back under memory pressure, after the rendered texts and the search index.
+ */
+public final class ThumbnailLoader {
+
+    /**
+     * Threads that download and decode, few enough to leave the CPU to the UI thread
+     */
+    private static final int THREADS = 2;
+
+    /**
+     * Most the downloaded thumbnails may take up on disk
+     */
+    private static final long DISK_CACHE_BYTES = 10 * 1024 * 1024;
+
+    private static ImageLoader<Bitmap> sInstance;
+
+    /**
+     * No one should ever create a {@link ThumbnailLoader} object, it only holds the loader
+     */
+    private ThumbnailLoader() {
+    }
+
+    /**
+     * Returns the one loader of the app, so all the rows share its caches
+     */
+    public static synchronized ImageLoader<Bitmap> getInstance(Context context) {
+        if (sInstance == null) {
+            final Handler mainThread = new Handler(Looper.getMainLooper());
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                    THREADS, THREADS, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                    new ThreadFactory() {
+                        @Override
+                        public Thread newThread(final Runnable runnable) {
+                            return new Thread(new Runnable() {
+                                @Override
+                                public void run() {
+                                    Process.setThreadPriority(
+                                            Process.THREAD_PRIORITY_BACKGROUND);
+                                    runnable.run();
+                                }
+                            }, "thumbnails");
+                        }
+                    });
+            executor.allowCoreThreadTimeOut(true);
+            sInstance = new ImageLoader<>(
+                    new BitmapDecoder(), Runtime.getRuntime().maxMemory() / 8,
+                    new DiskLruCache(new File(context.getApplicationContext().getCacheDir(),
+                                              "thumbnails"), DISK_CACHE_BYTES),
+                    executor,
+                    new Executor() {
+                        @Override
+                        public void execute(Runnable command) {
+                            mainThread.post(command);
+                        }
+                    });
+            CacheRegistry.getInstance().register("thumbnail bitmaps", CacheRegistry.IMAGES,
+                                                 sInstance.getMemoryCache());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Returns the largest power of two to divide the width and height of an image by, that
+     * still leaves it at least as large as the view in both directions
+     */
+    static int sampleSize(int imageWidth, int imageHeight, int viewWidth, int viewHeight) {
+        int sampleSize = 1;
+        if (viewWidth <= 0 || viewHeight <= 0) {
+            return sampleSize;
+        }
+        while (imageWidth / (sampleSize * 2) >= viewWidth
+                && imageHeight / (sampleSize * 2) >= viewHeight) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    /**
+     * Decodes thumbnails into Bitmaps, reading only their size first to pick the sample size
+     */
+    private static final class BitmapDecoder implements ImageLoader.Decoder<Bitmap> {
+
+        @Override
+        public Bitmap decode(byte[] bytes, int width, int height) {
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inJustDecodeBounds = true;
+            BitmapFactory.decodeByteArray(bytes, 0, bytes.length, options);
+            if (options.outWidth <= 0 || options.outHeight <= 0) {
+                return null;
+            }
+            options.inJustDecodeBounds = false;
+            options.inSampleSize = sampleSize(options.outWidth, options.outHeight, width,
+                                              height);
+            options.inPreferredConfig = Bitmap.Config.RGB_565;
+            return BitmapFactory.decodeByteArray(bytes, 0, bytes.length, options);
+        }
+
+        @Override
+        public long sizeOf(Bitmap image) {
+            return image.getByteCount();
+        }
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 2018. Tina Taylor
+ * CREATIVE COMMONS Attribution-ShareAlike 3.0 Unported (CC BY-SA 3.0)
+ * https://creativecommons.org/licenses/by-sa/3.0/
+ */
+
+package com.freecbdhomebiz.cocktailoftheweek;
+
+/**
+ * Something the app keeps in memory that it can do without, and gives back through the
+ * {@link CacheRegistry} when the system runs low on memory. Sizes are in the cache's own unit,
+ * bytes, articles or rows, the same unit in size() and trimToSize().
+ */
+public interface TrimmableCache {
+
+    /**
+     * What hitCount() and missCount() return for a cache that isn't looked up by key, such as
+     * the rows of the list, so the report leaves out its hit rate
+     */
+    long NOT_COUNTED = -1;
+
+    /**
+     * Returns what the cache holds now
+     */
+    long size();
+
+    /**
+     * Returns how often a lookup found what it was looking for, or {@link #NOT_COUNTED}
+     */
+    long hitCount();
+
+    /**
+     * Returns how often a lookup had to fetch, read or work out the value again, or
+     * {@link #NOT_COUNTED}
+     */
+    long missCount();
+
+    /**
+     * Drop values until the cache holds at most maxSize. A cache that can't drop part of what
+     * it holds drops all of it.
+     */
+    void trimToSize(long maxSize);
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2018. Tina Taylor
+ * CREATIVE COMMONS Attribution-ShareAlike 3.0 Unported (CC BY-SA 3.0)
+ * https://creativecommons.org/licenses/by-sa/3.0/
+ */
+
+package com.freecbdhomebiz.cocktailoftheweek;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ArticleCacheTest {
+
+    private static final String URL = "https://content.guardianapis.com/lifeandstyle/series/"
+            + "the-good-mixer?order-by=newest&show-fields=byline&show-blocks=body";
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void cacheKey_dropsApiKey() {
+        assertEquals(URL, ArticleCache.cacheKey(URL + "&api-key=secret"));
+        assertEquals("https://example.com/a?b=1",
+                     ArticleCache.cacheKey("https://example.com/a?api-key=secret&b=1"));
+        assertEquals("https://example.com/a", ArticleCache.cacheKey("https://example.com/a"));
+    }
+
+    @Test
+    public void put_thenGet_returnsArticlesAndValidators() throws Exception {
+        ArticleCache cache = new ArticleCache(mFolder.newFolder("articles"));
+        List<Cocktail> cocktails = Arrays.asList(
+                new Cocktail("Life and style", "Negroni", "Henry Jeffreys",
+                             1531555200000L, "\u00c9qual parts gin, vermouth and Campari",
+                             "https://www.theguardian.com/negroni"),
+                new Cocktail("Food", "Sour", null, Cocktail.NO_DATE, null,
+                             "https://www.theguardian.com/sour"));
+
+        long before = System.currentTimeMillis();
+        cache.put(URL + "&api-key=one", new CocktailResponse(cocktails, "\"v1\"",
+                                                            "Sat, 14 Jul 2018 08:00:00 GMT"));
+
+        // A different api-key must hit the same entry
+        ArticleCache.Entry entry = cache.get(URL + "&api-key=two");
+        assertEquals(cocktails, entry.getCocktails());
+        assertEquals("\"v1\"", entry.getEtag());
+        assertEquals("Sat, 14 Jul 2018 08:00:00 GMT", entry.getLastModified());
+        assertTrue(entry.getFetchedAt() >= before);
+        assertFalse(entry.isExpired(entry.getFetchedAt()));
+        assertTrue(entry.isExpired(entry.getFetchedAt() + ArticleCache.TTL_MILLIS + 1));
+    }
+
+    @Test
+    public void get_missingEntry_returnsNull() throws Exception {
+        ArticleCache cache = new ArticleCache(mFolder.newFolder("articles"));
+        assertNull(cache.get(URL));
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright (c) 2018. Tina Taylor
+ * CREATIVE COMMONS Attribution-ShareAlike 3.0 Unported (CC BY-SA 3.0)
+ * https://creativecommons.org/licenses/by-sa/3.0/
+ */
+
+package com.freecbdhomebiz.cocktailoftheweek;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs ArticlePrefetcher with a fetcher that returns the URL as the body, and can hold the
+ * fetch of a "slow" URL until the test releases it. Articles are "rendered" by upper casing.
+ */
+public class ArticlePrefetcherTest {
+
+    private final AtomicInteger mFetches = new AtomicInteger();
+    private final List<String> mCanceled =
+            Collections.synchronizedList(new ArrayList<String>());
+    private final CountDownLatch mSlowFetchStarted = new CountDownLatch(1);
+    private final CountDownLatch mReleaseSlowFetch = new CountDownLatch(1);
+    private ExecutorService mExecutor;
+    private ArticlePrefetcher<String> mPrefetcher;
+
+    @Before
+    public void setUp() {
+        mExecutor = Executors.newSingleThreadExecutor();
+        mPrefetcher = prefetcher(3);
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        mReleaseSlowFetch.countDown();
+        mExecutor.shutdown();
+        mExecutor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void load_afterPrefetch_isDeliveredStraightAwayWithoutAnotherFetch() throws Exception {
+        mPrefetcher.prefetch(Arrays.asList("a", "b"));
+        awaitIdle();
+
+        // A tap on a prefetched row is answered on the calling thread
+        Recorder reader = new Recorder();
+        mPrefetcher.load("a", reader);
+        assertEquals("A", reader.mArticles.poll());
+        assertEquals("B", mPrefetcher.get("b"));
+        assertEquals(2, mFetches.get());
+    }
+
+    @Test
+    public void load_whilePrefetching_joinsTheRunningFetch() throws Exception {
+        mPrefetcher.prefetch(Collections.singletonList("slow"));
+        assertTrue(mSlowFetchStarted.await(10, TimeUnit.SECONDS));
+
+        Recorder reader = new Recorder();
+        mPrefetcher.load("slow", reader);
+        mReleaseSlowFetch.countDown();
+
+        assertEquals("SLOW", reader.next());
+        assertEquals(1, mFetches.get());
+    }
+
+    @Test
+    public void prefetch_keepsOnlyTheMostRecentlyUsedArticles() throws Exception {
+        mPrefetcher.prefetch(Arrays.asList("a", "b", "c", "d", "e"));
+        awaitIdle();
+
+        assertEquals(3, mPrefetcher.getCache().count());
+        assertNull(mPrefetcher.get("a"));
+        assertEquals("E", mPrefetcher.get("e"));
+
+        // Articles still in memory are not fetched again
+        mPrefetcher.prefetch(Arrays.asList("c", "d", "e"));
+        awaitIdle();
+        assertEquals(5, mFetches.get());
+    }
+
+    @Test
+    public void prefetch_ofOtherRows_cancelsTheFetchOfRowsScrolledAway() throws Exception {
+        mPrefetcher.prefetch(Arrays.asList("slow", "b"));
+        assertTrue(mSlowFetchStarted.await(10, TimeUnit.SECONDS));
+
+        // The user scrolled on before either article arrived
+        mPrefetcher.prefetch(Collections.singletonList("c"));
+        awaitIdle();
+
+        assertEquals(Collections.singletonList("slow"), mCanceled);
+        assertNull(mPrefetcher.get("slow"));
+        assertNull(mPrefetcher.get("b"));
+        assertEquals("C", mPrefetcher.get("c"));
+        // "b" was dropped from the queue before it was fetched
+        assertEquals(2, mFetches.get());
+    }
+
+    @Test
+    public void prefetch_ofOtherRows_keepsTheFetchTheReaderWaitsFor() throws Exception {
+        Recorder reader = new Recorder();
+        mPrefetcher.load("slow", reader);
+        assertTrue(mSlowFetchStarted.await(10, TimeUnit.SECONDS));
+
+        mPrefetcher.prefetch(Collections.singletonList("c"));
+        mReleaseSlowFetch.countDown();
+
+        assertEquals("SLOW", reader.next());
+        assertTrue(mCanceled.isEmpty());
+    }
+
+    @Test
+    public void load_failedFetch_deliversNullAndCachesNothing() throws Exception {
+        Recorder reader = new Recorder();
+        mPrefetcher.load("missing", reader);
+
+        assertEquals(Recorder.NULL, reader.next());
+        assertEquals(0, mPrefetcher.getCache().count());
+    }
+
+    @Test
+    public void cancel_stopsDeliveringToTheReader() throws Exception {
+        Recorder reader = new Recorder();
+        mPrefetcher.load("slow", reader);
+        assertTrue(mSlowFetchStarted.await(10, TimeUnit.SECONDS));
+
+        mPrefetcher.cancel(reader);
+        mReleaseSlowFetch.countDown();
+        awaitIdle();
+
+        assertNull(reader.mArticles.poll());
+        // The fetch carried on, so the article is there when it is opened again
+        assertEquals("SLOW", mPrefetcher.get("slow"));
+    }
+
+    private ArticlePrefetcher<String> prefetcher(int maxArticles) {
+        return new ArticlePrefetcher<>(new ArticlePrefetcher.Fetcher() {
+            @Override
+            public String fetch(String url, CancellationToken cancellation) {
+                mFetches.incrementAndGet();
+                if ("missing".equals(url)) {
+                    return null;
+                }
+                if ("slow".equals(url)) {
+                    mSlowFetchStarted.countDown();
+                    // Wait like a read that is canceled by closing its connection
+                    while (!cancellation.isCanceled()) {
+                        try {
+                            if (mReleaseSlowFetch.await(10, TimeUnit.MILLISECONDS)) {
+                                return url;
+                            }
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            return null;
+                        }
+                    }
+                    mCanceled.add(url);
+                    return null;
+                }
+                return url;
+            }
+        }, new ArticlePrefetcher.Renderer<String>() {
+            @Override
+            public String render(String html) {
+                return html.toUpperCase();
+            }
+        }, maxArticles, mExecutor, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        });
+    }
+
+    /**
+     * Wait until the prefetch thread has finished everything submitted so far
+     */
+    private void awaitIdle() throws Exception {
+        mExecutor.submit(new Runnable() {
+            @Override
+            public void run() {
+            }
+        }).get(10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Records the articles delivered to it
+     */
+    private static final class Recorder implements ArticlePrefetcher.Callback<String> {
+        static final String NULL = "null";
+
+        final BlockingQueue<String> mArticles = new LinkedBlockingQueue<>();
+
+        @Override
+        public void onArticleLoaded(String article) {
+            mArticles.add(article == null ? NULL : article);
+        }
+
+        String next() throws InterruptedException {
+            String article = mArticles.poll(10, TimeUnit.SECONDS);
+            assertNotNull("no article delivered", article);
+            return article;
+        }
+    }
+}
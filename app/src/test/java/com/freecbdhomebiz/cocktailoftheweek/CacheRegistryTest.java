@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2018. Tina Taylor
+ * CREATIVE COMMONS Attribution-ShareAlike 3.0 Unported (CC BY-SA 3.0)
+ * https://creativecommons.org/licenses/by-sa/3.0/
+ */
+
+package com.freecbdhomebiz.cocktailoftheweek;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Fills a cache of each priority with 100 values and checks what each level of memory pressure
+ * leaves in them.
+ */
+public class CacheRegistryTest {
+
+    private static final int VALUES = 100;
+
+    private CacheRegistry mRegistry;
+    private LruMemoryCache<Integer, String> mRendered;
+    private LruMemoryCache<Integer, String> mIndex;
+    private LruMemoryCache<Integer, String> mImages;
+    private LruMemoryCache<Integer, String> mList;
+
+    @Before
+    public void setUp() {
+        mRegistry = new CacheRegistry();
+        // Registered out of order, they are trimmed by priority all the same
+        mList = register("list", CacheRegistry.LIST);
+        mImages = register("images", CacheRegistry.IMAGES);
+        mRendered = register("rendered", CacheRegistry.RENDERED);
+        mIndex = register("index", CacheRegistry.INDEX);
+    }
+
+    @Test
+    public void runningModerate_halvesTheRenderedTexts() {
+        mRegistry.onTrimMemory(CacheRegistry.TRIM_MEMORY_RUNNING_MODERATE);
+        assertSizes(50, 100, 100, 100);
+    }
+
+    @Test
+    public void runningCritical_leavesTheListOnScreen() {
+        mRegistry.onTrimMemory(CacheRegistry.TRIM_MEMORY_RUNNING_LOW);
+        assertSizes(0, 50, 100, 100);
+
+        mRegistry.onTrimMemory(CacheRegistry.TRIM_MEMORY_RUNNING_CRITICAL);
+        assertSizes(0, 0, 50, 100);
+    }
+
+    @Test
+    public void background_dropsEverythingButTheList() {
+        mRegistry.onTrimMemory(CacheRegistry.TRIM_MEMORY_UI_HIDDEN);
+        assertSizes(0, 0, 100, 100);
+
+        mRegistry.onTrimMemory(CacheRegistry.TRIM_MEMORY_BACKGROUND);
+        assertSizes(0, 0, 0, 100);
+
+        mRegistry.onTrimMemory(CacheRegistry.TRIM_MEMORY_MODERATE);
+        assertSizes(0, 0, 0, 50);
+    }
+
+    @Test
+    public void lowMemory_dropsEverything() {
+        assertEquals(4 * VALUES, mRegistry.onLowMemory());
+        assertSizes(0, 0, 0, 0);
+    }
+
+    @Test
+    public void unknownLevel_dropsNothing() {
+        assertEquals(0, mRegistry.onTrimMemory(0));
+        assertSizes(100, 100, 100, 100);
+    }
+
+    @Test
+    public void unregister_leavesTheCacheAlone() {
+        mRegistry.unregister(mRendered);
+        mRegistry.onLowMemory();
+        assertEquals(VALUES, mRendered.size());
+    }
+
+    @Test
+    public void trimToSize_ofTheDateMemo_dropsItWhole() {
+        DateRenderer renderer = new DateRenderer();
+        long now = System.currentTimeMillis();
+        renderer.render(now - 10 * 24 * 60 * 60 * 1000L, now);
+        renderer.render(now - 20 * 24 * 60 * 60 * 1000L, now);
+        mRegistry.register("dates", CacheRegistry.RENDERED, renderer);
+
+        mRegistry.onTrimMemory(CacheRegistry.TRIM_MEMORY_RUNNING_MODERATE);
+
+        assertEquals(0, renderer.size());
+        assertEquals(2, renderer.missCount());
+    }
+
+    @Test
+    public void dump_showsSizesHitRatesAndWhatWasTrimmed() {
+        mRendered.get(0);
+        mRendered.get(-1);
+        mRegistry.onTrimMemory(CacheRegistry.TRIM_MEMORY_RUNNING_MODERATE);
+
+        String[] lines = mRegistry.dump().split("\n");
+
+        // The header, then the caches in the order they are trimmed
+        assertEquals(5, lines.length);
+        assertTrue(lines[1], lines[1].matches("\\s+rendered\\s+50\\s+50\\.0%\\s+50"));
+        assertTrue(lines[2], lines[2].matches("\\s+index\\s+100\\s+-\\s+0"));
+        assertTrue(lines[4], lines[4].trim().startsWith("list"));
+    }
+
+    @Test
+    public void dump_leavesOutTheHitRateOfACacheThatDoesNotCountLookups() {
+        CacheRegistry registry = new CacheRegistry();
+        registry.register("rows", CacheRegistry.LIST, new TrimmableCache() {
+            @Override
+            public long size() {
+                return 20;
+            }
+
+            @Override
+            public long hitCount() {
+                return NOT_COUNTED;
+            }
+
+            @Override
+            public long missCount() {
+                return NOT_COUNTED;
+            }
+
+            @Override
+            public void trimToSize(long maxSize) {
+            }
+        });
+
+        String[] lines = registry.dump().split("\n");
+
+        assertEquals(2, lines.length);
+        assertTrue(lines[1], lines[1].matches("\\s+rows\\s+20\\s+n/a\\s+0"));
+    }
+
+    private LruMemoryCache<Integer, String> register(String name, int priority) {
+        LruMemoryCache<Integer, String> cache = new LruMemoryCache<Integer, String>(VALUES) {
+            @Override
+            protected long sizeOf(Integer key, String value) {
+                return 1;
+            }
+        };
+        for (int i = 0; i < VALUES; i++) {
+            cache.put(i, "value " + i);
+        }
+        mRegistry.register(name, priority, cache);
+        return cache;
+    }
+
+    private void assertSizes(long rendered, long index, long images, long list) {
+        assertEquals("rendered", rendered, mRendered.size());
+        assertEquals("index", index, mIndex.size());
+        assertEquals("images", images, mImages.size());
+        assertEquals("list", list, mList.size());
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2018. Tina Taylor
+ * CREATIVE COMMONS Attribution-ShareAlike 3.0 Unported (CC BY-SA 3.0)
+ * https://creativecommons.org/licenses/by-sa/3.0/
+ */
+
+package com.freecbdhomebiz.cocktailoftheweek;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests of when {@link CircuitBreaker} opens, and how it closes again.
+ */
+public class CircuitBreakerTest {
+
+    private static final long NOW = 1531555200000L;
+
+    @Test
+    public void opensAfterFailuresInARow() {
+        CircuitBreaker breaker = new CircuitBreaker(3, 30000);
+        breaker.onFailure(NOW, -1);
+        breaker.onFailure(NOW, -1);
+        breaker.onSuccess();
+        breaker.onFailure(NOW, -1);
+        breaker.onFailure(NOW, -1);
+        assertTrue("a success in between starts counting again", breaker.allowRequest(NOW));
+
+        breaker.onFailure(NOW, -1);
+        assertFalse(breaker.allowRequest(NOW + 29999));
+        assertTrue(breaker.isOpen(NOW));
+    }
+
+    @Test
+    public void letsOneTrialThroughOnceTheOpenTimeIsOver() {
+        CircuitBreaker breaker = openBreaker();
+
+        assertTrue(breaker.allowRequest(NOW + 30000));
+        assertFalse("only one trial at a time", breaker.allowRequest(NOW + 30000));
+
+        breaker.onSuccess();
+        assertTrue(breaker.allowRequest(NOW + 30000));
+        assertTrue(breaker.allowRequest(NOW + 30000));
+        assertFalse(breaker.isOpen(NOW + 30000));
+    }
+
+    @Test
+    public void aFailedTrialOpensItAgain() {
+        CircuitBreaker breaker = openBreaker();
+
+        assertTrue(breaker.allowRequest(NOW + 30000));
+        breaker.onFailure(NOW + 30000, -1);
+        assertFalse(breaker.allowRequest(NOW + 59999));
+        assertTrue(breaker.allowRequest(NOW + 60000));
+    }
+
+    @Test
+    public void aCanceledTrialLetsTheNextOneThrough() {
+        CircuitBreaker breaker = openBreaker();
+
+        assertTrue(breaker.allowRequest(NOW + 30000));
+        breaker.onCanceled();
+        assertTrue(breaker.allowRequest(NOW + 30000));
+    }
+
+    @Test
+    public void staysOpenForTheRetryAfter() {
+        CircuitBreaker breaker = new CircuitBreaker(1, 30000);
+        breaker.onFailure(NOW, 120000);
+        assertFalse(breaker.allowRequest(NOW + 119999));
+        assertTrue(breaker.allowRequest(NOW + 120000));
+    }
+
+    @Test
+    public void deferUntil_blocksRequestsWithoutFailures() {
+        CircuitBreaker breaker = new CircuitBreaker(3, 30000);
+        breaker.deferUntil(NOW + 5000);
+        assertFalse(breaker.allowRequest(NOW));
+        assertTrue(breaker.allowRequest(NOW + 5000));
+    }
+
+    private static CircuitBreaker openBreaker() {
+        CircuitBreaker breaker = new CircuitBreaker(3, 30000);
+        for (int i = 0; i < 3; i++) {
+            breaker.onFailure(NOW, -1);
+        }
+        return breaker;
+    }
+}
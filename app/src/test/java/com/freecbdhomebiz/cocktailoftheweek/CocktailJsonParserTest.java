@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2018. Tina Taylor
+ * CREATIVE COMMONS Attribution-ShareAlike 3.0 Unported (CC BY-SA 3.0)
+ * https://creativecommons.org/licenses/by-sa/3.0/
+ */
+
+package com.freecbdhomebiz.cocktailoftheweek;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the streaming {@link CocktailJsonParser} extracts the same articles as the
+ * String + org.json path it replaced, and allocates less doing it on a large response.
+ */
+public class CocktailJsonParserTest {
+
+    /**
+     * 60 articles with ~48 KB of body HTML each, a bit under 4 MB in total
+     */
+    private static final int ARTICLES = 60;
+    private static final int BODY_LENGTH = 48 * 1024;
+    private static final int ROUNDS = 10;
+
+    @Test
+    public void parse_extractsDisplayedFields() throws Exception {
+        List<Cocktail> cocktails = CocktailJsonParser.parse(
+                new ByteArrayInputStream(GuardianFixture.responseBytes(3, 512)));
+
+        assertEquals(3, cocktails.size());
+        for (int i = 0; i < cocktails.size(); i++) {
+            Cocktail cocktail = cocktails.get(i);
+            assertEquals("Life and style", cocktail.getSectionName());
+            assertEquals(GuardianFixture.title(i), cocktail.getCocktailName());
+            assertEquals(GuardianFixture.author(i), cocktail.getAuthor());
+            assertEquals(CocktailJsonParser.parseDate(GuardianFixture.date(i)),
+                         cocktail.getDate());
+            assertEquals(GuardianFixture.summary(i), cocktail.getSummary());
+            assertEquals(GuardianFixture.url(i), cocktail.getUrl());
+            assertEquals(GuardianFixture.thumbnail(i), cocktail.getThumbnail());
+        }
+    }
+
+    @Test
+    public void parse_matchesDomPath() throws Exception {
+        byte[] response = GuardianFixture.responseBytes(ARTICLES, 1024);
+
+        List<Cocktail> streamed = CocktailJsonParser.parse(new ByteArrayInputStream(response));
+        List<Cocktail> dom = TreeJsonParser.parseTree(
+                TreeJsonParser.readFromStream(new ByteArrayInputStream(response)));
+
+        assertEquals(dom.size(), streamed.size());
+        for (int i = 0; i < dom.size(); i++) {
+            assertEquals(dom.get(i).getSectionName(), streamed.get(i).getSectionName());
+            assertEquals(dom.get(i).getCocktailName(), streamed.get(i).getCocktailName());
+            assertEquals(dom.get(i).getAuthor(), streamed.get(i).getAuthor());
+            assertEquals(dom.get(i).getDate(), streamed.get(i).getDate());
+            assertEquals(dom.get(i).getSummary(), streamed.get(i).getSummary());
+            assertEquals(dom.get(i).getUrl(), streamed.get(i).getUrl());
+            assertEquals(dom.get(i).getThumbnail(), streamed.get(i).getThumbnail());
+        }
+    }
+
+    @Test
+    public void parse_sharesRepeatedSectionAndAuthor() throws Exception {
+        byte[] response = GuardianFixture.responseBytes(3, 64);
+        List<Cocktail> first = CocktailJsonParser.parse(new ByteArrayInputStream(response));
+        List<Cocktail> second = CocktailJsonParser.parse(new ByteArrayInputStream(response));
+
+        assertSame(first.get(0).getSectionName(), second.get(2).getSectionName());
+        assertSame(first.get(1).getAuthor(), second.get(1).getAuthor());
+    }
+
+    @Test
+    public void parseDate_returnsEpochMillis() {
+        assertEquals(0L, CocktailJsonParser.parseDate("1970-01-01T00:00:00Z"));
+        assertEquals(1531555200000L, CocktailJsonParser.parseDate("2018-07-14T08:00:00Z"));
+        assertEquals(951827405000L, CocktailJsonParser.parseDate("2000-02-29T12:30:05Z"));
+        assertEquals(Cocktail.NO_DATE, CocktailJsonParser.parseDate(null));
+        assertEquals(Cocktail.NO_DATE, CocktailJsonParser.parseDate("14 July 2018"));
+        assertEquals(Cocktail.NO_DATE, CocktailJsonParser.parseDate("2018-13-14T08:00:00Z"));
+    }
+
+    @Test(expected = IOException.class)
+    public void parse_rejectsUnexpectedStructure() throws Exception {
+        CocktailJsonParser.parse(new ByteArrayInputStream(
+                "{\"response\":{\"results\":{}}}".getBytes("UTF-8")));
+    }
+
+    @Test
+    public void parseBody_joinsTheHtmlOfAllBodyBlocks() throws Exception {
+        String body = CocktailJsonParser.parseBody(new ByteArrayInputStream(
+                GuardianFixture.articleResponse(7, 400).getBytes("UTF-8")));
+
+        // Two blocks of bodyHtml, and none of the html of their elements
+        assertTrue(body.startsWith("<p>Stir the vermouth"));
+        assertEquals(2, body.split("</p>", -1).length - 1);
+        assertFalse(body.contains("Ice, lots of it."));
+        assertNull(CocktailJsonParser.parseBody(new ByteArrayInputStream(
+                "{\"response\":{\"status\":\"ok\",\"content\":{}}}".getBytes("UTF-8"))));
+    }
+
+    /**
+     * Fails if streaming a multi-megabyte response stops allocating less than the DOM path.
+     * The time of both paths is measured by ParserBenchmark in the benchmark module.
+     */
+    @Test
+    public void parse_allocatesLessThanDomPath() throws Exception {
+        final byte[] response = GuardianFixture.responseBytes(ARTICLES, BODY_LENGTH);
+
+        long dom = allocatedBytes(new Parse() {
+            @Override
+            public List<Cocktail> run() throws Exception {
+                return TreeJsonParser.parseTree(
+                        TreeJsonParser.readFromStream(new ByteArrayInputStream(response)));
+            }
+        });
+        long streaming = allocatedBytes(new Parse() {
+            @Override
+            public List<Cocktail> run() throws Exception {
+                return CocktailJsonParser.parse(new ByteArrayInputStream(response));
+            }
+        });
+
+        assertTrue("streaming parser should allocate less than the DOM path", streaming < dom);
+    }
+
+    private interface Parse {
+        List<Cocktail> run() throws Exception;
+    }
+
+    /**
+     * Warm up, then the average bytes the parse allocates over ROUNDS runs
+     */
+    private static long allocatedBytes(Parse parse) throws Exception {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        for (int i = 0; i < ROUNDS; i++) {
+            assertEquals(ARTICLES, parse.run().size());
+        }
+
+        long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < ROUNDS; i++) {
+            parse.run();
+        }
+        return (threads.getThreadAllocatedBytes(threadId) - allocatedBefore) / ROUNDS;
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2018. Tina Taylor
+ * CREATIVE COMMONS Attribution-ShareAlike 3.0 Unported (CC BY-SA 3.0)
+ * https://creativecommons.org/licenses/by-sa/3.0/
+ */
+
+package com.freecbdhomebiz.cocktailoftheweek;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class CocktailListFormatTest {
+
+    @Test
+    public void write_thenRead_returnsEqualArticles() throws Exception {
+        List<Cocktail> cocktails = Arrays.asList(
+                new Cocktail("Life and style", "Negroni", "Henry Jeffreys", 1531555200000L,
+                             "Équal parts gin, vermouth and Campari – stirred",
+                             "https://www.theguardian.com/negroni"),
+                new Cocktail(null, null, null, Cocktail.NO_DATE, null, null),
+                new Cocktail("Food", "", "", 0, "", "https://www.theguardian.com/empty"));
+
+        List<Cocktail> read = CocktailListFormat.read(ByteBuffer.wrap(write(cocktails)));
+        assertEquals(cocktails, read);
+        assertEquals(cocktails.size(), read.size());
+    }
+
+    @Test
+    public void read_emptyList() throws Exception {
+        List<Cocktail> empty = Collections.emptyList();
+        assertEquals(empty, CocktailListFormat.read(ByteBuffer.wrap(write(empty))));
+    }
+
+    @Test
+    public void read_returnsEveryArticleAtItsPosition() throws Exception {
+        List<Cocktail> read = CocktailListFormat.read(ByteBuffer.wrap(write(articles(100))));
+        assertEquals(100, read.size());
+        assertEquals("https://www.theguardian.com/0", read.get(0).getUrl());
+        assertEquals("https://www.theguardian.com/99", read.get(99).getUrl());
+        try {
+            read.get(100);
+            fail("expected an IndexOutOfBoundsException");
+        } catch (IndexOutOfBoundsException expected) {
+            // The list has 100 articles
+        }
+    }
+
+    @Test
+    public void read_fromPositionOfBuffer() throws Exception {
+        byte[] list = write(articles(3));
+        ByteBuffer buffer = ByteBuffer.allocate(list.length + 7);
+        buffer.position(7);
+        buffer.put(list);
+        buffer.position(7);
+        assertEquals(articles(3), CocktailListFormat.read(buffer));
+    }
+
+    @Test
+    public void write_storesRepeatedAuthorsOnce() throws Exception {
+        List<Cocktail> sameAuthor = new ArrayList<>();
+        List<Cocktail> otherAuthors = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            sameAuthor.add(new Cocktail("Food", "Sour", "Author 00", 0, null, "u" + i));
+            otherAuthors.add(new Cocktail("Food", "Sour", String.format("Author %02d", i), 0,
+                                          null, "u" + i));
+        }
+        // Each author that isn't repeated costs its length and its length prefix once more
+        assertEquals(49 * ("Author 00".length() + 4),
+                     write(otherAuthors).length - write(sameAuthor).length);
+        assertEquals(sameAuthor, CocktailListFormat.read(ByteBuffer.wrap(write(sameAuthor))));
+    }
+
+    @Test
+    public void read_otherVersionOrMagic_throws() throws Exception {
+        byte[] bytes = write(articles(2));
+        bytes[7] = (byte) (CocktailListFormat.FORMAT_VERSION + 1);
+        assertUnreadable(bytes);
+
+        bytes = write(articles(2));
+        bytes[0] = 'X';
+        assertUnreadable(bytes);
+    }
+
+    @Test
+    public void read_everyTruncation_throws() throws Exception {
+        byte[] bytes = write(articles(5));
+        for (int length = 0; length < bytes.length; length++) {
+            assertUnreadable(Arrays.copyOf(bytes, length));
+        }
+    }
+
+    /**
+     * Corrupt random bytes of valid lists. Reading must either fail with an IOException, or
+     * give a list whose articles can all be used.
+     */
+    @Test
+    public void read_corruptBytes_neverFailsLater() throws Exception {
+        Random random = new Random(17);
+        byte[] valid = write(articles(20));
+        for (int run = 0; run < 5000; run++) {
+            byte[] bytes = valid.clone();
+            int flips = 1 + random.nextInt(4);
+            for (int i = 0; i < flips; i++) {
+                bytes[random.nextInt(bytes.length)] = (byte) random.nextInt(256);
+            }
+            List<Cocktail> read;
+            try {
+                read = CocktailListFormat.read(ByteBuffer.wrap(bytes));
+            } catch (IOException expected) {
+                continue;
+            }
+            for (Cocktail cocktail : read) {
+                cocktail.getSummary();
+            }
+        }
+    }
+
+    private static void assertUnreadable(byte[] bytes) {
+        try {
+            CocktailListFormat.read(ByteBuffer.wrap(bytes));
+            fail("expected an IOException for " + bytes.length + " bytes");
+        } catch (IOException expected) {
+            // Not a complete list of this version
+        }
+    }
+
+    private static byte[] write(List<Cocktail> cocktails) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        CocktailListFormat.write(out, cocktails);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    private static List<Cocktail> articles(int count) {
+        List<Cocktail> cocktails = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            cocktails.add(new Cocktail("Life and style", "Cocktail no. " + i, "Henry Jeffreys",
+                                       1531555200000L + i, "Shake it hard, no. " + i,
+                                       "https://www.theguardian.com/" + i));
+        }
+        return cocktails;
+    }
+}
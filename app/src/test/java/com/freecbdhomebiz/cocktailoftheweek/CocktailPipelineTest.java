@@ -0,0 +1,241 @@
+/*
+ * Copyright (c) 2018. Tina Taylor
+ * CREATIVE COMMONS Attribution-ShareAlike 3.0 Unported (CC BY-SA 3.0)
+ * https://creativecommons.org/licenses/by-sa/3.0/
+ */
+
+package com.freecbdhomebiz.cocktailoftheweek;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs {@link CocktailPipeline} against a fake slow server, which holds every response until the
+ * test lets it go after sending the first half of the body.
+ */
+public class CocktailPipelineTest {
+
+    private static final long TIMEOUT_SECONDS = 10;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private final byte[] mBody = GuardianFixture.responseBytes(20, 1024);
+    private final AtomicInteger mRequests = new AtomicInteger();
+    private final CountDownLatch mRequestStarted = new CountDownLatch(1);
+    private final CountDownLatch mRelease = new CountDownLatch(1);
+
+    private HttpServer mServer;
+    private ExecutorService mExecutor;
+    private ArticleCache mCache;
+    private MultiSourceFetcher mFetcher;
+    private CocktailPipeline mPipeline;
+    private String mUrl;
+    private FeedRequest mRequest;
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        mServer.setExecutor(Executors.newCachedThreadPool());
+        mServer.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                mRequests.incrementAndGet();
+                exchange.sendResponseHeaders(200, mBody.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(mBody, 0, mBody.length / 2);
+                out.flush();
+                mRequestStarted.countDown();
+                try {
+                    mRelease.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                    out.write(mBody, mBody.length / 2, mBody.length - mBody.length / 2);
+                    out.close();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (IOException e) {
+                    // The client hung up after canceling the load
+                }
+            }
+        });
+        mServer.start();
+        mUrl = "http://127.0.0.1:" + mServer.getAddress().getPort()
+                + "/lifeandstyle/series/the-good-mixer";
+        mRequest = new FeedRequest(Collections.singletonList(mUrl), true, 1, 20);
+
+        mExecutor = Executors.newFixedThreadPool(2);
+        mCache = new ArticleCache(mFolder.newFolder("articles"));
+        mFetcher = new MultiSourceFetcher(2, (int) TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS));
+        mPipeline = new CocktailPipeline(mExecutor, mCache, mFetcher, null);
+    }
+
+    @After
+    public void tearDown() {
+        mRelease.countDown();
+        mExecutor.shutdownNow();
+        mServer.stop(0);
+    }
+
+    @Test
+    public void duplicateLoads_collapseIntoOneFetch() throws Exception {
+        RecordingListener first = new RecordingListener();
+        RecordingListener second = new RecordingListener();
+        RecordingListener third = new RecordingListener();
+
+        mPipeline.load(mRequest, first);
+        assertTrue(mRequestStarted.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        // Both join the fetch that is still reading the response
+        mPipeline.load(mRequest, second);
+        mPipeline.load(mRequest, third);
+        assertEquals(1, mPipeline.inFlightCount());
+        mRelease.countDown();
+
+        for (RecordingListener listener : new RecordingListener[]{first, second, third}) {
+            assertTrue(listener.mComplete.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+            assertEquals(1, listener.mResults.size());
+            assertEquals(20, listener.mResults.get(0).size());
+        }
+        assertEquals("duplicate loads must share one request", 1, mRequests.get());
+        assertEquals(0, mPipeline.inFlightCount());
+    }
+
+    @Test
+    public void joiningAfterTheCachedResult_catchesUp() throws Exception {
+        // The cached entry is stale, so the pipeline fetches after delivering it
+        ArticleCache cache = new ExpiredCache(mFolder.newFolder("expired"));
+        cache.put(mUrl, new CocktailResponse(fixture(3), null, null));
+        mPipeline = new CocktailPipeline(mExecutor, cache, mFetcher, null);
+
+        RecordingListener first = new RecordingListener();
+        mPipeline.load(mRequest, first);
+        assertTrue(mRequestStarted.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        RecordingListener second = new RecordingListener();
+        mPipeline.load(mRequest, second);
+        assertEquals("the late listener gets the cached result straight away",
+                     3, second.mResults.get(0).size());
+        mRelease.countDown();
+
+        assertTrue(second.mComplete.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(2, first.mResults.size());
+        assertEquals(2, second.mResults.size());
+        assertEquals(20, second.mResults.get(1).size());
+        assertEquals(1, mRequests.get());
+    }
+
+    @Test
+    public void freshCache_isDeliveredWithoutFetching() throws Exception {
+        mCache.put(mUrl, new CocktailResponse(fixture(3), null, null));
+
+        RecordingListener listener = new RecordingListener();
+        mPipeline.load(mRequest, listener);
+
+        assertTrue(listener.mComplete.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(1, listener.mResults.size());
+        assertEquals(3, listener.mResults.get(0).size());
+        assertEquals(0, mRequests.get());
+    }
+
+    @Test
+    public void cancel_dropsTheLoadAndItsResults() throws Exception {
+        RecordingListener listener = new RecordingListener();
+        CocktailPipeline.Load load = mPipeline.load(mRequest, listener);
+        assertTrue(mRequestStarted.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        // Canceling aborts the blocked read, without waiting for the server
+        long start = System.nanoTime();
+        load.cancel();
+        assertTrue(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start) < 1);
+        assertEquals(0, mPipeline.inFlightCount());
+
+        // A new load of the URL doesn't join the canceled one
+        RecordingListener next = new RecordingListener();
+        mPipeline.load(mRequest, next);
+        mRelease.countDown();
+
+        assertTrue(next.mComplete.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(2, mRequests.get());
+        assertEquals(0, listener.mResults.size());
+        assertEquals("a canceled load never completes", 1, listener.mComplete.getCount());
+    }
+
+    @Test
+    public void cancelOneOfTwoListeners_keepsLoading() throws Exception {
+        RecordingListener first = new RecordingListener();
+        RecordingListener second = new RecordingListener();
+        CocktailPipeline.Load load = mPipeline.load(mRequest, first);
+        mPipeline.load(mRequest, second);
+        assertTrue(mRequestStarted.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        load.cancel();
+        mRelease.countDown();
+
+        assertTrue(second.mComplete.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(1, second.mResults.size());
+        assertEquals(0, first.mResults.size());
+    }
+
+    /**
+     * Records what a load delivers
+     */
+    private static class RecordingListener implements CocktailPipeline.Listener {
+        final List<List<PreparedCocktail>> mResults = new CopyOnWriteArrayList<>();
+        final CountDownLatch mComplete = new CountDownLatch(1);
+
+        @Override
+        public void onResult(List<PreparedCocktail> items) {
+            mResults.add(items);
+        }
+
+        @Override
+        public void onComplete() {
+            mComplete.countDown();
+        }
+    }
+
+    /**
+     * An ArticleCache whose entries have always expired, and are due to be fetched whole
+     */
+    private static class ExpiredCache extends ArticleCache {
+
+        ExpiredCache(File directory) {
+            super(directory);
+        }
+
+        @Override
+        public Entry get(String requestUrl) {
+            Entry entry = super.get(requestUrl);
+            return entry == null ? null : new Entry(0, 0, entry.getNewestDate(), entry.getEtag(),
+                                                    entry.getLastModified(),
+                                                    entry.getCocktails());
+        }
+    }
+
+    private static List<Cocktail> fixture(int articles) throws IOException {
+        return CocktailJsonParser.parse(
+                new ByteArrayInputStream(GuardianFixture.responseBytes(articles, 64)));
+    }
+}
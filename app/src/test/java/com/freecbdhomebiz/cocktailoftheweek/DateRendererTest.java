@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2018. Tina Taylor
+ * CREATIVE COMMONS Attribution-ShareAlike 3.0 Unported (CC BY-SA 3.0)
+ * https://creativecommons.org/licenses/by-sa/3.0/
+ */
+
+package com.freecbdhomebiz.cocktailoftheweek;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.lang.management.ManagementFactory;
+import java.text.DateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the texts {@link DateRenderer} gives the dates of the list, when its memo is dropped,
+ * and that binding rows doesn't allocate once the dates of a page were rendered.
+ */
+public class DateRendererTest {
+
+    private static final long DAY = 24 * 60 * 60 * 1000L;
+    private static final int BINDS = 10000;
+
+    /**
+     * Saturday 14 July 2018, 10:00 UTC
+     */
+    private static final long NOW = CocktailJsonParser.parseDate("2018-07-14T10:00:00Z");
+
+    private Locale mDefaultLocale;
+    private TimeZone mDefaultZone;
+    private DateRenderer mRenderer;
+
+    @Before
+    public void setUp() {
+        mDefaultLocale = Locale.getDefault();
+        mDefaultZone = TimeZone.getDefault();
+        Locale.setDefault(Locale.US);
+        TimeZone.setDefault(TimeZone.getTimeZone("UTC"));
+        mRenderer = new DateRenderer();
+        mRenderer.setLabels(new DateRenderer.Labels() {
+            @Override
+            public String daysAgo(int days) {
+                return days == 0 ? "Today" : days == 1 ? "Yesterday" : days + " days ago";
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        Locale.setDefault(mDefaultLocale);
+        TimeZone.setDefault(mDefaultZone);
+    }
+
+    @Test
+    public void render_labelsTheLastWeekAndShowsOlderDatesInFull() {
+        assertEquals("Today", mRenderer.render(NOW - 9 * 60 * 60 * 1000L, NOW));
+        assertEquals("Yesterday", mRenderer.render(NOW - 11 * 60 * 60 * 1000L, NOW));
+        assertEquals("3 days ago", mRenderer.render(NOW - 3 * DAY, NOW));
+        assertEquals("6 days ago", mRenderer.render(NOW - 6 * DAY, NOW));
+        assertEquals(full(NOW - 7 * DAY, Locale.US), mRenderer.render(NOW - 7 * DAY, NOW));
+        // A clock that is behind the server shows the date
+        assertEquals(full(NOW + DAY, Locale.US), mRenderer.render(NOW + DAY, NOW));
+        assertNull(mRenderer.render(Cocktail.NO_DATE, NOW));
+    }
+
+    @Test
+    public void render_withoutLabels_showsEveryDateInFull() {
+        mRenderer.setLabels(null);
+        assertEquals(full(NOW, Locale.US), mRenderer.render(NOW, NOW));
+    }
+
+    @Test
+    public void render_memoizesTheTextOfEachDay() {
+        String first = mRenderer.render(NOW - 10 * DAY, NOW);
+        // Another article of the same day
+        String second = mRenderer.render(NOW - 10 * DAY + 60 * 1000L, NOW + 60 * 1000L);
+
+        assertSame(first, second);
+        assertEquals(1, mRenderer.getMisses());
+        assertEquals(1, mRenderer.getHits());
+    }
+
+    @Test
+    public void render_dropsTheMemoWhenTheDayMovesOn() {
+        long date = NOW - DAY;
+        assertEquals("Yesterday", mRenderer.render(date, NOW));
+        assertEquals("Yesterday", mRenderer.render(date, NOW + 13 * 60 * 60 * 1000L));
+        assertEquals("2 days ago", mRenderer.render(date, NOW + 14 * 60 * 60 * 1000L));
+        assertEquals(2, mRenderer.getMisses());
+    }
+
+    @Test
+    public void render_followsTheLocale() {
+        long date = NOW - 30 * DAY;
+        assertEquals(full(date, Locale.US), mRenderer.render(date, NOW));
+
+        Locale.setDefault(Locale.GERMANY);
+        assertEquals(full(date, Locale.GERMANY), mRenderer.render(date, NOW));
+        assertEquals(2, mRenderer.getMisses());
+    }
+
+    @Test
+    public void getDate_rendersAgainOnALaterDay() {
+        long date = System.currentTimeMillis() - 30 * DAY;
+        Cocktail cocktail = new Cocktail("Life and style", "Negroni", "Henry Jeffreys", date,
+                                         "Stir.", "https://www.theguardian.com/negroni", null);
+        PreparedCocktail stale = new PreparedCocktail(cocktail, "Yesterday", 0, "Stir.");
+
+        assertEquals(DateRenderer.getInstance().render(date, System.currentTimeMillis()),
+                     stale.getDate());
+    }
+
+    /**
+     * Binds the dates of a page of prepared rows 10,000 times, the way scrolling up and down
+     * the list does, and fails if that allocates. DateRendererBenchmark in the benchmark module
+     * compares it with a new SimpleDateFormat per bind.
+     */
+    @Test
+    public void getDate_bindingPreparedRowsDoesNotAllocate() throws Exception {
+        final List<PreparedCocktail> page = PreparedCocktail.prepare(CocktailJsonParser.parse(
+                new ByteArrayInputStream(GuardianFixture.responseBytes(20, 64))));
+
+        long allocated = allocatedBytes(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < BINDS; i++) {
+                    page.get(i % page.size()).getDate();
+                }
+            }
+        });
+
+        assertTrue("binding the dates of prepared rows should not allocate, it took "
+                           + allocated + " bytes", allocated < 16 * 1024);
+    }
+
+    /**
+     * Run the work once to warm up, then return the bytes the thread allocated running it
+     * again
+     */
+    private static long allocatedBytes(Runnable work) {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        work.run();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        work.run();
+        return threads.getThreadAllocatedBytes(threadId) - before;
+    }
+
+    private static String full(long date, Locale locale) {
+        DateFormat format = DateFormat.getDateInstance(DateFormat.MEDIUM, locale);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return format.format(new Date(date));
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2018. Tina Taylor
+ * CREATIVE COMMONS Attribution-ShareAlike 3.0 Unported (CC BY-SA 3.0)
+ * https://creativecommons.org/licenses/by-sa/3.0/
+ */
+
+package com.freecbdhomebiz.cocktailoftheweek;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+public class DiskLruCacheTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void put_thenGet_returnsTheBytes() throws Exception {
+        DiskLruCache cache = new DiskLruCache(mFolder.newFolder("thumbnails"), 1000);
+        byte[] bytes = {1, 2, 3};
+        cache.put("https://media.guim.co.uk/1/master/500.jpg", bytes);
+
+        assertArrayEquals(bytes, cache.get("https://media.guim.co.uk/1/master/500.jpg"));
+        assertNull(cache.get("https://media.guim.co.uk/2/master/500.jpg"));
+        assertEquals(3, cache.size());
+    }
+
+    @Test
+    public void put_overMaxBytes_deletesLeastRecentlyUsedFile() throws Exception {
+        File directory = mFolder.newFolder("thumbnails");
+        DiskLruCache cache = new DiskLruCache(directory, 100);
+        cache.put("a", new byte[40]);
+        cache.put("b", new byte[40]);
+        cache.get("a");
+        cache.put("c", new byte[40]);
+
+        assertNull(cache.get("b"));
+        assertEquals(40, cache.get("a").length);
+        assertEquals(40, cache.get("c").length);
+        assertEquals(80, cache.size());
+        assertFalse(new File(directory, DiskLruCache.fileName("b")).exists());
+        assertEquals(2, directory.list().length);
+    }
+
+    @Test
+    public void put_bytesLargerThanCache_areNotStored() throws Exception {
+        DiskLruCache cache = new DiskLruCache(mFolder.newFolder("thumbnails"), 100);
+        cache.put("huge", new byte[101]);
+        assertNull(cache.get("huge"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void newCache_keepsOrderOfUseOfTheLastRun() throws Exception {
+        File directory = mFolder.newFolder("thumbnails");
+        DiskLruCache first = new DiskLruCache(directory, 100);
+        first.put("a", new byte[40]);
+        first.put("b", new byte[40]);
+        // File times have a resolution of a second on some file systems
+        new File(directory, DiskLruCache.fileName("a")).setLastModified(1000000000000L);
+        new File(directory, DiskLruCache.fileName("b")).setLastModified(2000000000000L);
+
+        // A stray temporary file of a write that never finished is cleaned up
+        FileOutputStream stray = new FileOutputStream(new File(directory, "x.1.tmp"));
+        stray.write(new byte[10]);
+        stray.close();
+
+        DiskLruCache second = new DiskLruCache(directory, 100);
+        assertEquals(80, second.size());
+        second.put("c", new byte[40]);
+
+        assertNull(second.get("a"));
+        assertEquals(40, second.get("b").length);
+        assertEquals(new HashSet<>(Arrays.asList(DiskLruCache.fileName("b"),
+                                                 DiskLruCache.fileName("c"))),
+                     new HashSet<>(Arrays.asList(directory.list())));
+    }
+
+    @Test
+    public void remove_deletesTheFile() throws Exception {
+        File directory = mFolder.newFolder("thumbnails");
+        DiskLruCache cache = new DiskLruCache(directory, 100);
+        cache.put("a", new byte[40]);
+        cache.remove("a");
+
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.size());
+        assertEquals(0, directory.list().length);
+    }
+}
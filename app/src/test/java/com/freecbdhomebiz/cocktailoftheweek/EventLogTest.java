@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2018. Tina Taylor
+ * CREATIVE COMMONS Attribution-ShareAlike 3.0 Unported (CC BY-SA 3.0)
+ * https://creativecommons.org/licenses/by-sa/3.0/
+ */
+
+package com.freecbdhomebiz.cocktailoftheweek;
+
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs an {@link EventLog} of its own with a sink that records what it is given, and checks
+ * which events get through, what is kept for bug reports, and that a filtered call is free.
+ */
+public class EventLogTest {
+
+    private static final String TAG = "EventLogTest";
+    private static final int CALLS = 100000;
+
+    private final List<String> mWritten = new ArrayList<>();
+    private EventLog mLog;
+
+    @Before
+    public void setUp() {
+        mLog = new EventLog(new EventLog.Sink() {
+            @Override
+            public void write(int level, String tag, String message, Throwable error) {
+                mWritten.add(level + " " + message + (error == null ? "" : " " + error));
+            }
+        }, EventLog.INFO, 4);
+    }
+
+    @Test
+    public void format_replacesThePlaceholdersInOrder() {
+        assertEquals("Fetched 3 of 10", EventLog.format("Fetched {} of {}", 3, 10));
+        assertEquals("Fetched 3 of null", EventLog.format("Fetched {} of {}", 3, null));
+        assertEquals("No arguments {}", EventLog.format("No arguments {}", null, null));
+        assertEquals("Too many 1", EventLog.format("Too many {}", 1, 2));
+    }
+
+    @Test
+    public void log_dropsEventsBelowTheMinimumLevel() {
+        assertFalse(mLog.log(0, EventLog.DEBUG, TAG, null, "Row {}", 1, null));
+        assertTrue(mLog.log(0, EventLog.WARN, TAG, null, "Row {}", 2, null));
+
+        mLog.setMinLevel(EventLog.DEBUG);
+        assertTrue(mLog.log(0, EventLog.DEBUG, TAG, null, "Row {}", 3, null));
+        assertEquals(Arrays.asList("5 Row 2", "3 Row 3"), mWritten);
+    }
+
+    @Test
+    public void log_suppressesABurstOfOneFormatAndCountsIt() {
+        for (int i = 0; i < EventLog.BURST + 3; i++) {
+            mLog.log(i, EventLog.ERROR, TAG, null, "Error response code: {}", 503, null);
+        }
+        // Another format isn't held back by the burst
+        assertTrue(mLog.log(10, EventLog.ERROR, TAG, null, "Sync failed", null, null));
+        assertEquals(EventLog.BURST + 1, mWritten.size());
+
+        assertTrue(mLog.log(EventLog.WINDOW_MILLIS, EventLog.ERROR, TAG, null,
+                            "Error response code: {}", 500, null));
+        assertEquals("6 Error response code: 500 (3 more suppressed)",
+                     mWritten.get(mWritten.size() - 1));
+    }
+
+    @Test
+    public void export_keepsTheLastEventsAsJsonLines() throws Exception {
+        IOException error = new IOException("timeout");
+        // As many as the burst allows, so they all get through
+        for (int i = 0; i < EventLog.BURST; i++) {
+            mLog.log(1000 + i, EventLog.WARN, TAG, i == 4 ? error : null, "Event {} of {}", i,
+                     EventLog.BURST);
+        }
+
+        String[] lines = mLog.export().split("\n");
+
+        // The ring keeps the last four, oldest first
+        assertEquals(4, lines.length);
+        JSONObject first = new JSONObject(lines[0]);
+        assertEquals(1001, first.getLong("time"));
+        assertEquals("W", first.getString("level"));
+        assertEquals(TAG, first.getString("tag"));
+        assertEquals("Event 1 of 5", first.getString("message"));
+        assertEquals("Event {} of {}", first.getString("format"));
+        assertEquals("1", first.getJSONArray("args").getString(0));
+        assertFalse(first.has("error"));
+        JSONObject last = new JSONObject(lines[3]);
+        assertEquals("Event 4 of 5", last.getString("message"));
+        assertEquals(error.toString(), last.getString("error"));
+
+        mLog.clear();
+        assertEquals("", mLog.export());
+    }
+
+    @Test
+    public void export_withNothingLogged_isEmpty() {
+        assertEquals(Collections.emptyList(), mWritten);
+        assertEquals("", mLog.export());
+    }
+
+    /**
+     * Makes 100,000 calls below the minimum level, and as many over the rate of their format,
+     * and fails if they allocate
+     */
+    @Test
+    public void log_filteredCallsDoNotAllocate() {
+        final long start = System.currentTimeMillis();
+        for (int i = 0; i < EventLog.BURST; i++) {
+            mLog.log(EventLog.ERROR, TAG, "Error response code: {}", 503);
+        }
+
+        long belowLevel = allocatedBytes(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < CALLS; i++) {
+                    mLog.log(EventLog.DEBUG, TAG, null, "Bound row {}", "row", null);
+                }
+            }
+        });
+        long overRate = allocatedBytes(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < CALLS; i++) {
+                    mLog.log(EventLog.ERROR, TAG, "Error response code: {}", 500 + i);
+                }
+            }
+        });
+
+        assertTrue("the test took longer than the window",
+                   System.currentTimeMillis() - start < EventLog.WINDOW_MILLIS);
+        assertEquals(EventLog.BURST, mWritten.size());
+        assertTrue("calls below the level should not allocate, they took " + belowLevel
+                           + " bytes", belowLevel < 16 * 1024);
+        assertTrue("calls over the rate should not allocate, they took " + overRate + " bytes",
+                   overRate < 16 * 1024);
+    }
+
+    /**
+     * Run the work once to warm up, then return the bytes the thread allocated running it
+     * again
+     */
+    private static long allocatedBytes(Runnable work) {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        work.run();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        work.run();
+        return threads.getThreadAllocatedBytes(threadId) - before;
+    }
+}
@@ -0,0 +1,269 @@
+/*
+ * Copyright (c) 2018. Tina Taylor
+ * CREATIVE COMMONS Attribution-ShareAlike 3.0 Unported (CC BY-SA 3.0)
+ * https://creativecommons.org/licenses/by-sa/3.0/
+ */
+
+package com.freecbdhomebiz.cocktailoftheweek;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs {@link FeedSync} against a local server that answers a request with a from-date with the
+ * articles published since, and any other request with the whole first page of the series.
+ * A source under /broken is not found. The articles of GuardianFixture are published one a day,
+ * article 0 first.
+ */
+public class FeedSyncTest {
+
+    private static final int PAGE_SIZE = 20;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private final List<String> mQueries = new CopyOnWriteArrayList<>();
+    private final AtomicLong mBytesSent = new AtomicLong();
+    private volatile byte[] mPage = GuardianFixture.responseBytes(PAGE_SIZE, 8 * 1024);
+    private volatile byte[] mSince = GuardianFixture.responseBytes(20, 2, 8 * 1024);
+
+    private HttpServer mServer;
+    private ArticleCache mCache;
+    private FeedSync mSync;
+    private FeedRequest mRequest;
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        mServer.setExecutor(Executors.newCachedThreadPool());
+        mServer.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String query = exchange.getRequestURI().getQuery();
+                mQueries.add(query);
+                byte[] body = query.contains("from-date=") ? mSince : mPage;
+                mBytesSent.addAndGet(body.length);
+                exchange.sendResponseHeaders(200, body.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                out.close();
+            }
+        });
+        mServer.createContext("/broken", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                // Not a server error, which would open the circuit of the other source too
+                exchange.sendResponseHeaders(404, -1);
+                exchange.close();
+            }
+        });
+        mServer.start();
+        String url = "http://127.0.0.1:" + mServer.getAddress().getPort()
+                + "/lifeandstyle/series/the-good-mixer?order-by=newest&page=1&page-size="
+                + PAGE_SIZE;
+        mRequest = new FeedRequest(Collections.singletonList(url), true, 1, PAGE_SIZE);
+        mCache = new ArticleCache(mFolder.newFolder("articles"));
+        mSync = new FeedSync(new MultiSourceFetcher(1, 10000), mCache);
+    }
+
+    @After
+    public void tearDown() {
+        mServer.stop(0);
+    }
+
+    @Test
+    public void sync_withNothingStored_fetchesTheWholePage() {
+        CocktailResponse response = mSync.sync(mRequest, null, null);
+
+        assertEquals(PAGE_SIZE, response.getCocktails().size());
+        assertEquals(1, mQueries.size());
+        assertFalse(mQueries.get(0).contains("from-date="));
+        ArticleCache.Entry entry = mCache.get(mRequest.getKey());
+        assertEquals(CocktailJsonParser.parseDate(GuardianFixture.date(PAGE_SIZE - 1)),
+                     entry.getNewestDate());
+        assertEquals(entry.getFetchedAt(), entry.getFullyFetchedAt());
+    }
+
+    @Test
+    public void sync_withStoredPage_onlyFetchesTheNewArticlesAndMergesThem() throws Exception {
+        store(articles(0, PAGE_SIZE), System.currentTimeMillis());
+        long fullyFetchedAt = mCache.get(mRequest.getKey()).getFullyFetchedAt();
+        // Article 19 comes back as well, as it was published on the day of the from-date
+        mSince = GuardianFixture.responseBytes(19, 3, 8 * 1024);
+        long deltaSyncs = Metrics.getInstance().getCount(Metrics.DELTA_SYNCS);
+
+        CocktailResponse response = mSync.sync(mRequest, mCache.get(mRequest.getKey()), null);
+
+        // Asks from the day before the newest stored article, article 19 of 2018-01-20
+        assertEquals(1, mQueries.size());
+        assertTrue(mQueries.get(0), mQueries.get(0).endsWith("&from-date=2018-01-19"));
+        assertTrue("a refresh should transfer a fraction of the page",
+                   mBytesSent.get() * 4 < mPage.length);
+        assertEquals(deltaSyncs + 1, Metrics.getInstance().getCount(Metrics.DELTA_SYNCS));
+
+        // The two new articles on top, newest first, and every article once. The two oldest
+        // ones dropped off the end of the page.
+        List<String> urls = urls(response.getCocktails());
+        assertEquals(PAGE_SIZE, urls.size());
+        assertEquals(urls.size(), new HashSet<>(urls).size());
+        assertEquals(GuardianFixture.url(21), urls.get(0));
+        assertEquals(GuardianFixture.url(20), urls.get(1));
+        assertEquals(GuardianFixture.url(19), urls.get(2));
+        assertEquals(GuardianFixture.url(2), urls.get(urls.size() - 1));
+
+        // Stored as brought up to date, not as fetched whole
+        ArticleCache.Entry entry = mCache.get(mRequest.getKey());
+        assertEquals(urls, urls(entry.getCocktails()));
+        assertEquals(fullyFetchedAt, entry.getFullyFetchedAt());
+        assertEquals(CocktailJsonParser.parseDate(GuardianFixture.date(21)),
+                     entry.getNewestDate());
+    }
+
+    @Test
+    public void sync_withNothingNew_isNotModified() throws Exception {
+        store(articles(0, PAGE_SIZE), System.currentTimeMillis());
+        mSince = GuardianFixture.responseBytes(19, 1, 8 * 1024);
+
+        CocktailResponse response = mSync.sync(mRequest, mCache.get(mRequest.getKey()), null);
+
+        assertTrue(response.isNotModified());
+        assertNull(response.getCocktails());
+        assertEquals(1, mQueries.size());
+    }
+
+    @Test
+    public void sync_withAFullPageOfNewArticles_fetchesTheWholePage() throws Exception {
+        store(articles(0, PAGE_SIZE), System.currentTimeMillis());
+        mSince = GuardianFixture.responseBytes(20, PAGE_SIZE, 64);
+
+        mSync.sync(mRequest, mCache.get(mRequest.getKey()), null);
+
+        assertEquals(2, mQueries.size());
+        assertTrue(mQueries.get(0).contains("from-date="));
+        assertFalse(mQueries.get(1).contains("from-date="));
+    }
+
+    @Test
+    public void sync_onceAWeek_fetchesTheWholePage() throws Exception {
+        store(articles(0, PAGE_SIZE), System.currentTimeMillis()
+                - ArticleCache.FULL_FETCH_INTERVAL_MILLIS - 1);
+
+        mSync.sync(mRequest, mCache.get(mRequest.getKey()), null);
+
+        assertEquals(1, mQueries.size());
+        assertFalse(mQueries.get(0).contains("from-date="));
+        ArticleCache.Entry entry = mCache.get(mRequest.getKey());
+        assertEquals(entry.getFetchedAt(), entry.getFullyFetchedAt());
+    }
+
+    @Test
+    public void sync_oldestFirst_fetchesTheWholePage() throws Exception {
+        mRequest = new FeedRequest(mRequest.getSourceUrls(), false, 1, PAGE_SIZE);
+        store(articles(0, PAGE_SIZE), System.currentTimeMillis());
+
+        mSync.sync(mRequest, mCache.get(mRequest.getKey()), null);
+
+        assertEquals(1, mQueries.size());
+        assertFalse(mQueries.get(0).contains("from-date="));
+    }
+
+    @Test
+    public void sync_withAFailedSource_storesNothing() throws Exception {
+        String broken = "http://127.0.0.1:" + mServer.getAddress().getPort()
+                + "/broken/cocktails?order-by=newest&page=1&page-size=" + PAGE_SIZE;
+        mRequest = new FeedRequest(Arrays.asList(mRequest.getSourceUrls().get(0), broken), true,
+                                   1, PAGE_SIZE);
+        store(articles(0, PAGE_SIZE), System.currentTimeMillis());
+        ArticleCache.Entry stored = mCache.get(mRequest.getKey());
+        long deltaSyncs = Metrics.getInstance().getCount(Metrics.DELTA_SYNCS);
+
+        CocktailResponse response = mSync.sync(mRequest, stored, null);
+
+        // The partial delta isn't merged, and the page fetched instead isn't stored either
+        assertTrue(response.isPartial());
+        assertEquals(PAGE_SIZE, response.getCocktails().size());
+        assertEquals(2, mQueries.size());
+        assertTrue(mQueries.get(0).contains("from-date="));
+        assertFalse(mQueries.get(1).contains("from-date="));
+        assertEquals(deltaSyncs, Metrics.getInstance().getCount(Metrics.DELTA_SYNCS));
+        ArticleCache.Entry entry = mCache.get(mRequest.getKey());
+        assertEquals(stored.getFetchedAt(), entry.getFetchedAt());
+        assertEquals(stored.getFullyFetchedAt(), entry.getFullyFetchedAt());
+        assertEquals(stored.getNewestDate(), entry.getNewestDate());
+    }
+
+    @Test
+    public void merge_isCutToAWholePage() {
+        List<Cocktail> merged = FeedSync.merge(articles(0, 4), articles(3, 3), true, 5);
+        assertEquals(Arrays.asList(GuardianFixture.url(5), GuardianFixture.url(4),
+                                   GuardianFixture.url(3), GuardianFixture.url(2),
+                                   GuardianFixture.url(1)), urls(merged));
+    }
+
+    @Test
+    public void since_addsTheDayBeforeAsFromDate() {
+        FeedRequest request = new FeedRequest(Arrays.asList("https://example.com/a?page=1",
+                                                            "https://example.com/b"),
+                                              true, 1, PAGE_SIZE);
+        FeedRequest since = request.since(CocktailJsonParser.parseDate("2018-03-01T08:00:00Z"));
+
+        assertEquals(Arrays.asList("https://example.com/a?page=1&from-date=2018-02-28",
+                                   "https://example.com/b?from-date=2018-02-28"),
+                     since.getSourceUrls());
+        assertEquals("2000-02-29", FeedRequest.isoDay(951827405000L));
+        assertEquals("1970-01-01", FeedRequest.isoDay(0));
+    }
+
+    /**
+     * Store the articles as fetched whole at the given time, newest first like the server
+     * sends them
+     */
+    private void store(List<Cocktail> cocktails, long fullyFetchedAt) {
+        List<Cocktail> newestFirst = new ArrayList<>(cocktails);
+        Collections.reverse(newestFirst);
+        mCache.put(mRequest.getKey(), new CocktailResponse(newestFirst, null, null),
+                   fullyFetchedAt);
+    }
+
+    private static List<Cocktail> articles(int first, int count) {
+        try {
+            return CocktailJsonParser.parse(new ByteArrayInputStream(
+                    GuardianFixture.responseBytes(first, count, 64)));
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static List<String> urls(List<Cocktail> cocktails) {
+        List<String> urls = new ArrayList<>();
+        for (Cocktail cocktail : cocktails) {
+            urls.add(cocktail.getUrl());
+        }
+        return urls;
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2018. Tina Taylor
+ * CREATIVE COMMONS Attribution-ShareAlike 3.0 Unported (CC BY-SA 3.0)
+ * https://creativecommons.org/licenses/by-sa/3.0/
+ */
+
+package com.freecbdhomebiz.cocktailoftheweek;
+
+import java.nio.charset.Charset;
+
+/**
+ * Builds Guardian Content API responses for the-good-mixer series with the same shape as a
+ * recorded "show-fields=byline,thumbnail&show-blocks=body" response, or as a response of the
+ * list profile of GuardianRequest, so tests don't need the network.
+ */
+final class GuardianFixture {
+
+    private static final String[] AUTHORS = {"Henry Jeffreys", "Felicity Cloake",
+            "Fiona Beckett"};
+
+    private GuardianFixture() {
+    }
+
+    /**
+     * Returns a response with the given number of articles, each with a body block of roughly
+     * bodyLength characters of bodyHtml.
+     */
+    static String response(int articles, int bodyLength) {
+        return response(0, articles, bodyLength);
+    }
+
+    /**
+     * Returns a response with the articles numbered from first, like one page of a series
+     */
+    static String response(int first, int articles, int bodyLength) {
+        return response(first, articles, bodyLength, true);
+    }
+
+    /**
+     * Returns a response of the list profile, "show-fields=byline,thumbnail,trailText" without
+     * any blocks, with the articles numbered from first
+     */
+    static String listResponse(int first, int articles) {
+        return response(first, articles, 0, false);
+    }
+
+    private static String response(int first, int articles, int bodyLength,
+                                   boolean withBlocks) {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"response\":{\"status\":\"ok\",\"userTier\":\"developer\",\"total\":")
+                .append(articles)
+                .append(",\"startIndex\":1,\"pageSize\":").append(articles)
+                .append(",\"currentPage\":1,\"pages\":1,\"orderBy\":\"newest\",")
+                .append("\"tag\":{\"id\":\"lifeandstyle/series/the-good-mixer\",")
+                .append("\"type\":\"series\",\"webTitle\":\"The good mixer\"},")
+                .append("\"results\":[");
+        for (int i = first; i < first + articles; i++) {
+            if (i > first) {
+                json.append(',');
+            }
+            appendArticle(json, i, bodyLength, withBlocks);
+        }
+        // Like the real API, leadContent repeats the newest article of the series
+        json.append("],\"leadContent\":[");
+        if (articles > 0) {
+            appendArticle(json, first, bodyLength, withBlocks);
+        }
+        json.append("]}}");
+        return json.toString();
+    }
+
+    /**
+     * Returns the response of a request for the single article i, with its two body blocks,
+     * like the article reader gets
+     */
+    static String articleResponse(int i, int bodyLength) {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"response\":{\"status\":\"ok\",\"userTier\":\"developer\",")
+                .append("\"total\":1,\"content\":");
+        appendArticle(json, i, bodyLength, true);
+        json.append("}}");
+        return json.toString();
+    }
+
+    static byte[] responseBytes(int articles, int bodyLength) {
+        return responseBytes(0, articles, bodyLength);
+    }
+
+    static byte[] responseBytes(int first, int articles, int bodyLength) {
+        return response(first, articles, bodyLength).getBytes(Charset.forName("UTF-8"));
+    }
+
+    static byte[] listResponseBytes(int first, int articles) {
+        return listResponse(first, articles).getBytes(Charset.forName("UTF-8"));
+    }
+
+    static String title(int i) {
+        return "Cocktail of the week: gin and mezcal sour no. " + i;
+    }
+
+    static String url(int i) {
+        return "https://www.theguardian.com/lifeandstyle/2018/jul/" + i + "/cocktail-" + i;
+    }
+
+    static String date(int i) {
+        return String.format("2018-%02d-%02dT08:00:%02dZ", 1 + (i / 28) % 12, 1 + i % 28,
+                             i % 60);
+    }
+
+    static String author(int i) {
+        return AUTHORS[i % AUTHORS.length];
+    }
+
+    static String thumbnail(int i) {
+        return "https://media.guim.co.uk/" + i + "/master/500.jpg";
+    }
+
+    static String summary(int i) {
+        return "Summary " + i + ": shake the gin, lime and sugar syrup hard over ice.";
+    }
+
+    /**
+     * Returns the trailText of article i, which is its summary in HTML like the API sends it
+     */
+    static String trailText(int i) {
+        return "Summary " + i + ": shake the gin, lime and sugar syrup <strong>hard</strong>"
+                + " over ice.";
+    }
+
+    private static void appendArticle(StringBuilder json, int i, int bodyLength,
+                                      boolean withBlocks) {
+        json.append("{\"id\":\"lifeandstyle/2018/jul/").append(i).append("/cocktail-").append(i)
+                .append("\",\"type\":\"article\",\"sectionId\":\"lifeandstyle\",")
+                .append("\"sectionName\":\"Life and style\",")
+                .append("\"webPublicationDate\":\"").append(date(i)).append("\",")
+                .append("\"webTitle\":\"").append(title(i)).append("\",")
+                .append("\"webUrl\":\"").append(url(i)).append("\",")
+                .append("\"apiUrl\":\"https://content.guardianapis.com/lifeandstyle/2018/jul/")
+                .append(i).append("/cocktail-").append(i).append("\",")
+                .append("\"fields\":{\"byline\":\"").append(author(i))
+                .append("\",\"thumbnail\":\"").append(thumbnail(i)).append('"');
+        if (withBlocks) {
+            json.append("},\"blocks\":{\"body\":[");
+            appendBlock(json, i, 0, bodyLength, true);
+            json.append(',');
+            appendBlock(json, i, 1, bodyLength / 4, false);
+            json.append(']');
+        } else {
+            json.append(",\"trailText\":\"").append(trailText(i)).append('"');
+        }
+        json.append("},\"isHosted\":false,\"pillarId\":\"pillar/lifestyle\",")
+                .append("\"pillarName\":\"Lifestyle\"}");
+    }
+
+    private static void appendBlock(StringBuilder json, int i, int block, int bodyLength,
+                                    boolean withSummary) {
+        json.append("{\"id\":\"block-").append(i).append('-').append(block)
+                .append("\",\"bodyHtml\":\"<p>");
+        int start = json.length();
+        while (json.length() - start < bodyLength) {
+            json.append("Stir the vermouth and bitters with ice, strain into a chilled glass. ");
+        }
+        json.append("</p>\",");
+        if (withSummary) {
+            json.append("\"bodyTextSummary\":\"").append(summary(i)).append("\",");
+        }
+        json.append("\"attributes\":{},\"published\":true,")
+                .append("\"createdDate\":\"").append(date(i)).append("\",")
+                .append("\"elements\":[{\"type\":\"text\",\"assets\":[],")
+                .append("\"textTypeData\":{\"html\":\"<p>Ice, lots of it.</p>\"}}]}");
+    }
+}
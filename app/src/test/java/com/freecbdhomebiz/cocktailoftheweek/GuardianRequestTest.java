@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2018. Tina Taylor
+ * CREATIVE COMMONS Attribution-ShareAlike 3.0 Unported (CC BY-SA 3.0)
+ * https://creativecommons.org/licenses/by-sa/3.0/
+ */
+
+package com.freecbdhomebiz.cocktailoftheweek;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the URLs {@link GuardianRequest} builds, and compares a page of the list with the
+ * body blocks it used to ask for and with the list profile. How long each takes to parse is
+ * measured by ParserBenchmark in the benchmark module.
+ */
+public class GuardianRequestTest {
+
+    private static final int PAGE_SIZE = 20;
+
+    /**
+     * Size of the body HTML of each article, about what a Good Mixer column has
+     */
+    private static final int BODY_LENGTH = 8 * 1024;
+
+    @Test
+    public void listUrl_asksOnlyForTheFieldsOfARow() {
+        String url = GuardianRequest.listUrl("lifeandstyle/series/the-good-mixer", "newest", 2,
+                                             PAGE_SIZE, "test");
+
+        assertEquals("https://content.guardianapis.com/lifeandstyle/series/the-good-mixer"
+                             + "?order-by=newest&show-fields=byline%2Cthumbnail%2CtrailText"
+                             + "&page=2&page-size=20&api-key=test", url);
+        assertFalse(url.contains("show-blocks"));
+        assertFalse(url.contains("byline="));
+    }
+
+    @Test
+    public void articleUrl_asksForTheBodyOfTheArticle() {
+        assertEquals("https://content.guardianapis.com/lifeandstyle/2018/jul/14/cocktail"
+                             + "?show-blocks=body&api-key=test",
+                     GuardianRequest.articleUrl(
+                             "https://www.theguardian.com/lifeandstyle/2018/jul/14/cocktail",
+                             "test"));
+        assertNull(GuardianRequest.articleUrl("https://example.com/2018/jul/14/cocktail",
+                                              "test"));
+        assertNull(GuardianRequest.articleUrl("https://www.theguardian.com/", "test"));
+        assertNull(GuardianRequest.articleUrl("not a url", "test"));
+        assertNull(GuardianRequest.articleUrl(null, "test"));
+    }
+
+    @Test
+    public void listProfile_parsesTheSameRows() throws Exception {
+        List<Cocktail> blocks = CocktailJsonParser.parse(new ByteArrayInputStream(
+                GuardianFixture.responseBytes(PAGE_SIZE, BODY_LENGTH)));
+        List<Cocktail> list = CocktailJsonParser.parse(new ByteArrayInputStream(
+                GuardianFixture.listResponseBytes(0, PAGE_SIZE)));
+
+        assertEquals(blocks, list);
+        assertEquals(list, TreeJsonParser.parseTree(
+                GuardianFixture.listResponse(0, PAGE_SIZE)));
+        for (int i = 0; i < list.size(); i++) {
+            // The trailText is HTML, the row shows its text
+            assertEquals(GuardianFixture.summary(i), list.get(i).getSummary());
+        }
+    }
+
+    /**
+     * Fails if the list profile stops being a small fraction of the response with the body
+     * blocks
+     */
+    @Test
+    public void listProfile_isATenthOfTheSize() throws Exception {
+        byte[] blocks = GuardianFixture.responseBytes(PAGE_SIZE, BODY_LENGTH);
+        byte[] list = GuardianFixture.listResponseBytes(0, PAGE_SIZE);
+
+        assertTrue("the list profile should be under a tenth of the size, it is "
+                           + list.length + " of " + blocks.length + " bytes",
+                   list.length * 10 < blocks.length);
+        assertEquals(PAGE_SIZE,
+                     CocktailJsonParser.parse(new ByteArrayInputStream(list)).size());
+    }
+}
@@ -0,0 +1,272 @@
+/*
+ * Copyright (c) 2018. Tina Taylor
+ * CREATIVE COMMONS Attribution-ShareAlike 3.0 Unported (CC BY-SA 3.0)
+ * https://creativecommons.org/licenses/by-sa/3.0/
+ */
+
+package com.freecbdhomebiz.cocktailoftheweek;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs ImageLoader against a local HTTP server that serves PNG thumbnails of 400 by 300
+ * pixels. The decoder of the test reads the size of a PNG and "decodes" it into the size it
+ * would be sampled down to, which is all the loader needs to know about an image.
+ */
+public class ImageLoaderTest {
+
+    private static final int VIEW_SIZE = 72;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private final AtomicInteger mRequests = new AtomicInteger();
+    private final CountDownLatch mSlowRequestArrived = new CountDownLatch(1);
+    private final CountDownLatch mReleaseSlowRequest = new CountDownLatch(1);
+    private byte[] mPng;
+    private HttpServer mServer;
+    private String mBaseUrl;
+    private ExecutorService mExecutor;
+    private DiskLruCache mDiskCache;
+
+    @Before
+    public void setUp() throws IOException {
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(400, 300, BufferedImage.TYPE_INT_RGB), "png", png);
+        mPng = png.toByteArray();
+
+        mServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        mServer.setExecutor(Executors.newCachedThreadPool());
+        mServer.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                mRequests.incrementAndGet();
+                if (exchange.getRequestURI().getPath().startsWith("/slow")) {
+                    mSlowRequestArrived.countDown();
+                    try {
+                        mReleaseSlowRequest.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                exchange.sendResponseHeaders(200, mPng.length);
+                OutputStream out = exchange.getResponseBody();
+                try {
+                    out.write(mPng);
+                    out.close();
+                } catch (IOException e) {
+                    // The client canceled the request and went away
+                }
+            }
+        });
+        mServer.start();
+        mBaseUrl = "http://127.0.0.1:" + mServer.getAddress().getPort() + "/";
+        mExecutor = Executors.newSingleThreadExecutor();
+        mDiskCache = new DiskLruCache(mFolder.newFolder("thumbnails"), 1024 * 1024);
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        mReleaseSlowRequest.countDown();
+        mExecutor.shutdown();
+        mExecutor.awaitTermination(10, TimeUnit.SECONDS);
+        mServer.stop(0);
+    }
+
+    @Test
+    public void load_downsamplesToTheViewSize() throws Exception {
+        ImageLoader<int[]> loader = loader(1024 * 1024);
+        Recorder target = new Recorder();
+        loader.load(mBaseUrl + "a.png", VIEW_SIZE, VIEW_SIZE, target);
+
+        // 400 by 300 halves twice before it would be smaller than the view
+        assertArrayEquals(new int[]{100, 75}, target.next());
+        assertEquals(4, ThumbnailLoader.sampleSize(400, 300, VIEW_SIZE, VIEW_SIZE));
+        assertEquals(1, ThumbnailLoader.sampleSize(400, 300, 300, 300));
+        assertEquals(1, ThumbnailLoader.sampleSize(400, 300, 0, 0));
+    }
+
+    @Test
+    public void load_sameImageAgain_comesFromMemoryWithoutARequest() throws Exception {
+        ImageLoader<int[]> loader = loader(1024 * 1024);
+        Recorder first = new Recorder();
+        loader.load(mBaseUrl + "a.png", VIEW_SIZE, VIEW_SIZE, first);
+        first.next();
+
+        // A memory hit is delivered straight away, on the calling thread
+        Recorder second = new Recorder();
+        loader.load(mBaseUrl + "a.png", VIEW_SIZE, VIEW_SIZE, second);
+        assertNotNull(second.mImages.poll());
+        assertEquals(1, mRequests.get());
+    }
+
+    @Test
+    public void load_evictedFromMemory_comesFromDiskWithoutARequest() throws Exception {
+        // Room in memory for a single decoded image of 100 by 75 pixels
+        ImageLoader<int[]> loader = loader(100 * 75 * 2);
+        Recorder target = new Recorder();
+        loader.load(mBaseUrl + "a.png", VIEW_SIZE, VIEW_SIZE, target);
+        target.next();
+        loader.load(mBaseUrl + "b.png", VIEW_SIZE, VIEW_SIZE, target);
+        target.next();
+
+        assertNull(loader.getMemoryCache().get(
+                ImageLoader.memoryKey(mBaseUrl + "a.png", VIEW_SIZE, VIEW_SIZE)));
+        assertEquals(1, loader.getMemoryCache().evictionCount());
+
+        loader.load(mBaseUrl + "a.png", VIEW_SIZE, VIEW_SIZE, target);
+        assertArrayEquals(new int[]{100, 75}, target.next());
+        assertEquals(2, mRequests.get());
+    }
+
+    @Test
+    public void cancel_whileDownloading_stopsTheRequestAndNeverDelivers() throws Exception {
+        ImageLoader<int[]> loader = loader(1024 * 1024);
+        Recorder target = new Recorder();
+        ImageLoader.ImageRequest request =
+                loader.load(mBaseUrl + "slow.png", VIEW_SIZE, VIEW_SIZE, target);
+        assertTrue(mSlowRequestArrived.await(10, TimeUnit.SECONDS));
+
+        // The row is recycled while its thumbnail is downloading
+        long start = System.nanoTime();
+        request.cancel();
+        awaitIdle();
+
+        assertTrue(request.isCanceled());
+        assertTrue("the canceled download should stop without waiting for the server",
+                   System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+        assertNull(target.mImages.poll());
+        assertNull(mDiskCache.get(mBaseUrl + "slow.png"));
+    }
+
+    @Test
+    public void cancel_beforeItRuns_neverSendsTheRequest() throws Exception {
+        ImageLoader<int[]> loader = loader(1024 * 1024);
+        Recorder target = new Recorder();
+        // The one loader thread is busy with the slow image
+        loader.load(mBaseUrl + "slow.png", VIEW_SIZE, VIEW_SIZE, target);
+        assertTrue(mSlowRequestArrived.await(10, TimeUnit.SECONDS));
+        ImageLoader.ImageRequest queued =
+                loader.load(mBaseUrl + "b.png", VIEW_SIZE, VIEW_SIZE, new Recorder());
+
+        queued.cancel();
+        mReleaseSlowRequest.countDown();
+        target.next();
+        awaitIdle();
+
+        assertEquals(1, mRequests.get());
+        assertFalse(loader.getMemoryCache().count() > 1);
+    }
+
+    @Test
+    public void load_notAnImage_deliversNull() throws Exception {
+        mPng = "<html>Not found</html>".getBytes("UTF-8");
+        ImageLoader<int[]> loader = loader(1024 * 1024);
+        Recorder target = new Recorder();
+        loader.load(mBaseUrl + "missing.png", VIEW_SIZE, VIEW_SIZE, target);
+
+        assertArrayEquals(Recorder.NULL, target.next());
+        assertEquals(0, loader.getMemoryCache().count());
+    }
+
+    private ImageLoader<int[]> loader(long memoryBytes) {
+        return new ImageLoader<>(new PngSizeDecoder(), memoryBytes, mDiskCache, mExecutor,
+                                 new Executor() {
+                                     @Override
+                                     public void execute(Runnable command) {
+                                         command.run();
+                                     }
+                                 });
+    }
+
+    /**
+     * Wait until the loader thread has finished everything submitted so far
+     */
+    private void awaitIdle() throws Exception {
+        mExecutor.submit(new Runnable() {
+            @Override
+            public void run() {
+            }
+        }).get(10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * "Decodes" a PNG into the width and height it would have once sampled down, two bytes a
+     * pixel like an RGB_565 Bitmap
+     */
+    private static final class PngSizeDecoder implements ImageLoader.Decoder<int[]> {
+        private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a,
+                '\n'};
+
+        @Override
+        public int[] decode(byte[] bytes, int width, int height) {
+            if (bytes.length < 24 || !Arrays.equals(SIGNATURE, Arrays.copyOf(bytes, 8))) {
+                return null;
+            }
+            // The IHDR chunk comes first, with the width and height after its length and type
+            ByteBuffer header = ByteBuffer.wrap(bytes, 16, 8);
+            int imageWidth = header.getInt();
+            int imageHeight = header.getInt();
+            int sampleSize = ThumbnailLoader.sampleSize(imageWidth, imageHeight, width, height);
+            return new int[]{imageWidth / sampleSize, imageHeight / sampleSize};
+        }
+
+        @Override
+        public long sizeOf(int[] image) {
+            return (long) image[0] * image[1] * 2;
+        }
+    }
+
+    /**
+     * Records the images delivered to it
+     */
+    private static final class Recorder implements ImageLoader.Target<int[]> {
+        static final int[] NULL = new int[0];
+
+        final BlockingQueue<int[]> mImages = new LinkedBlockingQueue<>();
+
+        @Override
+        public void onImageLoaded(int[] image) {
+            mImages.add(image == null ? NULL : image);
+        }
+
+        int[] next() throws InterruptedException {
+            int[] image = mImages.poll(10, TimeUnit.SECONDS);
+            assertNotNull("no image delivered", image);
+            return image;
+        }
+    }
+}
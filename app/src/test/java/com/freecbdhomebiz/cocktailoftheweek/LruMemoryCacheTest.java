@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2018. Tina Taylor
+ * CREATIVE COMMONS Attribution-ShareAlike 3.0 Unported (CC BY-SA 3.0)
+ * https://creativecommons.org/licenses/by-sa/3.0/
+ */
+
+package com.freecbdhomebiz.cocktailoftheweek;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class LruMemoryCacheTest {
+
+    /**
+     * A cache of byte arrays worth their length
+     */
+    private static LruMemoryCache<String, byte[]> cache(long maxSize) {
+        return new LruMemoryCache<String, byte[]>(maxSize) {
+            @Override
+            protected long sizeOf(String key, byte[] value) {
+                return value.length;
+            }
+        };
+    }
+
+    @Test
+    public void put_overMaxSize_evictsLeastRecentlyUsed() {
+        LruMemoryCache<String, byte[]> cache = cache(100);
+        cache.put("a", new byte[40]);
+        cache.put("b", new byte[40]);
+        // Using "a" makes "b" the least recently used
+        cache.get("a");
+        cache.put("c", new byte[40]);
+
+        assertNull(cache.get("b"));
+        assertEquals(40, cache.get("a").length);
+        assertEquals(40, cache.get("c").length);
+        assertEquals(80, cache.size());
+        assertEquals(1, cache.evictionCount());
+    }
+
+    @Test
+    public void put_sameKey_replacesValueAndSize() {
+        LruMemoryCache<String, byte[]> cache = cache(100);
+        cache.put("a", new byte[40]);
+        cache.put("a", new byte[10]);
+
+        assertEquals(10, cache.size());
+        assertEquals(1, cache.count());
+        assertEquals(0, cache.evictionCount());
+    }
+
+    @Test
+    public void put_valueLargerThanCache_isNotStored() {
+        LruMemoryCache<String, byte[]> cache = cache(100);
+        cache.put("a", new byte[40]);
+        cache.put("huge", new byte[101]);
+
+        assertNull(cache.get("huge"));
+        assertEquals(40, cache.get("a").length);
+    }
+
+    @Test
+    public void trimToSize_andEvictAll() {
+        LruMemoryCache<String, byte[]> cache = cache(100);
+        cache.put("a", new byte[30]);
+        cache.put("b", new byte[30]);
+        cache.put("c", new byte[30]);
+
+        cache.trimToSize(50);
+        assertEquals(30, cache.size());
+        assertEquals(30, cache.get("c").length);
+
+        cache.evictAll();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.count());
+    }
+
+    @Test
+    public void get_countsHitsAndMisses() {
+        LruMemoryCache<String, byte[]> cache = cache(100);
+        cache.put("a", new byte[1]);
+        cache.get("a");
+        cache.get("a");
+        cache.get("b");
+
+        assertEquals(2, cache.hitCount());
+        assertEquals(1, cache.missCount());
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2018. Tina Taylor
+ * CREATIVE COMMONS Attribution-ShareAlike 3.0 Unported (CC BY-SA 3.0)
+ * https://creativecommons.org/licenses/by-sa/3.0/
+ */
+
+package com.freecbdhomebiz.cocktailoftheweek;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests of the counters and histograms of {@link Metrics}, and a check that recording
+ * them allocates nothing.
+ */
+public class MetricsTest {
+
+    @Test
+    public void bucket_coversEveryValueInOrder() {
+        long previousEnd = -1;
+        for (int bucket = 0; bucket < Metrics.bucket(Long.MAX_VALUE) + 1; bucket++) {
+            long end = Metrics.bucketEnd(bucket);
+            assertTrue(end > previousEnd);
+            assertEquals(bucket, Metrics.bucket(previousEnd + 1));
+            assertEquals(bucket, Metrics.bucket(end));
+            previousEnd = end;
+        }
+        assertEquals(Long.MAX_VALUE, previousEnd);
+    }
+
+    @Test
+    public void percentiles_areWithinTheResolutionOfTheBuckets() {
+        Metrics metrics = new Metrics();
+        // 1 to 1000 microseconds
+        for (int i = 1; i <= 1000; i++) {
+            metrics.recordNanos(Metrics.PARSE, i * 1000L);
+        }
+
+        assertEquals(1000, metrics.getSampleCount(Metrics.PARSE));
+        assertEquals(500500, metrics.getMeanNanos(Metrics.PARSE));
+        assertEquals(1000000, metrics.getMaxNanos(Metrics.PARSE));
+        assertWithin(500000, metrics.getPercentileNanos(Metrics.PARSE, 0.5));
+        assertWithin(990000, metrics.getPercentileNanos(Metrics.PARSE, 0.99));
+        assertEquals(1000000, metrics.getPercentileNanos(Metrics.PARSE, 1));
+        assertEquals(0, metrics.getSampleCount(Metrics.BIND));
+        assertEquals(0, metrics.getPercentileNanos(Metrics.BIND, 0.5));
+    }
+
+    @Test
+    public void dump_listsEveryCounterAndHistogram() {
+        Metrics metrics = new Metrics();
+        metrics.add(Metrics.BYTES_READ, 12345);
+        metrics.increment(Metrics.CALLS);
+        metrics.recordNanos(Metrics.TTFB, 2500000);
+
+        String dump = metrics.dump();
+
+        assertTrue(dump, dump.contains("bytes read           12,345"));
+        assertTrue(dump, dump.contains("calls                1"));
+        assertTrue(dump, dump.contains("  ttfb                  1     2.50"));
+        assertTrue(dump, dump.contains("  bind                  0     0.00"));
+
+        metrics.reset();
+        assertEquals(0, metrics.getCount(Metrics.BYTES_READ));
+        assertEquals(0, metrics.getSampleCount(Metrics.TTFB));
+    }
+
+    @Test
+    public void recording_allocatesNothing() {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        Metrics metrics = new Metrics();
+        // Warm up, so the JIT compiles the recording code before it is measured
+        record(metrics, 100000);
+
+        long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+        record(metrics, 100000);
+        long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+        // A few bytes can come from the measurement itself, a single allocation per record
+        // would be megabytes
+        assertTrue("recording allocated " + allocated + " bytes", allocated < 1024);
+    }
+
+    private static void record(Metrics metrics, int times) {
+        for (int i = 0; i < times; i++) {
+            long start = System.nanoTime();
+            metrics.increment(Metrics.CALLS);
+            metrics.add(Metrics.BYTES_READ, i);
+            metrics.recordNanos(Metrics.BIND, System.nanoTime() - start);
+        }
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue("expected about " + expected + " but was " + actual,
+                   actual >= expected && actual <= expected + expected / 8);
+    }
+}
@@ -0,0 +1,267 @@
+/*
+ * Copyright (c) 2018. Tina Taylor
+ * CREATIVE COMMONS Attribution-ShareAlike 3.0 Unported (CC BY-SA 3.0)
+ * https://creativecommons.org/licenses/by-sa/3.0/
+ */
+
+package com.freecbdhomebiz.cocktailoftheweek;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs {@link MultiSourceFetcher} against a fake server with one slow source per path, each
+ * answering a page of overlapping articles after a delay.
+ */
+public class MultiSourceFetcherTest {
+
+    private static final int DELAY_MILLIS = 500;
+
+    private final AtomicInteger mActive = new AtomicInteger();
+    private final AtomicInteger mMaxActive = new AtomicInteger();
+    private final CountDownLatch mRelease = new CountDownLatch(1);
+
+    private HttpServer mServer;
+    private String mBaseUrl;
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        mServer.setExecutor(Executors.newCachedThreadPool());
+        // Articles 0-9, 5-14, 10-19 and 15-24, so neighbouring sources share five articles
+        for (int source = 0; source < 4; source++) {
+            mServer.createContext("/source-" + source, new SlowSource(source * 5));
+        }
+        mServer.createContext("/stalled", new StalledSource());
+        mServer.createContext("/broken", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                exchange.sendResponseHeaders(500, -1);
+                exchange.close();
+            }
+        });
+        mServer.start();
+        mBaseUrl = "http://127.0.0.1:" + mServer.getAddress().getPort() + "/";
+    }
+
+    @After
+    public void tearDown() {
+        mRelease.countDown();
+        mServer.stop(0);
+    }
+
+    @Test
+    public void fetch_requestsEverySourceAtTheSameTime() {
+        MultiSourceFetcher fetcher = new MultiSourceFetcher(3, 10000);
+
+        CocktailResponse response = fetcher.fetch(
+                request(true, "source-0", "source-1", "source-2"), null, null, null);
+
+        assertEquals("the sources must be fetched at the same time", 3, mMaxActive.get());
+        List<Cocktail> cocktails = response.getCocktails();
+        assertEquals("shared articles are only kept once", 20, cocktails.size());
+        assertEquals(GuardianFixture.url(19), cocktails.get(0).getUrl());
+        assertEquals(GuardianFixture.url(0), cocktails.get(19).getUrl());
+        assertNull("a merged feed has no validators", response.getEtag());
+    }
+
+    @Test
+    public void fetch_revalidatesEachSourceWithItsOwnValidators() {
+        MultiSourceFetcher fetcher = new MultiSourceFetcher(3, 10000);
+        FeedRequest request = request(true, "source-0", "source-1");
+        CocktailResponse first = fetcher.fetch(request, null, null, null);
+        assertEquals("\"from-5\"", first.getSources().get(1).getEtag());
+        assertFalse(first.isPartial());
+
+        // Nothing changed at either source
+        CocktailResponse second = fetcher.fetch(request, first.getSources(), null);
+        assertTrue(second.isNotModified());
+        assertEquals(first.getSources().get(0).getCocktails(),
+                     second.getSources().get(0).getCocktails());
+
+        // Only the first source is stored, the second is fetched whole
+        CocktailResponse third = fetcher.fetch(
+                request, Arrays.asList(first.getSources().get(0), null), null);
+        assertFalse(third.isNotModified());
+        assertEquals(urls(first.getCocktails()), urls(third.getCocktails()));
+    }
+
+    @Test
+    public void fetch_runsNoMoreRequestsThanTheParallelism() {
+        MultiSourceFetcher fetcher = new MultiSourceFetcher(2, 10000);
+
+        CocktailResponse response = fetcher.fetch(
+                request(false, "source-0", "source-1", "source-2", "source-3"), null, null, null);
+
+        assertEquals(2, mMaxActive.get());
+        assertEquals(25, response.getCocktails().size());
+        assertEquals(GuardianFixture.url(0), response.getCocktails().get(0).getUrl());
+    }
+
+    @Test
+    public void fetch_leavesOutTheSourcesThatFailOrTimeOut() {
+        MultiSourceFetcher fetcher = new MultiSourceFetcher(3, 2 * DELAY_MILLIS);
+
+        long start = System.nanoTime();
+        CocktailResponse response = fetcher.fetch(
+                request(true, "source-0", "stalled", "broken"), null, null, null);
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertEquals(10, response.getCocktails().size());
+        assertTrue("the stalled source must not hold up the feed, took " + elapsedMillis
+                           + " ms", elapsedMillis < 5 * DELAY_MILLIS);
+        assertTrue(response.isPartial());
+    }
+
+    @Test
+    public void fetch_fillsInTheStoredArticlesOfAFailedSource() {
+        MultiSourceFetcher fetcher = new MultiSourceFetcher(2, 10000);
+        List<Cocktail> stored = Arrays.asList(article(40, "stored"));
+
+        CocktailResponse response = fetcher.fetch(
+                request(true, "source-0", "broken"),
+                Arrays.asList(null, new CocktailResponse(stored, "\"old\"", null)), null);
+
+        assertTrue(response.isPartial());
+        assertEquals(11, response.getCocktails().size());
+        assertEquals("stored", response.getCocktails().get(10).getUrl());
+        assertNull(response.getSources().get(1));
+    }
+
+    @Test
+    public void fetch_returnsNullWhenEverySourceFails() {
+        MultiSourceFetcher fetcher = new MultiSourceFetcher(2, 10000);
+        assertNull(fetcher.fetch(request(true, "broken", "broken"), null, null, null));
+    }
+
+    @Test
+    public void fetch_returnsNullWhenCanceledBeforehand() {
+        MultiSourceFetcher fetcher = new MultiSourceFetcher(2, 10000);
+        CancellationToken cancellation = new CancellationToken();
+        cancellation.cancel();
+
+        assertNull(fetcher.fetch(request(true, "source-0", "source-1"), null, null,
+                                 cancellation));
+        assertEquals("canceled sources are not requested", 0, mMaxActive.get());
+    }
+
+    @Test
+    public void merge_keepsEachUrlOnceOrderedByDate() {
+        Cocktail undated = new Cocktail("Food", "Undated", null, Cocktail.NO_DATE, null, "u");
+        List<Cocktail> first = Arrays.asList(article(1, "a"), article(3, "b"), undated);
+        List<Cocktail> second = Arrays.asList(article(2, "c"), article(3, "b"),
+                                              article(3, "d"));
+        List<List<Cocktail>> lists = Arrays.asList(first, second);
+
+        assertEquals(Arrays.asList("b", "d", "c", "a", "u"),
+                     urls(MultiSourceFetcher.merge(lists, true)));
+        assertEquals(Arrays.asList("a", "c", "b", "d", "u"),
+                     urls(MultiSourceFetcher.merge(lists, false)));
+    }
+
+    private FeedRequest request(boolean newestFirst, String... paths) {
+        List<String> urls = new ArrayList<>();
+        for (String path : paths) {
+            urls.add(mBaseUrl + path);
+        }
+        return new FeedRequest(urls, newestFirst, 1, 20);
+    }
+
+    private static Cocktail article(int day, String url) {
+        return new Cocktail("Food", "Cocktail " + url, null, day * 86400000L, null, url);
+    }
+
+    private static List<String> urls(List<Cocktail> cocktails) {
+        List<String> urls = new ArrayList<>();
+        for (Cocktail cocktail : cocktails) {
+            urls.add(cocktail.getUrl());
+        }
+        return urls;
+    }
+
+    /**
+     * Answers ten articles from first on, after a delay, and counts the requests running at
+     * the same time
+     */
+    private class SlowSource implements HttpHandler {
+
+        private final byte[] mBody;
+        private final String mEtag;
+
+        SlowSource(int first) {
+            mBody = GuardianFixture.responseBytes(first, 10, 256);
+            mEtag = "\"from-" + first + "\"";
+        }
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            int active = mActive.incrementAndGet();
+            int max;
+            do {
+                max = mMaxActive.get();
+            } while (active > max && !mMaxActive.compareAndSet(max, active));
+            try {
+                Thread.sleep(DELAY_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                mActive.decrementAndGet();
+            }
+            exchange.getResponseHeaders().set("ETag", mEtag);
+            if (mEtag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                exchange.sendResponseHeaders(304, -1);
+                exchange.close();
+                return;
+            }
+            exchange.sendResponseHeaders(200, mBody.length);
+            OutputStream out = exchange.getResponseBody();
+            out.write(mBody);
+            out.close();
+        }
+    }
+
+    /**
+     * Sends the start of a response and then nothing until the test is over
+     */
+    private class StalledSource implements HttpHandler {
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            byte[] body = GuardianFixture.responseBytes(10, 256);
+            exchange.sendResponseHeaders(200, body.length);
+            OutputStream out = exchange.getResponseBody();
+            out.write(body, 0, body.length / 2);
+            out.flush();
+            try {
+                mRelease.await(30, TimeUnit.SECONDS);
+                out.write(body, body.length / 2, body.length - body.length / 2);
+                out.close();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException e) {
+                // The client gave up on the request
+            }
+        }
+    }
+}
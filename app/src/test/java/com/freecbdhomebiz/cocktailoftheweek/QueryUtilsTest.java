@@ -0,0 +1,327 @@
+/*
+ * Copyright (c) 2018. Tina Taylor
+ * CREATIVE COMMONS Attribution-ShareAlike 3.0 Unported (CC BY-SA 3.0)
+ * https://creativecommons.org/licenses/by-sa/3.0/
+ */
+
+package com.freecbdhomebiz.cocktailoftheweek;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+import okhttp3.OkHttpClient;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs QueryUtils against a local HTTP server that behaves like the Content API: it gzips the
+ * response when asked to and answers "304 Not Modified" to a matching If-None-Match.
+ */
+public class QueryUtilsTest {
+
+    private static final String ETAG = "\"good-mixer-v1\"";
+    private static final String LAST_MODIFIED = "Sat, 14 Jul 2018 08:00:00 GMT";
+
+    private final byte[] mBody = GuardianFixture.responseBytes(20, 8 * 1024);
+    private final AtomicLong mBytesSent = new AtomicLong();
+    /**
+     * The client ports the requests came from, one per TCP connection
+     */
+    private final Set<Integer> mClientPorts =
+            Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+    /**
+     * Requests to /flaky fail with mFailureCode and mRetryAfter until mFailuresLeft runs out.
+     * Without a Retry-After, because OkHttp itself tries a 503 with "Retry-After: 0" again.
+     */
+    private final AtomicInteger mFailuresLeft = new AtomicInteger();
+    private final AtomicInteger mFlakyRequests = new AtomicInteger();
+    private volatile int mFailureCode = 503;
+    private volatile String mRetryAfter;
+    /**
+     * Requests to /stalled get no answer until the test is over
+     */
+    private final CountDownLatch mRelease = new CountDownLatch(1);
+    private HttpServer mServer;
+    private String mUrl;
+    private String mFlakyUrl;
+    private String mStalledUrl;
+    private String mMalformedUrl;
+
+    @Before
+    public void startServer() throws IOException {
+        mServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        mServer.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                mClientPorts.add(exchange.getRemoteAddress().getPort());
+                exchange.getResponseHeaders().add("ETag", ETAG);
+                exchange.getResponseHeaders().add("Last-Modified", LAST_MODIFIED);
+                if (ETAG.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                    exchange.sendResponseHeaders(304, -1);
+                    exchange.close();
+                    return;
+                }
+                byte[] body = mBody;
+                String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+                if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+                    body = gzip(body);
+                    exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+                }
+                // Counted before the body goes out, so the client never sees it first
+                mBytesSent.addAndGet(body.length);
+                exchange.sendResponseHeaders(200, body.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                out.close();
+            }
+        });
+        mServer.createContext("/flaky", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                mFlakyRequests.incrementAndGet();
+                if (mFailuresLeft.getAndDecrement() > 0) {
+                    if (mRetryAfter != null) {
+                        exchange.getResponseHeaders().add("Retry-After", mRetryAfter);
+                    }
+                    exchange.sendResponseHeaders(mFailureCode, -1);
+                    exchange.close();
+                    return;
+                }
+                exchange.sendResponseHeaders(200, mBody.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(mBody);
+                out.close();
+            }
+        });
+        mServer.createContext("/stalled", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                mFlakyRequests.incrementAndGet();
+                try {
+                    mRelease.await(30, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                exchange.close();
+            }
+        });
+        mServer.createContext("/malformed", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                mFlakyRequests.incrementAndGet();
+                byte[] body = "{\"response\": [1, 2".getBytes("UTF-8");
+                exchange.sendResponseHeaders(200, body.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                out.close();
+            }
+        });
+        // Requests to /stalled wait on the handler threads, so the others still get answered
+        mServer.setExecutor(Executors.newCachedThreadPool());
+        mServer.start();
+        String server = "http://127.0.0.1:" + mServer.getAddress().getPort();
+        mUrl = server + "/lifeandstyle/series/the-good-mixer";
+        mFlakyUrl = server + "/flaky";
+        mStalledUrl = server + "/stalled";
+        mMalformedUrl = server + "/malformed";
+    }
+
+    @After
+    public void stopServer() {
+        mRelease.countDown();
+        mServer.stop(0);
+    }
+
+    @Test
+    public void fetch_negotiatesGzip() {
+        CocktailResponse response = QueryUtils.fetchCocktailResponse(mUrl);
+
+        assertFalse(response.isNotModified());
+        assertEquals(20, response.getCocktails().size());
+        assertEquals(GuardianFixture.summary(19), response.getCocktails().get(19).getSummary());
+        assertEquals(ETAG, response.getEtag());
+        assertEquals(LAST_MODIFIED, response.getLastModified());
+        assertTrue("gzip should shrink the transfer, sent " + mBytesSent.get() + " of "
+                           + mBody.length + " bytes", mBytesSent.get() < mBody.length / 4);
+    }
+
+    @Test
+    public void fetch_withMatchingEtag_isNotModified() {
+        CocktailResponse first = QueryUtils.fetchCocktailResponse(mUrl);
+        long bytesAfterFirst = mBytesSent.get();
+
+        CocktailResponse second = QueryUtils.fetchCocktailResponse(mUrl, first.getEtag(),
+                                                                   first.getLastModified());
+
+        assertTrue(second.isNotModified());
+        assertNull(second.getCocktails());
+        assertEquals(ETAG, second.getEtag());
+        assertEquals(LAST_MODIFIED, second.getLastModified());
+        assertEquals("a 304 must not transfer a body", bytesAfterFirst, mBytesSent.get());
+    }
+
+    @Test
+    public void fetch_withStaleEtag_returnsArticles() {
+        CocktailResponse response = QueryUtils.fetchCocktailResponse(mUrl, "\"old\"", null);
+
+        assertFalse(response.isNotModified());
+        assertEquals(20, response.getCocktails().size());
+    }
+
+    @Test
+    public void sequentialFetches_reuseOneConnection() {
+        for (int i = 0; i < 20; i++) {
+            CocktailResponse response = QueryUtils.fetchCocktailResponse(mUrl);
+            assertEquals(20, response.getCocktails().size());
+        }
+
+        assertEquals("20 fetches should share one kept-alive connection", 1,
+                     mClientPorts.size());
+    }
+
+    @Test
+    public void clientWithOtherTimeouts_isBuiltOnceAndSharesTheConnections() {
+        OkHttpClient client = GuardianHttpClient.get(1000, 2000);
+
+        assertSame(client, GuardianHttpClient.get(1000, 2000));
+        assertSame(GuardianHttpClient.get().connectionPool(), client.connectionPool());
+        assertEquals(2000, client.readTimeoutMillis());
+        assertSame(GuardianHttpClient.get(),
+                   GuardianHttpClient.get(GuardianHttpClient.DEFAULT_CONNECT_TIMEOUT_MILLIS,
+                                          GuardianHttpClient.DEFAULT_READ_TIMEOUT_MILLIS));
+    }
+
+    @Test
+    public void fetch_recordsMetrics() {
+        Metrics metrics = Metrics.getInstance();
+        long calls = metrics.getCount(Metrics.CALLS);
+        long reused = metrics.getCount(Metrics.CONNECTIONS_REUSED);
+        long articles = metrics.getCount(Metrics.ARTICLES_PARSED);
+        long bytes = metrics.getCount(Metrics.BYTES_READ);
+        long firstBytes = metrics.getSampleCount(Metrics.TTFB);
+        long parses = metrics.getSampleCount(Metrics.PARSE);
+
+        QueryUtils.fetchCocktailResponse(mUrl);
+        QueryUtils.fetchCocktailResponse(mUrl);
+
+        assertEquals(2, metrics.getCount(Metrics.CALLS) - calls);
+        assertEquals(1, metrics.getCount(Metrics.CONNECTIONS_REUSED) - reused);
+        assertEquals(40, metrics.getCount(Metrics.ARTICLES_PARSED) - articles);
+        assertEquals(mBytesSent.get(), metrics.getCount(Metrics.BYTES_READ) - bytes);
+        assertEquals(2, metrics.getSampleCount(Metrics.TTFB) - firstBytes);
+        assertEquals(2, metrics.getSampleCount(Metrics.PARSE) - parses);
+    }
+
+    @Test
+    public void fetch_retriesTransientErrors() {
+        mFailuresLeft.set(2);
+
+        CocktailResponse response = QueryUtils.fetchCocktailResponse(mFlakyUrl);
+
+        assertEquals(20, response.getCocktails().size());
+        assertEquals(3, mFlakyRequests.get());
+    }
+
+    @Test
+    public void fetch_waitsForRetryAfter() {
+        mFailuresLeft.set(1);
+        mFailureCode = 429;
+        mRetryAfter = "1";
+
+        long start = System.nanoTime();
+        CocktailResponse response = QueryUtils.fetchCocktailResponse(mFlakyUrl);
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertEquals(20, response.getCocktails().size());
+        assertEquals(2, mFlakyRequests.get());
+        assertTrue("waited " + elapsedMillis + " ms", elapsedMillis >= 1000);
+    }
+
+    @Test
+    public void fetch_doesNotRetryClientErrors() {
+        mRetryAfter = "0";
+        mFailuresLeft.set(1);
+        mFailureCode = 404;
+
+        assertNull(QueryUtils.fetchCocktailResponse(mFlakyUrl));
+        assertEquals(1, mFlakyRequests.get());
+    }
+
+    @Test
+    public void fetch_opensTheCircuitWhenTheServerKeepsFailing() {
+        mFailuresLeft.set(Integer.MAX_VALUE);
+
+        assertNull(QueryUtils.fetchCocktailResponse(mFlakyUrl));
+        assertEquals(RetryPolicy.DEFAULT_MAX_ATTEMPTS, mFlakyRequests.get());
+
+        // The next fetch fails straight away, without asking the server
+        long start = System.nanoTime();
+        assertNull(QueryUtils.fetchCocktailResponse(mUrl));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 100);
+        assertEquals(RetryPolicy.DEFAULT_MAX_ATTEMPTS, mFlakyRequests.get());
+    }
+
+    @Test
+    public void fetch_timeouts_areNotRetriedButOpenTheCircuit() {
+        for (int i = 0; i < CircuitBreaker.DEFAULT_FAILURE_THRESHOLD; i++) {
+            assertNull(QueryUtils.fetchCocktailResponse(mStalledUrl, null, null, null, 1000,
+                                                        200));
+        }
+        assertEquals(CircuitBreaker.DEFAULT_FAILURE_THRESHOLD, mFlakyRequests.get());
+
+        // A server that hangs is as broken as one that fails, the next fetch isn't sent
+        assertNull(QueryUtils.fetchCocktailResponse(mUrl));
+        assertTrue(mClientPorts.isEmpty());
+    }
+
+    @Test
+    public void fetch_malformedResponse_isNotRetriedAndLeavesTheCircuitClosed() {
+        for (int i = 0; i < CircuitBreaker.DEFAULT_FAILURE_THRESHOLD; i++) {
+            assertNull(QueryUtils.fetchCocktailResponse(mMalformedUrl));
+        }
+        assertEquals(CircuitBreaker.DEFAULT_FAILURE_THRESHOLD, mFlakyRequests.get());
+
+        assertEquals(20, QueryUtils.fetchCocktailResponse(mUrl).getCocktails().size());
+    }
+
+    @Test
+    public void fetch_retryAfterTooLongToWait_defersTheNextFetch() {
+        mFailuresLeft.set(1);
+        mRetryAfter = "3600";
+
+        assertNull(QueryUtils.fetchCocktailResponse(mFlakyUrl));
+        assertNull(QueryUtils.fetchCocktailResponse(mFlakyUrl));
+        assertEquals(1, mFlakyRequests.get());
+    }
+
+    private static byte[] gzip(byte[] body) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GZIPOutputStream gzip = new GZIPOutputStream(bytes);
+        gzip.write(body);
+        gzip.close();
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2018. Tina Taylor
+ * CREATIVE COMMONS Attribution-ShareAlike 3.0 Unported (CC BY-SA 3.0)
+ * https://creativecommons.org/licenses/by-sa/3.0/
+ */
+
+package com.freecbdhomebiz.cocktailoftheweek;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs {@link ReloadCoordinator} on a virtual clock, which only moves when the test advances
+ * it, and records the reloads and cancellations it asks for.
+ */
+public class ReloadCoordinatorTest {
+
+    private final VirtualScheduler mScheduler = new VirtualScheduler();
+    private final List<String> mCalls = new ArrayList<>();
+    private ReloadCoordinator mCoordinator;
+
+    @Before
+    public void setUp() {
+        mCoordinator = new ReloadCoordinator(mScheduler, new ReloadCoordinator.Reloader() {
+            @Override
+            public void reload(String value) {
+                mCalls.add("reload " + value + " at " + mScheduler.mNow);
+            }
+
+            @Override
+            public void cancel() {
+                mCalls.add("cancel at " + mScheduler.mNow);
+            }
+        }, "newest");
+    }
+
+    @Test
+    public void change_isAppliedOnceItStaysPut() {
+        mCoordinator.onChanged("oldest");
+        mScheduler.advance(ReloadCoordinator.DEBOUNCE_MILLIS - 1);
+        assertEquals(Collections.singletonList("cancel at 0"), mCalls);
+
+        mScheduler.advance(1);
+        assertEquals(Arrays.asList("cancel at 0", "reload oldest at 400"), mCalls);
+        assertFalse(mCoordinator.isPending());
+    }
+
+    @Test
+    public void rapidChanges_coalesceIntoOneReloadOfTheLastValue() {
+        mCoordinator.onChanged("oldest");
+        mScheduler.advance(300);
+        mCoordinator.onChanged("newest");
+        mScheduler.advance(300);
+        mCoordinator.onChanged("oldest");
+        mScheduler.advance(1000);
+
+        // The running reload is canceled once, at the first change away from it
+        assertEquals(Arrays.asList("cancel at 0", "reload oldest at 1000"), mCalls);
+    }
+
+    @Test
+    public void changingBack_reloadsOnlyIfTheRunningReloadWasCanceled() {
+        mCoordinator.onChanged("newest");
+        mScheduler.advance(1000);
+        assertTrue("the list already shows the value", mCalls.isEmpty());
+
+        mCoordinator.onChanged("oldest");
+        mCoordinator.onChanged("newest");
+        mScheduler.advance(1000);
+        assertEquals(Arrays.asList("cancel at 1000", "reload newest at 1400"), mCalls);
+    }
+
+    @Test
+    public void changeAfterAReload_supersedesIt() {
+        mCoordinator.onChanged("oldest");
+        mScheduler.advance(1000);
+        mCoordinator.onChanged("newest");
+        mScheduler.advance(1000);
+
+        assertEquals(Arrays.asList("cancel at 0", "reload oldest at 400", "cancel at 1000",
+                                   "reload newest at 1400"), mCalls);
+    }
+
+    @Test
+    public void flush_appliesTheChangeWithoutWaiting() {
+        mCoordinator.onChanged("oldest");
+        mScheduler.advance(100);
+        mCoordinator.flush();
+        mScheduler.advance(1000);
+
+        assertEquals(Arrays.asList("cancel at 0", "reload oldest at 100"), mCalls);
+        mCoordinator.flush();
+        assertEquals(2, mCalls.size());
+    }
+
+    @Test
+    public void cancel_dropsTheWaitingChange() {
+        mCoordinator.onChanged("oldest");
+        mCoordinator.cancel();
+        mScheduler.advance(1000);
+
+        assertEquals(Collections.singletonList("cancel at 0"), mCalls);
+        assertFalse(mCoordinator.isPending());
+    }
+
+    @Test
+    public void sort_putsTheLoadedRowsInTheOtherOrder() throws Exception {
+        List<PreparedCocktail> newestFirst = new ArrayList<>(PreparedCocktail.prepare(
+                CocktailJsonParser.parse(new ByteArrayInputStream(
+                        GuardianFixture.responseBytes(5, 64)))));
+        Collections.reverse(newestFirst);
+
+        List<PreparedCocktail> oldestFirst = ReloadCoordinator.sort(newestFirst, false);
+
+        for (int i = 0; i < oldestFirst.size(); i++) {
+            assertEquals(GuardianFixture.url(i), oldestFirst.get(i).getCocktail().getUrl());
+        }
+        assertEquals(newestFirst, ReloadCoordinator.sort(oldestFirst, true));
+    }
+
+    /**
+     * A scheduler on a virtual clock, in milliseconds, that runs the due tasks when the test
+     * advances it
+     */
+    private static class VirtualScheduler implements ReloadCoordinator.Scheduler {
+
+        long mNow;
+        private final List<Task> mTasks = new ArrayList<>();
+
+        @Override
+        public void postDelayed(Runnable task, long delayMillis) {
+            mTasks.add(new Task(task, mNow + delayMillis));
+        }
+
+        @Override
+        public void removeCallbacks(Runnable task) {
+            Iterator<Task> tasks = mTasks.iterator();
+            while (tasks.hasNext()) {
+                if (tasks.next().mRunnable == task) {
+                    tasks.remove();
+                }
+            }
+        }
+
+        void advance(long millis) {
+            long until = mNow + millis;
+            while (true) {
+                Task next = null;
+                for (Task task : mTasks) {
+                    if (task.mDueAt <= until && (next == null || task.mDueAt < next.mDueAt)) {
+                        next = task;
+                    }
+                }
+                if (next == null) {
+                    break;
+                }
+                mTasks.remove(next);
+                mNow = next.mDueAt;
+                next.mRunnable.run();
+            }
+            mNow = until;
+        }
+    }
+
+    private static class Task {
+        final Runnable mRunnable;
+        final long mDueAt;
+
+        Task(Runnable runnable, long dueAt) {
+            mRunnable = runnable;
+            mDueAt = dueAt;
+        }
+    }
+}
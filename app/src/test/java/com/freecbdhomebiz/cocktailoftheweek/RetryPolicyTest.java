@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2018. Tina Taylor
+ * CREATIVE COMMONS Attribution-ShareAlike 3.0 Unported (CC BY-SA 3.0)
+ * https://creativecommons.org/licenses/by-sa/3.0/
+ */
+
+package com.freecbdhomebiz.cocktailoftheweek;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests of which failures {@link RetryPolicy} retries, and how long it waits.
+ */
+public class RetryPolicyTest {
+
+    /**
+     * Sat, 14 Jul 2018 08:00:00 GMT
+     */
+    private static final long NOW = 1531555200000L;
+
+    @Test
+    public void delayMillis_doublesTheLimitWithJitter() {
+        RetryPolicy policy = new RetryPolicy(6, 500, 3000, new Random(1));
+        long[] limits = {500, 1000, 2000, 3000, 3000};
+        for (int failed = 1; failed <= limits.length; failed++) {
+            long max = 0;
+            for (int i = 0; i < 1000; i++) {
+                long delay = policy.delayMillis(failed, -1);
+                assertTrue(delay >= 0 && delay <= limits[failed - 1]);
+                max = Math.max(max, delay);
+            }
+            assertTrue("the waits should spread over the whole range",
+                       max > limits[failed - 1] * 9 / 10);
+        }
+    }
+
+    @Test
+    public void delayMillis_stopsAfterTheLastAttempt() {
+        RetryPolicy policy = new RetryPolicy(3, 500, 8000, new Random(1));
+        assertTrue(policy.delayMillis(2, -1) >= 0);
+        assertEquals(-1, policy.delayMillis(3, -1));
+        assertEquals(-1, policy.delayMillis(3, 0));
+    }
+
+    @Test
+    public void delayMillis_honorsRetryAfterUnlessItIsTooLong() {
+        RetryPolicy policy = new RetryPolicy(3, 500, 8000, new Random(1));
+        assertEquals(2000, policy.delayMillis(1, 2000));
+        assertEquals(0, policy.delayMillis(1, 0));
+        assertEquals(-1, policy.delayMillis(1, 120000));
+    }
+
+    @Test
+    public void isRetryable_onlyForTransientFailures() {
+        assertTrue(RetryPolicy.isRetryable(429));
+        assertTrue(RetryPolicy.isRetryable(503));
+        assertTrue(RetryPolicy.isRetryable(502));
+        assertFalse(RetryPolicy.isRetryable(400));
+        assertFalse(RetryPolicy.isRetryable(401));
+        assertFalse(RetryPolicy.isRetryable(404));
+        assertTrue(RetryPolicy.isRetryable(new IOException("connection reset")));
+        assertFalse(RetryPolicy.isRetryable(new SocketTimeoutException()));
+        assertFalse(RetryPolicy.isRetryable(
+                new CocktailJsonParser.MalformedResponseException(null)));
+    }
+
+    @Test
+    public void isServerFailure_forTimeoutsButNotForBadPayloads() {
+        assertTrue(RetryPolicy.isServerFailure(new IOException("connection reset")));
+        assertTrue(RetryPolicy.isServerFailure(new SocketTimeoutException()));
+        assertFalse(RetryPolicy.isServerFailure(
+                new CocktailJsonParser.MalformedResponseException(null)));
+    }
+
+    @Test
+    public void parseRetryAfter_secondsOrDate() {
+        assertEquals(120000, RetryPolicy.parseRetryAfter("120", NOW));
+        assertEquals(0, RetryPolicy.parseRetryAfter(" 0 ", NOW));
+        assertEquals(30000, RetryPolicy.parseRetryAfter("Sat, 14 Jul 2018 08:00:30 GMT", NOW));
+        assertEquals(0, RetryPolicy.parseRetryAfter("Sat, 14 Jul 2018 07:59:00 GMT", NOW));
+        assertEquals(Long.MAX_VALUE, RetryPolicy.parseRetryAfter("99999999999", NOW));
+        assertEquals(-1, RetryPolicy.parseRetryAfter(null, NOW));
+        assertEquals(-1, RetryPolicy.parseRetryAfter("soon", NOW));
+        assertEquals(-1, RetryPolicy.parseRetryAfter("-5", NOW));
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2018. Tina Taylor
+ * CREATIVE COMMONS Attribution-ShareAlike 3.0 Unported (CC BY-SA 3.0)
+ * https://creativecommons.org/licenses/by-sa/3.0/
+ */
+
+package com.freecbdhomebiz.cocktailoftheweek;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests of {@link SearchIndex}. Its query latency is measured by SearchIndexBenchmark in
+ * the benchmark module.
+ */
+public class SearchIndexTest {
+
+    private static final String[] INGREDIENTS = {
+            "gin", "mezcal", "tequila", "rum", "whisky", "vodka", "brandy", "vermouth",
+            "campari", "aperol", "lime", "lemon", "grapefruit", "orange", "sugar", "bitters",
+            "mint", "soda", "tonic", "prosecco", "cognac", "absinthe", "maraschino", "chartreuse"
+    };
+
+    private static final String[] AUTHORS = {
+            "Henry Jeffreys", "Rachel Roddy", "Felicity Cloake"
+    };
+
+    private static final int ARCHIVE_SIZE = 5000;
+
+    @Test
+    public void tokenize_lowerCasesAndDropsAccentsAndShortWords() {
+        assertEquals(Arrays.asList("creme", "de", "menthe", "gin"),
+                     SearchIndex.tokenize("Cr\u00e8me de Menthe & a GIN!"));
+    }
+
+    @Test
+    public void search_matchesEveryWordAndPrefixOfTheLast() {
+        SearchIndex index = new SearchIndex();
+        index.add(article(1, "Negroni", "Henry Jeffreys", "Gin, vermouth and Campari"));
+        index.add(article(2, "Paloma", "Henry Jeffreys", "Tequila with grapefruit soda"));
+        index.add(article(3, "Gin fizz", "Rachel Roddy", "Gin, lemon and soda"));
+
+        assertEquals(urls(3, 1), urls(index.search("gin", 10)));
+        assertEquals(urls(3), urls(index.search("gin so", 10)));
+        assertEquals(urls(2), urls(index.search("jeffreys TEQ", 10)));
+        assertEquals(urls(3), urls(index.search("gin", 1)));
+        assertEquals(urls(), urls(index.search("mezcal", 10)));
+        assertEquals(urls(), urls(index.search("  ", 10)));
+    }
+
+    @Test
+    public void add_replacesAnArticleWithTheSameUrl() {
+        SearchIndex index = new SearchIndex();
+        assertTrue(index.add(article(1, "Negroni", "Henry Jeffreys", "Gin and Campari")));
+        assertEquals(0, index.addAll(Arrays.asList(
+                article(1, "Negroni", "Henry Jeffreys", "Gin and Campari"))));
+        assertEquals(1, index.addAll(Arrays.asList(
+                article(1, "Negroni sbagliato", "Henry Jeffreys", "Prosecco and Campari"))));
+
+        assertEquals(1, index.size());
+        assertEquals(urls(), urls(index.search("gin", 10)));
+        assertEquals(urls(1), urls(index.search("sbagliato prosecco", 10)));
+    }
+
+    @Test
+    public void writeTo_thenReadFrom_returnsTheSameIndex() throws IOException {
+        SearchIndex index = archive(500);
+        // A replaced article leaves a gap in the IDs that is dropped on the way to disk
+        index.add(article(7, "Mezcal margarita", "Henry Jeffreys", "Mezcal, lime and salt"));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        index.writeTo(out);
+        SearchIndex read = SearchIndex.readFrom(new ByteArrayInputStream(out.toByteArray()));
+
+        assertEquals(index.size(), read.size());
+        assertEquals(index.termCount(), read.termCount());
+        for (String query : new String[]{"gin", "mezcal lime", "jeffreys cam", "ma"}) {
+            assertEquals(index.search(query, ARCHIVE_SIZE), read.search(query, ARCHIVE_SIZE));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void readFrom_rejectsATruncatedIndex() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        archive(10).writeTo(out);
+        byte[] bytes = Arrays.copyOf(out.toByteArray(), out.size() / 2);
+        SearchIndex.readFrom(new ByteArrayInputStream(bytes));
+    }
+
+    /**
+     * An index of articles with a few random ingredients each in the title and summary
+     */
+    private static SearchIndex archive(int size) {
+        Random random = new Random(42);
+        SearchIndex index = new SearchIndex();
+        List<Cocktail> cocktails = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            StringBuilder summary = new StringBuilder("Shake");
+            for (int j = 0; j < 6; j++) {
+                summary.append(' ').append(INGREDIENTS[random.nextInt(INGREDIENTS.length)]);
+            }
+            summary.append(" hard over ice, then strain into a chilled glass no. ").append(i);
+            cocktails.add(article(i, INGREDIENTS[random.nextInt(INGREDIENTS.length)] + " sour",
+                                  AUTHORS[i % AUTHORS.length], summary.toString()));
+        }
+        index.addAll(cocktails);
+        return index;
+    }
+
+    /**
+     * An article whose date and URL follow from i, so later ones are newer
+     */
+    private static Cocktail article(int i, String title, String author, String summary) {
+        return new Cocktail("Life and style", title, author, 1531555200000L + i * 60000L,
+                            summary, url(i));
+    }
+
+    private static String url(int i) {
+        return "https://www.theguardian.com/cocktail-" + i;
+    }
+
+    private static List<String> urls(int... ids) {
+        List<String> urls = new ArrayList<>();
+        for (int id : ids) {
+            urls.add(url(id));
+        }
+        return urls;
+    }
+
+    private static List<String> urls(List<Cocktail> cocktails) {
+        List<String> urls = new ArrayList<>();
+        for (Cocktail cocktail : cocktails) {
+            urls.add(cocktail.getUrl());
+        }
+        return urls;
+    }
+}
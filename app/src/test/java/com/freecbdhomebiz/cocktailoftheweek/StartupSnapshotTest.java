@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2018. Tina Taylor
+ * CREATIVE COMMONS Attribution-ShareAlike 3.0 Unported (CC BY-SA 3.0)
+ * https://creativecommons.org/licenses/by-sa/3.0/
+ */
+
+package com.freecbdhomebiz.cocktailoftheweek;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class StartupSnapshotTest {
+
+    private static final String KEY = "https://content.guardianapis.com/lifeandstyle/series/"
+            + "the-good-mixer?order-by=newest&page=1";
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void write_thenRead_returnsTheRowsAsShown() throws Exception {
+        StartupSnapshot snapshot = new StartupSnapshot(mFolder.newFile("startup.snapshot"));
+        List<PreparedCocktail> items = items(3);
+        snapshot.write(KEY, items);
+
+        List<PreparedCocktail> read = snapshot.read(KEY);
+        assertEquals(3, read.size());
+        for (int i = 0; i < items.size(); i++) {
+            PreparedCocktail expected = items.get(i);
+            PreparedCocktail actual = read.get(i);
+            assertEquals(expected.getCocktail().getSectionName(),
+                         actual.getCocktail().getSectionName());
+            assertEquals(expected.getCocktail().getCocktailName(),
+                         actual.getCocktail().getCocktailName());
+            assertEquals(expected.getCocktail().getAuthor(), actual.getCocktail().getAuthor());
+            assertEquals(expected.getCocktail().getDate(), actual.getCocktail().getDate());
+            assertEquals(expected.getCocktail().getUrl(), actual.getCocktail().getUrl());
+            assertEquals(expected.getDate(), actual.getDate());
+            assertEquals(expected.getSummary(), actual.getSummary());
+        }
+    }
+
+    @Test
+    public void write_keepsOnlyTheFirstScreen_inAFewKilobytes() throws Exception {
+        File file = mFolder.newFile("startup.snapshot");
+        StartupSnapshot snapshot = new StartupSnapshot(file);
+        snapshot.write(KEY, items(MainActivity.PAGE_SIZE));
+
+        List<PreparedCocktail> read = snapshot.read(KEY);
+        assertEquals(StartupSnapshot.MAX_ITEMS, read.size());
+        assertEquals("https://www.theguardian.com/0", read.get(0).getCocktail().getUrl());
+        // Small enough to read on the UI thread before the first frame
+        assertTrue(file.length() + " bytes", file.length() < 4096);
+    }
+
+    @Test
+    public void write_leavesTheApiKeyOut() throws Exception {
+        File file = mFolder.newFile("startup.snapshot");
+        StartupSnapshot snapshot = new StartupSnapshot(file);
+        snapshot.write(KEY + "&api-key=secret", items(2));
+
+        byte[] bytes = new byte[(int) file.length()];
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        in.readFully(bytes);
+        in.close();
+        assertFalse(new String(bytes, "ISO-8859-1").contains("secret"));
+        assertEquals(2, snapshot.read(KEY + "&api-key=secret").size());
+    }
+
+    @Test
+    public void read_otherKey_returnsNull() throws Exception {
+        StartupSnapshot snapshot = new StartupSnapshot(mFolder.newFile("startup.snapshot"));
+        snapshot.write(KEY, items(2));
+        assertNull(snapshot.read(KEY.replace("newest", "oldest")));
+    }
+
+    @Test
+    public void read_missingOrTruncatedFile_returnsNull() throws Exception {
+        File file = new File(mFolder.getRoot(), "startup.snapshot");
+        StartupSnapshot snapshot = new StartupSnapshot(file);
+        assertNull(snapshot.read(KEY));
+
+        snapshot.write(KEY, items(2));
+        RandomAccessFile truncated = new RandomAccessFile(file, "rw");
+        truncated.setLength(file.length() / 2);
+        truncated.close();
+        assertNull(snapshot.read(KEY));
+    }
+
+    @Test
+    public void write_emptyList_keepsThePreviousRows() throws Exception {
+        StartupSnapshot snapshot = new StartupSnapshot(mFolder.newFile("startup.snapshot"));
+        snapshot.write(KEY, items(2));
+        snapshot.write(KEY, new ArrayList<PreparedCocktail>());
+        assertEquals(2, snapshot.read(KEY).size());
+    }
+
+    /**
+     * Prepared articles with long summaries, the second one without an author or date
+     */
+    private static List<PreparedCocktail> items(int count) {
+        StringBuilder summary = new StringBuilder();
+        while (summary.length() < 2000) {
+            summary.append("Stir the gin, vermouth and Campari over ice, then strain. ");
+        }
+        List<Cocktail> cocktails = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            boolean known = i != 1;
+            cocktails.add(new Cocktail("Life and style", "Negroni no. " + i,
+                                       known ? "Henry Jeffreys" : null,
+                                       known ? 1531555200000L + i : Cocktail.NO_DATE,
+                                       summary.toString(), "https://www.theguardian.com/" + i));
+        }
+        return PreparedCocktail.prepare(cocktails);
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) 2018. Tina Taylor
+ * CREATIVE COMMONS Attribution-ShareAlike 3.0 Unported (CC BY-SA 3.0)
+ * https://creativecommons.org/licenses/by-sa/3.0/
+ */
+
+package com.freecbdhomebiz.cocktailoftheweek;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests of when {@link SyncPolicy} lets the background sync fetch and retry.
+ */
+public class SyncPolicyTest {
+
+    private static final long NOW = 1531555200000L;
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+
+    @Test
+    public void isSyncDue_withoutStoredArticles() {
+        assertTrue(SyncPolicy.isSyncDue(0, NOW));
+    }
+
+    @Test
+    public void isSyncDue_onlyOnceTheIntervalIsAlmostOver() {
+        assertFalse(SyncPolicy.isSyncDue(NOW - DAY, NOW));
+        assertFalse(SyncPolicy.isSyncDue(NOW - 5 * DAY, NOW));
+        assertTrue(SyncPolicy.isSyncDue(NOW - 6 * DAY, NOW));
+        assertTrue(SyncPolicy.isSyncDue(NOW - 30 * DAY, NOW));
+    }
+
+    @Test
+    public void isSyncDue_whenFetchedInTheFuture() {
+        // The clock was turned back after the last fetch
+        assertTrue(SyncPolicy.isSyncDue(NOW + DAY, NOW));
+    }
+
+    @Test
+    public void shouldRetry_aFewTimesThenWaits() {
+        assertFalse(SyncPolicy.shouldRetry(0));
+        for (int failures = 1; failures <= SyncPolicy.MAX_RETRIES; failures++) {
+            assertTrue(SyncPolicy.shouldRetry(failures));
+        }
+        assertFalse(SyncPolicy.shouldRetry(SyncPolicy.MAX_RETRIES + 1));
+    }
+}
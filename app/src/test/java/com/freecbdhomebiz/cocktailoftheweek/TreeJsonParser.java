@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2018. Tina Taylor
+ * CREATIVE COMMONS Attribution-ShareAlike 3.0 Unported (CC BY-SA 3.0)
+ * https://creativecommons.org/licenses/by-sa/3.0/
+ */
+
+package com.freecbdhomebiz.cocktailoftheweek;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The String + org.json parser that {@link CocktailJsonParser#parse} replaced: the whole
+ * response is read into a String and then into a tree of JSONObjects before the fields are
+ * picked out. Not part of the app, it is the reference implementation the parser tests check
+ * the streaming parser against, and the baseline of the parser benchmark.
+ */
+final class TreeJsonParser {
+
+    private TreeJsonParser() {
+    }
+
+    /**
+     * Convert the {@link InputStream} into a String which contains the
+     * whole JSON response from the server.
+     */
+    static String readFromStream(InputStream inputStream) throws IOException {
+        StringBuilder output = new StringBuilder();
+        if (inputStream != null) {
+            InputStreamReader inputStreamReader = new InputStreamReader(inputStream, Charset
+                    .forName("UTF-8"));
+            BufferedReader reader = new BufferedReader(inputStreamReader);
+            String line = reader.readLine();
+            while (line != null) {
+                output.append(line);
+                line = reader.readLine();
+            }
+        }
+        return output.toString();
+    }
+
+    /**
+     * Parse the the JSON response String into an org.json tree and return a list extracted of
+     * {@link Cocktail} objects.
+     *
+     * @throws JSONException if there's a problem with the way the JSON is formatted
+     */
+    static List<Cocktail> parseTree(String cocktailJson) throws JSONException {
+        // If the JSON string is empty or null, then return early.
+        if (cocktailJson == null || cocktailJson.isEmpty()) {
+            return null;
+        }
+
+        // Create an empty ArrayList that we can start adding Cocktails article fields to
+        List<Cocktail> cocktailList = new ArrayList<>();
+
+        // Create a JSONObject from the JSON response string
+        JSONObject baseJsonResponse = new JSONObject(cocktailJson);
+
+        JSONObject responseObject = baseJsonResponse.getJSONObject("response");
+
+        // Extract the JSONArray associated with the key called "results", which holds the
+        // requested page of the series
+        JSONArray resultsArray = responseObject.getJSONArray("results");
+
+        // For each key in the resultsArray, create an {@link Cocktail}
+        // object for the fields needed
+        for (int i = 0; i < resultsArray.length(); i++) {
+
+            // Get a single article at position i within the list of articles
+            JSONObject currentCocktail = resultsArray.getJSONObject(i);
+
+            // Extract the value for the key called sectionName, which is the section of the
+            // newspaper
+            String sectionName = currentCocktail.getString("sectionName");
+
+            // Extract the value for the key called "webTitle", which is the name of the
+            // article.
+            String cocktailName = currentCocktail.getString("webTitle");
+
+            // Extract the value for the key called "webPublicationDate"
+            String date = currentCocktail.getString("webPublicationDate");
+
+            // Extract the value for the key called "webUrl"
+            String url = currentCocktail.getString("webUrl");
+
+
+            // The key "fields" object holds the byline, which is the author's name, and the
+            // URL of the thumbnail image, which not every article has
+            JSONObject fields = currentCocktail.getJSONObject("fields");
+            String author = fields.getString("byline");
+            String thumbnail = fields.optString("thumbnail", null);
+
+            // The key "blocks" object holds the "body" array, which first element contains the
+            // article summary. The list asks for the trailText instead of the blocks.
+            JSONObject blocks = currentCocktail.optJSONObject("blocks");
+            String summary;
+            if (blocks != null) {
+                JSONArray body = blocks.getJSONArray("body");
+                JSONObject bodyFields = body.getJSONObject(0);
+                summary = bodyFields.getString("bodyTextSummary");
+            } else {
+                summary = CocktailJsonParser.plainText(fields.optString("trailText", null));
+            }
+
+            // Create a new {@link Cocktail} object with the cocktailName, author, date,
+            // summary, and url
+            Cocktail fieldsExtracted = new Cocktail(sectionName, cocktailName, author,
+                                                    CocktailJsonParser.parseDate(date), summary,
+                                                    url, thumbnail);
+
+            // Add the new object to the list of Cocktail articles.
+            cocktailList.add(fieldsExtracted);
+        }
+
+        // Return the list of Cocktail articles
+        return cocktailList;
+    }
+}
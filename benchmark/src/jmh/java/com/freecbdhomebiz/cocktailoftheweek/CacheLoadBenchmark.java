@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2018. Tina Taylor
+ * CREATIVE COMMONS Attribution-ShareAlike 3.0 Unported (CC BY-SA 3.0)
+ * https://creativecommons.org/licenses/by-sa/3.0/
+ */
+
+package com.freecbdhomebiz.cocktailoftheweek;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of loading stored articles the way CocktailPipeline does: parsing the Guardian
+ * JSON again, against opening the {@link CocktailListFormat} file the way ArticleCache does,
+ * memory mapped. Either way every article is then prepared for display, as the pipeline does
+ * before it hands a page to the list.
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CacheLoadBenchmark {
+
+    /**
+     * Size of the body HTML of each article, about what a Good Mixer column has
+     */
+    private static final int BODY_LENGTH = 8 * 1024;
+
+    @Param({"10", "100", "1000"})
+    public int articles;
+
+    private byte[] mResponse;
+    private File mFile;
+
+    @Setup
+    public void setUp() throws IOException {
+        mResponse = GuardianFixture.responseBytes(articles, BODY_LENGTH);
+        List<Cocktail> cocktails = CocktailJsonParser.parse(new ByteArrayInputStream(mResponse));
+        mFile = File.createTempFile("articles", ".bin");
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(mFile)));
+        try {
+            CocktailListFormat.write(out, cocktails);
+        } finally {
+            out.close();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        mFile.delete();
+    }
+
+    @Benchmark
+    public List<PreparedCocktail> parseJsonAndPrepare() throws IOException {
+        return PreparedCocktail.prepare(
+                CocktailJsonParser.parse(new ByteArrayInputStream(mResponse)));
+    }
+
+    @Benchmark
+    public List<PreparedCocktail> mapAndPrepare() throws IOException {
+        return PreparedCocktail.prepare(map());
+    }
+
+    private List<Cocktail> map() throws IOException {
+        RandomAccessFile file = new RandomAccessFile(mFile, "r");
+        try {
+            return CocktailListFormat.read(
+                    file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length()));
+        } finally {
+            file.close();
+        }
+    }
+}
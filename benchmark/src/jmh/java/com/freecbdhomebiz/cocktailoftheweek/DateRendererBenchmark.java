@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2018. Tina Taylor
+ * CREATIVE COMMONS Attribution-ShareAlike 3.0 Unported (CC BY-SA 3.0)
+ * https://creativecommons.org/licenses/by-sa/3.0/
+ */
+
+package com.freecbdhomebiz.cocktailoftheweek;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of binding the date of a row of the list: reading it from a prepared row, the way
+ * the adapter does, against formatting it with a new SimpleDateFormat per bind. The gc
+ * profiler shows what each allocates per bind.
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DateRendererBenchmark {
+
+    /**
+     * Rows of a page of the list
+     */
+    private static final int PAGE_SIZE = 20;
+
+    private List<PreparedCocktail> mPage;
+    private int mNext;
+
+    @Setup
+    public void setUp() throws IOException {
+        mPage = PreparedCocktail.prepare(CocktailJsonParser.parse(
+                new ByteArrayInputStream(GuardianFixture.responseBytes(PAGE_SIZE, 64))));
+    }
+
+    @Benchmark
+    public String bindPreparedRow() {
+        return next().getDate();
+    }
+
+    @Benchmark
+    public String formatEachBind() {
+        return new SimpleDateFormat("MMM d, yyyy", Locale.getDefault()).format(
+                new Date(next().getCocktail().getDate()));
+    }
+
+    private PreparedCocktail next() {
+        PreparedCocktail row = mPage.get(mNext);
+        mNext = (mNext + 1) % PAGE_SIZE;
+        return row;
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2018. Tina Taylor
+ * CREATIVE COMMONS Attribution-ShareAlike 3.0 Unported (CC BY-SA 3.0)
+ * https://creativecommons.org/licenses/by-sa/3.0/
+ */
+
+package com.freecbdhomebiz.cocktailoftheweek;
+
+import org.json.JSONException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the parse and model pipeline over Guardian responses of 10, 100 and 1,000
+ * articles: the streaming parser, the String + org.json path it replaced, the streaming parser
+ * over the smaller response of the list profile of GuardianRequest, and preparing the parsed
+ * articles for display. Run them before and after every parser change.
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ParserBenchmark {
+
+    /**
+     * Size of the body HTML of each article, about what a Good Mixer column has
+     */
+    private static final int BODY_LENGTH = 8 * 1024;
+
+    @Param({"10", "100", "1000"})
+    public int articles;
+
+    private byte[] mResponse;
+    private byte[] mListResponse;
+    private List<Cocktail> mCocktails;
+
+    @Setup
+    public void setUp() throws IOException {
+        mResponse = GuardianFixture.responseBytes(articles, BODY_LENGTH);
+        mListResponse = GuardianFixture.listResponseBytes(0, articles);
+        mCocktails = CocktailJsonParser.parse(new ByteArrayInputStream(mResponse));
+    }
+
+    @Benchmark
+    public List<Cocktail> streamingParse() throws IOException {
+        return CocktailJsonParser.parse(new ByteArrayInputStream(mResponse));
+    }
+
+    @Benchmark
+    public List<Cocktail> streamingParseListProfile() throws IOException {
+        return CocktailJsonParser.parse(new ByteArrayInputStream(mListResponse));
+    }
+
+    @Benchmark
+    public List<Cocktail> readStringAndParseTree() throws IOException, JSONException {
+        return TreeJsonParser.parseTree(
+                TreeJsonParser.readFromStream(new ByteArrayInputStream(mResponse)));
+    }
+
+    @Benchmark
+    public List<PreparedCocktail> prepareForDisplay() {
+        return PreparedCocktail.prepare(mCocktails);
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2018. Tina Taylor
+ * CREATIVE COMMONS Attribution-ShareAlike 3.0 Unported (CC BY-SA 3.0)
+ * https://creativecommons.org/licenses/by-sa/3.0/
+ */
+
+package com.freecbdhomebiz.cocktailoftheweek;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of {@link SearchIndex} over a synthetic archive of articles with a few random
+ * ingredients each: building the index, reading it back from disk, and single word, two word
+ * and prefix queries the way the search box sends them.
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SearchIndexBenchmark {
+
+    private static final String[] INGREDIENTS = {
+            "gin", "mezcal", "tequila", "rum", "whisky", "vodka", "brandy", "vermouth",
+            "campari", "aperol", "lime", "lemon", "grapefruit", "orange", "sugar", "bitters",
+            "mint", "soda", "tonic", "prosecco", "cognac", "absinthe", "maraschino", "chartreuse"
+    };
+
+    private static final String[] AUTHORS = {
+            "Henry Jeffreys", "Rachel Roddy", "Felicity Cloake"
+    };
+
+    private static final int QUERIES = 2000;
+
+    /**
+     * Most results the search box shows
+     */
+    private static final int LIMIT = 100;
+
+    @Param({"500", "5000"})
+    public int articles;
+
+    private List<Cocktail> mCocktails;
+    private SearchIndex mIndex;
+    private byte[] mStored;
+    private String[] mQueries;
+    private int mNext;
+
+    @Setup
+    public void setUp() throws IOException {
+        mCocktails = archive(articles);
+        mIndex = new SearchIndex();
+        mIndex.addAll(mCocktails);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        mIndex.writeTo(out);
+        mStored = out.toByteArray();
+        mQueries = queries();
+    }
+
+    @Benchmark
+    public SearchIndex build() {
+        SearchIndex index = new SearchIndex();
+        index.addAll(mCocktails);
+        return index;
+    }
+
+    @Benchmark
+    public SearchIndex readFrom() throws IOException {
+        return SearchIndex.readFrom(new ByteArrayInputStream(mStored));
+    }
+
+    @Benchmark
+    public List<Cocktail> search() {
+        String query = mQueries[mNext];
+        mNext = (mNext + 1) % QUERIES;
+        return mIndex.search(query, LIMIT);
+    }
+
+    /**
+     * Single word, two word and two word with a prefix queries, in turn
+     */
+    private static String[] queries() {
+        Random random = new Random(7);
+        String[] queries = new String[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            String first = INGREDIENTS[random.nextInt(INGREDIENTS.length)];
+            String second = INGREDIENTS[random.nextInt(INGREDIENTS.length)];
+            switch (i % 3) {
+                case 0:
+                    queries[i] = first;
+                    break;
+                case 1:
+                    queries[i] = first + " " + second;
+                    break;
+                default:
+                    queries[i] = first + " " + second.substring(0, 2);
+                    break;
+            }
+        }
+        return queries;
+    }
+
+    /**
+     * Articles with a few random ingredients each in the title and summary
+     */
+    private static List<Cocktail> archive(int size) {
+        Random random = new Random(42);
+        List<Cocktail> cocktails = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            StringBuilder summary = new StringBuilder("Shake");
+            for (int j = 0; j < 6; j++) {
+                summary.append(' ').append(INGREDIENTS[random.nextInt(INGREDIENTS.length)]);
+            }
+            summary.append(" hard over ice, then strain into a chilled glass no. ").append(i);
+            cocktails.add(new Cocktail("Life and style",
+                                       INGREDIENTS[random.nextInt(INGREDIENTS.length)] + " sour",
+                                       AUTHORS[i % AUTHORS.length], 1531555200000L + i * 60000L,
+                                       summary.toString(),
+                                       "https://www.theguardian.com/cocktail-" + i));
+        }
+        return cocktails;
+    }
+}